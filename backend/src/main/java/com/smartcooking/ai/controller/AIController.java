@@ -1,15 +1,22 @@
 package com.smartcooking.ai.controller;
 
+import com.smartcooking.ai.dto.AIServiceResponse;
+import com.smartcooking.ai.entity.AIInteraction.InteractionType;
+import com.smartcooking.ai.service.AIBatchService;
+import com.smartcooking.ai.service.AIRecipePersistenceService;
+import com.smartcooking.ai.service.AIRequestScheduler;
+import com.smartcooking.ai.service.AIServiceClient;
+import com.smartcooking.ai.service.ChatAnswerCache;
+import com.smartcooking.ai.service.ChatSessionStore;
+import com.smartcooking.ai.service.VisionPreprocessingService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartFile;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.core.io.ByteArrayResource;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,10 +32,13 @@ import java.util.Map;
 @CrossOrigin(origins = { "http://localhost:3000", "http://localhost:3001" })
 public class AIController {
 
-    private final RestTemplate restTemplate;
-
-    @Value("${ai.service.url:http://localhost:8001}")
-    private String aiServiceUrl;
+    private final AIServiceClient aiServiceClient;
+    private final VisionPreprocessingService visionPreprocessingService;
+    private final AIBatchService aiBatchService;
+    private final AIRequestScheduler aiRequestScheduler;
+    private final ChatAnswerCache chatAnswerCache;
+    private final AIRecipePersistenceService aiRecipePersistenceService;
+    private final ChatSessionStore chatSessionStore;
 
     /**
      * Chat với AI Assistant
@@ -38,12 +48,30 @@ public class AIController {
         try {
             log.info("Forwarding chat request to AI service: {}", request);
 
-            // Forward request to AI service
-            String url = aiServiceUrl + "/api/ai/chat";
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, request, Map.class);
-
-            return ResponseEntity.ok(response.getBody());
-
+            long startTime = System.currentTimeMillis();
+            // Context của session (nếu có) được điền từ lịch sử phía server
+            String sessionId = chatSessionStore.attach(request);
+
+            AIServiceResponse response = chatAnswerCache.lookup(request);
+            if (response != null) {
+                aiServiceClient.recordLocalHit(InteractionType.CHAT, request, response,
+                        System.currentTimeMillis() - startTime);
+            } else {
+                // Forward request to AI service
+                response = aiServiceClient.postJson(InteractionType.CHAT, "/api/ai/chat", request);
+                chatAnswerCache.store(request, response);
+            }
+
+            chatSessionStore.append(request, sessionId, response);
+            return aiServiceClient.relay(chatSessionStore.withSessionId(response, sessionId));
+
+        } catch (AIRequestScheduler.RejectedException e) {
+            return tooManyRequests(e);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("success", false);
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
         } catch (Exception e) {
             log.error("Error in AI chat: {}", e.getMessage());
 
@@ -60,6 +88,22 @@ public class AIController {
         }
     }
 
+    /**
+     * Kết thúc chat session (xóa lịch sử phía server)
+     */
+    @DeleteMapping("/chat/sessions/{sessionId}")
+    public ResponseEntity<?> clearChatSession(@PathVariable String sessionId,
+            @RequestParam(value = "user_id", required = false) Long userId) {
+        Map<String, Object> scope = new HashMap<>();
+        scope.put("user_id", userId);
+        chatSessionStore.clear(scope, sessionId);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("session_id", sessionId);
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * Tạo công thức từ nguyên liệu
      */
@@ -68,11 +112,21 @@ public class AIController {
         try {
             log.info("Generating recipe with ingredients: {}", request.get("ingredients"));
 
-            String url = aiServiceUrl + "/api/ai/generate-recipe";
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, request, Map.class);
+            long startTime = System.currentTimeMillis();
+            AIRecipePersistenceService.GenerationPrompt prompt = aiRecipePersistenceService.describe(request);
+            AIServiceResponse stored = aiRecipePersistenceService.findStored(prompt);
+            if (stored != null) {
+                return aiServiceClient.relay(aiServiceClient.recordLocalHit(InteractionType.RECIPE_GENERATION,
+                        request, stored, System.currentTimeMillis() - startTime));
+            }
+
+            AIServiceResponse response = aiServiceClient.postJson(InteractionType.RECIPE_GENERATION,
+                    "/api/ai/generate-recipe", request);
 
-            return ResponseEntity.ok(response.getBody());
+            return aiServiceClient.relay(aiRecipePersistenceService.persist(prompt, response));
 
+        } catch (AIRequestScheduler.RejectedException e) {
+            return tooManyRequests(e);
         } catch (Exception e) {
             log.error("Error generating recipe: {}", e.getMessage());
 
@@ -105,25 +159,40 @@ public class AIController {
         try {
             log.info("Analyzing image: {}", file.getOriginalFilename());
 
-            // Create multipart request for AI service
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
-
-            LinkedMultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-            body.add("file", new ByteArrayResource(file.getBytes()) {
-                @Override
-                public String getFilename() {
-                    return file.getOriginalFilename();
+            // Thu nhỏ ảnh và kiểm tra cache trước khi gọi AI service
+            long startTime = System.currentTimeMillis();
+            VisionPreprocessingService.PreparedImage prepared = visionPreprocessingService.prepare(file);
+            if (prepared != null) {
+                AIServiceResponse cached = visionPreprocessingService.getCachedDetection(prepared);
+                if (cached != null) {
+                    log.info("Vision cache hit for image: {}", file.getOriginalFilename());
+                    aiServiceClient.recordLocalHit(InteractionType.IMAGE_RECOGNITION,
+                            "file=" + file.getOriginalFilename() + " (cache hit)", cached,
+                            System.currentTimeMillis() - startTime);
+                    return aiServiceClient.relay(cached);
                 }
-            });
-
-            HttpEntity<LinkedMultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
-
-            String url = aiServiceUrl + "/api/ai/vision";
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, requestEntity, Map.class);
-
-            return ResponseEntity.ok(response.getBody());
-
+            }
+
+            AIServiceResponse response;
+            if (prepared != null && prepared.isResized()) {
+                response = aiServiceClient.postFile(InteractionType.IMAGE_RECOGNITION, "/api/ai/vision", "file",
+                        resizedFilename(file), prepared.getJpegBytes());
+            } else {
+                // Stream file gốc tới AI service, không copy toàn bộ vào heap
+                response = aiServiceClient.streamMultipart(InteractionType.IMAGE_RECOGNITION, "/api/ai/vision",
+                        "file", file, Map.of());
+            }
+
+            if (prepared != null) {
+                visionPreprocessingService.cacheDetection(prepared, response);
+            }
+            return aiServiceClient.relay(response);
+
+        } catch (MaxUploadSizeExceededException e) {
+            log.warn("Image upload too large: {}", file.getOriginalFilename());
+            return uploadTooLarge(e);
+        } catch (AIRequestScheduler.RejectedException e) {
+            return tooManyRequests(e);
         } catch (Exception e) {
             log.error("Error analyzing image: {}", e.getMessage());
 
@@ -146,11 +215,13 @@ public class AIController {
         try {
             log.info("Getting ingredient suggestions for: {}", request.get("dish_name"));
 
-            String url = aiServiceUrl + "/api/ai/ingredient-suggestions";
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, request, Map.class);
+            AIServiceResponse response = aiServiceClient.postJson(InteractionType.INGREDIENT_SUGGESTION,
+                    "/api/ai/ingredient-suggestions", request);
 
-            return ResponseEntity.ok(response.getBody());
+            return aiServiceClient.relay(response);
 
+        } catch (AIRequestScheduler.RejectedException e) {
+            return tooManyRequests(e);
         } catch (Exception e) {
             log.error("Error getting ingredient suggestions: {}", e.getMessage());
 
@@ -177,11 +248,13 @@ public class AIController {
         try {
             log.info("Creating learning path for skill level: {}", request.get("skill_level"));
 
-            String url = aiServiceUrl + "/api/ai/learning-path";
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, request, Map.class);
+            AIServiceResponse response = aiServiceClient.postJson(InteractionType.LEARNING_PATH,
+                    "/api/ai/learning-path", request);
 
-            return ResponseEntity.ok(response.getBody());
+            return aiServiceClient.relay(response);
 
+        } catch (AIRequestScheduler.RejectedException e) {
+            return tooManyRequests(e);
         } catch (Exception e) {
             log.error("Error creating learning path: {}", e.getMessage());
 
@@ -208,11 +281,13 @@ public class AIController {
         try {
             log.info("Analyzing nutrition for ingredients: {}", request.get("ingredients"));
 
-            String url = aiServiceUrl + "/api/ai/nutrition-analysis";
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, request, Map.class);
+            AIServiceResponse response = aiServiceClient.postJson(InteractionType.NUTRITION_ANALYSIS,
+                    "/api/ai/nutrition-analysis", request);
 
-            return ResponseEntity.ok(response.getBody());
+            return aiServiceClient.relay(response);
 
+        } catch (AIRequestScheduler.RejectedException e) {
+            return tooManyRequests(e);
         } catch (Exception e) {
             log.error("Error analyzing nutrition: {}", e.getMessage());
 
@@ -249,26 +324,17 @@ public class AIController {
         try {
             log.info("Processing voice input: {}", audioFile.getOriginalFilename());
 
-            // Create multipart request
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
-
-            LinkedMultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-            body.add("audio", new ByteArrayResource(audioFile.getBytes()) {
-                @Override
-                public String getFilename() {
-                    return audioFile.getOriginalFilename();
-                }
-            });
-            body.add("language", language);
-
-            HttpEntity<LinkedMultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
-
-            String url = aiServiceUrl + "/api/ai/voice";
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, requestEntity, Map.class);
+            // Stream audio tới AI service, không copy toàn bộ vào heap
+            AIServiceResponse response = aiServiceClient.streamMultipart(InteractionType.VOICE_STT, "/api/ai/voice",
+                    "audio", audioFile, Map.of("language", language));
 
-            return ResponseEntity.ok(response.getBody());
+            return aiServiceClient.relay(response);
 
+        } catch (MaxUploadSizeExceededException e) {
+            log.warn("Audio upload too large: {}", audioFile.getOriginalFilename());
+            return uploadTooLarge(e);
+        } catch (AIRequestScheduler.RejectedException e) {
+            return tooManyRequests(e);
         } catch (Exception e) {
             log.error("Error processing voice: {}", e.getMessage());
 
@@ -280,19 +346,65 @@ public class AIController {
         }
     }
 
+    /**
+     * Batch nhiều AI requests (nutrition, ingredient suggestions, generate-recipe)
+     * chạy song song với concurrency cap và deadline cho cả batch
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> processBatch(@RequestBody Map<String, Object> request) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("success", false);
+
+        if (!(request.get("requests") instanceof List<?> rawItems) || rawItems.isEmpty()) {
+            errorResponse.put("error", "Danh sách requests không được để trống");
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (Object rawItem : rawItems) {
+            if (!(rawItem instanceof Map)) {
+                errorResponse.put("error", "Mỗi request phải là một object {id, type, payload}");
+                return ResponseEntity.badRequest().body(errorResponse);
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> item = (Map<String, Object>) rawItem;
+            items.add(item);
+        }
+
+        try {
+            log.info("Processing AI batch with {} requests", items.size());
+
+            Integer concurrency = request.get("max_concurrency") instanceof Number n ? n.intValue() : null;
+            Long timeoutMs = request.get("timeout_ms") instanceof Number n ? n.longValue() : null;
+
+            Map<String, Object> result = aiBatchService.execute(items, concurrency, timeoutMs, Map.of(
+                    "nutrition-analysis", this::analyzeNutrition,
+                    "ingredient-suggestions", this::suggestIngredients,
+                    "generate-recipe", this::generateRecipe));
+
+            return ResponseEntity.ok(result);
+
+        } catch (AIRequestScheduler.RejectedException e) {
+            return tooManyRequests(e);
+        } catch (IllegalArgumentException e) {
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+
     /**
      * Health check for AI service
      */
     @GetMapping("/health")
     public ResponseEntity<?> checkAIServiceHealth() {
         try {
-            String url = aiServiceUrl + "/health";
-            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
+            int responseCode = aiServiceClient.checkHealth();
 
             Map<String, Object> healthStatus = new HashMap<>();
             healthStatus.put("ai_service_status", "healthy");
-            healthStatus.put("ai_service_url", aiServiceUrl);
-            healthStatus.put("response_code", response.getStatusCode().value());
+            healthStatus.put("ai_service_url", aiServiceClient.getBaseUrl());
+            healthStatus.put("response_code", responseCode);
+            healthStatus.put("ai_service_replicas", aiServiceClient.getReplicaStatus());
 
             return ResponseEntity.ok(healthStatus);
 
@@ -301,10 +413,44 @@ public class AIController {
 
             Map<String, Object> healthStatus = new HashMap<>();
             healthStatus.put("ai_service_status", "unhealthy");
-            healthStatus.put("ai_service_url", aiServiceUrl);
+            healthStatus.put("ai_service_url", aiServiceClient.getBaseUrl());
             healthStatus.put("error", e.getMessage());
+            healthStatus.put("ai_service_replicas", aiServiceClient.getReplicaStatus());
 
             return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(healthStatus);
         }
     }
+
+    /**
+     * Trạng thái scheduler: slot đang dùng, hàng đợi theo tenant
+     */
+    @GetMapping("/scheduler/stats")
+    public ResponseEntity<?> getSchedulerStats(@RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(aiRequestScheduler.getStats(limit));
+    }
+
+    private ResponseEntity<?> tooManyRequests(AIRequestScheduler.RejectedException e) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("success", false);
+        errorResponse.put("error", "Quá nhiều yêu cầu AI. Vui lòng thử lại sau.");
+        errorResponse.put("reason", e.getReason());
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(errorResponse);
+    }
+
+    private ResponseEntity<?> uploadTooLarge(MaxUploadSizeExceededException e) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("success", false);
+        errorResponse.put("error", "File quá lớn. Kích thước tối đa: " + e.getMaxUploadSize() + " bytes");
+
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(errorResponse);
+    }
+
+    private static String resizedFilename(MultipartFile file) {
+        String original = file.getOriginalFilename() != null ? file.getOriginalFilename() : "image";
+        int dot = original.lastIndexOf('.');
+        return (dot > 0 ? original.substring(0, dot) : original) + ".jpg";
+    }
 }
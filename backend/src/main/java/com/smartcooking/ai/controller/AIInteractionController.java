@@ -1,18 +1,27 @@
 package com.smartcooking.ai.controller;
 
+import com.smartcooking.ai.dto.AIInteractionPayload;
+import com.smartcooking.ai.dto.AIInteractionSummary;
+import com.smartcooking.ai.dto.ArchivedInteraction;
 import com.smartcooking.ai.entity.AIInteraction;
+import com.smartcooking.ai.service.AIInteractionArchiveService;
 import com.smartcooking.ai.service.AIInteractionService;
+import com.smartcooking.ai.service.AIUserActivityTracker;
+import com.smartcooking.ai.util.ExportWriter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * AI Interaction Controller - REST API cho analytics và AI interaction tracking
@@ -50,12 +59,22 @@ public class AIInteractionController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Lấy input/output của interaction (list endpoints chỉ trả metadata)
+     */
+    @GetMapping("/{id}/payload")
+    public ResponseEntity<AIInteractionPayload> getInteractionPayload(@PathVariable Long id) {
+        return aiInteractionService.getInteractionPayload(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     /**
      * Lấy interactions của user
      */
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<AIInteraction>> getInteractionsByUserId(@PathVariable Long userId) {
-        List<AIInteraction> interactions = aiInteractionService.getInteractionsByUserId(userId);
+    public ResponseEntity<List<AIInteractionSummary>> getInteractionsByUserId(@PathVariable Long userId) {
+        List<AIInteractionSummary> interactions = aiInteractionService.getInteractionsByUserId(userId);
         return ResponseEntity.ok(interactions);
     }
 
@@ -63,10 +82,10 @@ public class AIInteractionController {
      * Lấy interactions theo type
      */
     @GetMapping("/type/{type}")
-    public ResponseEntity<List<AIInteraction>> getInteractionsByType(@PathVariable String type) {
+    public ResponseEntity<List<AIInteractionSummary>> getInteractionsByType(@PathVariable String type) {
         try {
             AIInteraction.InteractionType interactionType = AIInteraction.InteractionType.valueOf(type.toUpperCase());
-            List<AIInteraction> interactions = aiInteractionService.getInteractionsByType(interactionType);
+            List<AIInteractionSummary> interactions = aiInteractionService.getInteractionsByType(interactionType);
             return ResponseEntity.ok(interactions);
         } catch (Exception e) {
             log.error("Error getting interactions by type: {}", e.getMessage());
@@ -78,12 +97,12 @@ public class AIInteractionController {
      * Lấy interactions trong khoảng thời gian
      */
     @GetMapping("/date-range")
-    public ResponseEntity<List<AIInteraction>> getInteractionsByDateRange(@RequestParam String startDate,
+    public ResponseEntity<List<AIInteractionSummary>> getInteractionsByDateRange(@RequestParam String startDate,
             @RequestParam String endDate) {
         try {
             LocalDate start = LocalDate.parse(startDate);
             LocalDate end = LocalDate.parse(endDate);
-            List<AIInteraction> interactions = aiInteractionService.getInteractionsByDateRange(start, end);
+            List<AIInteractionSummary> interactions = aiInteractionService.getInteractionsByDateRange(start, end);
             return ResponseEntity.ok(interactions);
         } catch (Exception e) {
             log.error("Error getting interactions by date range: {}", e.getMessage());
@@ -95,10 +114,10 @@ public class AIInteractionController {
      * Lấy recent interactions với pagination
      */
     @GetMapping("/recent")
-    public ResponseEntity<Page<AIInteraction>> getRecentInteractions(@RequestParam(defaultValue = "0") int page,
+    public ResponseEntity<Page<AIInteractionSummary>> getRecentInteractions(@RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size) {
         Pageable pageable = PageRequest.of(page, size);
-        Page<AIInteraction> interactions = aiInteractionService.getRecentInteractions(pageable);
+        Page<AIInteractionSummary> interactions = aiInteractionService.getRecentInteractions(pageable);
         return ResponseEntity.ok(interactions);
     }
 
@@ -106,8 +125,8 @@ public class AIInteractionController {
      * Lấy interactions theo language
      */
     @GetMapping("/language/{language}")
-    public ResponseEntity<List<AIInteraction>> getInteractionsByLanguage(@PathVariable String language) {
-        List<AIInteraction> interactions = aiInteractionService.getInteractionsByLanguage(language);
+    public ResponseEntity<List<AIInteractionSummary>> getInteractionsByLanguage(@PathVariable String language) {
+        List<AIInteractionSummary> interactions = aiInteractionService.getInteractionsByLanguage(language);
         return ResponseEntity.ok(interactions);
     }
 
@@ -115,12 +134,24 @@ public class AIInteractionController {
      * Lấy slow interactions (cho performance monitoring)
      */
     @GetMapping("/slow")
-    public ResponseEntity<List<AIInteraction>> getSlowInteractions(
-            @RequestParam(defaultValue = "5000") Long thresholdMs) {
-        List<AIInteraction> interactions = aiInteractionService.getSlowInteractions(thresholdMs);
+    public ResponseEntity<List<AIInteractionSummary>> getSlowInteractions(
+            @RequestParam(defaultValue = "5000") Long thresholdMs,
+            @RequestParam(defaultValue = "100") int limit) {
+        List<AIInteractionSummary> interactions = aiInteractionService.getSlowInteractions(thresholdMs,
+                Math.min(limit, 1000));
         return ResponseEntity.ok(interactions);
     }
 
+    /**
+     * Lấy các interaction lỗi gần đây (metadata)
+     */
+    @GetMapping("/errors/recent")
+    public ResponseEntity<Page<AIInteractionSummary>> getRecentErrors(@RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        Pageable pageable = PageRequest.of(page, Math.min(size, 1000));
+        return ResponseEntity.ok(aiInteractionService.getRecentErrors(pageable));
+    }
+
     /**
      * Lấy daily interaction statistics
      */
@@ -131,6 +162,14 @@ public class AIInteractionController {
         return ResponseEntity.ok(stats);
     }
 
+    /**
+     * Lấy số user phân biệt (ước lượng) trong N ngày, theo type và ngôn ngữ
+     */
+    @GetMapping("/statistics/unique-users")
+    public ResponseEntity<Map<String, Object>> getUniqueUserStatistics(@RequestParam(defaultValue = "30") int days) {
+        return ResponseEntity.ok(aiInteractionService.getUniqueUserStatistics(days));
+    }
+
     /**
      * Lấy user interaction statistics
      */
@@ -167,16 +206,35 @@ public class AIInteractionController {
         return ResponseEntity.ok(stats);
     }
 
+    /**
+     * Lấy latency percentiles (p50/p95/p99) gần đây theo type, ngôn ngữ và replica
+     */
+    @GetMapping("/statistics/latency")
+    public ResponseEntity<Map<String, Map<String, Map<String, Object>>>> getLatencyStatistics(
+            @RequestParam(defaultValue = "15") int minutes) {
+        return ResponseEntity.ok(aiInteractionService.getLatencyStatistics(minutes));
+    }
+
     /**
      * Lấy top active users
      */
     @GetMapping("/statistics/top-users")
     public ResponseEntity<List<AIInteractionService.UserActivityStats>> getTopActiveUsers(
             @RequestParam(defaultValue = "10") int limit) {
-        List<AIInteractionService.UserActivityStats> stats = aiInteractionService.getTopActiveUsers(limit);
+        List<AIInteractionService.UserActivityStats> stats = aiInteractionService.getTopActiveUsers(
+                Math.min(limit, 1000));
         return ResponseEntity.ok(stats);
     }
 
+    /**
+     * Ước lượng số interaction của user trong window top users
+     */
+    @GetMapping("/statistics/users/{userId}/activity")
+    public ResponseEntity<AIUserActivityTracker.UserActivityEstimate> getUserActivityEstimate(
+            @PathVariable Long userId) {
+        return ResponseEntity.ok(aiInteractionService.getUserActivityEstimate(userId));
+    }
+
     /**
      * Lấy engagement metrics cho Looker Studio
      */
@@ -208,18 +266,88 @@ public class AIInteractionController {
      * Lấy error analytics
      */
     @GetMapping("/analytics/errors")
-    public ResponseEntity<Map<String, Object>> getErrorAnalytics(@RequestParam(defaultValue = "30") int days) {
-        Map<String, Object> analytics = aiInteractionService.getErrorAnalytics(days);
+    public ResponseEntity<Map<String, Object>> getErrorAnalytics(@RequestParam(defaultValue = "30") int days,
+            @RequestParam(defaultValue = "20") int limit) {
+        Map<String, Object> analytics = aiInteractionService.getErrorAnalytics(days, Math.min(limit, 200));
         return ResponseEntity.ok(analytics);
     }
 
     /**
-     * Export analytics data cho Looker Studio
+     * Tính lại nhóm lỗi theo giờ từ ai_interactions (backfill)
+     */
+    @PostMapping("/analytics/errors/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildErrorFingerprints(@RequestParam(defaultValue = "7") int days) {
+        try {
+            long errors = aiInteractionService.rebuildErrorFingerprints(days);
+            return ResponseEntity.ok(Map.of(
+                    "message", "Error fingerprints rebuilt successfully",
+                    "errors", errors,
+                    "days", days));
+        } catch (Exception e) {
+            log.error("Error rebuilding error fingerprints: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Error fingerprint rebuild failed: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Export analytics data cho Looker Studio (stream JSON / NDJSON / CSV, tùy chọn gzip)
      */
     @GetMapping("/export/looker-studio")
-    public ResponseEntity<Map<String, Object>> exportForLookerStudio(@RequestParam(defaultValue = "30") int days) {
-        Map<String, Object> data = aiInteractionService.exportForLookerStudio(days);
-        return ResponseEntity.ok(data);
+    public ResponseEntity<StreamingResponseBody> exportForLookerStudio(
+            @RequestParam(defaultValue = "30") int days,
+            @RequestParam(defaultValue = "json") String format,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        try {
+            ExportWriter.Format exportFormat = ExportWriter.Format.parse(format);
+            StreamingResponseBody body = out -> aiInteractionService.exportForLookerStudio(
+                    days, out, exportFormat, gzip);
+            return ResponseEntity.ok()
+                    .headers(ExportWriter.headers("ai-interactions-" + days + "d", exportFormat, gzip))
+                    .body(body);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid Looker Studio export request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Scan lịch sử interactions, gồm cả phần đã chuyển sang archive
+     */
+    @GetMapping("/archive/scan")
+    public ResponseEntity<List<ArchivedInteraction>> scanArchive(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Set<AIInteraction.InteractionType> types,
+            @RequestParam(required = false) String language,
+            @RequestParam(required = false) Boolean success,
+            @RequestParam(required = false) Integer minProcessingTimeMs,
+            @RequestParam(defaultValue = "false") boolean includePayload,
+            @RequestParam(defaultValue = "1000") int limit) {
+        try {
+            AIInteractionArchiveService.ArchiveQuery query = AIInteractionArchiveService.ArchiveQuery.builder()
+                    .from(from != null ? from.atStartOfDay() : null)
+                    .to(to != null ? to.plusDays(1).atStartOfDay() : null)
+                    .types(types)
+                    .language(language)
+                    .success(success)
+                    .minProcessingTimeMs(minProcessingTimeMs)
+                    .includePayload(includePayload)
+                    .limit(Math.max(1, Math.min(limit, 10000)))
+                    .build();
+            return ResponseEntity.ok(aiInteractionService.scanHistory(query));
+        } catch (Exception e) {
+            log.error("Error scanning interaction archive: {}", e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Danh sách archive files
+     */
+    @GetMapping("/archive/files")
+    public ResponseEntity<List<Map<String, Object>>> getArchiveFiles() {
+        return ResponseEntity.ok(aiInteractionService.getArchiveFiles());
     }
 
     /**
@@ -231,6 +359,46 @@ public class AIInteractionController {
         return ResponseEntity.ok(health);
     }
 
+    /**
+     * Tính lại hourly rollups từ ai_interactions (backfill)
+     */
+    @PostMapping("/rollups/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildRollups(@RequestParam(defaultValue = "7") int days) {
+        try {
+            int buckets = aiInteractionService.rebuildRollups(days);
+            return ResponseEntity.ok(Map.of(
+                    "message", "Rollups rebuilt successfully",
+                    "buckets", buckets,
+                    "days", days));
+        } catch (Exception e) {
+            log.error("Error rebuilding rollups: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Rollup rebuild failed: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Train lại dictionary nén payload từ các interaction mới nhất
+     */
+    @PostMapping("/payload-dictionary/train")
+    public ResponseEntity<Map<String, Object>> trainPayloadDictionary() {
+        try {
+            return ResponseEntity.ok(aiInteractionService.trainPayloadDictionary());
+        } catch (Exception e) {
+            log.error("Error training payload dictionary: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Dictionary training failed: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Danh sách partition theo tháng của ai_interactions
+     */
+    @GetMapping("/partitions")
+    public ResponseEntity<List<Map<String, Object>>> getPartitions() {
+        return ResponseEntity.ok(aiInteractionService.getPartitions());
+    }
+
     /**
      * Xóa old interactions (cleanup)
      */
@@ -238,7 +406,7 @@ public class AIInteractionController {
     public ResponseEntity<Map<String, Object>> cleanupOldInteractions(
             @RequestParam(defaultValue = "90") int olderThanDays) {
         try {
-            int deletedCount = aiInteractionService.cleanupOldInteractions(olderThanDays);
+            long deletedCount = aiInteractionService.cleanupOldInteractions(olderThanDays);
             return ResponseEntity.ok(Map.of(
                     "message", "Cleanup completed successfully",
                     "deletedCount", deletedCount,
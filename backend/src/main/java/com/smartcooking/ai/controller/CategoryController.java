@@ -2,6 +2,7 @@ package com.smartcooking.ai.controller;
 
 import com.smartcooking.ai.entity.Category;
 import com.smartcooking.ai.service.CategoryService;
+import com.smartcooking.ai.util.ExportWriter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -9,6 +10,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Map;
@@ -184,13 +186,23 @@ public class CategoryController {
     }
 
     /**
-     * Export categories cho admin
+     * Export categories cho admin (stream JSON / NDJSON / CSV, tùy chọn gzip)
      */
     @GetMapping("/export")
-    public ResponseEntity<List<Map<String, Object>>> exportCategories(
-            @RequestParam(defaultValue = "en") String language) {
-        List<Map<String, Object>> exportData = categoryService.exportCategories(language);
-        return ResponseEntity.ok(exportData);
+    public ResponseEntity<StreamingResponseBody> exportCategories(
+            @RequestParam(defaultValue = "en") String language,
+            @RequestParam(defaultValue = "json") String format,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        try {
+            ExportWriter.Format exportFormat = ExportWriter.Format.parse(format);
+            StreamingResponseBody body = out -> categoryService.exportCategories(language, out, exportFormat, gzip);
+            return ResponseEntity.ok()
+                    .headers(ExportWriter.headers("categories", exportFormat, gzip))
+                    .body(body);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid category export request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /**
@@ -4,6 +4,7 @@ import com.smartcooking.ai.entity.LearningPath;
 import com.smartcooking.ai.entity.LearningPathStep;
 import com.smartcooking.ai.entity.UserLearningProgress;
 import com.smartcooking.ai.service.LearningService;
+import com.smartcooking.ai.util.ExportWriter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -11,6 +12,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Map;
@@ -155,6 +157,39 @@ public class LearningController {
         return ResponseEntity.ok(steps);
     }
 
+    /**
+     * Thay toàn bộ steps của learning path (thứ tự theo danh sách)
+     */
+    @PutMapping("/paths/{pathId}/steps")
+    public ResponseEntity<List<LearningPathStep>> replaceSteps(@PathVariable Long pathId,
+            @RequestBody List<LearningPathStep> steps,
+            @RequestParam Long userId) {
+        try {
+            List<LearningPathStep> saved = learningService.replaceSteps(pathId, steps, userId);
+            return ResponseEntity.ok(saved);
+        } catch (Exception e) {
+            log.error("Error replacing learning path steps: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Di chuyển step ra sau afterStepId (bỏ trống: lên đầu)
+     */
+    @PostMapping("/paths/{pathId}/steps/{stepId}/move")
+    public ResponseEntity<LearningPathStep> moveStep(@PathVariable Long pathId,
+            @PathVariable Long stepId,
+            @RequestParam(required = false) Long afterStepId,
+            @RequestParam Long userId) {
+        try {
+            LearningPathStep moved = learningService.moveStep(pathId, stepId, afterStepId, userId);
+            return ResponseEntity.ok(moved);
+        } catch (Exception e) {
+            log.error("Error moving learning path step: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /**
      * Cập nhật step
      */
@@ -164,7 +199,7 @@ public class LearningController {
             @RequestBody LearningPathStep updates,
             @RequestParam Long userId) {
         try {
-            LearningPathStep updated = learningService.updateStep(stepId, updates, userId);
+            LearningPathStep updated = learningService.updateStep(pathId, stepId, updates, userId);
             return ResponseEntity.ok(updated);
         } catch (Exception e) {
             log.error("Error updating learning path step: {}", e.getMessage());
@@ -180,7 +215,7 @@ public class LearningController {
             @PathVariable Long stepId,
             @RequestParam Long userId) {
         try {
-            learningService.deleteStep(stepId, userId);
+            learningService.deleteStep(pathId, stepId, userId);
             return ResponseEntity.ok().build();
         } catch (Exception e) {
             log.error("Error deleting learning path step: {}", e.getMessage());
@@ -204,20 +239,20 @@ public class LearningController {
     }
 
     /**
-     * Cập nhật progress
+     * Progress heartbeat (gộp và ghi batch, trả về 202)
      */
     @PutMapping("/progress/{progressId}")
-    public ResponseEntity<UserLearningProgress> updateProgress(@PathVariable Long progressId,
-            @RequestParam Integer completedSteps,
-            @RequestParam Double progressPercent,
+    public ResponseEntity<Map<String, Object>> updateProgress(@PathVariable Long progressId,
+            @RequestParam(required = false) Integer completedSteps,
+            @RequestParam(required = false) Double progressPercent,
+            @RequestParam(required = false) Integer timeSpentSeconds,
             @RequestParam Long userId) {
         try {
-            UserLearningProgress updated = learningService.updateProgress(progressId, completedSteps, progressPercent,
-                    userId);
-            return ResponseEntity.ok(updated);
+            learningService.updateProgress(progressId, completedSteps, progressPercent, timeSpentSeconds, userId);
+            return ResponseEntity.accepted().body(Map.of("progressId", progressId, "status", "queued"));
         } catch (Exception e) {
             log.error("Error updating learning progress: {}", e.getMessage());
-            return ResponseEntity.badRequest().build();
+            return ResponseEntity.badRequest().body(Map.of("error", "Progress update failed: " + e.getMessage()));
         }
     }
 
@@ -321,17 +356,65 @@ public class LearningController {
     @GetMapping("/leaderboard")
     public ResponseEntity<List<LearningService.UserLearningStats>> getLearningLeaderboard(
             @RequestParam(defaultValue = "10") int limit) {
-        List<LearningService.UserLearningStats> leaderboard = learningService.getLearningLeaderboard(limit);
+        List<LearningService.UserLearningStats> leaderboard = learningService.getLearningLeaderboard(
+                Math.min(limit, 100));
         return ResponseEntity.ok(leaderboard);
     }
 
     /**
-     * Export learning analytics
+     * Lấy vị trí của user trên leaderboard
+     */
+    @GetMapping("/leaderboard/users/{userId}")
+    public ResponseEntity<LearningService.UserLearningStats> getLeaderboardRank(@PathVariable Long userId) {
+        return learningService.getLeaderboardRank(userId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Lấy các user xếp hạng quanh user (radius phía trên và phía dưới)
+     */
+    @GetMapping("/leaderboard/users/{userId}/around")
+    public ResponseEntity<List<LearningService.UserLearningStats>> getLeaderboardAround(@PathVariable Long userId,
+            @RequestParam(defaultValue = "5") int radius) {
+        return ResponseEntity.ok(learningService.getLeaderboardAround(userId, Math.max(0, Math.min(radius, 50))));
+    }
+
+    /**
+     * Dựng lại leaderboard từ learning progress
+     */
+    @PostMapping("/leaderboard/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildLeaderboard() {
+        try {
+            int users = learningService.rebuildLeaderboard();
+            return ResponseEntity.ok(Map.of(
+                    "message", "Leaderboard rebuilt successfully",
+                    "users", users));
+        } catch (Exception e) {
+            log.error("Error rebuilding leaderboard: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Leaderboard rebuild failed: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Export learning analytics (stream JSON / NDJSON / CSV, tùy chọn gzip)
      */
     @GetMapping("/analytics/export")
-    public ResponseEntity<Map<String, Object>> exportLearningAnalytics(@RequestParam(defaultValue = "30") int days) {
-        Map<String, Object> analytics = learningService.exportLearningAnalytics(days);
-        return ResponseEntity.ok(analytics);
+    public ResponseEntity<StreamingResponseBody> exportLearningAnalytics(
+            @RequestParam(defaultValue = "30") int days,
+            @RequestParam(defaultValue = "json") String format,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        try {
+            ExportWriter.Format exportFormat = ExportWriter.Format.parse(format);
+            StreamingResponseBody body = out -> learningService.exportLearningAnalytics(days, out, exportFormat, gzip);
+            return ResponseEntity.ok()
+                    .headers(ExportWriter.headers("learning-analytics-" + days + "d", exportFormat, gzip))
+                    .body(body);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid learning analytics export request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /**
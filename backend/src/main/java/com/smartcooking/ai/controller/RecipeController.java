@@ -57,6 +57,18 @@ public class RecipeController {
         }
     }
 
+    /**
+     * Lấy AI-generated recipe theo prompt hash (prompt_hash trong response của /api/ai/generate-recipe)
+     * Chỉ trả recipe của userId hoặc recipe public
+     */
+    @GetMapping("/ai-generated/prompt/{promptHash}")
+    public ResponseEntity<Recipe> getAIGeneratedRecipeByPromptHash(@PathVariable String promptHash,
+            @RequestParam(required = false) Long userId) {
+        return recipeService.findAIGeneratedRecipe(promptHash, userId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     /**
      * Lấy recipe theo ID
      */
@@ -0,0 +1,65 @@
+package com.smartcooking.ai.controller;
+
+import com.smartcooking.ai.service.RetentionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Retention Controller - chạy và theo dõi các job dọn dữ liệu cũ
+ */
+@RestController
+@RequestMapping("/api/retention")
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = { "http://localhost:3000", "http://localhost:3001" })
+public class RetentionController {
+
+    private final RetentionService retentionService;
+
+    /**
+     * Danh sách job kèm checkpoint (tiến độ, số dòng đã xóa, lỗi gần nhất)
+     */
+    @GetMapping("/jobs")
+    public ResponseEntity<List<Map<String, Object>>> getJobs() {
+        return ResponseEntity.ok(retentionService.getJobs());
+    }
+
+    /**
+     * Chạy job nền; tiếp tục từ checkpoint nếu lần chạy trước chưa xong
+     */
+    @PostMapping("/jobs/{name}/run")
+    public ResponseEntity<Map<String, Object>> runJob(@PathVariable String name,
+            @RequestParam(required = false) Integer days) {
+        try {
+            retentionService.start(name, days);
+            return ResponseEntity.accepted().body(Map.of(
+                    "message", "Retention job started",
+                    "job", name));
+        } catch (Exception e) {
+            log.error("Error starting retention job {}: {}", name, e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Retention job failed to start: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Dừng job sau chunk hiện tại (lần chạy sau tiếp tục từ checkpoint)
+     */
+    @PostMapping("/jobs/{name}/cancel")
+    public ResponseEntity<Map<String, Object>> cancelJob(@PathVariable String name) {
+        try {
+            boolean cancelled = retentionService.cancel(name);
+            return ResponseEntity.ok(Map.of(
+                    "job", name,
+                    "cancelled", cancelled));
+        } catch (Exception e) {
+            log.error("Error cancelling retention job {}: {}", name, e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.smartcooking.ai.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Input / output payload (đã giải nén) của một AI interaction
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AIInteractionPayload {
+
+    private Long id;
+
+    private String inputData;
+
+    private String outputData;
+}
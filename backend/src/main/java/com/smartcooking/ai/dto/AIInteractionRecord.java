@@ -0,0 +1,45 @@
+package com.smartcooking.ai.dto;
+
+import com.smartcooking.ai.entity.AIInteraction;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * AI interaction đang chờ ghi xuống database
+ *
+ * Chỉ giữ user id (không load User entity) để background writer
+ * insert theo batch bằng JDBC.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AIInteractionRecord {
+
+    private Long userId;
+
+    private AIInteraction.InteractionType interactionType;
+
+    private String inputData;
+
+    private String outputData;
+
+    @Builder.Default
+    private String userLanguage = "vi";
+
+    @Builder.Default
+    private String responseLanguage = "vi";
+
+    private Integer processingTimeMs;
+
+    @Builder.Default
+    private Boolean success = true;
+
+    private String errorMessage;
+
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,39 @@
+package com.smartcooking.ai.dto;
+
+import com.smartcooking.ai.entity.AIInteraction;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Metadata của AI interaction cho list view (không có input/output payload)
+ *
+ * Payload lấy riêng qua AIInteractionPayload khi cần.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AIInteractionSummary {
+
+    private Long id;
+
+    private Long userId;
+
+    private AIInteraction.InteractionType interactionType;
+
+    private String userLanguage;
+
+    private String responseLanguage;
+
+    private Integer processingTimeMs;
+
+    private Boolean success;
+
+    private String errorMessage;
+
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,22 @@
+package com.smartcooking.ai.dto;
+
+import java.util.List;
+
+/**
+ * Event phát ra sau khi một nhóm AI interactions đã được ghi xuống database
+ *
+ * Listener chạy đồng bộ trên thread ghi (ai-interaction-writer), nên phải nhanh
+ * và không được ném exception ra ngoài.
+ */
+public class AIInteractionsWrittenEvent {
+
+    private final List<AIInteractionRecord> records;
+
+    public AIInteractionsWrittenEvent(List<AIInteractionRecord> records) {
+        this.records = List.copyOf(records);
+    }
+
+    public List<AIInteractionRecord> getRecords() {
+        return records;
+    }
+}
@@ -0,0 +1,107 @@
+package com.smartcooking.ai.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Raw response từ AI Service
+ *
+ * Giữ nguyên bytes của upstream để relay thẳng cho client (passthrough).
+ * JSON chỉ được parse khi thực sự cần đọc field (logging, fallback, cache...).
+ */
+public class AIServiceResponse {
+
+    private final int statusCode;
+    private final MediaType contentType;
+    private final byte[] body;
+    private final ObjectMapper objectMapper;
+
+    private JsonNode json;
+
+    public AIServiceResponse(int statusCode, MediaType contentType, byte[] body, ObjectMapper objectMapper) {
+        this.statusCode = statusCode;
+        this.contentType = contentType != null ? contentType : MediaType.APPLICATION_JSON;
+        this.body = body != null ? body : new byte[0];
+        this.objectMapper = objectMapper;
+    }
+
+    public static AIServiceResponse of(ResponseEntity<byte[]> response, ObjectMapper objectMapper) {
+        return new AIServiceResponse(response.getStatusCode().value(), response.getHeaders().getContentType(),
+                response.getBody(), objectMapper);
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public MediaType getContentType() {
+        return contentType;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public int getContentLength() {
+        return body.length;
+    }
+
+    public boolean isSuccessful() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    public String asText() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parse body thành JSON tree (lazy, chỉ parse một lần)
+     */
+    public JsonNode json() {
+        if (json == null) {
+            try {
+                json = body.length > 0 ? objectMapper.readTree(body) : MissingNode.getInstance();
+            } catch (IOException e) {
+                json = MissingNode.getInstance();
+            }
+        }
+        return json;
+    }
+
+    /**
+     * Đọc một field text theo path, ví dụ field("data", "response")
+     */
+    public String field(String... path) {
+        JsonNode node = json();
+        for (String name : path) {
+            node = node.path(name);
+        }
+        return node.isValueNode() ? node.asText() : null;
+    }
+
+    /**
+     * Deserialize body thành Map (legacy mode, khi passthrough bị tắt)
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> asMap() {
+        return objectMapper.convertValue(json(), Map.class);
+    }
+
+    /**
+     * Relay bytes nguyên vẹn với content-type và content-length của upstream
+     */
+    public ResponseEntity<byte[]> toResponseEntity() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(contentType);
+        headers.setContentLength(body.length);
+        return ResponseEntity.status(statusCode).headers(headers).body(body);
+    }
+}
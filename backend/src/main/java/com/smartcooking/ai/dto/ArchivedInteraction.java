@@ -0,0 +1,41 @@
+package com.smartcooking.ai.dto;
+
+import com.smartcooking.ai.entity.AIInteraction;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * AI interaction đọc từ columnar archive (hoặc từ ai_interactions khi scan lịch sử)
+ *
+ * inputData / outputData chỉ có khi scan yêu cầu payload.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivedInteraction {
+
+    private Long id;
+
+    private Long userId;
+
+    private AIInteraction.InteractionType interactionType;
+
+    private String userLanguage;
+
+    private Integer processingTimeMs;
+
+    private Boolean success;
+
+    private String errorMessage;
+
+    private String inputData;
+
+    private String outputData;
+
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,40 @@
+package com.smartcooking.ai.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Event phát ra khi user hoàn thành một learning path
+ *
+ * Publish trong transaction ghi progress; listener cập nhật dữ liệu dẫn xuất
+ * (leaderboard...) sau khi transaction commit.
+ */
+public class LearningPathCompletedEvent {
+
+    private final Long userId;
+    private final Long learningPathId;
+    private final Long progressId;
+    private final LocalDateTime completedAt;
+
+    public LearningPathCompletedEvent(Long userId, Long learningPathId, Long progressId, LocalDateTime completedAt) {
+        this.userId = userId;
+        this.learningPathId = learningPathId;
+        this.progressId = progressId;
+        this.completedAt = completedAt;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Long getLearningPathId() {
+        return learningPathId;
+    }
+
+    public Long getProgressId() {
+        return progressId;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+}
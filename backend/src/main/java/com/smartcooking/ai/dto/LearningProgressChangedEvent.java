@@ -0,0 +1,26 @@
+package com.smartcooking.ai.dto;
+
+/**
+ * Event phát ra khi learning progress của user thay đổi (enroll, cập nhật, xóa)
+ *
+ * Publish trong transaction ghi progress; listener (cache thống kê...) xử lý
+ * sau khi transaction commit.
+ */
+public class LearningProgressChangedEvent {
+
+    private final Long userId;
+    private final Long learningPathId;
+
+    public LearningProgressChangedEvent(Long userId, Long learningPathId) {
+        this.userId = userId;
+        this.learningPathId = learningPathId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Long getLearningPathId() {
+        return learningPathId;
+    }
+}
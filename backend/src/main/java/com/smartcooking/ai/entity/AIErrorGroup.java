@@ -0,0 +1,50 @@
+package com.smartcooking.ai.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Nhóm lỗi AI theo fingerprint (interaction type + errorMessage đã chuẩn hóa)
+ *
+ * Số lần xảy ra nằm ở AIErrorHourlyCount; bảng này giữ message mẫu và
+ * thời điểm gặp lần đầu / gần nhất.
+ */
+@Entity
+@Table(name = "ai_error_groups", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_ai_error_group_fingerprint", columnNames = { "fingerprint" })
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AIErrorGroup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "fingerprint", nullable = false, length = 16)
+    private String fingerprint;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "interaction_type", nullable = false, length = 32)
+    private AIInteraction.InteractionType interactionType;
+
+    @Column(name = "normalized_message", nullable = false)
+    private String normalizedMessage;
+
+    // errorMessage gốc của lần gặp gần nhất
+    @Column(name = "sample_message")
+    private String sampleMessage;
+
+    @Column(name = "first_seen", nullable = false)
+    private LocalDateTime firstSeen;
+
+    @Column(name = "last_seen", nullable = false)
+    private LocalDateTime lastSeen;
+}
@@ -0,0 +1,50 @@
+package com.smartcooking.ai.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Số lỗi theo giờ của một nhóm lỗi (mỗi dòng: một giờ × fingerprint)
+ *
+ * Được cộng dồn bởi AIErrorFingerprintService khi interactions lỗi được ghi;
+ * error analytics đọc bảng này thay vì scan các dòng lỗi của ai_interactions.
+ */
+@Entity
+@Table(name = "ai_error_hourly_counts", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_ai_error_bucket", columnNames = { "bucket_start", "fingerprint" })
+}, indexes = {
+        @Index(name = "idx_ai_error_bucket_type", columnList = "bucket_start, interaction_type")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AIErrorHourlyCount {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Đầu giờ (phút/giây = 0)
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    @Column(name = "fingerprint", nullable = false, length = 16)
+    private String fingerprint;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "interaction_type", nullable = false, length = 32)
+    private AIInteraction.InteractionType interactionType;
+
+    @Column(name = "error_count", nullable = false)
+    @Builder.Default
+    private Long errorCount = 0L;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -15,7 +15,9 @@ import java.time.LocalDateTime;
  * AI Interaction entity for tracking and analytics
  */
 @Entity
-@Table(name = "ai_interactions")
+@Table(name = "ai_interactions", indexes = {
+        @Index(name = "idx_ai_interactions_user_created", columnList = "user_id, created_at")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -27,8 +29,10 @@ public class AIInteraction {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Nullable: AI proxy calls không có user (anonymous) vẫn được ghi lại.
+    // Không có foreign key: bảng được partition theo tháng (AIInteractionPartitionManager)
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "user_id", nullable = false)
+    @JoinColumn(name = "user_id", foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     @JsonIgnore
     private User user;
 
@@ -36,10 +40,13 @@ public class AIInteraction {
     @Column(name = "interaction_type", nullable = false)
     private InteractionType interactionType;
 
-    @Column(columnDefinition = "TEXT")
+    // Payload nén (AIPayloadCodec); list view dùng AIInteractionSummary, không đọc hai cột này
+    @Convert(converter = CompressedPayloadConverter.class)
+    @Column(name = "input_data", columnDefinition = "MEDIUMBLOB")
     private String inputData;
 
-    @Column(columnDefinition = "TEXT")
+    @Convert(converter = CompressedPayloadConverter.class)
+    @Column(name = "output_data", columnDefinition = "MEDIUMBLOB")
     private String outputData;
 
     @Column(name = "user_language", length = 10)
@@ -71,6 +78,8 @@ public class AIInteraction {
         VOICE_STT,
         VOICE_TTS,
         NUTRITION_ANALYSIS,
-        MEAL_PLANNING
+        MEAL_PLANNING,
+        INGREDIENT_SUGGESTION,
+        LEARNING_PATH
     }
 }
@@ -0,0 +1,62 @@
+package com.smartcooking.ai.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Rollup theo giờ của ai_interactions (mỗi dòng: một giờ × type × ngôn ngữ)
+ *
+ * Được cộng dồn bởi AIInteractionRollupService khi interactions được ghi;
+ * các endpoint statistics đọc bảng này thay vì scan ai_interactions.
+ */
+@Entity
+@Table(name = "ai_interaction_hourly_rollups", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_ai_rollup_bucket", columnNames = { "bucket_start", "interaction_type",
+                "language" })
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AIInteractionHourlyRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Đầu giờ (phút/giây = 0)
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "interaction_type", nullable = false, length = 32)
+    private AIInteraction.InteractionType interactionType;
+
+    @Column(name = "language", nullable = false, length = 10)
+    private String language;
+
+    @Column(name = "interaction_count", nullable = false)
+    @Builder.Default
+    private Long interactionCount = 0L;
+
+    @Column(name = "success_count", nullable = false)
+    @Builder.Default
+    private Long successCount = 0L;
+
+    @Column(name = "latency_sum_ms", nullable = false)
+    @Builder.Default
+    private Long latencySumMs = 0L;
+
+    // Số interactions có processing_time_ms (mẫu số của latency trung bình)
+    @Column(name = "latency_count", nullable = false)
+    @Builder.Default
+    private Long latencyCount = 0L;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,64 @@
+package com.smartcooking.ai.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Snapshot latency histogram của AI calls trong một khoảng thời gian
+ *
+ * Mỗi dòng là một HdrHistogram (nén) cho một series: tất cả calls, một
+ * InteractionType, một ngôn ngữ hoặc một replica. Percentile của khoảng
+ * dài hơn được tính bằng cách cộng các histogram lại.
+ */
+@Entity
+@Table(name = "ai_latency_snapshots", indexes = {
+        @Index(name = "idx_ai_latency_series_window", columnList = "dimension, dimension_value, window_start")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AILatencySnapshot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "window_start", nullable = false)
+    private LocalDateTime windowStart;
+
+    @Column(name = "window_end", nullable = false)
+    private LocalDateTime windowEnd;
+
+    // all / type / language / replica
+    @Column(name = "dimension", nullable = false, length = 20)
+    private String dimension;
+
+    @Column(name = "dimension_value", nullable = false, length = 255)
+    private String dimensionValue;
+
+    @Column(name = "sample_count", nullable = false)
+    private Long sampleCount;
+
+    @Column(name = "p50_ms")
+    private Long p50Ms;
+
+    @Column(name = "p95_ms")
+    private Long p95Ms;
+
+    @Column(name = "p99_ms")
+    private Long p99Ms;
+
+    @Column(name = "max_ms")
+    private Long maxMs;
+
+    // HdrHistogram encodeIntoCompressedByteBuffer
+    @Lob
+    @Column(name = "histogram", nullable = false, columnDefinition = "MEDIUMBLOB")
+    private byte[] histogram;
+}
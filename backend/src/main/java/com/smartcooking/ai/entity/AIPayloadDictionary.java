@@ -0,0 +1,42 @@
+package com.smartcooking.ai.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Preset dictionary Deflate cho input/output payload của ai_interactions
+ *
+ * Payload nén ghi id dictionary trong header nên dictionary cũ được giữ lại
+ * để đọc các dòng đã nén bằng nó; dictionary mới nhất được dùng để ghi.
+ */
+@Entity
+@Table(name = "ai_payload_dictionaries")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AIPayloadDictionary {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Lob
+    @Column(name = "content", nullable = false, columnDefinition = "BLOB")
+    private byte[] content;
+
+    @Column(name = "sample_count", nullable = false)
+    private Integer sampleCount;
+
+    // Tỷ lệ stored / raw trên tập payload kiểm tra lúc train
+    @Column(name = "compression_ratio")
+    private Double compressionRatio;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,28 @@
+package com.smartcooking.ai.entity;
+
+import com.smartcooking.ai.service.AIPayloadCodec;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Nén / giải nén payload AIInteraction qua AIPayloadCodec
+ *
+ * Hibernate lấy converter từ Spring (SpringBeanContainer) nên codec được inject.
+ */
+@Converter
+@RequiredArgsConstructor
+public class CompressedPayloadConverter implements AttributeConverter<String, byte[]> {
+
+    private final AIPayloadCodec payloadCodec;
+
+    @Override
+    public byte[] convertToDatabaseColumn(String attribute) {
+        return payloadCodec.encode(attribute);
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] dbData) {
+        return payloadCodec.decode(dbData);
+    }
+}
@@ -1,6 +1,7 @@
 package com.smartcooking.ai.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -30,7 +31,10 @@ import java.util.Set;
  * - AI generation metadata
  */
 @Entity
-@Table(name = "recipes")
+@Table(name = "recipes", indexes = {
+        @Index(name = "idx_recipes_ai_prompt_hash", columnList = "ai_prompt_hash"),
+        @Index(name = "idx_recipes_ai_prompt_key", columnList = "ai_prompt_key")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -145,6 +149,16 @@ public class Recipe {
     @Column(name = "ai_confidence", precision = 3, scale = 2)
     private BigDecimal aiConfidence;
 
+    // SHA-256 của prompt đã chuẩn hóa + model, dùng để dedupe AI-generated recipes
+    @Column(name = "ai_prompt_hash", length = 64)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private String aiPromptHash;
+
+    // SHA-256 của prompt đã chuẩn hóa (không kèm model), dùng để tìm recipe đã lưu trước khi biết model
+    @Column(name = "ai_prompt_key", length = 64)
+    @JsonIgnore
+    private String aiPromptKey;
+
     // Audit fields
     @CreatedDate
     @Column(name = "created_at", nullable = false, updatable = false)
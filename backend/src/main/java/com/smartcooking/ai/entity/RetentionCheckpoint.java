@@ -0,0 +1,73 @@
+package com.smartcooking.ai.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Checkpoint của một retention job (mỗi job một dòng)
+ *
+ * Được cập nhật trong cùng transaction với mỗi chunk bị xóa, nên một lần
+ * chạy bị ngắt (restart, lỗi) tiếp tục từ lastId với đúng cutoff cũ.
+ */
+@Entity
+@Table(name = "retention_checkpoints", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_retention_checkpoint_job", columnNames = { "job_name" })
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RetentionCheckpoint {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_name", nullable = false, length = 64)
+    private String jobName;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private Status status;
+
+    // Dòng cũ hơn cutoff bị xóa; cố định trong suốt một lần chạy
+    @Column(name = "cutoff", nullable = false)
+    private LocalDateTime cutoff;
+
+    // Primary key lớn nhất đã xử lý; chunk tiếp theo bắt đầu sau id này
+    @Column(name = "last_id", nullable = false)
+    @Builder.Default
+    private Long lastId = 0L;
+
+    @Column(name = "deleted_rows", nullable = false)
+    @Builder.Default
+    private Long deletedRows = 0L;
+
+    @Column(name = "chunks", nullable = false)
+    @Builder.Default
+    private Long chunks = 0L;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    public enum Status {
+        RUNNING,
+        PAUSED,
+        FAILED,
+        COMPLETED
+    }
+}
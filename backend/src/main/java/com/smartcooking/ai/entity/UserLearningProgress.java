@@ -71,6 +71,11 @@ public class UserLearningProgress {
     @Column(name = "last_accessed_at")
     private LocalDateTime lastAccessedAt;
 
+    // Optimistic lock, dùng chung với batch UPDATE của LearningProgressIngestService
+    @Version
+    @Column(name = "version", columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private Long version;
+
     // Helper methods
     public void updateProgress() {
         if (totalSteps > 0) {
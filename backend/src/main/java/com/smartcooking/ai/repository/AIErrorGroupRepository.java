@@ -0,0 +1,17 @@
+package com.smartcooking.ai.repository;
+
+import com.smartcooking.ai.entity.AIErrorGroup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository cho các nhóm lỗi AI (fingerprint)
+ */
+@Repository
+public interface AIErrorGroupRepository extends JpaRepository<AIErrorGroup, Long> {
+
+    List<AIErrorGroup> findByFingerprintIn(Collection<String> fingerprints);
+}
@@ -0,0 +1,58 @@
+package com.smartcooking.ai.repository;
+
+import com.smartcooking.ai.entity.AIErrorHourlyCount;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository cho số lỗi theo giờ của các nhóm lỗi AI
+ */
+@Repository
+public interface AIErrorHourlyCountRepository extends JpaRepository<AIErrorHourlyCount, Long> {
+
+    /**
+     * Top nhóm lỗi: fingerprint, errorCount, lastBucket
+     */
+    @Query("""
+            SELECT c.fingerprint, SUM(c.errorCount), MAX(c.bucketStart)
+            FROM AIErrorHourlyCount c
+            WHERE c.bucketStart >= :since
+            GROUP BY c.fingerprint
+            ORDER BY SUM(c.errorCount) DESC
+            """)
+    List<Object[]> sumByFingerprint(@Param("since") LocalDateTime since, Pageable pageable);
+
+    /**
+     * Số lỗi theo type: type, errorCount
+     */
+    @Query("""
+            SELECT c.interactionType, SUM(c.errorCount)
+            FROM AIErrorHourlyCount c
+            WHERE c.bucketStart >= :since
+            GROUP BY c.interactionType
+            ORDER BY SUM(c.errorCount) DESC
+            """)
+    List<Object[]> sumByType(@Param("since") LocalDateTime since);
+
+    /**
+     * Số lỗi theo giờ của các fingerprint: fingerprint, bucketStart, errorCount
+     */
+    @Query("""
+            SELECT c.fingerprint, c.bucketStart, c.errorCount
+            FROM AIErrorHourlyCount c
+            WHERE c.bucketStart >= :since
+            AND c.fingerprint IN :fingerprints
+            ORDER BY c.bucketStart
+            """)
+    List<Object[]> findBuckets(@Param("since") LocalDateTime since,
+            @Param("fingerprints") List<String> fingerprints);
+
+    @Query("SELECT COALESCE(SUM(c.errorCount), 0) FROM AIErrorHourlyCount c WHERE c.bucketStart >= :since")
+    long sumSince(@Param("since") LocalDateTime since);
+}
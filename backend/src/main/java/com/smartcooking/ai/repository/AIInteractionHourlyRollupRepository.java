@@ -0,0 +1,56 @@
+package com.smartcooking.ai.repository;
+
+import com.smartcooking.ai.entity.AIInteractionHourlyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository cho hourly rollups của AI interactions
+ */
+@Repository
+public interface AIInteractionHourlyRollupRepository extends JpaRepository<AIInteractionHourlyRollup, Long> {
+
+    /**
+     * Các bucket từ thời điểm since (statistics theo ngày)
+     */
+    List<AIInteractionHourlyRollup> findByBucketStartGreaterThanEqualOrderByBucketStart(LocalDateTime since);
+
+    /**
+     * Tổng theo type: type, count, successCount, latencySum, latencyCount
+     */
+    @Query("""
+            SELECT r.interactionType, SUM(r.interactionCount), SUM(r.successCount),
+                   SUM(r.latencySumMs), SUM(r.latencyCount)
+            FROM AIInteractionHourlyRollup r
+            WHERE r.bucketStart >= :since
+            GROUP BY r.interactionType
+            """)
+    List<Object[]> sumByType(@Param("since") LocalDateTime since);
+
+    /**
+     * Tổng theo ngôn ngữ: language, count
+     */
+    @Query("""
+            SELECT r.language, SUM(r.interactionCount)
+            FROM AIInteractionHourlyRollup r
+            WHERE r.bucketStart >= :since
+            GROUP BY r.language
+            ORDER BY SUM(r.interactionCount) DESC
+            """)
+    List<Object[]> sumByLanguage(@Param("since") LocalDateTime since);
+
+    /**
+     * Tổng toàn bộ: count, successCount, latencySum, latencyCount
+     */
+    @Query("""
+            SELECT SUM(r.interactionCount), SUM(r.successCount), SUM(r.latencySumMs), SUM(r.latencyCount)
+            FROM AIInteractionHourlyRollup r
+            WHERE r.bucketStart >= :since
+            """)
+    List<Object[]> sumTotals(@Param("since") LocalDateTime since);
+}
@@ -1,16 +1,20 @@
 package com.smartcooking.ai.repository;
 
+import com.smartcooking.ai.dto.AIInteractionPayload;
+import com.smartcooking.ai.dto.AIInteractionSummary;
 import com.smartcooking.ai.entity.AIInteraction;
 import com.smartcooking.ai.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * AI Interaction Repository cho analytics và tracking
@@ -18,15 +22,25 @@ import java.util.List;
 @Repository
 public interface AIInteractionRepository extends JpaRepository<AIInteraction, Long> {
 
+    /**
+     * Projection metadata cho list view: không đọc input_data / output_data
+     */
+    String SUMMARY_SELECT = """
+            SELECT new com.smartcooking.ai.dto.AIInteractionSummary(i.id, i.user.id, i.interactionType,
+                i.userLanguage, i.responseLanguage, i.processingTimeMs, i.success, i.errorMessage, i.createdAt)
+            FROM AIInteraction i
+            """;
+
     /**
      * Tìm interactions theo user
      */
     List<AIInteraction> findByUserOrderByCreatedAtDesc(User user);
 
     /**
-     * Tìm interactions theo user ID
+     * Tìm interactions theo user ID (metadata)
      */
-    List<AIInteraction> findByUserIdOrderByCreatedAtDesc(Long userId);
+    @Query(SUMMARY_SELECT + "WHERE i.user.id = :userId ORDER BY i.createdAt DESC")
+    List<AIInteractionSummary> findSummariesByUserId(@Param("userId") Long userId);
 
     /**
      * Tìm interactions theo type
@@ -49,19 +63,47 @@ public interface AIInteractionRepository extends JpaRepository<AIInteraction, Lo
     List<AIInteraction> findByUserLanguage(String userLanguage);
 
     /**
-     * Thêm các method còn thiếu cho AIInteractionService
+     * Metadata theo type / khoảng thời gian / ngôn ngữ cho list endpoints
      */
-    List<AIInteraction> findByInteractionTypeOrderByCreatedAtDesc(AIInteraction.InteractionType interactionType);
+    @Query(SUMMARY_SELECT + "WHERE i.interactionType = :type ORDER BY i.createdAt DESC")
+    List<AIInteractionSummary> findSummariesByInteractionType(@Param("type") AIInteraction.InteractionType type);
 
-    List<AIInteraction> findByCreatedAtBetweenOrderByCreatedAtDesc(LocalDateTime start, LocalDateTime end);
+    @Query(SUMMARY_SELECT + "WHERE i.createdAt >= :start AND i.createdAt < :end ORDER BY i.createdAt DESC")
+    List<AIInteractionSummary> findSummariesByCreatedAtRange(@Param("start") LocalDateTime start,
+            @Param("end") LocalDateTime end);
 
-    Page<AIInteraction> findAllByOrderByCreatedAtDesc(Pageable pageable);
+    @Query(value = SUMMARY_SELECT + "ORDER BY i.createdAt DESC",
+            countQuery = "SELECT COUNT(i) FROM AIInteraction i")
+    Page<AIInteractionSummary> findRecentSummaries(Pageable pageable);
 
-    List<AIInteraction> findByUserLanguageOrderByCreatedAtDesc(String userLanguage);
+    @Query(SUMMARY_SELECT + "WHERE i.userLanguage = :language ORDER BY i.createdAt DESC")
+    List<AIInteractionSummary> findSummariesByUserLanguage(@Param("language") String language);
 
-    List<AIInteraction> findByProcessingTimeMsGreaterThanOrderByProcessingTimeMsDesc(Long thresholdMs);
+    @Query(SUMMARY_SELECT + "WHERE i.processingTimeMs > :thresholdMs ORDER BY i.processingTimeMs DESC")
+    List<AIInteractionSummary> findSlowSummaries(@Param("thresholdMs") Integer thresholdMs, Pageable pageable);
+
+    /**
+     * Payload (giải nén qua converter) của một interaction
+     */
+    @Query("""
+            SELECT new com.smartcooking.ai.dto.AIInteractionPayload(i.id, i.inputData, i.outputData)
+            FROM AIInteraction i
+            WHERE i.id = :id
+            """)
+    Optional<AIInteractionPayload> findPayloadById(@Param("id") Long id);
+
+    /**
+     * Bulk delete bằng một câu DELETE (không load entity)
+     */
+    @Modifying
+    @Query("DELETE FROM AIInteraction i WHERE i.createdAt < :cutoffDate")
+    int deleteByCreatedAtBefore(@Param("cutoffDate") LocalDateTime cutoffDate);
 
-    int deleteByCreatedAtBefore(LocalDateTime cutoffDate);
+    /**
+     * Interactions thành công gần đây theo type (warm-up chat answer cache)
+     */
+    List<AIInteraction> findByInteractionTypeAndSuccessTrueAndCreatedAtAfterOrderByCreatedAtDesc(
+            AIInteraction.InteractionType interactionType, LocalDateTime after, Pageable pageable);
 
     /**
      * Tìm interactions trong khoảng thời gian
@@ -110,20 +152,6 @@ public interface AIInteractionRepository extends JpaRepository<AIInteraction, Lo
      */
     long countByUserAndCreatedAtBetween(User user, LocalDateTime startDate, LocalDateTime endDate);
 
-    /**
-     * Tìm top users theo số interactions
-     */
-    @Query("""
-            SELECT i.user, COUNT(i) as interactionCount
-            FROM AIInteraction i
-            WHERE i.createdAt BETWEEN :startDate AND :endDate
-            GROUP BY i.user
-            ORDER BY COUNT(i) DESC
-            """)
-    Page<Object[]> findTopUsersByInteractions(@Param("startDate") LocalDateTime startDate,
-            @Param("endDate") LocalDateTime endDate,
-            Pageable pageable);
-
     /**
      * Thống kê tỷ lệ thành công theo type
      */
@@ -169,11 +197,14 @@ public interface AIInteractionRepository extends JpaRepository<AIInteraction, Lo
     /**
      * Tìm errors gần đây
      */
-    @Query("""
-            SELECT i FROM AIInteraction i
+    @Query(value = SUMMARY_SELECT + """
             WHERE i.success = false
             AND i.errorMessage IS NOT NULL
             ORDER BY i.createdAt DESC
+            """, countQuery = """
+            SELECT COUNT(i) FROM AIInteraction i
+            WHERE i.success = false
+            AND i.errorMessage IS NOT NULL
             """)
-    Page<AIInteraction> findRecentErrors(Pageable pageable);
+    Page<AIInteractionSummary> findRecentErrors(Pageable pageable);
 }
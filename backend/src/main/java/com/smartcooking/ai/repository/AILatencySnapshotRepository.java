@@ -0,0 +1,31 @@
+package com.smartcooking.ai.repository;
+
+import com.smartcooking.ai.entity.AILatencySnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository cho latency histogram snapshots
+ */
+@Repository
+public interface AILatencySnapshotRepository extends JpaRepository<AILatencySnapshot, Long> {
+
+    /**
+     * Snapshots của một series từ thời điểm since
+     */
+    List<AILatencySnapshot> findByDimensionAndDimensionValueAndWindowStartGreaterThanEqualOrderByWindowStart(
+            String dimension, String dimensionValue, LocalDateTime since);
+
+    /**
+     * Xóa snapshots cũ (retention)
+     */
+    @Modifying
+    @Query("DELETE FROM AILatencySnapshot s WHERE s.windowStart < :cutoff")
+    int deleteOlderThan(@Param("cutoff") LocalDateTime cutoff);
+}
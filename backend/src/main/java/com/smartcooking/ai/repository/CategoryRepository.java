@@ -3,11 +3,13 @@ package com.smartcooking.ai.repository;
 import com.smartcooking.ai.entity.Category;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Category Repository
@@ -73,4 +75,16 @@ public interface CategoryRepository extends JpaRepository<Category, Long> {
          */
         org.springframework.data.domain.Page<Category> findByActiveTrueOrderByDisplayOrder(
                         org.springframework.data.domain.Pageable pageable);
+
+        /**
+         * Stream toàn bộ categories cho export (MySQL trả từng dòng với fetch size MIN_VALUE)
+         */
+        @QueryHints({
+                        @jakarta.persistence.QueryHint(name = org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE,
+                                        value = "" + Integer.MIN_VALUE),
+                        @jakarta.persistence.QueryHint(name = org.hibernate.jpa.HibernateHints.HINT_READ_ONLY,
+                                        value = "true")
+        })
+        @Query("SELECT c FROM Category c ORDER BY c.id")
+        Stream<Category> streamAllForExport();
 }
@@ -10,6 +10,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Learning Path Repository
@@ -98,5 +99,16 @@ public interface LearningPathRepository extends JpaRepository<LearningPath, Long
     Page<LearningPath> findByTitleEnContainingIgnoreCaseOrTitleViContainingIgnoreCaseAndIsActiveTrue(
             String titleEn, String titleVi, Pageable pageable
     );
+
+    /**
+     * Learning path kèm steps (theo orderNumber) trong một query
+     */
+    @Query("""
+            SELECT lp FROM LearningPath lp
+            LEFT JOIN FETCH lp.steps s
+            WHERE lp.id = :id
+            ORDER BY s.orderNumber
+            """)
+    Optional<LearningPath> findWithStepsById(@Param("id") Long id);
     
 }
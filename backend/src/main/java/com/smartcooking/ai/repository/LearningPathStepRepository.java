@@ -0,0 +1,47 @@
+package com.smartcooking.ai.repository;
+
+import com.smartcooking.ai.entity.LearningPathStep;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Learning Path Step Repository
+ */
+@Repository
+public interface LearningPathStepRepository extends JpaRepository<LearningPathStep, Long> {
+
+    /**
+     * Steps của learning path theo thứ tự
+     */
+    List<LearningPathStep> findByLearningPathIdOrderByOrderNumberAsc(Long learningPathId);
+
+    Optional<LearningPathStep> findByIdAndLearningPathId(Long id, Long learningPathId);
+
+    boolean existsByIdAndLearningPathId(Long id, Long learningPathId);
+
+    long countByLearningPathId(Long learningPathId);
+
+    /**
+     * Id các step hiện có của learning path (bulk upsert)
+     */
+    @Query("SELECT s.id FROM LearningPathStep s WHERE s.learningPath.id = :pathId")
+    List<Long> findIdsByLearningPathId(@Param("pathId") Long pathId);
+
+    @Query("SELECT MAX(s.orderNumber) FROM LearningPathStep s WHERE s.learningPath.id = :pathId")
+    Integer findMaxOrderNumber(@Param("pathId") Long pathId);
+
+    /**
+     * id, orderNumber của các step theo thứ tự (reorder không cần load entity)
+     */
+    @Query("""
+            SELECT s.id, s.orderNumber FROM LearningPathStep s
+            WHERE s.learningPath.id = :pathId
+            ORDER BY s.orderNumber, s.id
+            """)
+    List<Object[]> findOrderByLearningPathId(@Param("pathId") Long pathId);
+}
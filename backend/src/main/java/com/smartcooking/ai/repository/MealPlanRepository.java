@@ -2,7 +2,9 @@ package com.smartcooking.ai.repository;
 
 import com.smartcooking.ai.entity.MealPlan;
 import com.smartcooking.ai.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -112,4 +114,39 @@ public interface MealPlanRepository extends JpaRepository<MealPlan, Long> {
                         ORDER BY mp.date DESC
                         """)
         List<MealPlan> findPastMealPlans(@Param("user") User user);
+
+        /**
+         * Retention: id các meal plan có ngày trước cutoff, tăng dần sau afterId
+         */
+        @Query("""
+                        SELECT mp.id FROM MealPlan mp
+                        WHERE mp.id > :afterId
+                        AND mp.date < :cutoff
+                        ORDER BY mp.id
+                        """)
+        List<Long> findIdsDatedBefore(@Param("afterId") long afterId, @Param("cutoff") LocalDate cutoff,
+                        Pageable pageable);
+
+        /**
+         * Retention: xóa snacks (bảng nối) của các meal plan trong khoảng id
+         */
+        @Modifying
+        @Query(value = """
+                        DELETE FROM meal_plan_snacks
+                        WHERE meal_plan_id IN (
+                            SELECT id FROM meal_plans
+                            WHERE id BETWEEN :fromId AND :toId
+                            AND date < :cutoff)
+                        """, nativeQuery = true)
+        int deleteSnacksInRangeDatedBefore(@Param("fromId") long fromId, @Param("toId") long toId,
+                        @Param("cutoff") LocalDate cutoff);
+
+        @Modifying
+        @Query("""
+                        DELETE FROM MealPlan mp
+                        WHERE mp.id BETWEEN :fromId AND :toId
+                        AND mp.date < :cutoff
+                        """)
+        int deleteInRangeDatedBefore(@Param("fromId") long fromId, @Param("toId") long toId,
+                        @Param("cutoff") LocalDate cutoff);
 }
@@ -10,6 +10,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Recipe Repository với các query methods tùy chỉnh
@@ -134,6 +135,34 @@ public interface RecipeRepository extends JpaRepository<Recipe, Long> {
          */
         List<Recipe> findBySource(Recipe.Source source);
 
+        /**
+         * Tìm AI-generated recipe của user theo prompt hash
+         */
+        Optional<Recipe> findFirstByAiPromptHashAndAuthorIdOrderByIdDesc(String aiPromptHash, Long authorId);
+
+        /**
+         * AI-generated recipes user được xem theo prompt hash (của user hoặc public),
+         * recipe của user trước
+         */
+        @Query("""
+                        SELECT r FROM Recipe r
+                        WHERE r.aiPromptHash = :promptHash AND (r.author.id = :userId OR r.isPublic = true)
+                        ORDER BY CASE WHEN r.author.id = :userId THEN 0 ELSE 1 END, r.id DESC
+                        """)
+        List<Recipe> findVisibleByAiPromptHash(@Param("promptHash") String promptHash,
+                        @Param("userId") Long userId, Pageable pageable);
+
+        /**
+         * Như findVisibleByAiPromptHash nhưng theo prompt key (không phụ thuộc model)
+         */
+        @Query("""
+                        SELECT r FROM Recipe r
+                        WHERE r.aiPromptKey = :promptKey AND (r.author.id = :userId OR r.isPublic = true)
+                        ORDER BY CASE WHEN r.author.id = :userId THEN 0 ELSE 1 END, r.id DESC
+                        """)
+        List<Recipe> findVisibleByAiPromptKey(@Param("promptKey") String promptKey,
+                        @Param("userId") Long userId, Pageable pageable);
+
         /**
          * Tìm recipes theo calories (dưới x calories)
          */
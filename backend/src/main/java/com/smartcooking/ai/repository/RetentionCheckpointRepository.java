@@ -0,0 +1,16 @@
+package com.smartcooking.ai.repository;
+
+import com.smartcooking.ai.entity.RetentionCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * Repository cho checkpoint của các retention job
+ */
+@Repository
+public interface RetentionCheckpointRepository extends JpaRepository<RetentionCheckpoint, Long> {
+
+    Optional<RetentionCheckpoint> findByJobName(String jobName);
+}
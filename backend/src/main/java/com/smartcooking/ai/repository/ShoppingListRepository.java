@@ -2,11 +2,14 @@ package com.smartcooking.ai.repository;
 
 import com.smartcooking.ai.entity.ShoppingList;
 import com.smartcooking.ai.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -58,4 +61,39 @@ public interface ShoppingListRepository extends JpaRepository<ShoppingList, Long
             AND sli.isPurchased = true
             """)
     long countPurchasedItemsByUser(@Param("user") User user);
+
+    /**
+     * Retention: id các shopping list tạo trước cutoff, tăng dần sau afterId
+     */
+    @Query("""
+            SELECT sl.id FROM ShoppingList sl
+            WHERE sl.id > :afterId
+            AND sl.createdAt < :cutoff
+            ORDER BY sl.id
+            """)
+    List<Long> findIdsCreatedBefore(@Param("afterId") long afterId, @Param("cutoff") LocalDateTime cutoff,
+            Pageable pageable);
+
+    /**
+     * Retention: xóa items của các list trong khoảng id (bulk, không load entity)
+     */
+    @Modifying
+    @Query("""
+            DELETE FROM ShoppingListItem sli
+            WHERE sli.shoppingList.id IN (
+                SELECT sl.id FROM ShoppingList sl
+                WHERE sl.id BETWEEN :fromId AND :toId
+                AND sl.createdAt < :cutoff)
+            """)
+    int deleteItemsInRangeCreatedBefore(@Param("fromId") long fromId, @Param("toId") long toId,
+            @Param("cutoff") LocalDateTime cutoff);
+
+    @Modifying
+    @Query("""
+            DELETE FROM ShoppingList sl
+            WHERE sl.id BETWEEN :fromId AND :toId
+            AND sl.createdAt < :cutoff
+            """)
+    int deleteInRangeCreatedBefore(@Param("fromId") long fromId, @Param("toId") long toId,
+            @Param("cutoff") LocalDateTime cutoff);
 }
@@ -6,13 +6,17 @@ import com.smartcooking.ai.entity.LearningPath;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * User Learning Progress Repository
@@ -147,4 +151,92 @@ public interface UserLearningProgressRepository extends JpaRepository<UserLearni
 
     // Thêm method còn thiếu
     long countByIsCompleted(boolean isCompleted);
-}
\ No newline at end of file
+
+    /**
+     * Stream progress có hoạt động từ since cho export (projection scalar, không load entity).
+     * Trả về [id, userId, learningPathId, completedSteps, totalSteps, progressPercentage,
+     * totalTimeSpentMinutes, isCompleted, startedAt, completionDate, lastAccessedAt]
+     */
+    @QueryHints({
+            @jakarta.persistence.QueryHint(name = org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE,
+                    value = "" + Integer.MIN_VALUE),
+            @jakarta.persistence.QueryHint(name = org.hibernate.jpa.HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            SELECT ulp.id, ulp.user.id, ulp.learningPath.id, ulp.completedSteps, ulp.totalSteps,
+                   ulp.progressPercentage, ulp.totalTimeSpentMinutes, ulp.isCompleted,
+                   ulp.startedAt, ulp.completionDate, ulp.lastAccessedAt
+            FROM UserLearningProgress ulp
+            WHERE ulp.startedAt >= :since OR ulp.lastAccessedAt >= :since
+            ORDER BY ulp.id
+            """)
+    Stream<Object[]> streamActivitySince(@Param("since") LocalDateTime since);
+
+    /**
+     * Số learning path đã hoàn thành theo user: userId, count (rebuild leaderboard)
+     */
+    @Query("""
+            SELECT p.user.id, COUNT(p)
+            FROM UserLearningProgress p
+            WHERE p.isCompleted = true
+            GROUP BY p.user.id
+            """)
+    List<Object[]> countCompletedPathsByUser();
+
+    /**
+     * Số learning path user đã hoàn thành (điểm leaderboard của một user)
+     */
+    long countByUserIdAndIsCompletedTrue(Long userId);
+
+    /**
+     * Thống kê learning của một user trong một query: fullName, số path đã
+     * đăng ký, số path hoàn thành, tổng giờ ước tính. Rỗng nếu user không tồn tại
+     */
+    @Query("""
+            SELECT u.fullName, COUNT(p),
+                   COALESCE(SUM(CASE WHEN p.isCompleted = true THEN 1 ELSE 0 END), 0),
+                   COALESCE(SUM(COALESCE(lp.estimatedHours, 0)), 0)
+            FROM User u
+            LEFT JOIN UserLearningProgress p ON p.user = u
+            LEFT JOIN p.learningPath lp
+            WHERE u.id = :userId
+            GROUP BY u.id, u.fullName
+            """)
+    List<Object[]> aggregateStatisticsByUserId(@Param("userId") Long userId);
+
+    /**
+     * Chủ của progress: userId, learningPathId (kiểm tra quyền khi nhận heartbeat)
+     */
+    @Query("SELECT p.user.id, p.learningPath.id FROM UserLearningProgress p WHERE p.id = :id")
+    List<Object[]> findOwnerById(@Param("id") Long id);
+
+    /**
+     * Bỏ tham chiếu current step trước khi xóa steps
+     */
+    @Modifying
+    @Query("UPDATE UserLearningProgress p SET p.currentStep = null WHERE p.currentStep.id IN :stepIds")
+    int clearCurrentStep(@Param("stepIds") Collection<Long> stepIds);
+
+    /**
+     * Retention: id các progress chưa hoàn thành và không truy cập từ trước cutoff
+     */
+    @Query("""
+            SELECT p.id FROM UserLearningProgress p
+            WHERE p.id > :afterId
+            AND p.isCompleted = false
+            AND COALESCE(p.lastAccessedAt, p.startedAt) < :cutoff
+            ORDER BY p.id
+            """)
+    List<Long> findAbandonedIds(@Param("afterId") long afterId, @Param("cutoff") LocalDateTime cutoff,
+            Pageable pageable);
+
+    @Modifying
+    @Query("""
+            DELETE FROM UserLearningProgress p
+            WHERE p.id BETWEEN :fromId AND :toId
+            AND p.isCompleted = false
+            AND COALESCE(p.lastAccessedAt, p.startedAt) < :cutoff
+            """)
+    int deleteAbandonedInRange(@Param("fromId") long fromId, @Param("toId") long toId,
+            @Param("cutoff") LocalDateTime cutoff);
+}
@@ -0,0 +1,207 @@
+package com.smartcooking.ai.service;
+
+import com.fasterxml.jackson.databind.util.RawValue;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * AI Batch Service - chạy nhiều AI sub-request song song
+ *
+ * Mỗi batch được chia thành tối đa max_concurrency "lane"; mỗi lane lần lượt
+ * lấy item kế tiếp và gọi operation tương ứng của AIController (kèm fallback).
+ * Lane không dùng servlet request (bị recycle khi batch hết deadline mà item
+ * còn chạy) mà chạy với AIRequestContext chụp trên request thread.
+ * Hết deadline thì các item chưa xong được trả về với lỗi timeout. Pool không
+ * nhận thêm lane nào thì batch bị từ chối (429) thay vì chạy trên request thread.
+ */
+@Service
+@Slf4j
+public class AIBatchService {
+
+    @Value("${ai.batch.max-items:50}")
+    private int maxItems;
+
+    @Value("${ai.batch.max-concurrency:4}")
+    private int maxConcurrency;
+
+    @Value("${ai.batch.timeout-ms:30000}")
+    private long maxTimeoutMs;
+
+    @Value("${ai.batch.workers:16}")
+    private int workers;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(workers * 4), new CustomizableThreadFactory("ai-batch-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Chạy batch sub-requests
+     *
+     * @param items       danh sách {id, type, payload}
+     * @param concurrency concurrency cap client yêu cầu (null = mặc định)
+     * @param timeoutMs   deadline cho cả batch (null = mặc định)
+     * @param operations  map type -> operation (thường là method của AIController)
+     * @throws AIRequestScheduler.RejectedException khi pool batch đã đầy
+     */
+    public Map<String, Object> execute(List<Map<String, Object>> items, Integer concurrency, Long timeoutMs,
+            Map<String, Function<Map<String, Object>, ResponseEntity<?>>> operations) {
+        if (items.size() > maxItems) {
+            throw new IllegalArgumentException("Batch too large: " + items.size() + " > " + maxItems);
+        }
+
+        long startTime = System.currentTimeMillis();
+        int lanes = Math.max(1, Math.min(items.size(), concurrency != null ? Math.min(concurrency, maxConcurrency)
+                : maxConcurrency));
+        long deadlineMs = timeoutMs != null ? Math.min(timeoutMs, maxTimeoutMs) : maxTimeoutMs;
+
+        AtomicReferenceArray<Map<String, Object>> results = new AtomicReferenceArray<>(items.size());
+        AtomicInteger nextIndex = new AtomicInteger();
+        AtomicBoolean expired = new AtomicBoolean();
+        AIRequestContext requestContext = AIRequestContext.current();
+
+        Runnable lane = () -> requestContext.callWith(() -> {
+            int index;
+            while (!expired.get() && (index = nextIndex.getAndIncrement()) < items.size()) {
+                results.set(index, runItem(items.get(index), operations));
+            }
+            return null;
+        });
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < lanes; i++) {
+            try {
+                futures.add(CompletableFuture.runAsync(lane, executor));
+            } catch (RejectedExecutionException e) {
+                log.warn("AI batch pool saturated, running batch with {} lane(s)", futures.size());
+                break;
+            }
+        }
+        if (futures.isEmpty()) {
+            // Pool đầy: chạy trên request thread sẽ bỏ qua deadline và giữ thread của servlet
+            throw new AIRequestScheduler.RejectedException("batch_pool_full", 1);
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                    .get(deadlineMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("AI batch deadline of {} ms exceeded", deadlineMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("AI batch lane failed: {}", e.getCause().getMessage());
+        } finally {
+            expired.set(true);
+        }
+
+        List<Map<String, Object>> resultList = new ArrayList<>(items.size());
+        int succeeded = 0;
+        for (int i = 0; i < items.size(); i++) {
+            Map<String, Object> result = results.get(i);
+            if (result == null) {
+                result = errorResult(items.get(i), "Deadline exceeded");
+            }
+            if (Boolean.TRUE.equals(result.get("success"))) {
+                succeeded++;
+            }
+            resultList.add(result);
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("results", resultList);
+        data.put("total", items.size());
+        data.put("succeeded", succeeded);
+        data.put("failed", items.size() - succeeded);
+        data.put("duration_ms", System.currentTimeMillis() - startTime);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", data);
+        return response;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> runItem(Map<String, Object> item,
+            Map<String, Function<Map<String, Object>, ResponseEntity<?>>> operations) {
+        Object type = item.get("type");
+        Function<Map<String, Object>, ResponseEntity<?>> operation = operations.get(String.valueOf(type));
+        if (operation == null) {
+            return errorResult(item, "Unsupported type: " + type);
+        }
+        if (!(item.get("payload") instanceof Map)) {
+            return errorResult(item, "Missing payload");
+        }
+
+        try {
+            ResponseEntity<?> response = operation.apply((Map<String, Object>) item.get("payload"));
+
+            Map<String, Object> result = baseResult(item);
+            result.put("success", response.getStatusCode().is2xxSuccessful());
+            result.put("status", response.getStatusCode().value());
+            Object body = response.getBody();
+            if (body instanceof byte[] bytes) {
+                // Passthrough JSON được nhúng nguyên vẹn, không parse lại; body khác (trang lỗi HTML / text)
+                // nhúng dạng chuỗi để response của batch vẫn là JSON hợp lệ
+                String text = new String(bytes, StandardCharsets.UTF_8);
+                body = isJson(response.getHeaders().getContentType()) ? new RawValue(text) : text;
+            }
+            result.put("data", body);
+            return result;
+        } catch (Exception e) {
+            log.error("AI batch item {} failed: {}", item.get("id"), e.getMessage());
+            return errorResult(item, e.getMessage());
+        }
+    }
+
+    private static boolean isJson(MediaType contentType) {
+        return contentType != null && (MediaType.APPLICATION_JSON.isCompatibleWith(contentType)
+                || contentType.getSubtype().endsWith("+json"));
+    }
+
+    private static Map<String, Object> errorResult(Map<String, Object> item, String error) {
+        Map<String, Object> result = baseResult(item);
+        result.put("success", false);
+        result.put("error", error);
+        return result;
+    }
+
+    private static Map<String, Object> baseResult(Map<String, Object> item) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("id", item.get("id"));
+        result.put("type", item.get("type"));
+        return result;
+    }
+}
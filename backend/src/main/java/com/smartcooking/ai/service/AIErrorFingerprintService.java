@@ -0,0 +1,399 @@
+package com.smartcooking.ai.service;
+
+import com.smartcooking.ai.dto.AIInteractionRecord;
+import com.smartcooking.ai.dto.AIInteractionsWrittenEvent;
+import com.smartcooking.ai.entity.AIErrorGroup;
+import com.smartcooking.ai.entity.AIInteraction;
+import com.smartcooking.ai.repository.AIErrorGroupRepository;
+import com.smartcooking.ai.repository.AIErrorHourlyCountRepository;
+import com.smartcooking.ai.util.ErrorFingerprint;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * AI Error Fingerprint Service - gom lỗi AI theo nhóm và đếm theo giờ
+ *
+ * Mỗi interaction lỗi vừa ghi được chuẩn hóa thành fingerprint
+ * (ErrorFingerprint), gom trong memory theo (giờ, fingerprint) rồi cộng dồn
+ * vào ai_error_hourly_counts và ai_error_groups bằng
+ * INSERT ... ON DUPLICATE KEY UPDATE. Error analytics đọc các bảng này nên
+ * không phải scan các dòng lỗi của ai_interactions.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AIErrorFingerprintService {
+
+    private static final String UPSERT_GROUP_SQL = """
+            INSERT INTO ai_error_groups (fingerprint, interaction_type, normalized_message, sample_message,
+                first_seen, last_seen)
+            VALUES (?, ?, ?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE
+                sample_message = IF(VALUES(last_seen) >= last_seen, VALUES(sample_message), sample_message),
+                first_seen = LEAST(first_seen, VALUES(first_seen)),
+                last_seen = GREATEST(last_seen, VALUES(last_seen))
+            """;
+
+    private static final String UPSERT_COUNT_SQL = """
+            INSERT INTO ai_error_hourly_counts (bucket_start, fingerprint, interaction_type, error_count, updated_at)
+            VALUES (?, ?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE
+                error_count = error_count + VALUES(error_count),
+                updated_at = VALUES(updated_at)
+            """;
+
+    private static final String DELETE_COUNTS_RANGE_SQL = """
+            DELETE FROM ai_error_hourly_counts
+            WHERE bucket_start >= ? AND bucket_start < ?
+            """;
+
+    private static final String SELECT_ERRORS_SQL = """
+            SELECT interaction_type, error_message, created_at
+            FROM ai_interactions
+            WHERE success = 0 AND created_at >= ? AND created_at < ?
+            """;
+
+    private static final String PURGE_COUNTS_SQL = "DELETE FROM ai_error_hourly_counts WHERE bucket_start < ?";
+
+    private static final String PURGE_GROUPS_SQL = "DELETE FROM ai_error_groups WHERE last_seen < ?";
+
+    private static final int MESSAGE_MAX_LENGTH = 255;
+    private static final int REBUILD_BATCH_SIZE = 5000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AIErrorGroupRepository groupRepository;
+    private final AIErrorHourlyCountRepository countRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ai.error-fingerprints.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.error-fingerprints.retention-days:90}")
+    private int retentionDays;
+
+    // Giờ chỉ được rebuild khi đã kết thúc lâu hơn khoảng này (lớn hơn độ trễ của writer async)
+    @Value("${ai.error-fingerprints.rebuild-settle-ms:300000}")
+    private long rebuildSettleMs;
+
+    private Counter recordedCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    void init() {
+        recordedCounter = meterRegistry.counter("ai.interaction.errors.fingerprinted");
+        failedCounter = meterRegistry.counter("ai.interaction.errors.fingerprint_failed");
+    }
+
+    @EventListener
+    public void onInteractionsWritten(AIInteractionsWrittenEvent event) {
+        if (enabled) {
+            apply(event.getRecords());
+        }
+    }
+
+    /**
+     * Cộng dồn các interactions lỗi vào nhóm lỗi theo giờ
+     */
+    public void apply(List<AIInteractionRecord> records) {
+        Map<BucketKey, ErrorBucket> buckets = new HashMap<>();
+        for (AIInteractionRecord record : records) {
+            if (!Boolean.FALSE.equals(record.getSuccess()) || record.getInteractionType() == null) {
+                continue;
+            }
+            add(buckets, record.getInteractionType(), record.getErrorMessage(),
+                    record.getCreatedAt() != null ? record.getCreatedAt() : LocalDateTime.now());
+        }
+        if (buckets.isEmpty()) {
+            return;
+        }
+        long errors = buckets.values().stream().mapToLong(bucket -> bucket.count).sum();
+        try {
+            write(buckets);
+            recordedCounter.increment(errors);
+        } catch (Exception e) {
+            // Không retry: các dòng lỗi vẫn nằm trong ai_interactions, rebuild() sẽ tính lại
+            failedCounter.increment(errors);
+            log.warn("Failed to update {} AI error fingerprint buckets: {}", buckets.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Tính lại số lỗi theo giờ trong N ngày gần nhất từ ai_interactions, chỉ cho
+     * các giờ đã đóng quá rebuild-settle-ms để không có upsert nào của writer
+     * async chạy song song với DELETE + tính lại (lỗi bị mất hoặc đếm hai lần)
+     *
+     * @return số dòng lỗi đã xử lý
+     */
+    @Transactional
+    public long rebuild(int days) {
+        LocalDateTime end = LocalDateTime.now().minus(rebuildSettleMs, ChronoUnit.MILLIS)
+                .truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime start = end.toLocalDate().minusDays(days).atStartOfDay();
+        log.info("Rebuilding AI error fingerprints from {} to {}", start, end);
+
+        Timestamp from = Timestamp.valueOf(start);
+        Timestamp to = Timestamp.valueOf(end);
+        jdbcTemplate.update(DELETE_COUNTS_RANGE_SQL, from, to);
+
+        Map<BucketKey, ErrorBucket> buckets = new HashMap<>();
+        long[] processed = { 0 };
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(SELECT_ERRORS_SQL, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            // MySQL Connector/J: stream từng dòng thay vì đọc hết vào memory
+            ps.setFetchSize(Integer.MIN_VALUE);
+            ps.setTimestamp(1, from);
+            ps.setTimestamp(2, to);
+            return ps;
+        }, rs -> {
+            add(buckets, AIInteraction.InteractionType.valueOf(rs.getString("interaction_type")),
+                    rs.getString("error_message"), rs.getTimestamp("created_at").toLocalDateTime());
+            processed[0]++;
+        });
+        // Upsert sau khi đọc xong: connection đang stream không chạy được câu lệnh khác
+        List<Map.Entry<BucketKey, ErrorBucket>> entries = new ArrayList<>(buckets.entrySet());
+        for (int i = 0; i < entries.size(); i += REBUILD_BATCH_SIZE) {
+            Map<BucketKey, ErrorBucket> chunk = new HashMap<>();
+            entries.subList(i, Math.min(entries.size(), i + REBUILD_BATCH_SIZE))
+                    .forEach(entry -> chunk.put(entry.getKey(), entry.getValue()));
+            write(chunk);
+        }
+        log.info("Rebuilt {} AI error fingerprint buckets from {} failed interactions", buckets.size(),
+                processed[0]);
+        return processed[0];
+    }
+
+    /**
+     * Top nhóm lỗi trong N ngày gần nhất, kèm số lỗi theo giờ của từng nhóm
+     */
+    @Transactional(readOnly = true)
+    public List<ErrorGroupStats> topGroups(int days, int limit) {
+        LocalDateTime since = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusDays(days);
+        List<Object[]> rows = countRepository.sumByFingerprint(since, PageRequest.of(0, Math.max(1, limit)));
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        List<String> fingerprints = rows.stream().map(row -> (String) row[0]).toList();
+        Map<String, AIErrorGroup> groups = groupRepository.findByFingerprintIn(fingerprints).stream()
+                .collect(Collectors.toMap(AIErrorGroup::getFingerprint, Function.identity()));
+        Map<String, Map<LocalDateTime, Long>> hourly = new HashMap<>();
+        for (Object[] bucket : countRepository.findBuckets(since, fingerprints)) {
+            hourly.computeIfAbsent((String) bucket[0], k -> new LinkedHashMap<>())
+                    .put((LocalDateTime) bucket[1], ((Number) bucket[2]).longValue());
+        }
+
+        List<ErrorGroupStats> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            String fingerprint = (String) row[0];
+            AIErrorGroup group = groups.get(fingerprint);
+            if (group == null) {
+                continue;
+            }
+            result.add(new ErrorGroupStats(fingerprint, group.getInteractionType().name(),
+                    group.getNormalizedMessage(), group.getSampleMessage(), ((Number) row[1]).longValue(),
+                    group.getFirstSeen(), group.getLastSeen(), hourly.getOrDefault(fingerprint, Map.of())));
+        }
+        return result;
+    }
+
+    @Transactional(readOnly = true)
+    public Map<String, Long> countByType(int days) {
+        LocalDateTime since = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusDays(days);
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Object[] row : countRepository.sumByType(since)) {
+            result.put(((AIInteraction.InteractionType) row[0]).name(), ((Number) row[1]).longValue());
+        }
+        return result;
+    }
+
+    @Transactional(readOnly = true)
+    public long countErrors(int days) {
+        return countRepository.sumSince(LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusDays(days));
+    }
+
+    /**
+     * Xóa số lỗi theo giờ và các nhóm lỗi không gặp lại quá retention-days
+     */
+    @Scheduled(cron = "${ai.error-fingerprints.purge-cron:0 40 2 * * *}")
+    public void purgeExpired() {
+        if (!enabled) {
+            return;
+        }
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().truncatedTo(ChronoUnit.HOURS)
+                .minusDays(retentionDays));
+        try {
+            int counts = jdbcTemplate.update(PURGE_COUNTS_SQL, cutoff);
+            int groups = jdbcTemplate.update(PURGE_GROUPS_SQL, cutoff);
+            log.info("Purged {} AI error buckets and {} error groups older than {}", counts, groups, cutoff);
+        } catch (Exception e) {
+            log.warn("Failed to purge AI error fingerprints: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("fingerprintedErrors", (long) recordedCounter.count());
+        stats.put("failedErrors", (long) failedCounter.count());
+        stats.put("retentionDays", retentionDays);
+        return stats;
+    }
+
+    private static void add(Map<BucketKey, ErrorBucket> buckets, AIInteraction.InteractionType type,
+            String errorMessage, LocalDateTime createdAt) {
+        String normalized = ErrorFingerprint.normalize(errorMessage, MESSAGE_MAX_LENGTH);
+        BucketKey key = new BucketKey(createdAt.truncatedTo(ChronoUnit.HOURS),
+                ErrorFingerprint.fingerprint(type.name(), normalized));
+        buckets.computeIfAbsent(key, k -> new ErrorBucket(type, normalized)).add(errorMessage, createdAt);
+    }
+
+    private void write(Map<BucketKey, ErrorBucket> buckets) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> groups = new ArrayList<>(buckets.size());
+        List<Object[]> counts = new ArrayList<>(buckets.size());
+        buckets.forEach((key, bucket) -> {
+            groups.add(new Object[] {
+                    key.fingerprint, bucket.type.name(), bucket.normalizedMessage, bucket.sampleMessage,
+                    Timestamp.valueOf(bucket.firstSeen), Timestamp.valueOf(bucket.lastSeen) });
+            counts.add(new Object[] {
+                    Timestamp.valueOf(key.bucketStart), key.fingerprint, bucket.type.name(), bucket.count, now });
+        });
+        jdbcTemplate.batchUpdate(UPSERT_GROUP_SQL, groups);
+        jdbcTemplate.batchUpdate(UPSERT_COUNT_SQL, counts);
+    }
+
+    public static class ErrorGroupStats {
+        private final String fingerprint;
+        private final String interactionType;
+        private final String message;
+        private final String sampleMessage;
+        private final long count;
+        private final LocalDateTime firstSeen;
+        private final LocalDateTime lastSeen;
+        private final Map<LocalDateTime, Long> hourlyCounts;
+
+        public ErrorGroupStats(String fingerprint, String interactionType, String message, String sampleMessage,
+                long count, LocalDateTime firstSeen, LocalDateTime lastSeen, Map<LocalDateTime, Long> hourlyCounts) {
+            this.fingerprint = fingerprint;
+            this.interactionType = interactionType;
+            this.message = message;
+            this.sampleMessage = sampleMessage;
+            this.count = count;
+            this.firstSeen = firstSeen;
+            this.lastSeen = lastSeen;
+            this.hourlyCounts = hourlyCounts;
+        }
+
+        // Getters
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public String getInteractionType() {
+            return interactionType;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getSampleMessage() {
+            return sampleMessage;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public LocalDateTime getFirstSeen() {
+            return firstSeen;
+        }
+
+        public LocalDateTime getLastSeen() {
+            return lastSeen;
+        }
+
+        public Map<LocalDateTime, Long> getHourlyCounts() {
+            return hourlyCounts;
+        }
+    }
+
+    private static class BucketKey {
+        private final LocalDateTime bucketStart;
+        private final String fingerprint;
+
+        BucketKey(LocalDateTime bucketStart, String fingerprint) {
+            this.bucketStart = bucketStart;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BucketKey other)) {
+                return false;
+            }
+            return bucketStart.equals(other.bucketStart) && fingerprint.equals(other.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(bucketStart, fingerprint);
+        }
+    }
+
+    private static class ErrorBucket {
+        private final AIInteraction.InteractionType type;
+        private final String normalizedMessage;
+        private String sampleMessage;
+        private LocalDateTime firstSeen;
+        private LocalDateTime lastSeen;
+        private long count;
+
+        ErrorBucket(AIInteraction.InteractionType type, String normalizedMessage) {
+            this.type = type;
+            this.normalizedMessage = normalizedMessage;
+        }
+
+        void add(String errorMessage, LocalDateTime createdAt) {
+            count++;
+            if (firstSeen == null || createdAt.isBefore(firstSeen)) {
+                firstSeen = createdAt;
+            }
+            if (lastSeen == null || !createdAt.isBefore(lastSeen)) {
+                lastSeen = createdAt;
+                if (errorMessage != null) {
+                    sampleMessage = errorMessage.length() > MESSAGE_MAX_LENGTH
+                            ? errorMessage.substring(0, MESSAGE_MAX_LENGTH)
+                            : errorMessage;
+                }
+            }
+        }
+    }
+}
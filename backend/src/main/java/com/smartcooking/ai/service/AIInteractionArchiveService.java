@@ -0,0 +1,549 @@
+package com.smartcooking.ai.service;
+
+import com.smartcooking.ai.dto.ArchivedInteraction;
+import com.smartcooking.ai.entity.AIInteraction;
+import com.smartcooking.ai.util.ColumnarEncoding;
+import lombok.Builder;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * AI Interaction Archive - lưu interactions cũ thành file columnar nén
+ *
+ * Trước khi partition hết hạn bị drop, các dòng của nó được ghi ra một file
+ * archive: chia thành row group, mỗi cột được encode riêng (delta varint cho
+ * id / thời gian, dictionary cho type / ngôn ngữ, bitset cho success, block
+ * text cho payload) rồi nén Deflate. Header của row group giữ min/max
+ * created_at, tập type, dictionary ngôn ngữ và min/max latency, nên scan bỏ
+ * qua được cả row group (và các cột payload không cần) mà không giải nén.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AIInteractionArchiveService {
+
+    private static final byte[] MAGIC = { 'A', 'I', 'A', 'R', 'C' };
+    private static final int VERSION = 1;
+    private static final String FILE_PREFIX = "interactions_";
+    private static final String FILE_SUFFIX = ".aiarc";
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMddHHmm");
+    private static final Pattern FILE_NAME = Pattern.compile("interactions_(\\d{12})_(\\d{12})\\.aiarc");
+
+    private static final int COL_ID = 0;
+    private static final int COL_CREATED_AT = 1;
+    private static final int COL_TYPE = 2;
+    private static final int COL_LANGUAGE = 3;
+    private static final int COL_LATENCY = 4;
+    private static final int COL_SUCCESS = 5;
+    private static final int COL_USER_ID = 6;
+    private static final int COL_ERROR = 7;
+    private static final int COL_INPUT = 8;
+    private static final int COL_OUTPUT = 9;
+    private static final int COLUMN_COUNT = 10;
+
+    private static final AIInteraction.InteractionType[] TYPES = AIInteraction.InteractionType.values();
+
+    private static final String SELECT_RANGE_SQL = """
+            SELECT id, user_id, interaction_type, user_language, processing_time_ms, success, error_message,
+                input_data, output_data, created_at
+            FROM ai_interactions
+            WHERE created_at >= ? AND created_at < ? AND id > ?
+            ORDER BY id
+            LIMIT ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AIPayloadCodec payloadCodec;
+
+    @Value("${ai.archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.archive.dir:./data/ai-archive}")
+    private String archiveDir;
+
+    @Value("${ai.archive.row-group-size:2048}")
+    private int rowGroupSize;
+
+    @Value("${ai.archive.compression-level:6}")
+    private int compressionLevel;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Ghi các interactions có created_at trong [from, to) ra một archive file.
+     * File được ghi ra .tmp rồi rename, nên file tồn tại nghĩa là đã ghi trọn vẹn.
+     *
+     * @return số dòng đã archive (0 thì không tạo file)
+     * @throws IOException nếu ghi thất bại: không được xóa dữ liệu gốc
+     */
+    public long archiveRange(LocalDateTime from, LocalDateTime to) throws IOException {
+        Path dir = Path.of(archiveDir);
+        Files.createDirectories(dir);
+        Path target = dir.resolve(FILE_PREFIX + from.format(FILE_TIME) + "_" + to.format(FILE_TIME) + FILE_SUFFIX);
+        Path temp = dir.resolve(target.getFileName() + ".tmp");
+
+        long rows = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp),
+                65536))) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(toMillis(from));
+            out.writeLong(toMillis(to));
+
+            long lastId = 0;
+            while (true) {
+                List<ArchivedInteraction> page = jdbcTemplate.query(SELECT_RANGE_SQL,
+                        (rs, rowNum) -> mapRow(rs, true), Timestamp.valueOf(from), Timestamp.valueOf(to), lastId,
+                        rowGroupSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                writeRowGroup(out, page);
+                rows += page.size();
+                lastId = page.get(page.size() - 1).getId();
+                if (page.size() < rowGroupSize) {
+                    break;
+                }
+            }
+            out.writeInt(0);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        if (rows == 0) {
+            Files.deleteIfExists(temp);
+            return 0;
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Archived {} AI interactions [{} - {}) to {} ({} bytes)", rows, from, to, target.getFileName(),
+                Files.size(target));
+        return rows;
+    }
+
+    /**
+     * Scan archive files với predicate pushdown theo file, row group và cột
+     *
+     * @return số interactions đã trả cho consumer
+     */
+    public long scan(ArchiveQuery query, Consumer<ArchivedInteraction> consumer) {
+        long emitted = 0;
+        for (ArchiveFile file : listFiles()) {
+            if (emitted >= query.getLimit()) {
+                break;
+            }
+            if ((query.getTo() != null && !file.from.isBefore(query.getTo()))
+                    || (query.getFrom() != null && !file.to.isAfter(query.getFrom()))) {
+                continue;
+            }
+            try {
+                emitted += scanFile(file.path, query, consumer, query.getLimit() - emitted);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read archive " + file.path.getFileName(), e);
+            }
+        }
+        return emitted;
+    }
+
+    /**
+     * Scan toàn bộ lịch sử: phần đã archive đọc từ file, phần còn lại từ ai_interactions
+     *
+     * @return số interactions đã trả cho consumer
+     */
+    public long scanHistory(ArchiveQuery query, Consumer<ArchivedInteraction> consumer) {
+        LocalDateTime archivedUntil = getArchivedUntil();
+        boolean startsInArchive = archivedUntil != null
+                && (query.getFrom() == null || query.getFrom().isBefore(archivedUntil));
+        boolean endsInArchive = archivedUntil != null && query.getTo() != null
+                && !query.getTo().isAfter(archivedUntil);
+
+        long emitted = 0;
+        if (startsInArchive) {
+            emitted += scan(query.toBuilder().to(endsInArchive ? query.getTo() : archivedUntil).build(), consumer);
+        }
+        if (endsInArchive || emitted >= query.getLimit()) {
+            return emitted;
+        }
+        return emitted + scanLive(query.toBuilder()
+                .from(startsInArchive ? archivedUntil : query.getFrom())
+                .limit(query.getLimit() - emitted)
+                .build(), consumer);
+    }
+
+    /**
+     * Thời điểm kết thúc của archive file mới nhất (dữ liệu trước đó không còn trong MySQL)
+     */
+    public LocalDateTime getArchivedUntil() {
+        return listFiles().stream().map(file -> file.to).max(Comparator.naturalOrder()).orElse(null);
+    }
+
+    public List<Map<String, Object>> getFiles() {
+        List<Map<String, Object>> files = new ArrayList<>();
+        for (ArchiveFile file : listFiles()) {
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("name", file.path.getFileName().toString());
+            info.put("from", file.from);
+            info.put("to", file.to);
+            info.put("bytes", file.size);
+            files.add(info);
+        }
+        return files;
+    }
+
+    private void writeRowGroup(DataOutputStream out, List<ArchivedInteraction> rows) throws IOException {
+        int count = rows.size();
+        ByteArrayOutputStream[] columns = new ByteArrayOutputStream[COLUMN_COUNT];
+        for (int c = 0; c < COLUMN_COUNT; c++) {
+            columns[c] = new ByteArrayOutputStream(count * 2);
+        }
+
+        long minCreatedAt = Long.MAX_VALUE;
+        long maxCreatedAt = Long.MIN_VALUE;
+        int minLatency = Integer.MAX_VALUE;
+        int maxLatency = -1;
+        int typeMask = 0;
+        for (ArchivedInteraction row : rows) {
+            long createdAt = toMillis(row.getCreatedAt());
+            minCreatedAt = Math.min(minCreatedAt, createdAt);
+            maxCreatedAt = Math.max(maxCreatedAt, createdAt);
+            typeMask |= 1 << row.getInteractionType().ordinal();
+            if (row.getProcessingTimeMs() != null) {
+                minLatency = Math.min(minLatency, row.getProcessingTimeMs());
+                maxLatency = Math.max(maxLatency, row.getProcessingTimeMs());
+            }
+        }
+
+        Map<String, Integer> languages = new LinkedHashMap<>();
+        boolean[] success = new boolean[count];
+        long previousId = 0;
+        for (int i = 0; i < count; i++) {
+            ArchivedInteraction row = rows.get(i);
+            ColumnarEncoding.writeVarLong(columns[COL_ID], ColumnarEncoding.zigzag(row.getId() - previousId));
+            previousId = row.getId();
+            ColumnarEncoding.writeVarLong(columns[COL_CREATED_AT], toMillis(row.getCreatedAt()) - minCreatedAt);
+            columns[COL_TYPE].write(row.getInteractionType().ordinal());
+            String language = row.getUserLanguage() != null ? row.getUserLanguage() : "";
+            ColumnarEncoding.writeVarLong(columns[COL_LANGUAGE],
+                    languages.computeIfAbsent(language, key -> languages.size()));
+            ColumnarEncoding.writeNullableVarLong(columns[COL_LATENCY],
+                    row.getProcessingTimeMs() != null ? row.getProcessingTimeMs().longValue() : null);
+            success[i] = !Boolean.FALSE.equals(row.getSuccess());
+            ColumnarEncoding.writeNullableVarLong(columns[COL_USER_ID], row.getUserId());
+            ColumnarEncoding.writeText(columns[COL_ERROR], row.getErrorMessage());
+            ColumnarEncoding.writeText(columns[COL_INPUT], row.getInputData());
+            ColumnarEncoding.writeText(columns[COL_OUTPUT], row.getOutputData());
+        }
+        byte[] successBits = ColumnarEncoding.toBitset(success, count);
+        columns[COL_SUCCESS].write(successBits, 0, successBits.length);
+
+        out.writeInt(count);
+        out.writeLong(minCreatedAt);
+        out.writeLong(maxCreatedAt);
+        out.writeInt(typeMask);
+        out.writeInt(maxLatency < 0 ? -1 : minLatency);
+        out.writeInt(maxLatency);
+        out.writeShort(languages.size());
+        for (String language : languages.keySet()) {
+            out.writeUTF(language);
+        }
+
+        byte[][] stored = new byte[COLUMN_COUNT][];
+        out.writeByte(COLUMN_COUNT);
+        for (int c = 0; c < COLUMN_COUNT; c++) {
+            byte[] raw = columns[c].toByteArray();
+            stored[c] = ColumnarEncoding.deflate(raw, compressionLevel);
+            out.writeInt(raw.length);
+            out.writeInt(stored[c].length);
+        }
+        for (byte[] block : stored) {
+            out.write(block);
+        }
+    }
+
+    private long scanFile(Path path, ArchiveQuery query, Consumer<ArchivedInteraction> consumer, long limit)
+            throws IOException {
+        long emitted = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 65536))) {
+            byte[] magic = in.readNBytes(MAGIC.length);
+            if (!Arrays.equals(magic, MAGIC) || in.readUnsignedByte() != VERSION) {
+                throw new IOException("Not an AI interaction archive");
+            }
+            in.readLong();
+            in.readLong();
+
+            int typeFilter = query.typeMask();
+            while (emitted < limit) {
+                int count = in.readInt();
+                if (count == 0) {
+                    break;
+                }
+                long minCreatedAt = in.readLong();
+                long maxCreatedAt = in.readLong();
+                int typeMask = in.readInt();
+                in.readInt();
+                int maxLatency = in.readInt();
+                String[] languages = new String[in.readUnsignedShort()];
+                for (int i = 0; i < languages.length; i++) {
+                    String language = in.readUTF();
+                    languages[i] = language.isEmpty() ? null : language;
+                }
+                int columnCount = in.readUnsignedByte();
+                int[] rawLengths = new int[columnCount];
+                int[] storedLengths = new int[columnCount];
+                for (int c = 0; c < columnCount; c++) {
+                    rawLengths[c] = in.readInt();
+                    storedLengths[c] = in.readInt();
+                }
+
+                // Pushdown theo row group: bỏ qua mà không giải nén cột nào
+                boolean skip = (query.getFrom() != null && maxCreatedAt < toMillis(query.getFrom()))
+                        || (query.getTo() != null && minCreatedAt >= toMillis(query.getTo()))
+                        || (typeMask & typeFilter) == 0
+                        || (query.getLanguage() != null && !Arrays.asList(languages).contains(query.getLanguage()))
+                        || (query.getMinProcessingTimeMs() != null && maxLatency < query.getMinProcessingTimeMs());
+
+                ByteBuffer[] data = new ByteBuffer[columnCount];
+                for (int c = 0; c < columnCount; c++) {
+                    boolean payload = c == COL_INPUT || c == COL_OUTPUT;
+                    if (skip || (payload && !query.isIncludePayload())) {
+                        in.skipNBytes(storedLengths[c]);
+                    } else {
+                        data[c] = ByteBuffer.wrap(ColumnarEncoding.inflate(in.readNBytes(storedLengths[c]),
+                                rawLengths[c]));
+                    }
+                }
+                if (!skip) {
+                    emitted += decodeRowGroup(count, minCreatedAt, languages, data, query, consumer, limit - emitted);
+                }
+            }
+        }
+        return emitted;
+    }
+
+    private long decodeRowGroup(int count, long minCreatedAt, String[] languages, ByteBuffer[] data,
+            ArchiveQuery query, Consumer<ArchivedInteraction> consumer, long limit) {
+        byte[] successBits = data[COL_SUCCESS].array();
+        long id = 0;
+        long emitted = 0;
+        for (int i = 0; i < count && emitted < limit; i++) {
+            id += ColumnarEncoding.unzigzag(ColumnarEncoding.readVarLong(data[COL_ID]));
+            ArchivedInteraction row = ArchivedInteraction.builder()
+                    .id(id)
+                    .createdAt(fromMillis(minCreatedAt + ColumnarEncoding.readVarLong(data[COL_CREATED_AT])))
+                    .interactionType(TYPES[data[COL_TYPE].get()])
+                    .userLanguage(languages[(int) ColumnarEncoding.readVarLong(data[COL_LANGUAGE])])
+                    .processingTimeMs(toInteger(ColumnarEncoding.readNullableVarLong(data[COL_LATENCY])))
+                    .success(ColumnarEncoding.bit(successBits, i))
+                    .userId(ColumnarEncoding.readNullableVarLong(data[COL_USER_ID]))
+                    .errorMessage(ColumnarEncoding.readText(data[COL_ERROR]))
+                    .build();
+            if (query.isIncludePayload()) {
+                row.setInputData(ColumnarEncoding.readText(data[COL_INPUT]));
+                row.setOutputData(ColumnarEncoding.readText(data[COL_OUTPUT]));
+            }
+            if (query.matches(row)) {
+                consumer.accept(row);
+                emitted++;
+            }
+        }
+        return emitted;
+    }
+
+    private long scanLive(ArchiveQuery query, Consumer<ArchivedInteraction> consumer) {
+        StringBuilder sql = new StringBuilder("SELECT id, user_id, interaction_type, user_language, "
+                + "processing_time_ms, success, error_message, ")
+                .append(query.isIncludePayload()
+                        ? "input_data, output_data"
+                        : "NULL AS input_data, NULL AS output_data")
+                .append(", created_at FROM ai_interactions WHERE id > ?");
+        List<Object> params = new ArrayList<>();
+        if (query.getFrom() != null) {
+            sql.append(" AND created_at >= ?");
+            params.add(Timestamp.valueOf(query.getFrom()));
+        }
+        if (query.getTo() != null) {
+            sql.append(" AND created_at < ?");
+            params.add(Timestamp.valueOf(query.getTo()));
+        }
+        if (query.getTypes() != null && !query.getTypes().isEmpty()) {
+            sql.append(" AND interaction_type IN (")
+                    .append(String.join(", ", Collections.nCopies(query.getTypes().size(), "?")))
+                    .append(")");
+            query.getTypes().forEach(type -> params.add(type.name()));
+        }
+        if (query.getLanguage() != null) {
+            sql.append(" AND user_language = ?");
+            params.add(query.getLanguage());
+        }
+        if (query.getSuccess() != null) {
+            sql.append(" AND success = ?");
+            params.add(query.getSuccess());
+        }
+        if (query.getMinProcessingTimeMs() != null) {
+            sql.append(" AND processing_time_ms >= ?");
+            params.add(query.getMinProcessingTimeMs());
+        }
+        sql.append(" ORDER BY id LIMIT ?");
+
+        long emitted = 0;
+        long lastId = 0;
+        while (emitted < query.getLimit()) {
+            int pageSize = (int) Math.min(rowGroupSize, query.getLimit() - emitted);
+            List<Object> args = new ArrayList<>(params.size() + 2);
+            args.add(lastId);
+            args.addAll(params);
+            args.add(pageSize);
+            List<ArchivedInteraction> page = jdbcTemplate.query(sql.toString(),
+                    (rs, rowNum) -> mapRow(rs, query.isIncludePayload()), args.toArray());
+            page.forEach(consumer);
+            emitted += page.size();
+            if (page.size() < pageSize) {
+                break;
+            }
+            lastId = page.get(page.size() - 1).getId();
+        }
+        return emitted;
+    }
+
+    private List<ArchiveFile> listFiles() {
+        Path dir = Path.of(archiveDir);
+        List<ArchiveFile> files = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path path : stream) {
+                Matcher matcher = FILE_NAME.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    files.add(new ArchiveFile(path, LocalDateTime.parse(matcher.group(1), FILE_TIME),
+                            LocalDateTime.parse(matcher.group(2), FILE_TIME), Files.size(path)));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list archive directory " + dir, e);
+        }
+        files.sort(Comparator.comparing((ArchiveFile file) -> file.from).thenComparing(file -> file.to));
+        return files;
+    }
+
+    private ArchivedInteraction mapRow(ResultSet rs, boolean includePayload) throws SQLException {
+        long userId = rs.getLong("user_id");
+        boolean userIdNull = rs.wasNull();
+        int processingTime = rs.getInt("processing_time_ms");
+        boolean processingTimeNull = rs.wasNull();
+        return ArchivedInteraction.builder()
+                .id(rs.getLong("id"))
+                .userId(userIdNull ? null : userId)
+                .interactionType(AIInteraction.InteractionType.valueOf(rs.getString("interaction_type")))
+                .userLanguage(rs.getString("user_language"))
+                .processingTimeMs(processingTimeNull ? null : processingTime)
+                .success(rs.getBoolean("success"))
+                .errorMessage(rs.getString("error_message"))
+                .inputData(includePayload ? payloadCodec.decode(rs.getBytes("input_data")) : null)
+                .outputData(includePayload ? payloadCodec.decode(rs.getBytes("output_data")) : null)
+                .createdAt(rs.getTimestamp("created_at").toLocalDateTime())
+                .build();
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L),
+                (int) Math.floorMod(millis, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    private static Integer toInteger(Long value) {
+        return value != null ? value.intValue() : null;
+    }
+
+    private static class ArchiveFile {
+        private final Path path;
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final long size;
+
+        ArchiveFile(Path path, LocalDateTime from, LocalDateTime to, long size) {
+            this.path = path;
+            this.from = from;
+            this.to = to;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Điều kiện scan; các field null nghĩa là không lọc
+     */
+    @Data
+    @Builder(toBuilder = true)
+    public static class ArchiveQuery {
+        // [from, to)
+        private LocalDateTime from;
+        private LocalDateTime to;
+        private Set<AIInteraction.InteractionType> types;
+        private String language;
+        private Boolean success;
+        private Integer minProcessingTimeMs;
+        private boolean includePayload;
+        @Builder.Default
+        private long limit = Long.MAX_VALUE;
+
+        int typeMask() {
+            if (types == null || types.isEmpty()) {
+                return -1;
+            }
+            int mask = 0;
+            for (AIInteraction.InteractionType type : types) {
+                mask |= 1 << type.ordinal();
+            }
+            return mask;
+        }
+
+        boolean matches(ArchivedInteraction row) {
+            return (from == null || !row.getCreatedAt().isBefore(from))
+                    && (to == null || row.getCreatedAt().isBefore(to))
+                    && (types == null || types.isEmpty() || types.contains(row.getInteractionType()))
+                    && (language == null || language.equals(row.getUserLanguage()))
+                    && (success == null || success.equals(row.getSuccess()))
+                    && (minProcessingTimeMs == null || (row.getProcessingTimeMs() != null
+                            && row.getProcessingTimeMs() >= minProcessingTimeMs));
+        }
+    }
+}
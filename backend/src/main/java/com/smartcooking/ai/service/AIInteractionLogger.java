@@ -0,0 +1,332 @@
+package com.smartcooking.ai.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartcooking.ai.dto.AIInteractionRecord;
+import com.smartcooking.ai.dto.AIInteractionsWrittenEvent;
+import com.smartcooking.ai.dto.AIServiceResponse;
+import com.smartcooking.ai.entity.AIInteraction;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AI Interaction Logger - ghi AI interactions bất đồng bộ
+ *
+ * Mọi AI proxy call được đưa vào một bounded queue; background writer gom
+ * theo batch và insert bằng JDBC batch, dùng user id thay vì load User entity.
+ * Khi queue đầy, hành vi được cấu hình bằng overflow policy (DROP/SAMPLE/BLOCK).
+ * Sau mỗi batch, các record đã ghi được phát qua AIInteractionsWrittenEvent
+ * (rollups, analytics).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AIInteractionLogger {
+
+    public static final String USER_ID_HEADER = "X-User-Id";
+
+    private static final String INSERT_SQL = """
+            INSERT INTO ai_interactions (user_id, interaction_type, input_data, output_data,
+                user_language, response_language, processing_time_ms, success, error_message, created_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final int ERROR_MESSAGE_MAX_LENGTH = 255;
+
+    public enum OverflowPolicy {
+        DROP,
+        SAMPLE,
+        BLOCK
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AILatencyHistogramService latencyHistograms;
+    private final AIPayloadCodec payloadCodec;
+
+    @Value("${ai.interaction-log.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.interaction-log.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${ai.interaction-log.batch-size:200}")
+    private int batchSize;
+
+    @Value("${ai.interaction-log.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    @Value("${ai.interaction-log.overflow-policy:SAMPLE}")
+    private OverflowPolicy overflowPolicy;
+
+    @Value("${ai.interaction-log.sample-rate:0.1}")
+    private double sampleRate;
+
+    @Value("${ai.interaction-log.block-timeout-ms:50}")
+    private long blockTimeoutMs;
+
+    @Value("${ai.interaction-log.max-payload-chars:16000}")
+    private int maxPayloadChars;
+
+    private BlockingQueue<AIInteractionRecord> queue;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    private Counter enqueuedCounter;
+    private Counter droppedCounter;
+    private Counter writtenCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("ai.interaction.log.queue.depth", queue, BlockingQueue::size)
+                .description("AI interactions waiting to be written")
+                .register(meterRegistry);
+        enqueuedCounter = meterRegistry.counter("ai.interaction.log.enqueued");
+        droppedCounter = meterRegistry.counter("ai.interaction.log.dropped");
+        writtenCounter = meterRegistry.counter("ai.interaction.log.written");
+        failedCounter = meterRegistry.counter("ai.interaction.log.failed");
+
+        running = true;
+        writerThread = new Thread(this::drainLoop, "ai-interaction-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ghi lại một AI proxy call (thành công nếu error == null)
+     *
+     * @param requestBody request gửi tới AI service (Map JSON hoặc mô tả file upload)
+     */
+    public void recordCall(AIInteraction.InteractionType type, Object requestBody, AIServiceResponse response,
+            Exception error, long elapsedMs) {
+        String language = requestBody instanceof Map<?, ?> map && map.get("language") != null
+                ? String.valueOf(map.get("language"))
+                : "vi";
+
+        // Histogram ghi mọi call, kể cả khi log bị tắt hoặc record bị drop/sample
+        latencyHistograms.record(type, language, elapsedMs);
+        if (!enabled) {
+            return;
+        }
+
+        AIInteractionRecord record = AIInteractionRecord.builder()
+                .userId(resolveUserId(requestBody))
+                .interactionType(type)
+                .inputData(truncate(serialize(requestBody), maxPayloadChars))
+                .outputData(response != null ? truncate(response.asText(), maxPayloadChars) : null)
+                .userLanguage(language)
+                .responseLanguage(language)
+                .processingTimeMs((int) Math.min(Integer.MAX_VALUE, elapsedMs))
+                .success(error == null)
+                .errorMessage(error != null ? truncate(String.valueOf(error.getMessage()), ERROR_MESSAGE_MAX_LENGTH)
+                        : null)
+                .createdAt(LocalDateTime.now())
+                .build();
+
+        enqueue(record);
+    }
+
+    /**
+     * Đưa record vào queue theo overflow policy
+     *
+     * @return true nếu record được nhận
+     */
+    public boolean enqueue(AIInteractionRecord record) {
+        if (record.getCreatedAt() == null) {
+            record.setCreatedAt(LocalDateTime.now());
+        }
+
+        boolean accepted = switch (overflowPolicy) {
+            case DROP -> queue.offer(record);
+            case SAMPLE -> shouldSample() && queue.offer(record);
+            case BLOCK -> offerBlocking(record);
+        };
+
+        if (accepted) {
+            enqueuedCounter.increment();
+        } else {
+            droppedCounter.increment();
+        }
+        return accepted;
+    }
+
+    /**
+     * Trạng thái pipeline cho health endpoint
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queueDepth", queue.size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("overflowPolicy", overflowPolicy.name());
+        stats.put("enqueued", (long) enqueuedCounter.count());
+        stats.put("dropped", (long) droppedCounter.count());
+        stats.put("written", (long) writtenCounter.count());
+        stats.put("failed", (long) failedCounter.count());
+        stats.put("writerAlive", writerThread.isAlive());
+        return stats;
+    }
+
+    /**
+     * User id lấy từ header X-User-Id, sau đó từ field user_id/userId của request body
+     */
+    public static Long resolveUserId(Object requestBody) {
+        Long headerUserId = AIRequestContext.current().getHeaderUserId();
+        if (headerUserId != null) {
+            return headerUserId;
+        }
+        if (requestBody instanceof Map<?, ?> map) {
+            Object userId = map.get("user_id") != null ? map.get("user_id") : map.get("userId");
+            return userId != null ? AIRequestContext.parseLong(String.valueOf(userId)) : null;
+        }
+        return null;
+    }
+
+    private boolean shouldSample() {
+        // Khi queue còn dưới 80% thì nhận hết, gần đầy thì chỉ giữ một phần
+        if (queue.remainingCapacity() > queueCapacity / 5) {
+            return true;
+        }
+        return ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    private boolean offerBlocking(AIInteractionRecord record) {
+        try {
+            return queue.offer(record, blockTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void drainLoop() {
+        List<AIInteractionRecord> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                AIInteractionRecord first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                // Shutdown: tiếp tục drain phần còn lại trong queue
+                running = false;
+            } catch (Exception e) {
+                log.error("AI interaction writer failed: {}", e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<AIInteractionRecord> batch) {
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), this::bind);
+            writtenCounter.increment(batch.size());
+            publishWritten(batch);
+        } catch (Exception e) {
+            log.warn("Batch insert of {} AI interactions failed, retrying row by row: {}", batch.size(),
+                    e.getMessage());
+            List<AIInteractionRecord> written = new ArrayList<>(batch.size());
+            for (AIInteractionRecord record : batch) {
+                try {
+                    jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, record));
+                    writtenCounter.increment();
+                    written.add(record);
+                } catch (Exception rowError) {
+                    failedCounter.increment();
+                    log.error("Dropping AI interaction ({}): {}", record.getInteractionType(),
+                            rowError.getMessage());
+                }
+            }
+            publishWritten(written);
+        }
+    }
+
+    private void publishWritten(List<AIInteractionRecord> written) {
+        if (written.isEmpty()) {
+            return;
+        }
+        try {
+            eventPublisher.publishEvent(new AIInteractionsWrittenEvent(written));
+        } catch (Exception e) {
+            log.warn("AI interaction listener failed for {} records: {}", written.size(), e.getMessage());
+        }
+    }
+
+    private void bind(PreparedStatement ps, AIInteractionRecord record) throws SQLException {
+        if (record.getUserId() != null) {
+            ps.setLong(1, record.getUserId());
+        } else {
+            ps.setNull(1, Types.BIGINT);
+        }
+        ps.setString(2, record.getInteractionType().name());
+        ps.setBytes(3, payloadCodec.encode(record.getInputData()));
+        ps.setBytes(4, payloadCodec.encode(record.getOutputData()));
+        ps.setString(5, record.getUserLanguage());
+        ps.setString(6, record.getResponseLanguage());
+        if (record.getProcessingTimeMs() != null) {
+            ps.setInt(7, record.getProcessingTimeMs());
+        } else {
+            ps.setNull(7, Types.INTEGER);
+        }
+        ps.setBoolean(8, !Boolean.FALSE.equals(record.getSuccess()));
+        ps.setString(9, record.getErrorMessage());
+        ps.setTimestamp(10, Timestamp.valueOf(record.getCreatedAt()));
+    }
+
+    private String serialize(Object requestBody) {
+        if (requestBody == null || requestBody instanceof String) {
+            return (String) requestBody;
+        }
+        try {
+            return objectMapper.writeValueAsString(requestBody);
+        } catch (JsonProcessingException e) {
+            return String.valueOf(requestBody);
+        }
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+}
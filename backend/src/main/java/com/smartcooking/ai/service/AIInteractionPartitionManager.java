@@ -0,0 +1,400 @@
+package com.smartcooking.ai.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AI Interaction Partition Manager - partition ai_interactions theo tháng
+ *
+ * Bảng được partition bằng RANGE COLUMNS(created_at), mỗi tháng một partition
+ * (pYYYYMM) cộng partition pmax cho phần còn lại. Job hàng ngày tạo trước các
+ * partition tương lai (tách từ pmax, vốn rỗng nên gần như không tốn gì) và
+ * DROP PARTITION các tháng đã hết hạn retention, thay cho DELETE từng dòng.
+ * Chuyển bảng sẵn có sang dạng partition (bỏ foreign key, thêm created_at vào
+ * primary key theo yêu cầu của MySQL) được làm tự động khi bảng còn rỗng hoặc
+ * rất nhỏ (cài mới, Hibernate tạo bảng chưa partition); bảng đã có nhiều dữ liệu
+ * là migration chạy một lần, chỉ khi bật convert-existing. Dữ liệu được archive (AIInteractionArchiveService) trước
+ * khi bị drop / xóa.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AIInteractionPartitionManager {
+
+    private static final String TABLE = "ai_interactions";
+    private static final String MAX_PARTITION = "pmax";
+    private static final String LOCK_NAME = "ai_interactions_partition_maintenance";
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AIInteractionArchiveService archiveService;
+
+    @Value("${ai.interaction-partitioning.enabled:true}")
+    private boolean enabled;
+
+    // Migration một lần: ALTER TABLE toàn bảng và bỏ foreign key, nên mặc định tắt
+    @Value("${ai.interaction-partitioning.convert-existing:false}")
+    private boolean convertExisting;
+
+    // Bảng có không quá số dòng này được convert tự động (ALTER gần như tức thì)
+    @Value("${ai.interaction-partitioning.auto-convert-max-rows:10000}")
+    private long autoConvertMaxRows;
+
+    @Value("${ai.interaction-partitioning.future-months:3}")
+    private int futureMonths;
+
+    // 0 = không tự drop partition
+    @Value("${ai.interaction-partitioning.retention-months:12}")
+    private int retentionMonths;
+
+    @Value("${ai.interaction-partitioning.delete-chunk-size:5000}")
+    private int deleteChunkSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (enabled) {
+            maintain();
+        }
+    }
+
+    /**
+     * Tạo partition cho các tháng tới và drop partition hết hạn
+     */
+    @Scheduled(cron = "${ai.interaction-partitioning.cron:0 15 2 * * *}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            withLock(connection -> {
+                if (!isPartitioned(connection)) {
+                    if (!convertExisting && !isSmall(connection)) {
+                        log.warn("{} is not partitioned, has more than {} rows and convert-existing is disabled",
+                                TABLE, autoConvertMaxRows);
+                        return null;
+                    }
+                    convert(connection);
+                }
+                createFuturePartitions(connection);
+                if (retentionMonths > 0) {
+                    dropPartitionsBefore(connection, YearMonth.now().minusMonths(retentionMonths));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("AI interaction partition maintenance failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Xóa interactions cũ hơn cutoff: drop các partition nằm trọn trước cutoff,
+     * phần còn lại (tháng chứa cutoff) xóa theo chunk, mỗi chunk một transaction
+     * ngắn và chỉ chạm một partition nhờ partition pruning.
+     *
+     * @return số dòng bị xóa (ước lượng cho phần partition bị drop)
+     */
+    public long purgeOlderThan(LocalDateTime olderThan) {
+        // Archive file đặt tên theo phút: cutoff làm tròn để khớp với ranh giới của file
+        LocalDateTime cutoff = olderThan.truncatedTo(ChronoUnit.MINUTES);
+        long removed = 0;
+        if (enabled) {
+            Long dropped = withLock(connection -> isPartitioned(connection)
+                    ? dropPartitionsBefore(connection, YearMonth.from(cutoff))
+                    : 0L);
+            removed += dropped != null ? dropped : 0;
+        }
+
+        LocalDateTime oldest = jdbcTemplate.queryForObject("SELECT MIN(created_at) FROM " + TABLE
+                + " WHERE created_at < ?", LocalDateTime.class, Timestamp.valueOf(cutoff));
+        if (oldest == null) {
+            return removed;
+        }
+        if (!archive(oldest.truncatedTo(ChronoUnit.MINUTES), cutoff)) {
+            throw new IllegalStateException("Archiving AI interactions before " + cutoff + " failed");
+        }
+
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE created_at < ? LIMIT ?",
+                    Timestamp.valueOf(cutoff), deleteChunkSize);
+            removed += deleted;
+        } while (deleted == deleteChunkSize);
+        return removed;
+    }
+
+    /**
+     * Danh sách partition hiện có (tên, giới hạn trên, số dòng ước lượng)
+     */
+    public List<Map<String, Object>> getPartitions() {
+        return jdbcTemplate.execute((ConnectionCallback<List<Map<String, Object>>>) connection -> {
+            List<Map<String, Object>> partitions = new ArrayList<>();
+            for (Partition partition : listPartitions(connection)) {
+                Map<String, Object> info = new HashMap<>();
+                info.put("name", partition.name);
+                info.put("lessThan", partition.upperBound != null ? partition.upperBound.toString() : "MAXVALUE");
+                info.put("rows", partition.rows);
+                partitions.add(info);
+            }
+            return partitions;
+        });
+    }
+
+    private void convert(Connection connection) throws SQLException {
+        YearMonth first = YearMonth.now();
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT MIN(created_at) FROM " + TABLE)) {
+            if (rs.next() && rs.getTimestamp(1) != null) {
+                first = YearMonth.from(rs.getTimestamp(1).toLocalDateTime());
+            }
+        }
+        log.info("Converting {} to monthly partitions starting {}", TABLE, first);
+
+        try (Statement statement = connection.createStatement()) {
+            // MySQL: bảng partition không có foreign key và mọi unique key phải chứa cột partition
+            for (String foreignKey : foreignKeys(connection)) {
+                statement.execute("ALTER TABLE " + TABLE + " DROP FOREIGN KEY `" + foreignKey + "`");
+            }
+            if (!primaryKeyIncludesCreatedAt(connection)) {
+                statement.execute("ALTER TABLE " + TABLE + " DROP PRIMARY KEY, ADD PRIMARY KEY (id, created_at)");
+            }
+
+            StringBuilder ddl = new StringBuilder("ALTER TABLE " + TABLE
+                    + " PARTITION BY RANGE COLUMNS(created_at) (");
+            for (YearMonth month = first; !month.isAfter(YearMonth.now().plusMonths(futureMonths));
+                    month = month.plusMonths(1)) {
+                ddl.append(partitionDefinition(month)).append(", ");
+            }
+            ddl.append("PARTITION ").append(MAX_PARTITION).append(" VALUES LESS THAN (MAXVALUE))");
+            statement.execute(ddl.toString());
+        }
+    }
+
+    /**
+     * Bảng có không quá autoConvertMaxRows dòng (đếm dừng ở ngưỡng để không quét cả bảng lớn)
+     */
+    private boolean isSmall(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT COUNT(*) FROM (SELECT 1 FROM " + TABLE
+                + " LIMIT ?) t")) {
+            ps.setLong(1, autoConvertMaxRows + 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getLong(1) <= autoConvertMaxRows;
+            }
+        }
+    }
+
+    private void createFuturePartitions(Connection connection) throws SQLException {
+        List<Partition> partitions = listPartitions(connection);
+        YearMonth last = partitions.stream()
+                .filter(partition -> partition.upperBound != null)
+                .map(partition -> YearMonth.from(partition.upperBound).minusMonths(1))
+                .max(YearMonth::compareTo)
+                .orElse(YearMonth.now().minusMonths(1));
+
+        List<String> definitions = new ArrayList<>();
+        for (YearMonth month = last.plusMonths(1); !month.isAfter(YearMonth.now().plusMonths(futureMonths));
+                month = month.plusMonths(1)) {
+            definitions.add(partitionDefinition(month));
+        }
+        if (definitions.isEmpty()) {
+            return;
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE " + TABLE + " REORGANIZE PARTITION " + MAX_PARTITION + " INTO ("
+                    + String.join(", ", definitions)
+                    + ", PARTITION " + MAX_PARTITION + " VALUES LESS THAN (MAXVALUE))");
+        }
+        log.info("Created {} new partitions for {}", definitions.size(), TABLE);
+    }
+
+    /**
+     * Drop các partition tháng kết thúc trước đầu tháng cutoff
+     *
+     * @return tổng số dòng (ước lượng) của các partition bị drop
+     */
+    private long dropPartitionsBefore(Connection connection, YearMonth cutoff) throws SQLException {
+        LocalDate boundary = cutoff.atDay(1);
+        List<Partition> expired = listPartitions(connection).stream()
+                .filter(partition -> partition.upperBound != null && !partition.upperBound.isAfter(boundary))
+                .toList();
+        if (expired.isEmpty()) {
+            return 0;
+        }
+
+        // Chỉ drop các partition đã archive xong; lỗi archive thì dừng ở partition đó.
+        // Partition thấp nhất chứa mọi dòng cũ hơn (convert() dồn cả lịch sử vào đó): archive từ MIN(created_at)
+        List<Partition> archived = new ArrayList<>();
+        LocalDateTime from = oldestBefore(connection, expired.get(0).upperBound.atStartOfDay());
+        for (Partition partition : expired) {
+            LocalDateTime to = partition.upperBound.atStartOfDay();
+            if (from != null && !archive(from, to)) {
+                break;
+            }
+            archived.add(partition);
+            from = to;
+        }
+        if (archived.isEmpty()) {
+            return 0;
+        }
+
+        long rows = archived.stream().mapToLong(partition -> partition.rows).sum();
+        List<String> names = archived.stream().map(partition -> partition.name).toList();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE " + TABLE + " DROP PARTITION " + String.join(", ", names));
+        }
+        log.info("Dropped expired {} partitions {} (~{} rows)", TABLE, names, rows);
+        return rows;
+    }
+
+    /**
+     * created_at nhỏ nhất trước upperBound, làm tròn xuống phút; null nếu không có dòng nào
+     */
+    private LocalDateTime oldestBefore(Connection connection, LocalDateTime upperBound) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT MIN(created_at) FROM " + TABLE
+                + " WHERE created_at < ?")) {
+            ps.setTimestamp(1, Timestamp.valueOf(upperBound));
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getTimestamp(1) != null
+                        ? rs.getTimestamp(1).toLocalDateTime().truncatedTo(ChronoUnit.MINUTES)
+                        : null;
+            }
+        }
+    }
+
+    private boolean archive(LocalDateTime from, LocalDateTime to) {
+        if (!archiveService.isEnabled()) {
+            return true;
+        }
+        try {
+            archiveService.archiveRange(from, to);
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to archive AI interactions [{} - {}), keeping them: {}", from, to, e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean isPartitioned(Connection connection) throws SQLException {
+        return !listPartitions(connection).isEmpty();
+    }
+
+    private List<Partition> listPartitions(Connection connection) throws SQLException {
+        List<Partition> partitions = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement("""
+                SELECT PARTITION_NAME, PARTITION_DESCRIPTION, TABLE_ROWS
+                FROM information_schema.PARTITIONS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL
+                ORDER BY PARTITION_ORDINAL_POSITION
+                """)) {
+            ps.setString(1, TABLE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    partitions.add(new Partition(rs.getString(1), parseBound(rs.getString(2)), rs.getLong(3)));
+                }
+            }
+        }
+        return partitions;
+    }
+
+    private List<String> foreignKeys(Connection connection) throws SQLException {
+        List<String> names = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement("""
+                SELECT CONSTRAINT_NAME FROM information_schema.TABLE_CONSTRAINTS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND CONSTRAINT_TYPE = 'FOREIGN KEY'
+                """)) {
+            ps.setString(1, TABLE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    names.add(rs.getString(1));
+                }
+            }
+        }
+        return names;
+    }
+
+    private boolean primaryKeyIncludesCreatedAt(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("""
+                SELECT COUNT(*) FROM information_schema.KEY_COLUMN_USAGE
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?
+                AND CONSTRAINT_NAME = 'PRIMARY' AND COLUMN_NAME = 'created_at'
+                """)) {
+            ps.setString(1, TABLE);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    /**
+     * Chạy trên một connection giữ MySQL named lock, để chỉ một instance bảo trì partition tại một thời điểm
+     */
+    private <T> T withLock(ConnectionCallback<T> action) {
+        return jdbcTemplate.execute((ConnectionCallback<T>) connection -> {
+            try (Statement statement = connection.createStatement();
+                    ResultSet rs = statement.executeQuery("SELECT GET_LOCK('" + LOCK_NAME + "', 0)")) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    log.info("Partition maintenance for {} is running elsewhere, skipping", TABLE);
+                    return null;
+                }
+            }
+            try {
+                return action.doInConnection(connection);
+            } finally {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SELECT RELEASE_LOCK('" + LOCK_NAME + "')");
+                }
+            }
+        });
+    }
+
+    private static String partitionDefinition(YearMonth month) {
+        return "PARTITION " + month.format(PARTITION_NAME) + " VALUES LESS THAN ('" + month.plusMonths(1).atDay(1)
+                + " 00:00:00')";
+    }
+
+    /**
+     * PARTITION_DESCRIPTION của RANGE COLUMNS có dạng '2026-11-01 00:00:00' hoặc MAXVALUE
+     */
+    private static LocalDate parseBound(String description) {
+        if (description == null || description.equalsIgnoreCase("MAXVALUE")) {
+            return null;
+        }
+        String value = description.replace("'", "").trim();
+        return LocalDate.parse(value.length() > 10 ? value.substring(0, 10) : value);
+    }
+
+    private static class Partition {
+        private final String name;
+        private final LocalDate upperBound;
+        private final long rows;
+
+        Partition(String name, LocalDate upperBound, long rows) {
+            this.name = name;
+            this.upperBound = upperBound;
+            this.rows = rows;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.smartcooking.ai.service;
+
+import com.smartcooking.ai.dto.AIInteractionRecord;
+import com.smartcooking.ai.dto.AIInteractionsWrittenEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * AI Interaction Rollup Service - duy trì hourly rollups
+ *
+ * Mỗi batch interactions vừa ghi được gom trong memory theo
+ * (giờ, type, ngôn ngữ) rồi cộng dồn vào ai_interaction_hourly_rollups bằng
+ * INSERT ... ON DUPLICATE KEY UPDATE, nên mỗi batch chỉ tốn vài câu upsert.
+ * rebuild() tính lại rollups từ ai_interactions khi cần (backfill, sửa lệch),
+ * chỉ cho các giờ đã đóng quá rebuild-settle-ms: writer async ghi trễ tối đa
+ * vài giây, nên không còn upsert nào chạy song song cho các bucket bị DELETE
+ * rồi INSERT ... SELECT lại (nếu có sẽ bị mất hoặc cộng hai lần).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AIInteractionRollupService {
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO ai_interaction_hourly_rollups (bucket_start, interaction_type, language,
+                interaction_count, success_count, latency_sum_ms, latency_count, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE
+                interaction_count = interaction_count + VALUES(interaction_count),
+                success_count = success_count + VALUES(success_count),
+                latency_sum_ms = latency_sum_ms + VALUES(latency_sum_ms),
+                latency_count = latency_count + VALUES(latency_count),
+                updated_at = VALUES(updated_at)
+            """;
+
+    private static final String DELETE_RANGE_SQL = """
+            DELETE FROM ai_interaction_hourly_rollups
+            WHERE bucket_start >= ? AND bucket_start < ?
+            """;
+
+    private static final String REBUILD_SQL = """
+            INSERT INTO ai_interaction_hourly_rollups (bucket_start, interaction_type, language,
+                interaction_count, success_count, latency_sum_ms, latency_count, updated_at)
+            SELECT DATE_FORMAT(created_at, '%Y-%m-%d %H:00:00'), interaction_type,
+                LEFT(COALESCE(user_language, 'unknown'), 10),
+                COUNT(*), SUM(CASE WHEN success = 0 THEN 0 ELSE 1 END),
+                COALESCE(SUM(processing_time_ms), 0), COUNT(processing_time_ms), NOW()
+            FROM ai_interactions
+            WHERE created_at >= ? AND created_at < ?
+            GROUP BY 1, 2, 3
+            """;
+
+    private static final int LANGUAGE_MAX_LENGTH = 10;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ai.analytics.rollup.enabled:true}")
+    private boolean enabled;
+
+    // Giờ chỉ được rebuild khi đã kết thúc lâu hơn khoảng này (lớn hơn độ trễ của writer async)
+    @Value("${ai.analytics.rollup.rebuild-settle-ms:300000}")
+    private long rebuildSettleMs;
+
+    private Counter upsertedCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    void init() {
+        upsertedCounter = meterRegistry.counter("ai.interaction.rollup.upserted");
+        failedCounter = meterRegistry.counter("ai.interaction.rollup.failed");
+    }
+
+    @EventListener
+    public void onInteractionsWritten(AIInteractionsWrittenEvent event) {
+        if (enabled) {
+            apply(event.getRecords());
+        }
+    }
+
+    /**
+     * Cộng dồn các interactions đã ghi vào rollups
+     */
+    public void apply(List<AIInteractionRecord> records) {
+        Map<BucketKey, Bucket> buckets = new HashMap<>();
+        for (AIInteractionRecord record : records) {
+            if (record.getInteractionType() == null) {
+                continue;
+            }
+            LocalDateTime createdAt = record.getCreatedAt() != null ? record.getCreatedAt() : LocalDateTime.now();
+            BucketKey key = new BucketKey(createdAt.truncatedTo(ChronoUnit.HOURS),
+                    record.getInteractionType().name(), language(record.getUserLanguage()));
+            buckets.computeIfAbsent(key, k -> new Bucket()).add(record);
+        }
+        if (buckets.isEmpty()) {
+            return;
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(buckets.size());
+        buckets.forEach((key, bucket) -> rows.add(new Object[] {
+                Timestamp.valueOf(key.bucketStart), key.type, key.language,
+                bucket.count, bucket.successCount, bucket.latencySumMs, bucket.latencyCount, now }));
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+            upsertedCounter.increment(rows.size());
+        } catch (Exception e) {
+            // Không retry: interaction đã nằm trong ai_interactions, rebuild() sẽ tính lại
+            failedCounter.increment(rows.size());
+            log.warn("Failed to update {} AI interaction rollup buckets: {}", rows.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Tính lại rollups của các giờ đã đóng (quá rebuild-settle-ms) trong N ngày gần nhất từ ai_interactions
+     *
+     * @return số bucket được ghi
+     */
+    @Transactional
+    public int rebuild(int days) {
+        LocalDateTime end = LocalDateTime.now().minus(rebuildSettleMs, ChronoUnit.MILLIS)
+                .truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime start = end.toLocalDate().minusDays(days).atStartOfDay();
+        log.info("Rebuilding AI interaction rollups from {} to {}", start, end);
+
+        Timestamp from = Timestamp.valueOf(start);
+        Timestamp to = Timestamp.valueOf(end);
+        jdbcTemplate.update(DELETE_RANGE_SQL, from, to);
+        return jdbcTemplate.update(REBUILD_SQL, from, to);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("upsertedBuckets", (long) upsertedCounter.count());
+        stats.put("failedBuckets", (long) failedCounter.count());
+        return stats;
+    }
+
+    private static String language(String language) {
+        if (language == null || language.isBlank()) {
+            return "unknown";
+        }
+        String trimmed = language.trim();
+        return trimmed.length() > LANGUAGE_MAX_LENGTH ? trimmed.substring(0, LANGUAGE_MAX_LENGTH) : trimmed;
+    }
+
+    private static class BucketKey {
+        private final LocalDateTime bucketStart;
+        private final String type;
+        private final String language;
+
+        BucketKey(LocalDateTime bucketStart, String type, String language) {
+            this.bucketStart = bucketStart;
+            this.type = type;
+            this.language = language;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BucketKey other)) {
+                return false;
+            }
+            return bucketStart.equals(other.bucketStart) && type.equals(other.type)
+                    && language.equals(other.language);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(bucketStart, type, language);
+        }
+    }
+
+    private static class Bucket {
+        private long count;
+        private long successCount;
+        private long latencySumMs;
+        private long latencyCount;
+
+        void add(AIInteractionRecord record) {
+            count++;
+            if (!Boolean.FALSE.equals(record.getSuccess())) {
+                successCount++;
+            }
+            if (record.getProcessingTimeMs() != null) {
+                latencySumMs += record.getProcessingTimeMs();
+                latencyCount++;
+            }
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package com.smartcooking.ai.service;
 
+import com.smartcooking.ai.dto.AIInteractionPayload;
+import com.smartcooking.ai.dto.AIInteractionRecord;
+import com.smartcooking.ai.dto.AIInteractionSummary;
+import com.smartcooking.ai.dto.AIInteractionsWrittenEvent;
 import com.smartcooking.ai.entity.AIInteraction;
-import com.smartcooking.ai.entity.User;
+import com.smartcooking.ai.entity.AIInteractionHourlyRollup;
+import com.smartcooking.ai.repository.AIInteractionHourlyRollupRepository;
 import com.smartcooking.ai.repository.AIInteractionRepository;
 import com.smartcooking.ai.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -20,30 +27,52 @@ public class AIInteractionService {
 
     private final AIInteractionRepository aiInteractionRepository;
     private final UserRepository userRepository;
-
-    public AIInteraction logInteraction(Long userId, AIInteraction.InteractionType type,
+    private final AIInteractionLogger interactionLogger;
+    private final AIInteractionHourlyRollupRepository rollupRepository;
+    private final AIInteractionRollupService rollupService;
+    private final AILatencyHistogramService latencyHistograms;
+    private final AIInteractionPartitionManager partitionManager;
+    private final AIInteractionArchiveService archiveService;
+    private final AIUserActivityTracker activityTracker;
+    private final AIUniqueUserCounter uniqueUserCounter;
+    private final AIPayloadCodec payloadCodec;
+    private final AIErrorFingerprintService errorFingerprints;
+    private final ApplicationEventPublisher eventPublisher;
+    private final com.fasterxml.jackson.databind.ObjectMapper objectMapper;
+
+    private static final List<String> LOOKER_EXPORT_COLUMNS = List.of(
+            "id", "date", "created_at", "user_id", "interaction_type", "language", "processing_time_ms", "success");
+
+    // Khoảng thời gian mặc định cho statistics không có tham số days
+    @Value("${ai.analytics.window-days:30}")
+    private int analyticsWindowDays;
+
+    /**
+     * Ghi interaction bất đồng bộ qua AIInteractionLogger (batch insert, không load User)
+     *
+     * @return true nếu interaction được nhận vào queue
+     */
+    public boolean logInteraction(Long userId, AIInteraction.InteractionType type,
             String inputData, String outputData,
             String language, Integer processingTimeMs) {
-        log.info("Logging AI interaction for user: {} type: {}", userId, type);
-
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found: " + userId));
+        log.debug("Logging AI interaction for user: {} type: {}", userId, type);
 
-        AIInteraction interaction = AIInteraction.builder()
-                .user(user)
+        AIInteractionRecord record = AIInteractionRecord.builder()
+                .userId(userId)
                 .interactionType(type)
                 .inputData(inputData)
                 .outputData(outputData)
                 .userLanguage(language != null ? language : "vi")
+                .responseLanguage(language != null ? language : "vi")
                 .processingTimeMs(processingTimeMs != null ? processingTimeMs : 0)
                 .build();
 
-        return aiInteractionRepository.save(interaction);
+        return interactionLogger.enqueue(record);
     }
 
     @Transactional(readOnly = true)
-    public List<AIInteraction> getInteractionsByUser(Long userId) {
-        return aiInteractionRepository.findByUserIdOrderByCreatedAtDesc(userId);
+    public List<AIInteractionSummary> getInteractionsByUser(Long userId) {
+        return aiInteractionRepository.findSummariesByUserId(userId);
     }
 
     @Transactional(readOnly = true)
@@ -51,9 +80,28 @@ public class AIInteractionService {
         return aiInteractionRepository.findById(id);
     }
 
+    /**
+     * Input/output của một interaction; list endpoints chỉ trả metadata
+     */
+    @Transactional(readOnly = true)
+    public Optional<AIInteractionPayload> getInteractionPayload(Long id) {
+        return aiInteractionRepository.findPayloadById(id);
+    }
+
     public AIInteraction createInteraction(AIInteraction interaction) {
         log.info("Creating AI interaction: {}", interaction.getInteractionType());
-        return aiInteractionRepository.save(interaction);
+        AIInteraction saved = aiInteractionRepository.save(interaction);
+        // Cùng transaction với insert: rollups không lệch nếu save bị rollback
+        eventPublisher.publishEvent(new AIInteractionsWrittenEvent(List.of(AIInteractionRecord.builder()
+                .userId(saved.getUser() != null ? saved.getUser().getId() : null)
+                .interactionType(saved.getInteractionType())
+                .userLanguage(saved.getUserLanguage())
+                .processingTimeMs(saved.getProcessingTimeMs())
+                .success(saved.getSuccess())
+                .errorMessage(saved.getErrorMessage())
+                .createdAt(saved.getCreatedAt())
+                .build())));
+        return saved;
     }
 
     @Transactional(readOnly = true)
@@ -63,36 +111,53 @@ public class AIInteractionService {
 
     // Thêm các method còn thiếu
     @Transactional(readOnly = true)
-    public List<AIInteraction> getInteractionsByUserId(Long userId) {
-        return aiInteractionRepository.findByUserIdOrderByCreatedAtDesc(userId);
+    public List<AIInteractionSummary> getInteractionsByUserId(Long userId) {
+        return aiInteractionRepository.findSummariesByUserId(userId);
     }
 
     @Transactional(readOnly = true)
-    public List<AIInteraction> getInteractionsByType(AIInteraction.InteractionType type) {
-        return aiInteractionRepository.findByInteractionTypeOrderByCreatedAtDesc(type);
+    public List<AIInteractionSummary> getInteractionsByType(AIInteraction.InteractionType type) {
+        return aiInteractionRepository.findSummariesByInteractionType(type);
     }
 
     @Transactional(readOnly = true)
-    public List<AIInteraction> getInteractionsByDateRange(java.time.LocalDate startDate, java.time.LocalDate endDate) {
+    public List<AIInteractionSummary> getInteractionsByDateRange(java.time.LocalDate startDate,
+            java.time.LocalDate endDate) {
         java.time.LocalDateTime start = startDate.atStartOfDay();
         java.time.LocalDateTime end = endDate.plusDays(1).atStartOfDay();
-        return aiInteractionRepository.findByCreatedAtBetweenOrderByCreatedAtDesc(start, end);
+        return aiInteractionRepository.findSummariesByCreatedAtRange(start, end);
     }
 
     @Transactional(readOnly = true)
-    public org.springframework.data.domain.Page<AIInteraction> getRecentInteractions(
+    public org.springframework.data.domain.Page<AIInteractionSummary> getRecentInteractions(
             org.springframework.data.domain.Pageable pageable) {
-        return aiInteractionRepository.findAllByOrderByCreatedAtDesc(pageable);
+        return aiInteractionRepository.findRecentSummaries(pageable);
     }
 
     @Transactional(readOnly = true)
-    public List<AIInteraction> getInteractionsByLanguage(String language) {
-        return aiInteractionRepository.findByUserLanguageOrderByCreatedAtDesc(language);
+    public List<AIInteractionSummary> getInteractionsByLanguage(String language) {
+        return aiInteractionRepository.findSummariesByUserLanguage(language);
     }
 
     @Transactional(readOnly = true)
-    public List<AIInteraction> getSlowInteractions(Long thresholdMs) {
-        return aiInteractionRepository.findByProcessingTimeMsGreaterThanOrderByProcessingTimeMsDesc(thresholdMs);
+    public List<AIInteractionSummary> getSlowInteractions(Long thresholdMs, int limit) {
+        int threshold = (int) Math.min(Integer.MAX_VALUE, Math.max(0L, thresholdMs != null ? thresholdMs : 0L));
+        return aiInteractionRepository.findSlowSummaries(threshold,
+                org.springframework.data.domain.PageRequest.of(0, Math.max(1, limit)));
+    }
+
+    @Transactional(readOnly = true)
+    public org.springframework.data.domain.Page<AIInteractionSummary> getRecentErrors(
+            org.springframework.data.domain.Pageable pageable) {
+        return aiInteractionRepository.findRecentErrors(pageable);
+    }
+
+    /**
+     * Train lại preset dictionary nén payload ngay (thay vì chờ lịch)
+     */
+    @Transactional(propagation = org.springframework.transaction.annotation.Propagation.NOT_SUPPORTED)
+    public java.util.Map<String, Object> trainPayloadDictionary() {
+        return payloadCodec.trainDictionary();
     }
 
     // Static nested classes cho statistics
@@ -213,11 +278,24 @@ public class AIInteractionService {
         private Double averageProcessingTime;
         private Long totalInteractions;
         private Double successRate;
+        private Long p50ProcessingTime;
+        private Long p95ProcessingTime;
+        private Long p99ProcessingTime;
+        private Long maxProcessingTime;
 
         public PerformanceStatistics(Double averageProcessingTime, Long totalInteractions, Double successRate) {
+            this(averageProcessingTime, totalInteractions, successRate, 0L, 0L, 0L, 0L);
+        }
+
+        public PerformanceStatistics(Double averageProcessingTime, Long totalInteractions, Double successRate,
+                Long p50ProcessingTime, Long p95ProcessingTime, Long p99ProcessingTime, Long maxProcessingTime) {
             this.averageProcessingTime = averageProcessingTime;
             this.totalInteractions = totalInteractions;
             this.successRate = successRate;
+            this.p50ProcessingTime = p50ProcessingTime;
+            this.p95ProcessingTime = p95ProcessingTime;
+            this.p99ProcessingTime = p99ProcessingTime;
+            this.maxProcessingTime = maxProcessingTime;
         }
 
         // Getters
@@ -232,6 +310,22 @@ public class AIInteractionService {
         public Double getSuccessRate() {
             return successRate;
         }
+
+        public Long getP50ProcessingTime() {
+            return p50ProcessingTime;
+        }
+
+        public Long getP95ProcessingTime() {
+            return p95ProcessingTime;
+        }
+
+        public Long getP99ProcessingTime() {
+            return p99ProcessingTime;
+        }
+
+        public Long getMaxProcessingTime() {
+            return maxProcessingTime;
+        }
     }
 
     public static class UserActivityStats {
@@ -266,9 +360,46 @@ public class AIInteractionService {
         }
     }
 
-    // Placeholder implementations cho các method analytics
+    /**
+     * Statistics theo ngày từ hourly rollups, uniqueUsers từ HyperLogLog theo ngày
+     */
+    @Transactional(readOnly = true)
     public List<DailyStatistics> getDailyStatistics(int days) {
-        return new java.util.ArrayList<>();
+        java.time.LocalDate firstDay = java.time.LocalDate.now().minusDays(Math.max(1, days) - 1L);
+        java.util.Map<java.time.LocalDate, java.util.Map<String, Long>> breakdowns = new java.util.TreeMap<>();
+        for (java.time.LocalDate day = firstDay; !day.isAfter(java.time.LocalDate.now()); day = day.plusDays(1)) {
+            breakdowns.put(day, new java.util.TreeMap<>());
+        }
+
+        for (AIInteractionHourlyRollup rollup : rollupRepository
+                .findByBucketStartGreaterThanEqualOrderByBucketStart(firstDay.atStartOfDay())) {
+            breakdowns.computeIfAbsent(rollup.getBucketStart().toLocalDate(), day -> new java.util.TreeMap<>())
+                    .merge(rollup.getInteractionType().name(), rollup.getInteractionCount(), Long::sum);
+        }
+
+        java.util.Map<java.time.LocalDate, Long> uniqueUsers = uniqueUserCounter.dailyUniqueUsers(firstDay,
+                java.time.LocalDate.now());
+        List<DailyStatistics> statistics = new java.util.ArrayList<>(breakdowns.size());
+        breakdowns.forEach((day, breakdown) -> statistics.add(new DailyStatistics(day,
+                breakdown.values().stream().mapToLong(Long::longValue).sum(), uniqueUsers.get(day), breakdown)));
+        return statistics;
+    }
+
+    /**
+     * Số user phân biệt trong N ngày gần nhất (tổng, theo type, theo ngôn ngữ),
+     * ước lượng bằng merge HyperLogLog theo ngày
+     */
+    public java.util.Map<String, Object> getUniqueUserStatistics(int days) {
+        java.time.LocalDate to = java.time.LocalDate.now();
+        java.time.LocalDate from = to.minusDays(Math.max(1, days) - 1L);
+        java.util.Map<String, Object> statistics = new java.util.LinkedHashMap<>();
+        statistics.put("from", from.toString());
+        statistics.put("to", to.toString());
+        statistics.put("uniqueUsers", uniqueUserCounter.countUniqueUsers(from, to));
+        statistics.put("byType", uniqueUserCounter.uniqueUsersByType(from, to));
+        statistics.put("byLanguage", uniqueUserCounter.uniqueUsersByLanguage(from, to));
+        statistics.put("standardError", uniqueUserCounter.getStandardError());
+        return statistics;
     }
 
     public UserStatistics getUserStatistics(Long userId) {
@@ -276,20 +407,98 @@ public class AIInteractionService {
         return new UserStatistics(userId, "User", 0L, "CHAT");
     }
 
+    /**
+     * Số lượng và thời gian xử lý trung bình theo type (window-days gần nhất)
+     */
+    @Transactional(readOnly = true)
     public List<TypeStatistics> getTypeStatistics() {
-        return new java.util.ArrayList<>();
+        List<TypeStatistics> statistics = new java.util.ArrayList<>();
+        for (Object[] row : rollupRepository.sumByType(analyticsWindowStart())) {
+            statistics.add(new TypeStatistics(((AIInteraction.InteractionType) row[0]).name(),
+                    toLong(row[1]), average(toLong(row[3]), toLong(row[4]))));
+        }
+        statistics.sort(java.util.Comparator.comparing(TypeStatistics::getCount).reversed());
+        return statistics;
     }
 
+    /**
+     * Phân bố ngôn ngữ (window-days gần nhất), percentage tính theo %
+     */
+    @Transactional(readOnly = true)
     public List<LanguageStatistics> getLanguageStatistics() {
-        return new java.util.ArrayList<>();
+        List<Object[]> rows = rollupRepository.sumByLanguage(analyticsWindowStart());
+        long total = rows.stream().mapToLong(row -> toLong(row[1])).sum();
+
+        List<LanguageStatistics> statistics = new java.util.ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            long count = toLong(row[1]);
+            statistics.add(new LanguageStatistics((String) row[0], count, percentage(count, total)));
+        }
+        return statistics;
     }
 
+    /**
+     * Thời gian xử lý trung bình, success rate (%) và p50/p95/p99 trong
+     * window-days gần nhất (percentiles từ latency histogram snapshots)
+     */
+    @Transactional(readOnly = true)
     public PerformanceStatistics getPerformanceStatistics() {
-        return new PerformanceStatistics(0.0, 0L, 0.0);
+        List<Object[]> rows = rollupRepository.sumTotals(analyticsWindowStart());
+        if (rows.isEmpty() || rows.get(0)[0] == null) {
+            return new PerformanceStatistics(0.0, 0L, 0.0);
+        }
+        Object[] totals = rows.get(0);
+        long count = toLong(totals[0]);
+        AILatencyHistogramService.LatencySummary latency = latencyHistograms.since(
+                AILatencyHistogramService.DIMENSION_ALL, AILatencyHistogramService.DIMENSION_ALL,
+                analyticsWindowStart());
+        return new PerformanceStatistics(average(toLong(totals[2]), toLong(totals[3])), count,
+                percentage(toLong(totals[1]), count), latency.getP50(), latency.getP95(), latency.getP99(),
+                latency.getMax());
+    }
+
+    /**
+     * Latency percentiles gần đây theo type / ngôn ngữ / replica (từ memory, không query database)
+     */
+    public java.util.Map<String, java.util.Map<String, java.util.Map<String, Object>>> getLatencyStatistics(
+            int minutes) {
+        java.util.Map<String, java.util.Map<String, java.util.Map<String, Object>>> result =
+                new java.util.LinkedHashMap<>();
+        latencyHistograms.recentByDimension(minutes).forEach((dimension, summaries) -> {
+            java.util.Map<String, java.util.Map<String, Object>> values = new java.util.LinkedHashMap<>();
+            summaries.forEach((value, summary) -> values.put(value, summary.toMap()));
+            result.put(dimension, values);
+        });
+        return result;
+    }
+
+    /**
+     * Tính lại hourly rollups từ ai_interactions
+     *
+     * @return số bucket được ghi
+     */
+    public int rebuildRollups(int days) {
+        return rollupService.rebuild(days);
     }
 
+    /**
+     * Top active users trong window của heavy-hitter sketch (số interaction là ước lượng)
+     */
+    @Transactional(readOnly = true)
     public List<UserActivityStats> getTopActiveUsers(int limit) {
-        return new java.util.ArrayList<>();
+        List<AIUserActivityTracker.UserActivityEstimate> top = activityTracker.topUsers(limit);
+        java.util.Map<Long, String> names = new java.util.HashMap<>();
+        userRepository.findAllById(top.stream().map(AIUserActivityTracker.UserActivityEstimate::getUserId).toList())
+                .forEach(user -> names.put(user.getId(),
+                        user.getFullName() != null ? user.getFullName() : user.getUsername()));
+        return top.stream()
+                .map(estimate -> new UserActivityStats(estimate.getUserId(), names.get(estimate.getUserId()),
+                        estimate.getCount(), estimate.getLastActivity()))
+                .toList();
+    }
+
+    public AIUserActivityTracker.UserActivityEstimate getUserActivityEstimate(Long userId) {
+        return activityTracker.estimate(userId);
     }
 
     public java.util.Map<String, Object> getEngagementMetrics(int days) {
@@ -304,24 +513,133 @@ public class AIInteractionService {
         return new java.util.HashMap<>();
     }
 
+    /**
+     * Top nhóm lỗi (fingerprint) trong N ngày gần nhất, đọc từ số lỗi theo giờ
+     */
+    @Transactional(readOnly = true)
     public java.util.Map<String, Object> getErrorAnalytics(int days) {
-        return new java.util.HashMap<>();
+        return getErrorAnalytics(days, 20);
+    }
+
+    @Transactional(readOnly = true)
+    public java.util.Map<String, Object> getErrorAnalytics(int days, int limit) {
+        long totalErrors = errorFingerprints.countErrors(days);
+        List<Object[]> totals = rollupRepository.sumTotals(
+                java.time.LocalDateTime.now().truncatedTo(java.time.temporal.ChronoUnit.HOURS).minusDays(days));
+        long totalInteractions = totals.isEmpty() || totals.get(0)[0] == null ? 0 : toLong(totals.get(0)[0]);
+
+        java.util.Map<String, Object> analytics = new java.util.LinkedHashMap<>();
+        analytics.put("days", days);
+        analytics.put("totalErrors", totalErrors);
+        analytics.put("totalInteractions", totalInteractions);
+        analytics.put("errorRate", percentage(totalErrors, totalInteractions));
+        analytics.put("errorsByType", errorFingerprints.countByType(days));
+        analytics.put("topErrorGroups", errorFingerprints.topGroups(days, limit));
+        return analytics;
     }
 
-    public java.util.Map<String, Object> exportForLookerStudio(int days) {
-        java.util.Map<String, Object> export = new java.util.HashMap<>();
-        export.put("status", "success");
-        export.put("days", days);
-        export.put("data", new java.util.ArrayList<>());
-        return export;
+    /**
+     * Tính lại nhóm lỗi theo giờ từ các dòng lỗi trong ai_interactions
+     *
+     * @return số interaction lỗi đã xử lý
+     */
+    @Transactional(propagation = org.springframework.transaction.annotation.Propagation.NOT_SUPPORTED)
+    public long rebuildErrorFingerprints(int days) {
+        return errorFingerprints.rebuild(days);
+    }
+
+    /**
+     * Export interactions (không có payload) của N ngày gần nhất cho Looker Studio,
+     * gồm cả phần đã archive; ghi từng dòng ra output nên không giới hạn số dòng
+     */
+    @Transactional(propagation = org.springframework.transaction.annotation.Propagation.NOT_SUPPORTED)
+    public long exportForLookerStudio(int days, java.io.OutputStream out,
+            com.smartcooking.ai.util.ExportWriter.Format format, boolean gzip) throws java.io.IOException {
+        try (com.smartcooking.ai.util.ExportWriter writer = new com.smartcooking.ai.util.ExportWriter(
+                out, format, LOOKER_EXPORT_COLUMNS, gzip, objectMapper)) {
+            archiveService.scanHistory(AIInteractionArchiveService.ArchiveQuery.builder()
+                    .from(java.time.LocalDate.now().minusDays(days).atStartOfDay())
+                    .build(), interaction -> {
+                        try {
+                            writer.write(toExportRow(interaction));
+                        } catch (java.io.IOException e) {
+                            throw new java.io.UncheckedIOException(e);
+                        }
+                    });
+            log.info("Exported {} AI interactions for last {} days", writer.getRowCount(), days);
+            return writer.getRowCount();
+        } catch (java.io.UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Scan lịch sử interactions (archive + MySQL) theo điều kiện
+     */
+    @Transactional(propagation = org.springframework.transaction.annotation.Propagation.NOT_SUPPORTED)
+    public List<com.smartcooking.ai.dto.ArchivedInteraction> scanHistory(
+            AIInteractionArchiveService.ArchiveQuery query) {
+        List<com.smartcooking.ai.dto.ArchivedInteraction> interactions = new java.util.ArrayList<>();
+        archiveService.scanHistory(query, interactions::add);
+        return interactions;
+    }
+
+    public List<java.util.Map<String, Object>> getArchiveFiles() {
+        return archiveService.getFiles();
+    }
+
+    private static java.util.Map<String, Object> toExportRow(com.smartcooking.ai.dto.ArchivedInteraction interaction) {
+        java.util.Map<String, Object> row = new java.util.LinkedHashMap<>();
+        row.put("id", interaction.getId());
+        row.put("date", interaction.getCreatedAt().toLocalDate().toString());
+        row.put("created_at", interaction.getCreatedAt().toString());
+        row.put("user_id", interaction.getUserId());
+        row.put("interaction_type", interaction.getInteractionType().name());
+        row.put("language", interaction.getUserLanguage());
+        row.put("processing_time_ms", interaction.getProcessingTimeMs());
+        row.put("success", interaction.getSuccess());
+        return row;
     }
 
     public java.util.Map<String, Object> getHealthMetrics() {
-        return new java.util.HashMap<>();
+        java.util.Map<String, Object> health = new java.util.HashMap<>();
+        health.put("status", "healthy");
+        health.put("loggingPipeline", interactionLogger.getStats());
+        health.put("rollups", rollupService.getStats());
+        health.put("heavyHitters", activityTracker.getStats());
+        health.put("uniqueUsers", uniqueUserCounter.getStats());
+        health.put("payloadCompression", payloadCodec.getStats());
+        health.put("errorFingerprints", errorFingerprints.getStats());
+        return health;
     }
 
-    public int cleanupOldInteractions(int daysOld) {
+    /**
+     * Xóa interactions cũ: drop partition tháng đã hết hạn, phần lẻ xóa theo chunk.
+     * Không chạy trong transaction chung để mỗi chunk commit riêng.
+     */
+    @Transactional(propagation = org.springframework.transaction.annotation.Propagation.NOT_SUPPORTED)
+    public long cleanupOldInteractions(int daysOld) {
         java.time.LocalDateTime cutoffDate = java.time.LocalDateTime.now().minusDays(daysOld);
-        return aiInteractionRepository.deleteByCreatedAtBefore(cutoffDate);
+        return partitionManager.purgeOlderThan(cutoffDate);
+    }
+
+    public List<java.util.Map<String, Object>> getPartitions() {
+        return partitionManager.getPartitions();
+    }
+
+    private java.time.LocalDateTime analyticsWindowStart() {
+        return java.time.LocalDate.now().minusDays(analyticsWindowDays).atStartOfDay();
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+
+    private static double average(long sum, long count) {
+        return count > 0 ? Math.round(sum * 100.0 / count) / 100.0 : 0.0;
+    }
+
+    private static double percentage(long part, long total) {
+        return total > 0 ? Math.round(part * 10000.0 / total) / 100.0 : 0.0;
     }
 }
@@ -0,0 +1,410 @@
+package com.smartcooking.ai.service;
+
+import com.smartcooking.ai.entity.AIInteraction;
+import com.smartcooking.ai.entity.AILatencySnapshot;
+import com.smartcooking.ai.repository.AILatencySnapshotRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+/**
+ * AI Latency Histograms - p50/p95/p99 của AI calls
+ *
+ * Mỗi series (tất cả calls, từng InteractionType, ngôn ngữ, replica) ghi
+ * latency vào một HdrHistogram Recorder (wait-free). Mỗi window-ms recorder
+ * được xoay sang ring buffer các window gần nhất (dùng cho gauges Actuator và
+ * /statistics/latency); mỗi snapshot-interval-ms phần tích lũy được lưu
+ * thành AILatencySnapshot để tính percentile cho khoảng thời gian dài.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AILatencyHistogramService {
+
+    public static final String DIMENSION_ALL = "all";
+    public static final String DIMENSION_TYPE = "type";
+    public static final String DIMENSION_LANGUAGE = "language";
+    public static final String DIMENSION_REPLICA = "replica";
+
+    private static final String OTHER_LANGUAGE = "other";
+    private static final double[] GAUGE_PERCENTILES = { 50.0, 95.0, 99.0 };
+
+    private final AILatencySnapshotRepository snapshotRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ai.latency.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.latency.highest-trackable-ms:300000}")
+    private long highestTrackableMs;
+
+    @Value("${ai.latency.significant-digits:2}")
+    private int significantDigits;
+
+    @Value("${ai.latency.window-count:15}")
+    private int windowCount;
+
+    // Số window gần nhất mà gauges Actuator tổng hợp
+    @Value("${ai.latency.gauge-windows:5}")
+    private int gaugeWindows;
+
+    @Value("${ai.latency.max-language-series:20}")
+    private int maxLanguageSeries;
+
+    @Value("${ai.latency.snapshot-retention-days:90}")
+    private int snapshotRetentionDays;
+
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+
+    /**
+     * Ghi latency end-to-end của một AI call theo type và ngôn ngữ
+     */
+    public void record(AIInteraction.InteractionType type, String language, long elapsedMs) {
+        if (!enabled) {
+            return;
+        }
+        series(DIMENSION_ALL, DIMENSION_ALL).record(elapsedMs);
+        series(DIMENSION_TYPE, type.name()).record(elapsedMs);
+        series(DIMENSION_LANGUAGE, languageSeries(language)).record(elapsedMs);
+    }
+
+    /**
+     * Ghi latency của một request tới một replica cụ thể
+     */
+    public void recordReplica(String replicaUrl, long elapsedMs) {
+        if (enabled) {
+            series(DIMENSION_REPLICA, replicaUrl).record(elapsedMs);
+        }
+    }
+
+    /**
+     * Percentiles của một series trong N phút gần nhất (từ các window trong memory)
+     */
+    public LatencySummary recent(String dimension, String value, int minutes) {
+        Series target = series.get(key(dimension, value));
+        if (target == null) {
+            return LatencySummary.of(newMergeHistogram());
+        }
+        long since = System.currentTimeMillis() - minutes * 60_000L;
+        return LatencySummary.of(target.windowsSince(since, newMergeHistogram()));
+    }
+
+    /**
+     * Percentiles của tất cả series trong N phút gần nhất, nhóm theo dimension
+     */
+    public Map<String, Map<String, LatencySummary>> recentByDimension(int minutes) {
+        long since = System.currentTimeMillis() - minutes * 60_000L;
+        Map<String, Map<String, LatencySummary>> result = new LinkedHashMap<>();
+        for (String dimension : List.of(DIMENSION_ALL, DIMENSION_TYPE, DIMENSION_LANGUAGE, DIMENSION_REPLICA)) {
+            result.put(dimension, new LinkedHashMap<>());
+        }
+        series.values().stream()
+                .sorted((a, b) -> a.value.compareTo(b.value))
+                .forEach(s -> result.get(s.dimension).put(s.value,
+                        LatencySummary.of(s.windowsSince(since, newMergeHistogram()))));
+        return result;
+    }
+
+    /**
+     * Percentiles của một series từ thời điểm since: cộng các snapshot đã lưu
+     * với phần chưa snapshot trong memory
+     */
+    @Transactional(readOnly = true)
+    public LatencySummary since(String dimension, String value, LocalDateTime since) {
+        Histogram merged = newMergeHistogram();
+        for (AILatencySnapshot snapshot : snapshotRepository
+                .findByDimensionAndDimensionValueAndWindowStartGreaterThanEqualOrderByWindowStart(
+                        dimension, value, since)) {
+            try {
+                merged.add(Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(snapshot.getHistogram()),
+                        highestTrackableMs));
+            } catch (DataFormatException e) {
+                log.warn("Corrupt latency snapshot {}: {}", snapshot.getId(), e.getMessage());
+            }
+        }
+        Series target = series.get(key(dimension, value));
+        if (target != null) {
+            target.addPending(merged);
+        }
+        return LatencySummary.of(merged);
+    }
+
+    /**
+     * Xoay recorder của mọi series sang window mới
+     */
+    @Scheduled(fixedRateString = "${ai.latency.window-ms:60000}")
+    public void rotate() {
+        long now = System.currentTimeMillis();
+        series.values().forEach(s -> s.rotate(now));
+    }
+
+    /**
+     * Lưu phần histogram tích lũy từ snapshot trước của mọi series
+     */
+    @Scheduled(fixedDelayString = "${ai.latency.snapshot-interval-ms:300000}",
+            initialDelayString = "${ai.latency.snapshot-interval-ms:300000}")
+    public void snapshot() {
+        List<AILatencySnapshot> snapshots = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (Series s : series.values()) {
+            PendingHistogram pending = s.takePending();
+            if (pending.histogram.getTotalCount() == 0) {
+                continue;
+            }
+            Histogram histogram = pending.histogram;
+            ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+            int length = histogram.encodeIntoCompressedByteBuffer(buffer, Deflater.BEST_SPEED);
+            snapshots.add(AILatencySnapshot.builder()
+                    .windowStart(LocalDateTime.ofInstant(Instant.ofEpochMilli(pending.since), ZoneId.systemDefault()))
+                    .windowEnd(now)
+                    .dimension(s.dimension)
+                    .dimensionValue(s.value)
+                    .sampleCount(histogram.getTotalCount())
+                    .p50Ms(histogram.getValueAtPercentile(50.0))
+                    .p95Ms(histogram.getValueAtPercentile(95.0))
+                    .p99Ms(histogram.getValueAtPercentile(99.0))
+                    .maxMs(histogram.getMaxValue())
+                    .histogram(Arrays.copyOf(buffer.array(), length))
+                    .build());
+        }
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        try {
+            snapshotRepository.saveAll(snapshots);
+            log.debug("Saved {} AI latency snapshots", snapshots.size());
+        } catch (Exception e) {
+            log.error("Failed to save {} AI latency snapshots: {}", snapshots.size(), e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "${ai.latency.snapshot-cleanup-cron:0 30 3 * * *}")
+    @Transactional
+    public void removeOldSnapshots() {
+        int deleted = snapshotRepository.deleteOlderThan(LocalDateTime.now().minusDays(snapshotRetentionDays));
+        if (deleted > 0) {
+            log.info("Removed {} AI latency snapshots older than {} days", deleted, snapshotRetentionDays);
+        }
+    }
+
+    @PreDestroy
+    void flush() {
+        rotate();
+        snapshot();
+    }
+
+    private Series series(String dimension, String value) {
+        return series.computeIfAbsent(key(dimension, value), k -> register(new Series(dimension, value)));
+    }
+
+    private Series register(Series created) {
+        for (double percentile : GAUGE_PERCENTILES) {
+            Gauge.builder("ai.interaction.latency", created, s -> s.gaugeValue(percentile))
+                    .description("AI call latency percentile over the last gauge windows")
+                    .baseUnit("milliseconds")
+                    .tag("dimension", created.dimension)
+                    .tag("value", created.value)
+                    .tag("quantile", String.valueOf(percentile / 100))
+                    .register(meterRegistry);
+        }
+        Gauge.builder("ai.interaction.latency.max", created, s -> s.gaugeValue(100.0))
+                .baseUnit("milliseconds")
+                .tag("dimension", created.dimension)
+                .tag("value", created.value)
+                .register(meterRegistry);
+        return created;
+    }
+
+    /**
+     * Giới hạn số series ngôn ngữ (giá trị do client gửi lên)
+     */
+    private String languageSeries(String language) {
+        String value = language != null && !language.isBlank() ? language.trim() : "unknown";
+        if (series.containsKey(key(DIMENSION_LANGUAGE, value))) {
+            return value;
+        }
+        long languageCount = series.values().stream().filter(s -> DIMENSION_LANGUAGE.equals(s.dimension)).count();
+        return languageCount < maxLanguageSeries && value.length() <= 10 ? value : OTHER_LANGUAGE;
+    }
+
+    private Histogram newMergeHistogram() {
+        // Auto-resize: snapshot cũ có thể được ghi với highest-trackable khác
+        Histogram histogram = new Histogram(significantDigits);
+        histogram.setAutoResize(true);
+        return histogram;
+    }
+
+    private static String key(String dimension, String value) {
+        return dimension + ":" + value;
+    }
+
+    /**
+     * Một series latency: recorder hiện tại, ring buffer các window đã xoay và
+     * phần tích lũy chưa snapshot
+     */
+    private class Series {
+        private final String dimension;
+        private final String value;
+        private final Recorder recorder = new Recorder(highestTrackableMs, significantDigits);
+        private final Histogram[] windows = new Histogram[windowCount];
+        private final long[] windowStarts = new long[windowCount];
+        private int head;
+        private long currentWindowStart = System.currentTimeMillis();
+        private Histogram pending = new Histogram(highestTrackableMs, significantDigits);
+        private long pendingSince = System.currentTimeMillis();
+        private volatile Histogram gaugeHistogram = new Histogram(highestTrackableMs, significantDigits);
+
+        Series(String dimension, String value) {
+            this.dimension = dimension;
+            this.value = value;
+        }
+
+        void record(long elapsedMs) {
+            recorder.recordValue(Math.max(0, Math.min(elapsedMs, highestTrackableMs)));
+        }
+
+        synchronized void rotate(long now) {
+            // Tái sử dụng histogram của window cũ nhất sắp bị ghi đè
+            Histogram interval = recorder.getIntervalHistogram(windows[head]);
+            windows[head] = interval;
+            windowStarts[head] = currentWindowStart;
+            head = (head + 1) % windows.length;
+            currentWindowStart = now;
+            pending.add(interval);
+
+            Histogram gauge = new Histogram(highestTrackableMs, significantDigits);
+            for (int i = 1; i <= Math.min(gaugeWindows, windows.length); i++) {
+                Histogram window = windows[(head - i + windows.length) % windows.length];
+                if (window != null) {
+                    gauge.add(window);
+                }
+            }
+            gaugeHistogram = gauge;
+        }
+
+        synchronized Histogram windowsSince(long since, Histogram target) {
+            for (int i = 0; i < windows.length; i++) {
+                if (windows[i] != null && windowStarts[i] >= since) {
+                    target.add(windows[i]);
+                }
+            }
+            return target;
+        }
+
+        synchronized void addPending(Histogram target) {
+            target.add(pending);
+        }
+
+        synchronized PendingHistogram takePending() {
+            PendingHistogram taken = new PendingHistogram(pending, pendingSince);
+            pending = new Histogram(highestTrackableMs, significantDigits);
+            pendingSince = currentWindowStart;
+            return taken;
+        }
+
+        double gaugeValue(double percentile) {
+            Histogram histogram = gaugeHistogram;
+            if (histogram.getTotalCount() == 0) {
+                return 0.0;
+            }
+            return percentile >= 100.0 ? histogram.getMaxValue() : histogram.getValueAtPercentile(percentile);
+        }
+    }
+
+    private static class PendingHistogram {
+        private final Histogram histogram;
+        private final long since;
+
+        PendingHistogram(Histogram histogram, long since) {
+            this.histogram = histogram;
+            this.since = since;
+        }
+    }
+
+    /**
+     * Tóm tắt một histogram (ms)
+     */
+    public static class LatencySummary {
+        private final long count;
+        private final double mean;
+        private final long p50;
+        private final long p95;
+        private final long p99;
+        private final long max;
+
+        LatencySummary(long count, double mean, long p50, long p95, long p99, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        static LatencySummary of(Histogram histogram) {
+            if (histogram.getTotalCount() == 0) {
+                return new LatencySummary(0, 0.0, 0, 0, 0, 0);
+            }
+            return new LatencySummary(histogram.getTotalCount(), Math.round(histogram.getMean() * 100.0) / 100.0,
+                    histogram.getValueAtPercentile(50.0), histogram.getValueAtPercentile(95.0),
+                    histogram.getValueAtPercentile(99.0), histogram.getMaxValue());
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP95() {
+            return p95;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("count", count);
+            map.put("mean", mean);
+            map.put("p50", p50);
+            map.put("p95", p95);
+            map.put("p99", p99);
+            map.put("max", max);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package com.smartcooking.ai.service;
+
+import com.smartcooking.ai.util.ColumnarEncoding;
+import com.smartcooking.ai.util.DictionaryTrainer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AI Payload Codec - nén input_data / output_data của ai_interactions
+ *
+ * Payload lưu trong cột MEDIUMBLOB. Dòng cũ (và payload ngắn) là UTF-8 thuần;
+ * payload nén bắt đầu bằng byte 0 (không xuất hiện ở đầu text), theo sau là
+ * codec, id dictionary, độ dài gốc và dữ liệu Deflate. Dictionary được train
+ * định kỳ từ payload gần đây và chỉ được dùng khi nén tốt hơn dictionary
+ * hiện tại trên tập payload kiểm tra. Bảng cũ có cột TEXT chỉ được đổi sang
+ * MEDIUMBLOB khi bật migrate-columns (migration chạy một lần); trước đó payload
+ * được ghi UTF-8 thuần, không nén.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AIPayloadCodec {
+
+    private static final byte MARKER = 0;
+    private static final byte CODEC_STORED = 0;
+    private static final byte CODEC_DEFLATE = 1;
+    private static final byte CODEC_DEFLATE_DICTIONARY = 2;
+
+    private static final String MIGRATION_LOCK = "ai_payload_columns_migration";
+    private static final String TRAINING_LOCK = "ai_payload_dictionary_training";
+    private static final String[] PAYLOAD_COLUMNS = { "input_data", "output_data" };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${ai.payload-compression.enabled:true}")
+    private boolean enabled;
+
+    // Migration một lần: ALTER TABLE copy toàn bảng ai_interactions, nên mặc định tắt
+    @Value("${ai.payload-compression.migrate-columns:false}")
+    private boolean migrateColumns;
+
+    @Value("${ai.payload-compression.level:6}")
+    private int level;
+
+    @Value("${ai.payload-compression.min-bytes:256}")
+    private int minBytes;
+
+    @Value("${ai.payload-compression.dictionary.enabled:true}")
+    private boolean dictionaryEnabled;
+
+    @Value("${ai.payload-compression.dictionary.size:32768}")
+    private int dictionarySize;
+
+    @Value("${ai.payload-compression.dictionary.segment-size:128}")
+    private int segmentSize;
+
+    @Value("${ai.payload-compression.dictionary.sample-rows:2000}")
+    private int sampleRows;
+
+    @Value("${ai.payload-compression.dictionary.min-improvement:0.05}")
+    private double minImprovement;
+
+    private final Map<Long, byte[]> dictionaries = new ConcurrentHashMap<>();
+    private volatile Long activeDictionaryId;
+    // false khi cột payload vẫn là TEXT (chưa migrate): chỉ ghi UTF-8 thuần
+    private volatile boolean binaryColumns;
+
+    private final AtomicLong encodedPayloads = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    /**
+     * Chạy trước AIInteractionLogger (phụ thuộc codec) để không ghi payload nén vào cột TEXT
+     */
+    @PostConstruct
+    public void initialize() {
+        try {
+            binaryColumns = ensureBinaryColumns();
+        } catch (Exception e) {
+            binaryColumns = false;
+            log.error("AI payload compression disabled, cannot prepare payload columns: {}", e.getMessage());
+        }
+        reloadDictionaries();
+    }
+
+    public byte[] encode(String text) {
+        if (text == null) {
+            return null;
+        }
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        if (!enabled || !binaryColumns || raw.length < minBytes) {
+            return raw.length > 0 && raw[0] == MARKER && binaryColumns ? stored(raw) : raw;
+        }
+
+        Long dictionaryId = activeDictionaryId;
+        byte[] dictionary = dictionaryId != null ? dictionaries.get(dictionaryId) : null;
+        byte[] compressed = ColumnarEncoding.deflate(raw, level, dictionary);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length + 12);
+        out.write(MARKER);
+        out.write(dictionary != null ? CODEC_DEFLATE_DICTIONARY : CODEC_DEFLATE);
+        if (dictionary != null) {
+            ColumnarEncoding.writeVarLong(out, dictionaryId);
+        }
+        ColumnarEncoding.writeVarLong(out, raw.length);
+        out.write(compressed, 0, compressed.length);
+
+        byte[] encoded = out.size() < raw.length ? out.toByteArray() : (raw[0] == MARKER ? stored(raw) : raw);
+        encodedPayloads.incrementAndGet();
+        rawBytes.addAndGet(raw.length);
+        storedBytes.addAndGet(encoded.length);
+        return encoded;
+    }
+
+    public String decode(byte[] value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.length == 0 || value[0] != MARKER) {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+        ByteBuffer in = ByteBuffer.wrap(value, 2, value.length - 2);
+        byte codec = value[1];
+        if (codec == CODEC_STORED) {
+            return new String(value, 2, value.length - 2, StandardCharsets.UTF_8);
+        }
+        byte[] dictionary = null;
+        if (codec == CODEC_DEFLATE_DICTIONARY) {
+            dictionary = dictionary(ColumnarEncoding.readVarLong(in));
+        } else if (codec != CODEC_DEFLATE) {
+            throw new IllegalStateException("Unknown payload codec: " + codec);
+        }
+        int rawLength = (int) ColumnarEncoding.readVarLong(in);
+        byte[] raw = ColumnarEncoding.inflate(value, in.position(), value.length - in.position(), rawLength,
+                dictionary);
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Train dictionary mới từ payload gần đây; chỉ kích hoạt nếu nén tốt hơn ít nhất min-improvement
+     *
+     * @return thông tin kết quả train
+     */
+    public Map<String, Object> trainDictionary() {
+        Map<String, Object> result = new HashMap<>();
+        if (!enabled || !dictionaryEnabled || !binaryColumns) {
+            result.put("status", "disabled");
+            return result;
+        }
+        Map<String, Object> trained = jdbcTemplate.execute((ConnectionCallback<Map<String, Object>>) connection -> {
+            if (!lock(connection, TRAINING_LOCK, 0)) {
+                return Map.of("status", "running-elsewhere");
+            }
+            try {
+                return train();
+            } finally {
+                unlock(connection, TRAINING_LOCK);
+            }
+        });
+        if (trained != null) {
+            result.putAll(trained);
+        }
+        return result;
+    }
+
+    @Scheduled(cron = "${ai.payload-compression.dictionary.train-cron:0 45 3 * * SUN}")
+    public void scheduledTraining() {
+        try {
+            Map<String, Object> result = trainDictionary();
+            log.info("AI payload dictionary training: {}", result);
+        } catch (Exception e) {
+            log.error("AI payload dictionary training failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Nạp dictionary mà node khác đã train; dictionary mới nhất được dùng để ghi
+     */
+    @Scheduled(fixedDelayString = "${ai.payload-compression.dictionary.refresh-interval-ms:300000}",
+            initialDelayString = "${ai.payload-compression.dictionary.refresh-interval-ms:300000}")
+    public void reloadDictionaries() {
+        if (!enabled || !binaryColumns) {
+            return;
+        }
+        long knownMax = dictionaries.keySet().stream().mapToLong(Long::longValue).max().orElse(0);
+        try {
+            jdbcTemplate.query("SELECT id, content FROM ai_payload_dictionaries WHERE id > ? ORDER BY id",
+                    rs -> {
+                        dictionaries.put(rs.getLong("id"), rs.getBytes("content"));
+                    }, knownMax);
+        } catch (DataAccessException e) {
+            // Bảng chưa được Hibernate tạo khi khởi động lần đầu
+            log.debug("Cannot load AI payload dictionaries: {}", e.getMessage());
+            return;
+        }
+        if (dictionaryEnabled) {
+            dictionaries.keySet().stream().max(Long::compare).ifPresent(id -> activeDictionaryId = id);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long raw = rawBytes.get();
+        stats.put("enabled", enabled && binaryColumns);
+        stats.put("activeDictionaryId", activeDictionaryId);
+        stats.put("encodedPayloads", encodedPayloads.get());
+        stats.put("rawBytes", raw);
+        stats.put("storedBytes", storedBytes.get());
+        stats.put("compressionRatio", raw > 0 ? Math.round(storedBytes.get() * 1000.0 / raw) / 1000.0 : null);
+        return stats;
+    }
+
+    private Map<String, Object> train() {
+        List<byte[]> samples = new ArrayList<>();
+        jdbcTemplate.query("SELECT input_data, output_data FROM ai_interactions ORDER BY id DESC LIMIT ?",
+                rs -> {
+                    for (String column : PAYLOAD_COLUMNS) {
+                        String text = decode(rs.getBytes(column));
+                        if (text != null && text.length() >= minBytes / 2) {
+                            samples.add(text.getBytes(StandardCharsets.UTF_8));
+                        }
+                    }
+                }, sampleRows);
+        if (samples.size() < 20) {
+            return Map.of("status", "not-enough-samples", "samples", samples.size());
+        }
+
+        // Mẫu xen kẽ: 9/10 để train, 1/10 để so sánh với dictionary hiện tại
+        List<byte[]> training = new ArrayList<>();
+        List<byte[]> evaluation = new ArrayList<>();
+        for (int i = 0; i < samples.size(); i++) {
+            (i % 10 == 0 ? evaluation : training).add(samples.get(i));
+        }
+        byte[] candidate = DictionaryTrainer.train(training, dictionarySize, segmentSize);
+        Long currentId = activeDictionaryId;
+        long rawSize = evaluation.stream().mapToLong(sample -> sample.length).sum();
+        long currentSize = compressedSize(evaluation, currentId != null ? dictionaries.get(currentId) : null);
+        long candidateSize = compressedSize(evaluation, candidate);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("samples", samples.size());
+        result.put("currentRatio", Math.round(currentSize * 1000.0 / rawSize) / 1000.0);
+        result.put("candidateRatio", Math.round(candidateSize * 1000.0 / rawSize) / 1000.0);
+        if (candidateSize > currentSize * (1 - minImprovement)) {
+            result.put("status", "kept-current");
+            result.put("dictionaryId", currentId);
+            return result;
+        }
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement("""
+                    INSERT INTO ai_payload_dictionaries (content, sample_count, compression_ratio, created_at)
+                    VALUES (?, ?, ?, ?)
+                    """, Statement.RETURN_GENERATED_KEYS);
+            ps.setBytes(1, candidate);
+            ps.setInt(2, training.size());
+            ps.setDouble(3, (double) candidateSize / rawSize);
+            ps.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
+            return ps;
+        }, keyHolder);
+        long id = keyHolder.getKey().longValue();
+        dictionaries.put(id, candidate);
+        activeDictionaryId = id;
+        result.put("status", "activated");
+        result.put("dictionaryId", id);
+        return result;
+    }
+
+    private long compressedSize(List<byte[]> samples, byte[] dictionary) {
+        long size = 0;
+        for (byte[] sample : samples) {
+            size += ColumnarEncoding.deflate(sample, level, dictionary).length;
+        }
+        return size;
+    }
+
+    private byte[] dictionary(long id) {
+        byte[] dictionary = dictionaries.get(id);
+        if (dictionary == null) {
+            // Dictionary do node khác train sau lần reload gần nhất
+            dictionary = jdbcTemplate.queryForObject("SELECT content FROM ai_payload_dictionaries WHERE id = ?",
+                    byte[].class, id);
+            dictionaries.put(id, dictionary);
+        }
+        return dictionary;
+    }
+
+    private static byte[] stored(byte[] raw) {
+        byte[] value = new byte[raw.length + 2];
+        value[0] = MARKER;
+        value[1] = CODEC_STORED;
+        System.arraycopy(raw, 0, value, 2, raw.length);
+        return value;
+    }
+
+    /**
+     * Đổi input_data / output_data từ TEXT sang MEDIUMBLOB (bytes UTF-8 giữ nguyên)
+     *
+     * @return true nếu cột payload là binary (hoặc bảng chưa tồn tại, Hibernate sẽ tạo MEDIUMBLOB)
+     */
+    private boolean ensureBinaryColumns() {
+        Boolean binary = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            if (!textColumns(connection)) {
+                return true;
+            }
+            if (!migrateColumns) {
+                log.warn("ai_interactions payload columns are TEXT and migrate-columns is disabled");
+                return false;
+            }
+            // Node khác đang migrate: không chờ, khởi động ở chế độ TEXT (restart sau khi migrate xong)
+            if (!lock(connection, MIGRATION_LOCK, 0)) {
+                log.info("ai_interactions payload columns are being migrated by another node, writing plain text");
+                return false;
+            }
+            try {
+                if (textColumns(connection)) {
+                    log.info("Converting ai_interactions payload columns to MEDIUMBLOB");
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute("ALTER TABLE ai_interactions MODIFY input_data MEDIUMBLOB, "
+                                + "MODIFY output_data MEDIUMBLOB");
+                    }
+                }
+                return true;
+            } finally {
+                unlock(connection, MIGRATION_LOCK);
+            }
+        });
+        return Boolean.TRUE.equals(binary);
+    }
+
+    private static boolean textColumns(java.sql.Connection connection) throws java.sql.SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("""
+                SELECT COUNT(*) FROM information_schema.COLUMNS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'ai_interactions'
+                AND COLUMN_NAME IN ('input_data', 'output_data') AND DATA_TYPE LIKE '%text'
+                """);
+                ResultSet rs = ps.executeQuery()) {
+            return rs.next() && rs.getInt(1) > 0;
+        }
+    }
+
+    private static boolean lock(java.sql.Connection connection, String name, int timeoutSeconds)
+            throws java.sql.SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            ps.setString(1, name);
+            ps.setInt(2, timeoutSeconds);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void unlock(java.sql.Connection connection, String name) throws java.sql.SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            ps.setString(1, name);
+            ps.execute();
+        }
+    }
+}
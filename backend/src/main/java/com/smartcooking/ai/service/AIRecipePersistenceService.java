@@ -0,0 +1,297 @@
+package com.smartcooking.ai.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.smartcooking.ai.dto.AIServiceResponse;
+import com.smartcooking.ai.entity.Recipe;
+import com.smartcooking.ai.util.PromptUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * AI Recipe Persistence Service
+ *
+ * Lưu recipe do /api/ai/generate-recipe tạo ra bằng
+ * RecipeService.findOrCreateAIGeneratedRecipe trong background, dedupe theo
+ * hash của prompt đã chuẩn hóa + model trong phạm vi recipe của user.
+ * recipe_id (nếu lưu xong trong await-ms) và prompt_hash được thêm vào "data"
+ * của response gốc; prompt đã có recipe (của user hoặc public, với model lưu
+ * cùng recipe) được trả về từ database thay vì gọi AI service lần nữa.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AIRecipePersistenceService {
+
+    private static final int MAX_TITLE_LENGTH = 200;
+
+    private final RecipeService recipeService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${ai.recipe-persistence.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.recipe-persistence.serve-stored:true}")
+    private boolean serveStored;
+
+    @Value("${ai.recipe-persistence.await-ms:300}")
+    private long awaitMs;
+
+    @Value("${ai.recipe-persistence.system-user-id:}")
+    private Long systemUserId;
+
+    @Value("${ai.recipe-persistence.default-model:gemini-pro}")
+    private String defaultModel;
+
+    @Value("${ai.recipe-persistence.default-cooking-time:30}")
+    private int defaultCookingTime;
+
+    @Value("${ai.recipe-persistence.workers:2}")
+    private int workers;
+
+    @Value("${ai.recipe-persistence.queue-capacity:100}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    // Lần lưu đang chạy theo user + prompt hash: request song song cùng prompt dùng chung một lần lưu
+    private final Map<String, CompletableFuture<Recipe>> saving = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("ai-recipe-persist-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Chuẩn hóa request generate-recipe thành prompt: nguyên liệu (đã sắp xếp),
+     * preferences (key đã sắp xếp) và ngôn ngữ
+     */
+    public GenerationPrompt describe(Map<String, Object> request) {
+        TreeSet<String> ingredients = new TreeSet<>();
+        if (request.get("ingredients") instanceof Collection<?> items) {
+            for (Object item : items) {
+                String normalized = PromptUtils.normalize(String.valueOf(item));
+                if (!normalized.isEmpty()) {
+                    ingredients.add(normalized);
+                }
+            }
+        }
+        Map<String, Object> preferences = new TreeMap<>();
+        if (request.get("preferences") instanceof Map<?, ?> map) {
+            map.forEach((key, value) -> preferences.put(String.valueOf(key), value));
+        }
+        String language = request.get("language") != null ? String.valueOf(request.get("language")) : "vi";
+
+        String text = "ingredients: " + String.join(", ", ingredients)
+                + "; preferences: " + toJson(preferences)
+                + "; language: " + language;
+        return new GenerationPrompt(text, language, request.get("ingredients"), preferences,
+                AIInteractionLogger.resolveUserId(request));
+    }
+
+    /**
+     * Recipe đã lưu cho prompt mà user được xem (của user hoặc public),
+     * dưới dạng response của AI service
+     *
+     * @return response, hoặc null nếu chưa có
+     */
+    public AIServiceResponse findStored(GenerationPrompt prompt) {
+        if (!enabled || !serveStored) {
+            return null;
+        }
+        Long userId = prompt.userId != null ? prompt.userId : systemUserId;
+        try {
+            Optional<Recipe> stored = recipeService.findAIGeneratedRecipeByPrompt(prompt.text, userId);
+            if (stored.isEmpty()) {
+                return null;
+            }
+            Recipe recipe = stored.get();
+            String text = "vi".equals(prompt.language) || recipe.getDescriptionEn() == null
+                    ? recipe.getDescriptionVi()
+                    : recipe.getDescriptionEn();
+            if (text == null) {
+                return null;
+            }
+
+            Map<String, Object> data = new HashMap<>();
+            data.put("recipe", text);
+            data.put("ingredients", prompt.ingredients);
+            data.put("language", prompt.language);
+            data.put("model", recipe.getAiModel());
+            data.put("recipe_id", recipe.getId());
+            data.put("prompt_hash", recipe.getAiPromptHash());
+            data.put("source", "stored");
+
+            Map<String, Object> body = new HashMap<>();
+            body.put("success", true);
+            body.put("data", data);
+            body.put("timestamp", LocalDateTime.now().toString());
+            return new AIServiceResponse(200, MediaType.APPLICATION_JSON, objectMapper.writeValueAsBytes(body),
+                    objectMapper);
+        } catch (Exception e) {
+            log.warn("Stored recipe lookup failed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Lưu recipe vừa generate trong background và thêm recipe_id / prompt_hash
+     * vào response. Không chờ quá await-ms; nếu chưa lưu xong chỉ trả prompt_hash
+     * (client tra lại qua /api/recipes/ai-generated/prompt/{hash}).
+     */
+    public AIServiceResponse persist(GenerationPrompt prompt, AIServiceResponse response) {
+        if (!enabled || !response.isSuccessful()) {
+            return response;
+        }
+        JsonNode data = response.json().path("data");
+        JsonNode generated = data.path("recipe");
+        Long userId = prompt.userId != null ? prompt.userId : systemUserId;
+        if (!data.isObject() || generated.isMissingNode() || generated.isNull() || userId == null) {
+            return response;
+        }
+
+        String model = data.path("model").asText(defaultModel);
+        String promptHash = PromptUtils.promptHash(prompt.text, model);
+        Recipe recipe = toRecipe(prompt, generated);
+
+        CompletableFuture<Recipe> saved;
+        try {
+            saved = save(recipe, userId, prompt.text, model, promptHash);
+        } catch (RejectedExecutionException e) {
+            log.warn("AI recipe persistence queue full, skipping prompt {}", promptHash);
+            return response;
+        }
+
+        Map<String, Object> extra = new HashMap<>();
+        extra.put("prompt_hash", promptHash);
+        try {
+            extra.put("recipe_id", saved.get(awaitMs, TimeUnit.MILLISECONDS).getId());
+        } catch (TimeoutException e) {
+            log.debug("AI recipe {} still being saved after {} ms", promptHash, awaitMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Failed to persist AI recipe {}: {}", promptHash, e.getCause().getMessage());
+            return response;
+        }
+        return withData(response, extra);
+    }
+
+    private CompletableFuture<Recipe> save(Recipe recipe, Long userId, String prompt, String model,
+            String promptHash) {
+        String key = userId + ":" + promptHash;
+        CompletableFuture<Recipe> saved = saving.computeIfAbsent(key, k -> CompletableFuture.supplyAsync(
+                () -> recipeService.findOrCreateAIGeneratedRecipe(recipe, userId, prompt, model), executor));
+        saved.whenComplete((result, error) -> saving.remove(key, saved));
+        return saved;
+    }
+
+    private Recipe toRecipe(GenerationPrompt prompt, JsonNode generated) {
+        String text = generated.isTextual() ? generated.asText() : generated.toString();
+        String title = generated.isObject() && generated.hasNonNull("title")
+                ? generated.get("title").asText()
+                : titleFromText(text);
+
+        Recipe recipe = Recipe.builder().build();
+        recipe.setTitleVi(title);
+        if ("vi".equals(prompt.language)) {
+            recipe.setDescriptionVi(text);
+        } else {
+            recipe.setTitleEn(title);
+            recipe.setDescriptionEn(text);
+        }
+        Object cookingTime = prompt.preferences.getOrDefault("cooking_time", prompt.preferences.get("cookingTime"));
+        recipe.setCookingTime(cookingTime instanceof Number n ? n.intValue() : defaultCookingTime);
+        // Recipe lưu tự động không xuất hiện trong danh sách public cho tới khi user publish
+        recipe.setIsPublic(false);
+        return recipe;
+    }
+
+    /**
+     * Dòng đầu tiên không rỗng của recipe text, bỏ ký hiệu markdown
+     */
+    private static String titleFromText(String text) {
+        for (String line : text.split("\\R")) {
+            String cleaned = line.replaceAll("^[#*\\-\\s]+|[*\\s:]+$", "");
+            if (!cleaned.isEmpty()) {
+                return cleaned.length() > MAX_TITLE_LENGTH ? cleaned.substring(0, MAX_TITLE_LENGTH) : cleaned;
+            }
+        }
+        return "Công thức AI";
+    }
+
+    private AIServiceResponse withData(AIServiceResponse response, Map<String, Object> extra) {
+        try {
+            ObjectNode root = response.json().deepCopy();
+            ObjectNode data = (ObjectNode) root.get("data");
+            extra.forEach((key, value) -> data.set(key, objectMapper.valueToTree(value)));
+            return new AIServiceResponse(response.getStatusCode(), response.getContentType(),
+                    objectMapper.writeValueAsBytes(root), objectMapper);
+        } catch (JsonProcessingException e) {
+            return response;
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            return String.valueOf(value);
+        }
+    }
+
+    /**
+     * Request generate-recipe đã chuẩn hóa
+     */
+    public static class GenerationPrompt {
+        private final String text;
+        private final String language;
+        private final Object ingredients;
+        private final Map<String, Object> preferences;
+        private final Long userId;
+
+        GenerationPrompt(String text, String language, Object ingredients, Map<String, Object> preferences,
+                Long userId) {
+            this.text = text;
+            this.language = language;
+            this.ingredients = ingredients;
+            this.preferences = preferences;
+            this.userId = userId;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+}
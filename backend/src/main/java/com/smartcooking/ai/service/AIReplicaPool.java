@@ -0,0 +1,278 @@
+package com.smartcooking.ai.service;
+
+import com.smartcooking.ai.entity.AIInteraction;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AI Replica Pool - danh sách các replica của AI service
+ *
+ * - Chọn replica theo least outstanding requests (hòa thì chọn ngẫu nhiên)
+ * - Probe /health định kỳ; replica lỗi liên tiếp bị loại khỏi rotation
+ * - Giữ cửa sổ latency theo interaction type để tính p95 cho hedging
+ * - Ghi latency từng replica vào AILatencyHistogramService
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AIReplicaPool {
+
+    private static final int LATENCY_WINDOW_SIZE = 512;
+
+    private final AILatencyHistogramService latencyHistograms;
+
+    @Value("${ai.service.url:http://localhost:8001}")
+    private String defaultUrl;
+
+    @Value("${ai.service.urls:}")
+    private String replicaUrls;
+
+    @Value("${ai.service.health.timeout-ms:2000}")
+    private int probeTimeoutMs;
+
+    @Value("${ai.service.health.failure-threshold:3}")
+    private int failureThreshold;
+
+    @Value("${ai.service.hedging.min-samples:20}")
+    private int hedgingMinSamples;
+
+    @Value("${ai.service.hedging.min-delay-ms:50}")
+    private long hedgingMinDelayMs;
+
+    @Value("${ai.service.hedging.max-ratio:0.1}")
+    private double hedgingMaxRatio;
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Map<AIInteraction.InteractionType, LatencyWindow> latencies =
+            new EnumMap<>(AIInteraction.InteractionType.class);
+    private final AtomicLong hedgeEligible = new AtomicLong();
+    private final AtomicLong hedgesSent = new AtomicLong();
+
+    private RestTemplate probeTemplate;
+
+    @PostConstruct
+    void init() {
+        List<String> urls = Arrays.stream(replicaUrls.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .toList();
+        for (String url : urls.isEmpty() ? List.of(defaultUrl) : urls) {
+            replicas.add(new Replica(url.endsWith("/") ? url.substring(0, url.length() - 1) : url));
+        }
+        for (AIInteraction.InteractionType type : AIInteraction.InteractionType.values()) {
+            latencies.put(type, new LatencyWindow());
+        }
+
+        SimpleClientHttpRequestFactory probeFactory = new SimpleClientHttpRequestFactory();
+        probeFactory.setConnectTimeout(probeTimeoutMs);
+        probeFactory.setReadTimeout(probeTimeoutMs);
+        probeTemplate = new RestTemplate(probeFactory);
+
+        log.info("AI replica pool: {}", replicas.stream().map(Replica::getUrl).toList());
+    }
+
+    /**
+     * Chọn replica healthy có ít request đang chạy nhất và tăng outstanding.
+     * Nếu không còn replica healthy thì chọn trong toàn bộ pool.
+     *
+     * @param exclude replica không được chọn (ví dụ primary khi hedge), có thể null
+     * @return replica, hoặc null nếu không còn replica nào khác exclude
+     */
+    public Replica acquire(Replica exclude) {
+        Replica chosen = leastOutstanding(exclude, true);
+        if (chosen == null) {
+            chosen = leastOutstanding(exclude, false);
+        }
+        if (chosen != null) {
+            chosen.outstanding.incrementAndGet();
+        }
+        return chosen;
+    }
+
+    /**
+     * Trả replica sau khi call kết thúc
+     *
+     * @param failed lỗi kết nối / 5xx, tính vào passive health check
+     */
+    public void release(Replica replica, AIInteraction.InteractionType type, long elapsedMs, boolean failed) {
+        replica.outstanding.decrementAndGet();
+        latencyHistograms.recordReplica(replica.url, elapsedMs);
+        if (failed) {
+            int failures = replica.consecutiveFailures.incrementAndGet();
+            if (failures >= failureThreshold && replica.healthy) {
+                replica.healthy = false;
+                log.warn("AI replica {} marked unhealthy after {} failures", replica.url, failures);
+            }
+        } else {
+            replica.consecutiveFailures.set(0);
+            latencies.get(type).record(elapsedMs);
+        }
+    }
+
+    /**
+     * Delay trước khi gửi hedged request: p95 latency của interaction type.
+     *
+     * @return delay (ms), hoặc -1 nếu chưa đủ sample, chỉ có một replica
+     *         hoặc đã vượt ngân sách hedging
+     */
+    public long hedgeDelayMs(AIInteraction.InteractionType type) {
+        long eligible = hedgeEligible.incrementAndGet();
+        if (replicas.size() < 2 || hedgesSent.get() > eligible * hedgingMaxRatio) {
+            return -1;
+        }
+        long p95 = latencies.get(type).percentile(0.95, hedgingMinSamples);
+        return p95 < 0 ? -1 : Math.max(hedgingMinDelayMs, p95);
+    }
+
+    public void recordHedge() {
+        hedgesSent.incrementAndGet();
+    }
+
+    /**
+     * Probe /health của tất cả replicas
+     */
+    @Scheduled(fixedDelayString = "${ai.service.health.interval-ms:10000}",
+            initialDelayString = "${ai.service.health.interval-ms:10000}")
+    public void probeAll() {
+        for (Replica replica : replicas) {
+            probe(replica);
+        }
+    }
+
+    /**
+     * Probe một replica, trả về HTTP status code (0 nếu không kết nối được)
+     */
+    public int probe(Replica replica) {
+        try {
+            ResponseEntity<String> response = probeTemplate.getForEntity(replica.url + "/health", String.class);
+            int status = response.getStatusCode().value();
+            markProbe(replica, response.getStatusCode().is2xxSuccessful(), null);
+            return status;
+        } catch (Exception e) {
+            markProbe(replica, false, e.getMessage());
+            return 0;
+        }
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Trạng thái pool cho health endpoint
+     */
+    public List<Map<String, Object>> getStatus() {
+        List<Map<String, Object>> status = new ArrayList<>();
+        for (Replica replica : replicas) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("url", replica.url);
+            item.put("healthy", replica.healthy);
+            item.put("outstanding", replica.outstanding.get());
+            item.put("consecutive_failures", replica.consecutiveFailures.get());
+            item.put("last_error", replica.lastError);
+            status.add(item);
+        }
+        return status;
+    }
+
+    private void markProbe(Replica replica, boolean success, String error) {
+        if (success) {
+            if (!replica.healthy) {
+                log.info("AI replica {} is healthy again", replica.url);
+            }
+            replica.healthy = true;
+            replica.consecutiveFailures.set(0);
+            replica.lastError = null;
+        } else {
+            if (replica.healthy) {
+                log.warn("AI replica {} failed health probe: {}", replica.url, error);
+            }
+            replica.healthy = false;
+            replica.lastError = error;
+        }
+    }
+
+    private Replica leastOutstanding(Replica exclude, boolean healthyOnly) {
+        Replica best = null;
+        int ties = 0;
+        for (Replica replica : replicas) {
+            if (replica == exclude || (healthyOnly && !replica.healthy)) {
+                continue;
+            }
+            int outstanding = replica.outstanding.get();
+            int bestOutstanding = best != null ? best.outstanding.get() : Integer.MAX_VALUE;
+            if (outstanding < bestOutstanding) {
+                best = replica;
+                ties = 1;
+            } else if (outstanding == bestOutstanding && ThreadLocalRandom.current().nextInt(++ties) == 0) {
+                // Reservoir sampling giữa các replica bằng nhau để không dồn vào replica đầu tiên
+                best = replica;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Một replica của AI service
+     */
+    public static class Replica {
+        private final String url;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile boolean healthy = true;
+        private volatile String lastError;
+
+        Replica(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+    }
+
+    /**
+     * Ring buffer các latency gần nhất
+     */
+    private static class LatencyWindow {
+        private final long[] samples = new long[LATENCY_WINDOW_SIZE];
+        private int count;
+        private int next;
+
+        synchronized void record(long elapsedMs) {
+            samples[next] = elapsedMs;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        synchronized long percentile(double quantile, int minSamples) {
+            if (count < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return sorted[Math.min(count - 1, (int) Math.ceil(quantile * count) - 1)];
+        }
+    }
+}
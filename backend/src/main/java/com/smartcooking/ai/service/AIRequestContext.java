@@ -0,0 +1,116 @@
+package com.smartcooking.ai.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.function.Supplier;
+
+/**
+ * AI Request Context - thông tin nhận diện client của AI request hiện tại
+ *
+ * Đọc từ servlet request (principal đã xác thực, header X-User-Id, X-API-Key,
+ * IP client) trên request thread. Code chạy ngoài request thread (lane của batch) nhận một bản chụp
+ * qua callWith() thay vì dùng RequestAttributes của request, vốn bị recycle
+ * ngay khi request kết thúc.
+ */
+public final class AIRequestContext {
+
+    public static final AIRequestContext NONE = new AIRequestContext(null, null, null, null);
+
+    private static final ThreadLocal<AIRequestContext> BOUND = new ThreadLocal<>();
+
+    private final String principal;
+    private final Long headerUserId;
+    private final String apiKey;
+    private final String remoteAddr;
+
+    private AIRequestContext(String principal, Long headerUserId, String apiKey, String remoteAddr) {
+        this.principal = principal;
+        this.headerUserId = headerUserId;
+        this.apiKey = apiKey;
+        this.remoteAddr = remoteAddr;
+    }
+
+    /**
+     * Context gắn với thread hiện tại (callWith), nếu không có thì đọc từ servlet request đang xử lý
+     */
+    public static AIRequestContext current() {
+        AIRequestContext bound = BOUND.get();
+        if (bound != null) {
+            return bound;
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes servletAttributes)) {
+            return NONE;
+        }
+        HttpServletRequest request = servletAttributes.getRequest();
+        String apiKey = request.getHeader(AIRequestScheduler.API_KEY_HEADER);
+        return new AIRequestContext(authenticatedPrincipal(),
+                parseLong(request.getHeader(AIInteractionLogger.USER_ID_HEADER)),
+                apiKey != null && !apiKey.isBlank() ? apiKey : null, request.getRemoteAddr());
+    }
+
+    private static String authenticatedPrincipal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication.getName();
+    }
+
+    /**
+     * Chạy action với context này gắn vào thread hiện tại
+     */
+    public <T> T callWith(Supplier<T> action) {
+        AIRequestContext previous = BOUND.get();
+        BOUND.set(this);
+        try {
+            return action.get();
+        } finally {
+            if (previous != null) {
+                BOUND.set(previous);
+            } else {
+                BOUND.remove();
+            }
+        }
+    }
+
+    /**
+     * Tên principal đã được Spring Security xác thực (null nếu request ẩn danh)
+     */
+    public String getPrincipal() {
+        return principal;
+    }
+
+    /**
+     * User id từ header X-User-Id (null nếu không có / không hợp lệ)
+     */
+    public Long getHeaderUserId() {
+        return headerUserId;
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    public String getRemoteAddr() {
+        return remoteAddr;
+    }
+
+    static Long parseLong(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.smartcooking.ai.service;
+
+import com.smartcooking.ai.entity.AIInteraction;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AI Request Scheduler - điều phối các call tới AI service
+ *
+ * - Mỗi tenant (principal đã xác thực, API key hoặc IP) có một token bucket
+ *   riêng; user id client tự khai (body user_id / X-User-Id) chỉ là sub-key
+ *   trong tenant để chia lượt công bằng, không tạo bucket mới
+ * - Khi upstream đã đủ max-concurrent call, request chờ trong hàng đợi
+ *   weighted fair queuing: finish tag = max(virtual time, finish tag trước đó
+ *   của tenant) + 1 / weight, weight phụ thuộc interaction type
+ * - Chat/voice/vision (interactive) được ưu tiên hơn nutrition/meal planning
+ * - Hết token, hàng đợi tenant đầy hoặc chờ quá lâu: RejectedException (429)
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AIRequestScheduler {
+
+    public static final String API_KEY_HEADER = "X-API-Key";
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ai.scheduler.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.scheduler.max-concurrent:16}")
+    private int maxConcurrent;
+
+    @Value("${ai.scheduler.queue-timeout-ms:5000}")
+    private long queueTimeoutMs;
+
+    @Value("${ai.scheduler.max-queue-per-tenant:10}")
+    private int maxQueuePerTenant;
+
+    @Value("${ai.scheduler.max-tenants:10000}")
+    private int maxTenants;
+
+    @Value("${ai.scheduler.bucket.capacity:30}")
+    private double bucketCapacity;
+
+    @Value("${ai.scheduler.bucket.refill-per-second:0.5}")
+    private double refillPerSecond;
+
+    @Value("${ai.scheduler.weight.interactive:4}")
+    private double interactiveWeight;
+
+    @Value("${ai.scheduler.weight.standard:2}")
+    private double standardWeight;
+
+    @Value("${ai.scheduler.weight.batch:1}")
+    private double batchWeight;
+
+    private final Map<String, TenantState> tenants = new HashMap<>();
+    private final PriorityQueue<Waiter> waiting = new PriorityQueue<>(
+            Comparator.comparingDouble((Waiter w) -> w.finishTag).thenComparingLong(w -> w.sequence));
+
+    private int inFlight;
+    private double virtualTime;
+    private long sequence;
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("ai.scheduler.in.flight", this, s -> s.snapshotInFlight()).register(meterRegistry);
+        Gauge.builder("ai.scheduler.queue.depth", this, s -> s.snapshotWaiting())
+                .description("AI requests waiting for an upstream slot")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Xin slot gọi AI service. Permit phải được close sau khi call kết thúc.
+     *
+     * @param requestBody request body, user_id trong đó là sub-key chia lượt trong tenant
+     */
+    public Permit acquire(AIInteraction.InteractionType type, Object requestBody) {
+        if (!enabled) {
+            return Permit.NOOP;
+        }
+
+        String tenant = resolveTenant();
+        String subTenant = resolveSubTenant(requestBody);
+        double weight = weightOf(type);
+        Waiter waiter;
+
+        synchronized (this) {
+            TenantState state = tenantState(tenant);
+            boolean admitNow = inFlight < maxConcurrent && waiting.isEmpty();
+            // Kiểm tra hàng đợi trước khi lấy token: request bị từ chối không tốn token
+            if (!admitNow && state.queued >= maxQueuePerTenant) {
+                throw reject(state, "queue_full", 1);
+            }
+            if (!state.tryConsume(bucketCapacity, refillPerSecond)) {
+                throw reject(state, "rate_limited", Math.max(1, (long) Math.ceil(1 / refillPerSecond)));
+            }
+
+            if (admitNow) {
+                inFlight++;
+                state.inFlight++;
+                return new Permit(this, state);
+            }
+
+            if (state.queued == 0) {
+                double now = virtualTime;
+                state.lastFinishTags.values().removeIf(tag -> tag <= now);
+            }
+            double start = Math.max(virtualTime, state.lastFinishTags.getOrDefault(subTenant, 0.0));
+            waiter = new Waiter(state, start + 1.0 / weight, sequence++);
+            state.lastFinishTags.put(subTenant, waiter.finishTag);
+            state.queued++;
+            waiting.add(waiter);
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs);
+            try {
+                while (!waiter.granted) {
+                    long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remainingMs <= 0) {
+                        break;
+                    }
+                    wait(remainingMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (!waiter.granted) {
+                waiting.remove(waiter);
+                state.queued--;
+                // Không được gọi upstream: trả lại token
+                state.refund(bucketCapacity);
+                throw reject(state, "queue_timeout", 1);
+            }
+            return new Permit(this, state);
+        }
+    }
+
+    /**
+     * Slot thêm cho cùng tenant của holder (request hedge): chỉ cấp khi còn
+     * slot trống và không có request nào đang chờ; không xếp hàng, không tốn token
+     *
+     * @return null nếu không có slot
+     */
+    public synchronized Permit tryAcquireAdditional(Permit holder) {
+        if (holder.scheduler == null) {
+            return Permit.NOOP;
+        }
+        if (inFlight >= maxConcurrent || !waiting.isEmpty()) {
+            return null;
+        }
+        inFlight++;
+        holder.state.inFlight++;
+        return new Permit(this, holder.state);
+    }
+
+    /**
+     * Snapshot trạng thái scheduler theo tenant (cho monitoring endpoint)
+     */
+    public synchronized Map<String, Object> getStats(int limit) {
+        List<TenantState> busiest = new ArrayList<>(tenants.values());
+        busiest.sort(Comparator.comparingInt((TenantState t) -> t.queued + t.inFlight).reversed()
+                .thenComparing(Comparator.comparingLong((TenantState t) -> t.rejected).reversed()));
+
+        List<Map<String, Object>> tenantStats = new ArrayList<>();
+        for (TenantState state : busiest.subList(0, Math.min(limit, busiest.size()))) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("tenant", state.tenant);
+            item.put("queued", state.queued);
+            item.put("inFlight", state.inFlight);
+            item.put("tokens", Math.floor(state.tokens));
+            item.put("admitted", state.admitted);
+            item.put("rejected", state.rejected);
+            tenantStats.add(item);
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("inFlight", inFlight);
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("queued", waiting.size());
+        stats.put("trackedTenants", tenants.size());
+        stats.put("tenants", tenantStats);
+        return stats;
+    }
+
+    private synchronized void release(TenantState state) {
+        inFlight--;
+        state.inFlight--;
+        dispatch();
+    }
+
+    private void dispatch() {
+        boolean granted = false;
+        while (inFlight < maxConcurrent && !waiting.isEmpty()) {
+            Waiter next = waiting.poll();
+            virtualTime = Math.max(virtualTime, next.finishTag);
+            next.granted = true;
+            next.state.queued--;
+            next.state.inFlight++;
+            inFlight++;
+            granted = true;
+        }
+        if (granted) {
+            notifyAll();
+        }
+    }
+
+    private TenantState tenantState(String tenant) {
+        TenantState state = tenants.get(tenant);
+        if (state == null) {
+            if (tenants.size() >= maxTenants) {
+                evictIdleTenants();
+            }
+            state = new TenantState(tenant, bucketCapacity);
+            tenants.put(tenant, state);
+        }
+        return state;
+    }
+
+    private void evictIdleTenants() {
+        long now = System.nanoTime();
+        Iterator<TenantState> iterator = tenants.values().iterator();
+        while (iterator.hasNext()) {
+            TenantState state = iterator.next();
+            state.refill(bucketCapacity, refillPerSecond, now);
+            if (state.queued == 0 && state.inFlight == 0 && state.tokens >= bucketCapacity) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private RejectedException reject(TenantState state, String reason, long retryAfterSeconds) {
+        state.rejected++;
+        meterRegistry.counter("ai.scheduler.rejected", "reason", reason).increment();
+        log.warn("AI request from {} rejected: {}", state.tenant, reason);
+        return new RejectedException(reason, retryAfterSeconds);
+    }
+
+    private double weightOf(AIInteraction.InteractionType type) {
+        return switch (type) {
+            case CHAT, VOICE_STT, VOICE_TTS, IMAGE_RECOGNITION -> interactiveWeight;
+            case RECIPE_GENERATION, INGREDIENT_SUGGESTION, LEARNING_PATH -> standardWeight;
+            case NUTRITION_ANALYSIS, MEAL_PLANNING -> batchWeight;
+        };
+    }
+
+    /**
+     * Tenant = principal đã xác thực, nếu không có thì API key, cuối cùng là IP client.
+     * Không dùng user id client tự khai: đổi id liên tục sẽ vượt được giới hạn.
+     */
+    static String resolveTenant() {
+        AIRequestContext context = AIRequestContext.current();
+        if (context.getPrincipal() != null) {
+            return "principal:" + context.getPrincipal();
+        }
+        if (context.getApiKey() != null) {
+            return "key:" + Integer.toHexString(context.getApiKey().hashCode());
+        }
+        if (context.getRemoteAddr() != null) {
+            return "ip:" + context.getRemoteAddr();
+        }
+        return "anonymous";
+    }
+
+    /**
+     * Sub-key trong tenant: user id từ body / header X-User-Id, "" nếu không có
+     */
+    static String resolveSubTenant(Object requestBody) {
+        Long userId = AIInteractionLogger.resolveUserId(requestBody);
+        return userId != null ? "user:" + userId : "";
+    }
+
+    private synchronized int snapshotInFlight() {
+        return inFlight;
+    }
+
+    private synchronized int snapshotWaiting() {
+        return waiting.size();
+    }
+
+    /**
+     * Slot đã được cấp, close để trả lại
+     */
+    public static class Permit implements AutoCloseable {
+        static final Permit NOOP = new Permit(null, null);
+
+        private final AIRequestScheduler scheduler;
+        private final TenantState state;
+        private boolean released;
+
+        Permit(AIRequestScheduler scheduler, TenantState state) {
+            this.scheduler = scheduler;
+            this.state = state;
+            if (state != null) {
+                state.admitted++;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (scheduler != null && !released) {
+                released = true;
+                scheduler.release(state);
+            }
+        }
+    }
+
+    /**
+     * Request bị từ chối (trả về HTTP 429)
+     */
+    public static class RejectedException extends RuntimeException {
+        private final String reason;
+        private final long retryAfterSeconds;
+
+        public RejectedException(String reason, long retryAfterSeconds) {
+            super("AI request rejected: " + reason);
+            this.reason = reason;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+
+    private static class TenantState {
+        private final String tenant;
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+        // finish tag cuối theo sub-key (chỉ giữ khi còn lớn hơn virtual time)
+        private final Map<String, Double> lastFinishTags = new HashMap<>();
+        private int queued;
+        private int inFlight;
+        private long admitted;
+        private long rejected;
+
+        TenantState(String tenant, double capacity) {
+            this.tenant = tenant;
+            this.tokens = capacity;
+        }
+
+        boolean tryConsume(double capacity, double refillPerSecond) {
+            refill(capacity, refillPerSecond, System.nanoTime());
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        void refund(double capacity) {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+
+        void refill(double capacity, double refillPerSecond, long now) {
+            double elapsedSeconds = (now - lastRefillNanos) / 1_000_000_000.0;
+            tokens = Math.min(capacity, tokens + elapsedSeconds * refillPerSecond);
+            lastRefillNanos = now;
+        }
+    }
+
+    private static class Waiter {
+        private final TenantState state;
+        private final double finishTag;
+        private final long sequence;
+        private boolean granted;
+
+        Waiter(TenantState state, double finishTag, long sequence) {
+            this.state = state;
+            this.finishTag = finishTag;
+            this.sequence = sequence;
+        }
+    }
+}
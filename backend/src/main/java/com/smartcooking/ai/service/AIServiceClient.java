@@ -0,0 +1,489 @@
+package com.smartcooking.ai.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartcooking.ai.dto.AIServiceResponse;
+import com.smartcooking.ai.entity.AIInteraction;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * AI Service Client - gọi upstream AI Service (FastAPI)
+ *
+ * Response được đọc dưới dạng bytes và relay nguyên vẹn cho client
+ * (passthrough), tránh parse JSON thành Map rồi serialize lại.
+ * Mọi call đều được ghi lại qua AIInteractionLogger (thời gian xử lý, lỗi)
+ * và phải xin slot từ AIRequestScheduler trước khi gửi đi. Replica được chọn
+ * qua AIReplicaPool; call idempotent (mặc định nutrition analysis) được hedge
+ * sang replica thứ hai nếu chưa xong sau p95 latency.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AIServiceClient {
+
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+    private final AIInteractionLogger interactionLogger;
+    private final AIRequestScheduler requestScheduler;
+    private final AIReplicaPool replicaPool;
+
+    @Value("${ai.service.passthrough-enabled:true}")
+    private boolean passthroughEnabled;
+
+    @Value("${ai.service.timeout-ms:30000}")
+    private int timeoutMs;
+
+    @Value("${ai.service.hedging.enabled:true}")
+    private boolean hedgingEnabled;
+
+    @Value("${ai.service.hedging.types:NUTRITION_ANALYSIS}")
+    private List<AIInteraction.InteractionType> hedgedTypes;
+
+    @Value("${ai.service.hedging.workers:16}")
+    private int hedgingWorkers;
+
+    @Value("${ai.service.upload.max-bytes:10485760}")
+    private long maxUploadBytes;
+
+    @Value("${ai.service.upload.buffer-size:65536}")
+    private int uploadBufferSize;
+
+    @Value("${ai.service.upload.buffer-pool-size:16}")
+    private int uploadBufferPoolSize;
+
+    private SimpleClientHttpRequestFactory streamingRequestFactory;
+    private BlockingQueue<byte[]> uploadBuffers;
+    private ThreadPoolExecutor hedgingExecutor;
+
+    @PostConstruct
+    void initStreaming() {
+        // Không buffer request body: upload được ghi thẳng ra socket theo từng chunk
+        streamingRequestFactory = new SimpleClientHttpRequestFactory();
+        streamingRequestFactory.setBufferRequestBody(false);
+        streamingRequestFactory.setConnectTimeout(timeoutMs);
+        streamingRequestFactory.setReadTimeout(timeoutMs);
+        uploadBuffers = new ArrayBlockingQueue<>(Math.max(1, uploadBufferPoolSize));
+
+        // Không có queue: pool đầy thì gọi trực tiếp, không hedge
+        hedgingExecutor = new ThreadPoolExecutor(hedgingWorkers, hedgingWorkers, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), new CustomizableThreadFactory("ai-hedge-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        hedgingExecutor.shutdownNow();
+    }
+
+    /**
+     * POST JSON tới AI service, trả về raw response
+     */
+    public AIServiceResponse postJson(AIInteraction.InteractionType type, String path, Object body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+
+        return exchange(type, path, new HttpEntity<>(body, headers), body);
+    }
+
+    /**
+     * POST multipart/form-data tới AI service, trả về raw response
+     */
+    public AIServiceResponse postMultipart(AIInteraction.InteractionType type, String path,
+            MultiValueMap<String, Object> parts) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+
+        return exchange(type, path, new HttpEntity<>(parts, headers), describeParts(parts));
+    }
+
+    /**
+     * POST một file nhỏ đã có sẵn trong memory (ví dụ ảnh đã thu nhỏ)
+     */
+    public AIServiceResponse postFile(AIInteraction.InteractionType type, String path, String partName,
+            String filename, byte[] content) {
+        LinkedMultiValueMap<String, Object> parts = new LinkedMultiValueMap<>();
+        parts.add(partName, new ByteArrayResource(content) {
+            @Override
+            public String getFilename() {
+                return filename;
+            }
+        });
+        return postMultipart(type, path, parts);
+    }
+
+    /**
+     * Stream một file upload tới AI service dưới dạng multipart/form-data.
+     *
+     * File được đọc từ part đã spool của servlet container và copy qua một
+     * direct buffer dùng chung, không bao giờ nằm trọn trong heap. Giới hạn
+     * kích thước được kiểm tra trong lúc copy.
+     */
+    public AIServiceResponse streamMultipart(AIInteraction.InteractionType type, String path, String partName,
+            MultipartFile file, Map<String, String> fields) throws IOException {
+        String description = partName + "=" + file.getOriginalFilename() + " (" + file.getSize() + " bytes)";
+        long startTime = System.currentTimeMillis();
+        try (AIRequestScheduler.Permit permit = requestScheduler.acquire(type, fields)) {
+            AIServiceResponse response = streamToReplica(type, path, partName, file, fields);
+            interactionLogger.recordCall(type, description, response, null, System.currentTimeMillis() - startTime);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            interactionLogger.recordCall(type, description, null, e, System.currentTimeMillis() - startTime);
+            throw e;
+        }
+    }
+
+    private AIServiceResponse streamToReplica(AIInteraction.InteractionType type, String path, String partName,
+            MultipartFile file, Map<String, String> fields) throws IOException {
+        if (file.getSize() > maxUploadBytes) {
+            throw new MaxUploadSizeExceededException(maxUploadBytes);
+        }
+
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        byte[] preamble = multipartPreamble(boundary, partName, file, fields);
+        byte[] epilogue = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        AIReplicaPool.Replica replica = replicaPool.acquire(null);
+        long startTime = System.currentTimeMillis();
+        boolean failed = false;
+        try {
+            return streamTo(replica, path, partName, file, fields, boundary, preamble, epilogue);
+        } catch (IOException | HttpServerErrorException e) {
+            failed = true;
+            throw e;
+        } finally {
+            replicaPool.release(replica, type, System.currentTimeMillis() - startTime, failed);
+        }
+    }
+
+    private AIServiceResponse streamTo(AIReplicaPool.Replica replica, String path, String partName,
+            MultipartFile file, Map<String, String> fields, String boundary, byte[] preamble, byte[] epilogue)
+            throws IOException {
+        ClientHttpRequest request = streamingRequestFactory.createRequest(URI.create(replica.getUrl() + path),
+                HttpMethod.POST);
+        request.getHeaders().setContentType(MediaType.parseMediaType("multipart/form-data; boundary=" + boundary));
+        request.getHeaders().setContentLength(preamble.length + file.getSize() + epilogue.length);
+        request.getHeaders().setAccept(List.of(MediaType.APPLICATION_JSON));
+
+        OutputStream body = request.getBody();
+        try {
+            body.write(preamble);
+            try (InputStream in = file.getInputStream()) {
+                long copied = copyThroughPooledBuffer(in, body, maxUploadBytes);
+                if (copied != file.getSize()) {
+                    throw new IOException("Upload size changed while streaming: " + copied + " != " + file.getSize());
+                }
+            }
+            body.write(epilogue);
+        } catch (IOException | RuntimeException e) {
+            abortUpload(body);
+            throw e;
+        }
+
+        try (ClientHttpResponse response = request.execute()) {
+            int status = response.getStatusCode().value();
+            byte[] responseBody = StreamUtils.copyToByteArray(response.getBody());
+            if (status >= 500) {
+                throw new HttpServerErrorException(response.getStatusCode(),
+                        "AI service " + path + " responded " + status);
+            }
+            if (status < 200 || status >= 300) {
+                throw new RestClientException("AI service " + path + " responded " + status);
+            }
+            log.debug("AI service {} responded {} ({} bytes, streamed {} bytes)", path, status,
+                    responseBody.length, file.getSize());
+            return new AIServiceResponse(status, response.getHeaders().getContentType(), responseBody,
+                    objectMapper);
+        }
+    }
+
+    /**
+     * Chuyển upstream response thành response cho client.
+     * Passthrough mode relay bytes nguyên vẹn; legacy mode parse thành Map.
+     */
+    public ResponseEntity<?> relay(AIServiceResponse response) {
+        if (passthroughEnabled) {
+            return response.toResponseEntity();
+        }
+        return ResponseEntity.ok(response.asMap());
+    }
+
+    /**
+     * Ghi lại response được phục vụ local (cache...) mà không gọi upstream
+     */
+    public AIServiceResponse recordLocalHit(AIInteraction.InteractionType type, Object request,
+            AIServiceResponse response, long elapsedMs) {
+        interactionLogger.recordCall(type, request, response, null, elapsedMs);
+        return response;
+    }
+
+    /**
+     * Health check của AI service: probe tất cả replicas, trả về HTTP status
+     * code của replica healthy đầu tiên (hoặc của replica cuối nếu tất cả lỗi)
+     */
+    public int checkHealth() {
+        int status = 0;
+        for (AIReplicaPool.Replica replica : replicaPool.getReplicas()) {
+            status = replicaPool.probe(replica);
+            if (status >= 200 && status < 300) {
+                return status;
+            }
+        }
+        throw new RestClientException("No healthy AI service replica (last status " + status + ")");
+    }
+
+    public String getBaseUrl() {
+        return replicaPool.getReplicas().get(0).getUrl();
+    }
+
+    public List<Map<String, Object>> getReplicaStatus() {
+        return replicaPool.getStatus();
+    }
+
+    private AIServiceResponse exchange(AIInteraction.InteractionType type, String path, HttpEntity<?> requestEntity,
+            Object loggedRequest) {
+        long startTime = System.currentTimeMillis();
+        try (AIRequestScheduler.Permit permit = requestScheduler.acquire(type, loggedRequest)) {
+            AIServiceResponse aiResponse = hedgingEnabled && hedgedTypes.contains(type)
+                    ? hedgedPost(type, path, requestEntity, permit)
+                    : post(replicaPool.acquire(null), type, path, requestEntity);
+
+            log.debug("AI service {} responded {} ({} bytes)", path, aiResponse.getStatusCode(),
+                    aiResponse.getContentLength());
+            interactionLogger.recordCall(type, loggedRequest, aiResponse, null,
+                    System.currentTimeMillis() - startTime);
+            return aiResponse;
+        } catch (RuntimeException e) {
+            interactionLogger.recordCall(type, loggedRequest, null, e, System.currentTimeMillis() - startTime);
+            throw e;
+        }
+    }
+
+    /**
+     * Gửi request tới primary replica; nếu sau p95 latency vẫn chưa xong thì
+     * gửi thêm một bản tới replica khác và lấy response nào về trước.
+     * Request thua không bị hủy (RestTemplate không interrupt được blocking IO).
+     * Bản hedge giữ một permit riêng của scheduler tới khi nó kết thúc; không
+     * có slot trống thì không hedge.
+     */
+    private AIServiceResponse hedgedPost(AIInteraction.InteractionType type, String path,
+            HttpEntity<?> requestEntity, AIRequestScheduler.Permit permit) {
+        long hedgeDelayMs = replicaPool.hedgeDelayMs(type);
+        AIReplicaPool.Replica primaryReplica = replicaPool.acquire(null);
+        if (hedgeDelayMs < 0) {
+            return post(primaryReplica, type, path, requestEntity);
+        }
+
+        CompletableFuture<AIServiceResponse> primary;
+        try {
+            primary = CompletableFuture.supplyAsync(() -> post(primaryReplica, type, path, requestEntity),
+                    hedgingExecutor);
+        } catch (RejectedExecutionException e) {
+            return post(primaryReplica, type, path, requestEntity);
+        }
+
+        try {
+            return primary.get(hedgeDelayMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Primary chậm hơn p95: hedge
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RestClientException("Interrupted while waiting for AI service", e);
+        } catch (ExecutionException e) {
+            return await(primary);
+        }
+
+        AIRequestScheduler.Permit backupPermit = requestScheduler.tryAcquireAdditional(permit);
+        if (backupPermit == null) {
+            return await(primary);
+        }
+        AIReplicaPool.Replica backupReplica = replicaPool.acquire(primaryReplica);
+        if (backupReplica == null) {
+            backupPermit.close();
+            return await(primary);
+        }
+
+        CompletableFuture<AIServiceResponse> backup;
+        try {
+            backup = CompletableFuture.supplyAsync(() -> post(backupReplica, type, path, requestEntity),
+                    hedgingExecutor);
+        } catch (RejectedExecutionException e) {
+            replicaPool.release(backupReplica, type, 0, false);
+            backupPermit.close();
+            return await(primary);
+        }
+        // Slot của bản hedge được trả khi chính nó kết thúc, kể cả khi primary thắng
+        backup.whenComplete((response, error) -> backupPermit.close());
+        replicaPool.recordHedge();
+        log.debug("Hedging AI call {} to {} after {} ms", path, backupReplica.getUrl(), hedgeDelayMs);
+
+        // Response thành công đầu tiên thắng; chỉ lỗi khi cả hai đều lỗi
+        CompletableFuture<AIServiceResponse> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        BiConsumer<AIServiceResponse, Throwable> onComplete = (response, error) -> {
+            if (error == null) {
+                winner.complete(response);
+            } else if (failures.incrementAndGet() == 2) {
+                winner.completeExceptionally(error);
+            }
+        };
+        primary.whenComplete(onComplete);
+        backup.whenComplete(onComplete);
+        return await(winner);
+    }
+
+    private AIServiceResponse post(AIReplicaPool.Replica replica, AIInteraction.InteractionType type, String path,
+            HttpEntity<?> requestEntity) {
+        long startTime = System.currentTimeMillis();
+        boolean failed = false;
+        try {
+            ResponseEntity<byte[]> response = restTemplate.exchange(replica.getUrl() + path, HttpMethod.POST,
+                    requestEntity, byte[].class);
+            return AIServiceResponse.of(response, objectMapper);
+        } catch (ResourceAccessException | HttpServerErrorException e) {
+            failed = true;
+            throw e;
+        } finally {
+            replicaPool.release(replica, type, System.currentTimeMillis() - startTime, failed);
+        }
+    }
+
+    private AIServiceResponse await(CompletableFuture<AIServiceResponse> future) {
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RestClientException("Interrupted while waiting for AI service", e);
+        } catch (TimeoutException e) {
+            throw new ResourceAccessException("AI service did not respond within " + timeoutMs + " ms");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RestClientException("AI service call failed", e.getCause());
+        }
+    }
+
+    private static String describeParts(MultiValueMap<String, Object> parts) {
+        StringBuilder description = new StringBuilder();
+        parts.forEach((name, values) -> values.forEach(value -> {
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+            description.append(name).append('=').append(value instanceof ByteArrayResource resource
+                    ? resource.getFilename() + " (" + resource.contentLength() + " bytes)"
+                    : value);
+        }));
+        return description.toString();
+    }
+
+    private byte[] multipartPreamble(String boundary, String partName, MultipartFile file,
+            Map<String, String> fields) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            out.write(("--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"" + field.getKey() + "\"\r\n\r\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            out.write(field.getValue().getBytes(StandardCharsets.UTF_8));
+            out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        String filename = file.getOriginalFilename() != null ? file.getOriginalFilename().replace("\"", "%22")
+                : partName;
+        String contentType = file.getContentType() != null ? file.getContentType()
+                : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        out.write(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + partName + "\"; filename=\"" + filename + "\"\r\n"
+                + "Content-Type: " + contentType + "\r\n\r\n")
+                .getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    /**
+     * Copy upload qua byte[] lấy từ pool (không cấp phát buffer mới cho mỗi request),
+     * dừng ngay khi vượt maxBytes. Không close out: đóng out sẽ đóng luôn request body.
+     */
+    private long copyThroughPooledBuffer(InputStream in, OutputStream out, long maxBytes) throws IOException {
+        byte[] buffer = acquireUploadBuffer();
+        try {
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+                if (total > maxBytes) {
+                    throw new MaxUploadSizeExceededException(maxBytes);
+                }
+                out.write(buffer, 0, read);
+            }
+            return total;
+        } finally {
+            releaseUploadBuffer(buffer);
+        }
+    }
+
+    /**
+     * Upload lỗi giữa chừng: close request body khi chưa ghi đủ Content-Length,
+     * HttpURLConnection đóng luôn socket thay vì trả connection dở dang về keep-alive pool
+     */
+    private static void abortUpload(OutputStream body) {
+        try {
+            body.close();
+        } catch (IOException e) {
+            log.debug("Aborted upload stream: {}", e.getMessage());
+        }
+    }
+
+    private byte[] acquireUploadBuffer() {
+        byte[] buffer = uploadBuffers.poll();
+        return buffer != null ? buffer : new byte[uploadBufferSize];
+    }
+
+    private void releaseUploadBuffer(byte[] buffer) {
+        uploadBuffers.offer(buffer);
+    }
+}
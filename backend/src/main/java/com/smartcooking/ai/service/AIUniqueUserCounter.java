@@ -0,0 +1,342 @@
+package com.smartcooking.ai.service;
+
+import com.smartcooking.ai.dto.AIInteractionRecord;
+import com.smartcooking.ai.dto.AIInteractionsWrittenEvent;
+import com.smartcooking.ai.entity.AIInteraction;
+import com.smartcooking.ai.util.HyperLogLog;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * AI Unique User Counter - số user phân biệt theo ngày, type và ngôn ngữ
+ *
+ * Mỗi ngày có một HyperLogLog cho tất cả interactions, một cho từng type và
+ * một cho từng ngôn ngữ. Redis giữ sketch dùng chung (PFADD theo batch mỗi
+ * flush); số user của một khoảng ngày là PFCOUNT trên nhiều key, tức merge
+ * các sketch, nên không cần COUNT(DISTINCT user_id) trên ai_interactions.
+ * Node giữ thêm HyperLogLog cục bộ cho vài ngày gần nhất để trả lời khi
+ * Redis không dùng được (chỉ gồm interactions của node đó).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AIUniqueUserCounter {
+
+    private static final String KEY_PREFIX = "ai:unique-users:";
+    private static final String ALL = "all";
+    private static final String TYPE_PREFIX = "type:";
+    private static final String LANGUAGE_PREFIX = "lang:";
+    private static final String OTHER_LANGUAGE = "other";
+    // Cùng precision với HyperLogLog của Redis (sai số chuẩn 0.81%)
+    private static final int PRECISION = 14;
+    private static final int LANGUAGE_MAX_LENGTH = 10;
+
+    private final RedisSupport redisSupport;
+
+    @Value("${ai.unique-users.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.unique-users.retention-days:400}")
+    private int retentionDays;
+
+    @Value("${ai.unique-users.local-retention-days:7}")
+    private int localRetentionDays;
+
+    @Value("${ai.unique-users.max-languages-per-day:20}")
+    private int maxLanguagesPerDay;
+
+    @Value("${ai.unique-users.max-pending-ids:200000}")
+    private int maxPendingIds;
+
+    // Sketch cục bộ: ngày -> dimension -> HyperLogLog
+    private final Map<LocalDate, Map<String, HyperLogLog>> localSketches = new HashMap<>();
+    // User id chưa PFADD lên Redis: ngày -> dimension -> user ids
+    private final Map<LocalDate, Map<String, Set<String>>> pending = new HashMap<>();
+    private int pendingIds;
+    private long droppedIds;
+
+    @EventListener
+    public void onInteractionsWritten(AIInteractionsWrittenEvent event) {
+        if (!enabled) {
+            return;
+        }
+        LocalDate localFrom = LocalDate.now().minusDays(localRetentionDays - 1L);
+        synchronized (this) {
+            for (AIInteractionRecord record : event.getRecords()) {
+                if (record.getUserId() == null) {
+                    continue;
+                }
+                LocalDate day = record.getCreatedAt() != null ? record.getCreatedAt().toLocalDate() : LocalDate.now();
+                Map<String, HyperLogLog> daySketches = localSketches.computeIfAbsent(day, d -> new HashMap<>());
+                List<String> dimensions = List.of(ALL,
+                        TYPE_PREFIX + record.getInteractionType().name(),
+                        LANGUAGE_PREFIX + language(daySketches, record.getUserLanguage()));
+
+                String userId = record.getUserId().toString();
+                Map<String, Set<String>> dayPending = pending.computeIfAbsent(day, d -> new HashMap<>());
+                for (String dimension : dimensions) {
+                    if (!day.isBefore(localFrom)) {
+                        daySketches.computeIfAbsent(dimension, d -> new HyperLogLog(PRECISION))
+                                .add(record.getUserId());
+                    }
+                    if (pendingIds >= maxPendingIds) {
+                        droppedIds++;
+                    } else if (dayPending.computeIfAbsent(dimension, d -> new HashSet<>()).add(userId)) {
+                        pendingIds++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * PFADD các user id đang chờ lên Redis; Redis lỗi thì giữ lại (tối đa max-pending-ids)
+     */
+    @Scheduled(fixedDelayString = "${ai.unique-users.flush-interval-ms:5000}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        Map<LocalDate, Map<String, Set<String>>> batch;
+        synchronized (this) {
+            LocalDate localFrom = LocalDate.now().minusDays(localRetentionDays - 1L);
+            localSketches.keySet().removeIf(day -> day.isBefore(localFrom));
+            if (droppedIds > 0) {
+                log.warn("Unique user counter dropped {} ids while Redis was unavailable", droppedIds);
+                droppedIds = 0;
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new HashMap<>(pending);
+            pending.clear();
+            pendingIds = 0;
+        }
+
+        boolean pushed = redisSupport.execute(redis -> {
+            push(redis, batch);
+            return true;
+        }, () -> false);
+        if (!pushed) {
+            synchronized (this) {
+                batch.forEach((day, dimensions) -> dimensions.forEach((dimension, ids) -> {
+                    Set<String> target = pending.computeIfAbsent(day, d -> new HashMap<>())
+                            .computeIfAbsent(dimension, d -> new HashSet<>());
+                    for (String id : ids) {
+                        if (pendingIds >= maxPendingIds) {
+                            droppedIds++;
+                        } else if (target.add(id)) {
+                            pendingIds++;
+                        }
+                    }
+                }));
+            }
+        }
+    }
+
+    /**
+     * Số user phân biệt trong khoảng ngày [from, to]
+     */
+    public Long countUniqueUsers(LocalDate from, LocalDate to) {
+        return count(from, to, ALL);
+    }
+
+    /**
+     * Số user phân biệt từng ngày; ngày không có dữ liệu (Redis lỗi, ngoài local retention) là null
+     */
+    public Map<LocalDate, Long> dailyUniqueUsers(LocalDate from, LocalDate to) {
+        List<LocalDate> days = days(from, to);
+        Map<LocalDate, Long> daily = new TreeMap<>();
+        if (!enabled) {
+            return daily;
+        }
+        return redisSupport.execute(redis -> {
+            List<Object> counts = redis.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    days.forEach(day -> ops.opsForHyperLogLog().size(key(day, ALL)));
+                    return null;
+                }
+            });
+            for (int i = 0; i < days.size(); i++) {
+                daily.put(days.get(i), ((Number) counts.get(i)).longValue());
+            }
+            return daily;
+        }, () -> {
+            for (LocalDate day : days) {
+                daily.put(day, localCount(List.of(day), ALL));
+            }
+            return daily;
+        });
+    }
+
+    /**
+     * Số user phân biệt theo interaction type trong khoảng ngày
+     */
+    public Map<String, Long> uniqueUsersByType(LocalDate from, LocalDate to) {
+        Map<String, Long> byType = new LinkedHashMap<>();
+        for (AIInteraction.InteractionType type : AIInteraction.InteractionType.values()) {
+            Long count = count(from, to, TYPE_PREFIX + type.name());
+            if (count != null && count > 0) {
+                byType.put(type.name(), count);
+            }
+        }
+        return byType;
+    }
+
+    /**
+     * Số user phân biệt theo ngôn ngữ trong khoảng ngày
+     */
+    public Map<String, Long> uniqueUsersByLanguage(LocalDate from, LocalDate to) {
+        Map<String, Long> byLanguage = new LinkedHashMap<>();
+        for (String language : languages(from, to)) {
+            Long count = count(from, to, LANGUAGE_PREFIX + language);
+            if (count != null && count > 0) {
+                byLanguage.put(language, count);
+            }
+        }
+        return byLanguage;
+    }
+
+    /**
+     * Sai số chuẩn tương đối của các số đếm (theo PRECISION)
+     */
+    public double getStandardError() {
+        return HyperLogLog.standardError(PRECISION);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (this) {
+            stats.put("localDays", localSketches.size());
+            stats.put("pendingIds", pendingIds);
+        }
+        return stats;
+    }
+
+    private Long count(LocalDate from, LocalDate to, String dimension) {
+        if (!enabled) {
+            return null;
+        }
+        List<LocalDate> days = days(from, to);
+        return redisSupport.execute(
+                redis -> redis.opsForHyperLogLog().size(days.stream().map(day -> key(day, dimension))
+                        .toArray(String[]::new)),
+                () -> localCount(days, dimension));
+    }
+
+    private Set<String> languages(LocalDate from, LocalDate to) {
+        List<LocalDate> days = days(from, to);
+        return redisSupport.execute(redis -> {
+            Set<String> languages = redis.opsForSet()
+                    .union(days.stream().map(AIUniqueUserCounter::languagesKey).toList());
+            return languages != null ? languages : new HashSet<>();
+        }, () -> {
+            Set<String> languages = new HashSet<>();
+            synchronized (this) {
+                for (LocalDate day : days) {
+                    localSketches.getOrDefault(day, Map.of()).keySet().stream()
+                            .filter(dimension -> dimension.startsWith(LANGUAGE_PREFIX))
+                            .forEach(dimension -> languages.add(dimension.substring(LANGUAGE_PREFIX.length())));
+                }
+            }
+            return languages;
+        });
+    }
+
+    /**
+     * Merge sketch cục bộ của các ngày; null nếu không có ngày nào trong local retention
+     */
+    private Long localCount(List<LocalDate> days, String dimension) {
+        HyperLogLog merged = new HyperLogLog(PRECISION);
+        boolean covered = false;
+        LocalDate localFrom = LocalDate.now().minusDays(localRetentionDays - 1L);
+        synchronized (this) {
+            for (LocalDate day : days) {
+                covered |= !day.isBefore(localFrom);
+                HyperLogLog sketch = localSketches.getOrDefault(day, Map.of()).get(dimension);
+                if (sketch != null) {
+                    merged.merge(sketch);
+                }
+            }
+        }
+        return covered ? merged.estimate() : null;
+    }
+
+    private void push(StringRedisTemplate redis, Map<LocalDate, Map<String, Set<String>>> batch) {
+        redis.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                batch.forEach((day, dimensions) -> {
+                    Duration ttl = Duration.ofDays(Math.max(1,
+                            retentionDays - java.time.temporal.ChronoUnit.DAYS.between(day, LocalDate.now())));
+                    dimensions.forEach((dimension, ids) -> {
+                        String key = key(day, dimension);
+                        ops.opsForHyperLogLog().add(key, ids.toArray(String[]::new));
+                        ops.expire(key, ttl);
+                        if (dimension.startsWith(LANGUAGE_PREFIX)) {
+                            ops.opsForSet().add(languagesKey(day), dimension.substring(LANGUAGE_PREFIX.length()));
+                            ops.expire(languagesKey(day), ttl);
+                        }
+                    });
+                });
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Ngôn ngữ chuẩn hóa như hourly rollups; quá max-languages-per-day thì gộp vào "other"
+     */
+    private String language(Map<String, HyperLogLog> daySketches, String language) {
+        String normalized = language == null || language.isBlank() ? "unknown" : language.trim();
+        if (normalized.length() > LANGUAGE_MAX_LENGTH) {
+            normalized = normalized.substring(0, LANGUAGE_MAX_LENGTH);
+        }
+        if (daySketches.containsKey(LANGUAGE_PREFIX + normalized)) {
+            return normalized;
+        }
+        long languages = daySketches.keySet().stream().filter(key -> key.startsWith(LANGUAGE_PREFIX)).count();
+        return languages < maxLanguagesPerDay ? normalized : OTHER_LANGUAGE;
+    }
+
+    private static List<LocalDate> days(LocalDate from, LocalDate to) {
+        List<LocalDate> days = new ArrayList<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            days.add(day);
+        }
+        return days;
+    }
+
+    private static String key(LocalDate day, String dimension) {
+        return KEY_PREFIX + day.format(DateTimeFormatter.BASIC_ISO_DATE) + ":" + dimension;
+    }
+
+    private static String languagesKey(LocalDate day) {
+        return KEY_PREFIX + day.format(DateTimeFormatter.BASIC_ISO_DATE) + ":languages";
+    }
+}
@@ -0,0 +1,434 @@
+package com.smartcooking.ai.service;
+
+import com.smartcooking.ai.dto.AIInteractionRecord;
+import com.smartcooking.ai.dto.AIInteractionsWrittenEvent;
+import com.smartcooking.ai.util.CountMinSketch;
+import com.smartcooking.ai.util.SpaceSaving;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * AI User Activity Tracker - top users hoạt động nhiều nhất (heavy hitters)
+ *
+ * Mỗi epoch có một Count-Min Sketch (ước lượng số interaction theo user) và
+ * một Space-Saving summary (ứng viên top-K). Node giữ sketch cục bộ cho cả
+ * window và định kỳ cộng phần mới vào Redis (hash cell CMS + ZSET top-K cắt
+ * còn capacity phần tử), nên mọi node đọc được sketch đã merge. Truy vấn chỉ
+ * đọc O(K) phần tử mỗi epoch thay vì GROUP BY trên ai_interactions; Redis
+ * lỗi thì trả lời từ sketch cục bộ.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AIUserActivityTracker {
+
+    private static final String KEY_PREFIX = "ai:heavy-hitters:";
+    private static final String TOTAL_FIELD = "total";
+    // Số ứng viên (theo Space-Saving) được tinh chỉnh bằng CMS cho mỗi user trả về
+    private static final int CANDIDATE_FACTOR = 4;
+
+    private final RedisSupport redisSupport;
+
+    @Value("${ai.heavy-hitters.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.heavy-hitters.epoch-minutes:60}")
+    private long epochMinutes;
+
+    @Value("${ai.heavy-hitters.window-epochs:24}")
+    private int windowEpochs;
+
+    @Value("${ai.heavy-hitters.capacity:1000}")
+    private int capacity;
+
+    @Value("${ai.heavy-hitters.cms-width:2048}")
+    private int cmsWidth;
+
+    @Value("${ai.heavy-hitters.cms-depth:4}")
+    private int cmsDepth;
+
+    // Sketch cục bộ của cả window, và phần chưa cộng vào Redis (theo epoch)
+    private final Map<Long, EpochSketch> localEpochs = new HashMap<>();
+    private final Map<Long, EpochSketch> pendingEpochs = new HashMap<>();
+
+    @EventListener
+    public void onInteractionsWritten(AIInteractionsWrittenEvent event) {
+        if (!enabled) {
+            return;
+        }
+        long oldest = oldestEpoch(System.currentTimeMillis());
+        synchronized (this) {
+            for (AIInteractionRecord record : event.getRecords()) {
+                if (record.getUserId() == null) {
+                    continue;
+                }
+                long timestamp = record.getCreatedAt() != null
+                        ? record.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                        : System.currentTimeMillis();
+                long epoch = timestamp / epochMillis();
+                if (epoch < oldest) {
+                    continue;
+                }
+                localEpochs.computeIfAbsent(epoch, e -> newSketch()).add(record.getUserId(), timestamp);
+                pendingEpochs.computeIfAbsent(epoch, e -> newSketch()).add(record.getUserId(), timestamp);
+            }
+        }
+    }
+
+    /**
+     * Cộng phần sketch mới vào Redis; Redis lỗi thì giữ lại cho lần flush sau
+     */
+    @Scheduled(fixedDelayString = "${ai.heavy-hitters.flush-interval-ms:10000}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        long oldest = oldestEpoch(System.currentTimeMillis());
+        Map<Long, EpochSketch> batch;
+        synchronized (this) {
+            localEpochs.keySet().removeIf(epoch -> epoch < oldest);
+            pendingEpochs.keySet().removeIf(epoch -> epoch < oldest);
+            if (pendingEpochs.isEmpty()) {
+                return;
+            }
+            batch = new HashMap<>(pendingEpochs);
+            pendingEpochs.clear();
+        }
+
+        boolean pushed = redisSupport.execute(redis -> {
+            push(redis, batch);
+            return true;
+        }, () -> false);
+        if (!pushed) {
+            synchronized (this) {
+                batch.forEach((epoch, sketch) -> pendingEpochs.merge(epoch, sketch, EpochSketch::merge));
+            }
+        }
+    }
+
+    /**
+     * Top users theo số interaction trong window
+     */
+    public List<UserActivityEstimate> topUsers(int limit) {
+        if (!enabled || limit <= 0) {
+            return new ArrayList<>();
+        }
+        List<Long> epochs = windowEpochList(System.currentTimeMillis());
+        return redisSupport.execute(redis -> topFromRedis(redis, epochs, limit), () -> topFromLocal(epochs, limit));
+    }
+
+    /**
+     * Ước lượng số interaction của một user trong window
+     */
+    public UserActivityEstimate estimate(Long userId) {
+        if (!enabled) {
+            return new UserActivityEstimate(userId, 0, 0, null);
+        }
+        List<Long> epochs = windowEpochList(System.currentTimeMillis());
+        List<UserActivityEstimate> estimates = redisSupport.execute(
+                redis -> refineFromRedis(redis, epochs, List.of(userId), Map.of()),
+                () -> refineFromLocal(epochs, List.of(userId)));
+        return estimates.get(0);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("windowMinutes", epochMinutes * windowEpochs);
+        synchronized (this) {
+            stats.put("localEpochs", localEpochs.size());
+            stats.put("pendingEpochs", pendingEpochs.size());
+        }
+        return stats;
+    }
+
+    private void push(StringRedisTemplate redis, Map<Long, EpochSketch> batch) {
+        Duration ttl = Duration.ofMinutes(epochMinutes * (windowEpochs + 1L));
+        redis.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                batch.forEach((epoch, sketch) -> {
+                    String cmsKey = cmsKey(epoch);
+                    String topKey = topKey(epoch);
+                    for (int i = 0; i < sketch.cms.cellCount(); i++) {
+                        long value = sketch.cms.cell(i);
+                        if (value != 0) {
+                            ops.opsForHash().increment(cmsKey, Integer.toString(i), value);
+                        }
+                    }
+                    ops.opsForHash().increment(cmsKey, TOTAL_FIELD, sketch.cms.getTotal());
+                    for (SpaceSaving.Counter counter : sketch.topK.top(capacity)) {
+                        ops.opsForZSet().incrementScore(topKey, Long.toString(counter.getItem()), counter.getCount());
+                    }
+                    ops.opsForZSet().removeRange(topKey, 0, -(capacity + 1L));
+                    ops.expire(cmsKey, ttl);
+                    ops.expire(topKey, ttl);
+                });
+                return null;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<UserActivityEstimate> topFromRedis(StringRedisTemplate redis, List<Long> epochs, int limit) {
+        List<Object> results = redis.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (long epoch : epochs) {
+                    ops.opsForZSet().reverseRangeWithScores(topKey(epoch), 0, capacity - 1L);
+                }
+                return null;
+            }
+        });
+
+        // userId -> [tổng score Space-Saving, epoch gần nhất có mặt]
+        Map<Long, long[]> candidates = new HashMap<>();
+        for (int i = 0; i < epochs.size(); i++) {
+            Set<ZSetOperations.TypedTuple<String>> entries = (Set<ZSetOperations.TypedTuple<String>>) results.get(i);
+            if (entries == null) {
+                continue;
+            }
+            for (ZSetOperations.TypedTuple<String> entry : entries) {
+                long[] aggregate = candidates.computeIfAbsent(Long.parseLong(entry.getValue()), k -> new long[2]);
+                aggregate[0] += Math.round(entry.getScore() != null ? entry.getScore() : 0);
+                aggregate[1] = Math.max(aggregate[1], epochs.get(i));
+            }
+        }
+
+        List<Long> shortlist = candidates.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<Long, long[]> e) -> e.getValue()[0]).reversed())
+                .limit((long) limit * CANDIDATE_FACTOR)
+                .map(Map.Entry::getKey)
+                .toList();
+        Map<Long, Long> lastEpochs = new HashMap<>();
+        shortlist.forEach(userId -> lastEpochs.put(userId, candidates.get(userId)[1]));
+
+        return rank(refineFromRedis(redis, epochs, shortlist, lastEpochs), limit);
+    }
+
+    /**
+     * Ước lượng CMS trên window: cộng từng cell qua các epoch rồi lấy min theo hàng
+     */
+    @SuppressWarnings("unchecked")
+    private List<UserActivityEstimate> refineFromRedis(StringRedisTemplate redis, List<Long> epochs,
+            List<Long> userIds, Map<Long, Long> lastEpochs) {
+        CountMinSketch layout = new CountMinSketch(cmsWidth, cmsDepth);
+        List<Object> fields = new ArrayList<>();
+        fields.add(TOTAL_FIELD);
+        for (Long userId : userIds) {
+            for (int row = 0; row < cmsDepth; row++) {
+                fields.add(Integer.toString(layout.cellIndex(row, userId)));
+            }
+        }
+
+        List<Object> results = redis.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (long epoch : epochs) {
+                    ops.opsForHash().multiGet(cmsKey(epoch), fields);
+                }
+                return null;
+            }
+        });
+
+        long[] sums = new long[fields.size()];
+        for (Object result : results) {
+            List<Object> values = (List<Object>) result;
+            for (int i = 0; i < values.size(); i++) {
+                if (values.get(i) != null) {
+                    sums[i] += Long.parseLong(values.get(i).toString());
+                }
+            }
+        }
+        long errorBound = (long) Math.ceil(Math.E / cmsWidth * sums[0]);
+
+        Map<Long, Long> localLastSeen = localLastSeen(epochs, userIds);
+        List<UserActivityEstimate> estimates = new ArrayList<>(userIds.size());
+        for (int u = 0; u < userIds.size(); u++) {
+            long count = Long.MAX_VALUE;
+            for (int row = 0; row < cmsDepth; row++) {
+                count = Math.min(count, sums[1 + u * cmsDepth + row]);
+            }
+            Long userId = userIds.get(u);
+            Long lastEpoch = lastEpochs.get(userId);
+            long lastSeen = Math.max(lastEpoch != null ? lastEpoch * epochMillis() : 0,
+                    localLastSeen.getOrDefault(userId, 0L));
+            estimates.add(new UserActivityEstimate(userId, count, errorBound, toLocalDateTime(lastSeen)));
+        }
+        return estimates;
+    }
+
+    private List<UserActivityEstimate> topFromLocal(List<Long> epochs, int limit) {
+        SpaceSaving merged = new SpaceSaving(capacity);
+        synchronized (this) {
+            for (long epoch : epochs) {
+                EpochSketch sketch = localEpochs.get(epoch);
+                if (sketch != null) {
+                    merged.merge(sketch.topK);
+                }
+            }
+        }
+        List<Long> shortlist = merged.top(limit * CANDIDATE_FACTOR).stream()
+                .map(SpaceSaving.Counter::getItem)
+                .toList();
+        return rank(refineFromLocal(epochs, shortlist), limit);
+    }
+
+    private List<UserActivityEstimate> refineFromLocal(List<Long> epochs, List<Long> userIds) {
+        CountMinSketch merged = new CountMinSketch(cmsWidth, cmsDepth);
+        synchronized (this) {
+            for (long epoch : epochs) {
+                EpochSketch sketch = localEpochs.get(epoch);
+                if (sketch != null) {
+                    merged.merge(sketch.cms);
+                }
+            }
+        }
+        Map<Long, Long> lastSeen = localLastSeen(epochs, userIds);
+        List<UserActivityEstimate> estimates = new ArrayList<>(userIds.size());
+        for (Long userId : userIds) {
+            estimates.add(new UserActivityEstimate(userId, merged.estimate(userId), merged.errorBound(),
+                    toLocalDateTime(lastSeen.getOrDefault(userId, 0L))));
+        }
+        return estimates;
+    }
+
+    private Map<Long, Long> localLastSeen(List<Long> epochs, List<Long> userIds) {
+        Map<Long, Long> lastSeen = new HashMap<>();
+        synchronized (this) {
+            for (long epoch : epochs) {
+                EpochSketch sketch = localEpochs.get(epoch);
+                if (sketch == null) {
+                    continue;
+                }
+                for (Long userId : userIds) {
+                    SpaceSaving.Counter counter = sketch.topK.get(userId);
+                    if (counter != null) {
+                        lastSeen.merge(userId, counter.getLastSeen(), Math::max);
+                    }
+                }
+            }
+        }
+        return lastSeen;
+    }
+
+    private static List<UserActivityEstimate> rank(List<UserActivityEstimate> estimates, int limit) {
+        return estimates.stream()
+                .filter(estimate -> estimate.getCount() > 0)
+                .sorted(Comparator.comparingLong(UserActivityEstimate::getCount).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    private List<Long> windowEpochList(long now) {
+        long current = now / epochMillis();
+        List<Long> epochs = new ArrayList<>(windowEpochs);
+        for (long epoch = current - windowEpochs + 1; epoch <= current; epoch++) {
+            epochs.add(epoch);
+        }
+        return epochs;
+    }
+
+    private long oldestEpoch(long now) {
+        return now / epochMillis() - windowEpochs + 1;
+    }
+
+    private long epochMillis() {
+        return epochMinutes * 60_000L;
+    }
+
+    private EpochSketch newSketch() {
+        return new EpochSketch(new CountMinSketch(cmsWidth, cmsDepth), new SpaceSaving(capacity));
+    }
+
+    private static String cmsKey(long epoch) {
+        return KEY_PREFIX + epoch + ":cms";
+    }
+
+    private static String topKey(long epoch) {
+        return KEY_PREFIX + epoch + ":top";
+    }
+
+    private static LocalDateTime toLocalDateTime(long millis) {
+        return millis > 0 ? LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()) : null;
+    }
+
+    private static class EpochSketch {
+        private final CountMinSketch cms;
+        private final SpaceSaving topK;
+
+        EpochSketch(CountMinSketch cms, SpaceSaving topK) {
+            this.cms = cms;
+            this.topK = topK;
+        }
+
+        void add(long userId, long timestamp) {
+            cms.add(userId, 1);
+            topK.offer(userId, 1, timestamp);
+        }
+
+        EpochSketch merge(EpochSketch other) {
+            cms.merge(other.cms);
+            topK.merge(other.topK);
+            return this;
+        }
+    }
+
+    /**
+     * Số interaction ước lượng (chỉ đếm thừa, tối đa errorBound) của user trong window
+     */
+    public static class UserActivityEstimate {
+        private final Long userId;
+        private final long count;
+        private final long errorBound;
+        private final LocalDateTime lastActivity;
+
+        UserActivityEstimate(Long userId, long count, long errorBound, LocalDateTime lastActivity) {
+            this.userId = userId;
+            this.count = count;
+            this.errorBound = errorBound;
+            this.lastActivity = lastActivity;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrorBound() {
+            return errorBound;
+        }
+
+        public LocalDateTime getLastActivity() {
+            return lastActivity;
+        }
+    }
+}
@@ -1,14 +1,22 @@
 package com.smartcooking.ai.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.smartcooking.ai.entity.Category;
 import com.smartcooking.ai.repository.CategoryRepository;
+import com.smartcooking.ai.util.ExportWriter;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Category Service - Quản lý danh mục công thức
@@ -20,6 +28,17 @@ import java.util.Optional;
 public class CategoryService {
 
     private final CategoryRepository categoryRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    private static final List<String> EXPORT_COLUMNS = List.of(
+            "id", "name", "nameEn", "nameVi", "displayOrder", "active");
+
+    /**
+     * Số dòng export giữa hai lần clear persistence context
+     */
+    @Value("${app.export.clear-interval:1000}")
+    private int exportClearInterval;
 
     /**
      * Tạo category mới
@@ -224,18 +243,33 @@ public class CategoryService {
         return categoryRepository.saveAll(categories);
     }
 
-    public List<java.util.Map<String, Object>> exportCategories(String format) {
-        List<java.util.Map<String, Object>> export = new java.util.ArrayList<>();
-        List<Category> categories = categoryRepository.findAll();
-        for (Category category : categories) {
-            java.util.Map<String, Object> item = new java.util.HashMap<>();
-            item.put("id", category.getId());
-            item.put("nameEn", category.getNameEn());
-            item.put("nameVi", category.getNameVi());
-            item.put("active", category.getActive());
-            export.add(item);
+    /**
+     * Export categories ra output theo từng dòng; clear persistence context định kỳ
+     * để heap không tăng theo số dòng
+     */
+    @Transactional(readOnly = true)
+    public long exportCategories(String language, OutputStream out, ExportWriter.Format format, boolean gzip)
+            throws IOException {
+        boolean vietnamese = "vi".equalsIgnoreCase(language);
+        try (ExportWriter writer = new ExportWriter(out, format, EXPORT_COLUMNS, gzip, objectMapper);
+                Stream<Category> categories = categoryRepository.streamAllForExport()) {
+            Iterator<Category> iterator = categories.iterator();
+            while (iterator.hasNext()) {
+                Category category = iterator.next();
+                java.util.Map<String, Object> row = new java.util.LinkedHashMap<>();
+                row.put("id", category.getId());
+                row.put("name", vietnamese ? category.getNameVi() : category.getNameEn());
+                row.put("nameEn", category.getNameEn());
+                row.put("nameVi", category.getNameVi());
+                row.put("displayOrder", category.getDisplayOrder());
+                row.put("active", category.getActive());
+                writer.write(row);
+                if (writer.getRowCount() % exportClearInterval == 0) {
+                    entityManager.clear();
+                }
+            }
+            return writer.getRowCount();
         }
-        return export;
     }
 
     public java.util.Map<String, Object> syncCategoriesFromExternalSource(Long userId) {
@@ -0,0 +1,348 @@
+package com.smartcooking.ai.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartcooking.ai.dto.AIServiceResponse;
+import com.smartcooking.ai.entity.AIInteraction;
+import com.smartcooking.ai.repository.AIInteractionRepository;
+import com.smartcooking.ai.util.PromptUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chat Answer Cache - cache câu trả lời chat cho các prompt gần giống nhau
+ *
+ * Prompt được chuẩn hóa (lowercase, bỏ dấu tiếng Việt, bỏ dấu câu) rồi tính
+ * SimHash 64-bit từ word shingles và char trigrams. Index chia fingerprint
+ * thành 4 band 16-bit: hai fingerprint lệch nhau tối đa 3 bit chắc chắn trùng
+ * ít nhất một band, nên chỉ cần so Hamming distance với các candidate cùng band.
+ * Mỗi ngôn ngữ có index riêng. Chỉ cache chat không có conversation context.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChatAnswerCache {
+
+    private static final int BANDS = 4;
+    private static final int BAND_BITS = 64 / BANDS;
+
+    private final AIInteractionRepository aiInteractionRepository;
+    private final ObjectMapper objectMapper;
+
+    @Value("${ai.chat-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.chat-cache.max-hamming-distance:3}")
+    private int maxHammingDistance;
+
+    @Value("${ai.chat-cache.max-entries:5000}")
+    private int maxEntries;
+
+    @Value("${ai.chat-cache.ttl-hours:72}")
+    private long ttlHours;
+
+    @Value("${ai.chat-cache.min-prompt-length:8}")
+    private int minPromptLength;
+
+    @Value("${ai.chat-cache.warmup-days:7}")
+    private int warmupDays;
+
+    @Value("${ai.chat-cache.warmup-limit:2000}")
+    private int warmupLimit;
+
+    // language -> band key -> entries
+    private final Map<String, Map<Integer, List<CachedAnswer>>> index = new HashMap<>();
+    private int size;
+    private long hits;
+    private long misses;
+
+    /**
+     * Nạp sẵn cache từ các CHAT interaction thành công gần đây
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled || warmupLimit <= 0) {
+            return;
+        }
+        try {
+            List<AIInteraction> interactions = aiInteractionRepository
+                    .findByInteractionTypeAndSuccessTrueAndCreatedAtAfterOrderByCreatedAtDesc(
+                            AIInteraction.InteractionType.CHAT, LocalDateTime.now().minusDays(warmupDays),
+                            PageRequest.of(0, warmupLimit));
+
+            int loaded = 0;
+            for (AIInteraction interaction : interactions) {
+                if (interaction.getInputData() == null || interaction.getOutputData() == null) {
+                    continue;
+                }
+                Map<?, ?> request = parseRequest(interaction.getInputData());
+                AIServiceResponse response = new AIServiceResponse(200, MediaType.APPLICATION_JSON,
+                        interaction.getOutputData().getBytes(StandardCharsets.UTF_8), objectMapper);
+                if (request != null && store(request, response)) {
+                    loaded++;
+                }
+            }
+            log.info("Chat answer cache warmed with {} answers from {} interactions", loaded, interactions.size());
+        } catch (Exception e) {
+            log.warn("Chat answer cache warm-up failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Tìm câu trả lời đã cache cho prompt gần giống nhất
+     *
+     * @return response đã cache, hoặc null nếu không có / request không cacheable
+     */
+    public synchronized AIServiceResponse lookup(Map<?, ?> request) {
+        Prompt prompt = toPrompt(request);
+        if (prompt == null) {
+            return null;
+        }
+
+        Map<Integer, List<CachedAnswer>> languageIndex = index.get(prompt.language);
+        CachedAnswer best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        if (languageIndex != null) {
+            for (int band = 0; band < BANDS; band++) {
+                List<CachedAnswer> candidates = languageIndex.get(bandKey(prompt.fingerprint, band));
+                if (candidates == null) {
+                    continue;
+                }
+                for (CachedAnswer candidate : candidates) {
+                    int distance = Long.bitCount(candidate.fingerprint ^ prompt.fingerprint);
+                    if (distance <= maxHammingDistance && distance < bestDistance && !isExpired(candidate)) {
+                        best = candidate;
+                        bestDistance = distance;
+                    }
+                }
+            }
+        }
+
+        if (best == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        best.hits++;
+        best.lastHitAt = System.currentTimeMillis();
+        log.debug("Chat cache hit (distance {}) for \"{}\" -> \"{}\"", bestDistance, prompt.normalized,
+                best.normalizedPrompt);
+        return best.response;
+    }
+
+    /**
+     * Lưu câu trả lời chat thành công
+     *
+     * @return true nếu đã lưu (không lưu nếu đã có prompt cùng fingerprint)
+     */
+    public synchronized boolean store(Map<?, ?> request, AIServiceResponse response) {
+        Prompt prompt = toPrompt(request);
+        if (prompt == null || !isCacheable(response)) {
+            return false;
+        }
+
+        Map<Integer, List<CachedAnswer>> languageIndex = index.computeIfAbsent(prompt.language,
+                language -> new HashMap<>());
+        List<CachedAnswer> exactBand = languageIndex.get(bandKey(prompt.fingerprint, 0));
+        if (exactBand != null && exactBand.stream().anyMatch(entry -> entry.fingerprint == prompt.fingerprint
+                && !isExpired(entry))) {
+            return false;
+        }
+
+        CachedAnswer answer = new CachedAnswer(prompt.language, prompt.fingerprint, prompt.normalized, response);
+        for (int band = 0; band < BANDS; band++) {
+            languageIndex.computeIfAbsent(bandKey(prompt.fingerprint, band), key -> new ArrayList<>()).add(answer);
+        }
+        size++;
+
+        if (size > maxEntries) {
+            evict();
+        }
+        return true;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("entries", size);
+        stats.put("languages", new ArrayList<>(index.keySet()));
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+        return stats;
+    }
+
+    /**
+     * Loại entry hết hạn, sau đó loại ~10% entry có điểm thấp nhất
+     * (điểm = số lần hit / tuổi tính theo giờ) để không phải evict mỗi lần store
+     */
+    private void evict() {
+        // Mỗi entry nằm trong đúng một bucket của band 0
+        List<CachedAnswer> all = new ArrayList<>(size);
+        for (Map<Integer, List<CachedAnswer>> languageIndex : index.values()) {
+            languageIndex.forEach((key, bucket) -> {
+                if (key >>> BAND_BITS == 0) {
+                    all.addAll(bucket);
+                }
+            });
+        }
+
+        long now = System.currentTimeMillis();
+        List<CachedAnswer> victims = new ArrayList<>(all.stream().filter(this::isExpired).toList());
+        int target = Math.max(1, maxEntries / 10);
+        if (victims.size() < target) {
+            all.stream()
+                    .filter(entry -> !isExpired(entry))
+                    .sorted(Comparator.comparingDouble(entry -> entry.score(now)))
+                    .limit(target - victims.size())
+                    .forEach(victims::add);
+        }
+
+        for (CachedAnswer victim : victims) {
+            remove(victim);
+        }
+    }
+
+    private void remove(CachedAnswer answer) {
+        Map<Integer, List<CachedAnswer>> languageIndex = index.get(answer.language);
+        if (languageIndex == null) {
+            return;
+        }
+        for (int band = 0; band < BANDS; band++) {
+            int key = bandKey(answer.fingerprint, band);
+            Collection<CachedAnswer> bucket = languageIndex.get(key);
+            if (bucket != null) {
+                bucket.remove(answer);
+                if (bucket.isEmpty()) {
+                    languageIndex.remove(key);
+                }
+            }
+        }
+        size--;
+    }
+
+    private boolean isExpired(CachedAnswer answer) {
+        return System.currentTimeMillis() - answer.createdAt > TimeUnit.HOURS.toMillis(ttlHours);
+    }
+
+    private boolean isCacheable(AIServiceResponse response) {
+        if (!response.isSuccessful()) {
+            return false;
+        }
+        JsonNode json = response.json();
+        return json.isObject() && !json.path("success").asText("true").equals("false");
+    }
+
+    private Prompt toPrompt(Map<?, ?> request) {
+        if (!enabled || request == null || !(request.get("message") instanceof String message)) {
+            return null;
+        }
+        // Câu trả lời phụ thuộc hội thoại trước đó thì không dùng lại được
+        if (request.get("context") instanceof Collection<?> context && !context.isEmpty()) {
+            return null;
+        }
+        String normalized = PromptUtils.normalize(message);
+        if (normalized.length() < minPromptLength) {
+            return null;
+        }
+        Object language = request.get("language");
+        return new Prompt(language != null ? String.valueOf(language) : "vi", normalized, simHash(normalized));
+    }
+
+    private Map<?, ?> parseRequest(String inputData) {
+        try {
+            return objectMapper.readValue(inputData, Map.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * SimHash 64-bit: mỗi feature (word, word bigram, char trigram) vote +/- cho từng bit
+     */
+    static long simHash(String normalized) {
+        int[] votes = new int[64];
+        String[] words = normalized.split(" ");
+        for (int i = 0; i < words.length; i++) {
+            vote(votes, words[i], 2);
+            if (i + 1 < words.length) {
+                vote(votes, words[i] + " " + words[i + 1], 1);
+            }
+        }
+        String compact = normalized.replace(" ", "");
+        for (int i = 0; i + 3 <= compact.length(); i++) {
+            vote(votes, compact.substring(i, i + 3), 1);
+        }
+
+        long fingerprint = 0L;
+        for (int bit = 0; bit < 64; bit++) {
+            if (votes[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    private static void vote(int[] votes, String feature, int weight) {
+        long hash = fnv1a64(feature);
+        for (int bit = 0; bit < 64; bit++) {
+            votes[bit] += ((hash >>> bit) & 1L) != 0 ? weight : -weight;
+        }
+    }
+
+    private static long fnv1a64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Key của band: 2 bit band index + 16 bit giá trị band
+     */
+    private static int bandKey(long fingerprint, int band) {
+        return (band << BAND_BITS) | (int) ((fingerprint >>> (band * BAND_BITS)) & 0xFFFF);
+    }
+
+    private record Prompt(String language, String normalized, long fingerprint) {
+    }
+
+    private static class CachedAnswer {
+        private final String language;
+        private final long fingerprint;
+        private final String normalizedPrompt;
+        private final AIServiceResponse response;
+        private final long createdAt = System.currentTimeMillis();
+        private long hits;
+        private long lastHitAt;
+
+        CachedAnswer(String language, long fingerprint, String normalizedPrompt, AIServiceResponse response) {
+            this.language = language;
+            this.fingerprint = fingerprint;
+            this.normalizedPrompt = normalizedPrompt;
+            this.response = response;
+        }
+
+        double score(long now) {
+            double ageHours = Math.max(1.0, (now - Math.max(createdAt, lastHitAt)) / 3_600_000.0);
+            return (hits + 1) / ageHours;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.smartcooking.ai.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.smartcooking.ai.dto.AIServiceResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Chat Session Store - giữ lịch sử chat phía server
+ *
+ * Mỗi session là một ring buffer N lượt gần nhất ({user, assistant}); khi gửi
+ * lên AI service chỉ lấy các lượt mới nhất nằm trong token budget. Lưu trong
+ * Redis (list + LTRIM + EXPIRE), fallback sang LRU map local có TTL và giới
+ * hạn số session khi Redis không dùng được.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChatSessionStore {
+
+    public static final String SESSION_ID_FIELD = "session_id";
+
+    private static final String KEY_PREFIX = "chat:session:";
+    private static final Pattern SESSION_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{8,64}");
+
+    private final RedisSupport redisSupport;
+    private final ObjectMapper objectMapper;
+
+    @Value("${ai.chat-session.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.chat-session.max-turns:20}")
+    private int maxTurns;
+
+    @Value("${ai.chat-session.token-budget:2000}")
+    private int tokenBudget;
+
+    @Value("${ai.chat-session.max-turn-chars:4000}")
+    private int maxTurnChars;
+
+    @Value("${ai.chat-session.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    @Value("${ai.chat-session.local-max-sessions:10000}")
+    private int localMaxSessions;
+
+    // Fallback local: LRU theo thời gian truy cập
+    private final Map<String, LocalSession> localSessions = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Gắn session vào chat request: nếu request có session_id thì điền "context"
+     * từ lịch sử; nếu request không có cả session_id lẫn context thì mở session mới.
+     * Request tự gửi context (client cũ) được giữ nguyên.
+     *
+     * @return session id, hoặc null nếu request không dùng session
+     */
+    public String attach(Map<String, Object> request) {
+        if (!enabled) {
+            return null;
+        }
+        Object requested = request.get(SESSION_ID_FIELD);
+        String sessionId;
+        if (requested != null) {
+            sessionId = String.valueOf(requested);
+            if (!SESSION_ID_PATTERN.matcher(sessionId).matches()) {
+                throw new IllegalArgumentException("session_id không hợp lệ");
+            }
+        } else if (!request.containsKey("context")) {
+            sessionId = UUID.randomUUID().toString().replace("-", "");
+        } else {
+            return null;
+        }
+
+        request.put("context", window(loadTurns(scopedKey(request, sessionId))));
+        return sessionId;
+    }
+
+    /**
+     * Ghi lượt chat vừa xong vào session
+     */
+    public void append(Map<String, Object> request, String sessionId, AIServiceResponse response) {
+        if (sessionId == null || !response.isSuccessful()) {
+            return;
+        }
+        String answer = response.field("response") != null ? response.field("response")
+                : response.field("data", "response");
+        if (answer == null || !(request.get("message") instanceof String message)) {
+            return;
+        }
+
+        Map<String, String> turn = new HashMap<>();
+        turn.put("user", truncate(message));
+        turn.put("assistant", truncate(answer));
+        String key = scopedKey(request, sessionId);
+
+        redisSupport.execute(redis -> {
+            String redisKey = KEY_PREFIX + key;
+            redis.opsForList().rightPush(redisKey, toJson(turn));
+            redis.opsForList().trim(redisKey, -maxTurns, -1);
+            redis.expire(redisKey, Duration.ofMinutes(ttlMinutes));
+            return null;
+        }, () -> {
+            appendLocal(key, turn);
+            return null;
+        });
+    }
+
+    /**
+     * Thêm session_id vào response để client gửi lại ở lượt sau
+     */
+    public AIServiceResponse withSessionId(AIServiceResponse response, String sessionId) {
+        if (sessionId == null || !response.json().isObject()) {
+            return response;
+        }
+        try {
+            ObjectNode root = response.json().deepCopy();
+            root.put(SESSION_ID_FIELD, sessionId);
+            return new AIServiceResponse(response.getStatusCode(), response.getContentType(),
+                    objectMapper.writeValueAsBytes(root), objectMapper);
+        } catch (JsonProcessingException e) {
+            return response;
+        }
+    }
+
+    /**
+     * Xóa session (client kết thúc hội thoại)
+     */
+    public void clear(Map<String, Object> request, String sessionId) {
+        String key = scopedKey(request, sessionId);
+        redisSupport.execute(redis -> redis.delete(KEY_PREFIX + key), () -> false);
+        synchronized (localSessions) {
+            localSessions.remove(key);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ai.chat-session.cleanup-interval-ms:60000}")
+    public void removeExpiredLocalSessions() {
+        long now = System.currentTimeMillis();
+        synchronized (localSessions) {
+            localSessions.values().removeIf(session -> session.isExpired(now, ttlMinutes));
+        }
+    }
+
+    private List<Map<String, String>> loadTurns(String key) {
+        return redisSupport.execute(redis -> {
+            List<String> values = redis.opsForList().range(KEY_PREFIX + key, 0, -1);
+            List<Map<String, String>> turns = new ArrayList<>();
+            if (values != null) {
+                for (String value : values) {
+                    Map<String, String> turn = fromJson(value);
+                    if (turn != null) {
+                        turns.add(turn);
+                    }
+                }
+            }
+            return turns;
+        }, () -> loadLocal(key));
+    }
+
+    /**
+     * Các lượt mới nhất có tổng token (ước lượng ~4 ký tự/token) nằm trong budget
+     */
+    private List<Map<String, String>> window(List<Map<String, String>> turns) {
+        List<Map<String, String>> selected = new ArrayList<>();
+        int tokens = 0;
+        for (int i = turns.size() - 1; i >= 0 && selected.size() < maxTurns; i--) {
+            Map<String, String> turn = turns.get(i);
+            int turnTokens = estimateTokens(turn.get("user")) + estimateTokens(turn.get("assistant"));
+            if (tokens + turnTokens > tokenBudget && !selected.isEmpty()) {
+                break;
+            }
+            tokens += turnTokens;
+            selected.add(turn);
+        }
+        Collections.reverse(selected);
+        return selected;
+    }
+
+    private List<Map<String, String>> loadLocal(String key) {
+        synchronized (localSessions) {
+            LocalSession session = localSessions.get(key);
+            if (session == null || session.isExpired(System.currentTimeMillis(), ttlMinutes)) {
+                localSessions.remove(key);
+                return new ArrayList<>();
+            }
+            return new ArrayList<>(session.turns);
+        }
+    }
+
+    private void appendLocal(String key, Map<String, String> turn) {
+        synchronized (localSessions) {
+            LocalSession session = localSessions.computeIfAbsent(key, k -> new LocalSession());
+            session.turns.addLast(turn);
+            while (session.turns.size() > maxTurns) {
+                session.turns.removeFirst();
+            }
+            session.lastAccess = System.currentTimeMillis();
+
+            Iterator<LocalSession> eldest = localSessions.values().iterator();
+            while (localSessions.size() > localMaxSessions && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Session id chỉ có nghĩa trong phạm vi user (header X-User-Id / user_id)
+     */
+    private static String scopedKey(Map<String, Object> request, String sessionId) {
+        Long userId = AIInteractionLogger.resolveUserId(request);
+        return (userId != null ? userId : "anonymous") + ":" + sessionId;
+    }
+
+    private static int estimateTokens(String text) {
+        return text != null ? (text.length() + 3) / 4 : 0;
+    }
+
+    private String truncate(String text) {
+        return text.length() > maxTurnChars ? text.substring(0, maxTurnChars) : text;
+    }
+
+    private String toJson(Map<String, String> turn) {
+        try {
+            return objectMapper.writeValueAsString(turn);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize chat turn", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> fromJson(String value) {
+        try {
+            return objectMapper.readValue(value, Map.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Corrupt chat session turn: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static class LocalSession {
+        private final Deque<Map<String, String>> turns = new ArrayDeque<>();
+        private long lastAccess = System.currentTimeMillis();
+
+        boolean isExpired(long now, long ttlMinutes) {
+            return now - lastAccess > TimeUnit.MINUTES.toMillis(ttlMinutes);
+        }
+    }
+}
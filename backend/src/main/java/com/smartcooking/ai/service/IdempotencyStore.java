@@ -0,0 +1,342 @@
+package com.smartcooking.ai.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Idempotency Store - lưu response theo Idempotency-Key
+ *
+ * Mỗi key có hai trạng thái: IN_FLIGHT (request đầu tiên đang chạy) và DONE
+ * (đã có response để replay). Dùng Redis (SET NX) khi có thể để mọi instance
+ * thấy cùng một key; khi Redis không dùng được thì fallback sang map local,
+ * nơi request trùng chờ trực tiếp trên CompletableFuture của request đầu.
+ * Khóa IN_FLIGHT có TTL ngắn (lock-ttl) nhưng được gia hạn định kỳ khi
+ * request còn chạy, nên request AI lâu không bị request trùng chạy song song.
+ * Mỗi claim có token riêng lưu trong entry IN_FLIGHT; complete / abandon / gia
+ * hạn chỉ tác động khi token còn khớp (Lua script compare-and-set trên Redis),
+ * nên claim đã mất khóa không ghi đè / xóa khóa của request đang giữ key.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IdempotencyStore {
+
+    private static final String KEY_PREFIX = "idempotency:";
+
+    // KEYS[1] = key, ARGV[1] = token: chỉ tiếp tục khi entry còn IN_FLIGHT của đúng claim
+    private static final String OWNED_BY_CLAIM = """
+            local current = redis.call('GET', KEYS[1])
+            if not current then return 0 end
+            local entry = cjson.decode(current)
+            if entry.state ~= 'IN_FLIGHT' or entry.token ~= ARGV[1] then return 0 end
+            """;
+
+    // ARGV[2] = response entry, ARGV[3] = ttl (ms)
+    private static final RedisScript<Long> COMPLETE_SCRIPT = new DefaultRedisScript<>(
+            OWNED_BY_CLAIM + "redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3]) return 1", Long.class);
+
+    private static final RedisScript<Long> ABANDON_SCRIPT = new DefaultRedisScript<>(
+            OWNED_BY_CLAIM + "return redis.call('DEL', KEYS[1])", Long.class);
+
+    // ARGV[2] = lock ttl (ms)
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            OWNED_BY_CLAIM + "return redis.call('PEXPIRE', KEYS[1], ARGV[2])", Long.class);
+
+    public enum Outcome {
+        ACQUIRED,
+        REPLAY,
+        MISMATCH,
+        IN_FLIGHT
+    }
+
+    private final RedisSupport redisSupport;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.idempotency.ttl-hours:24}")
+    private long ttlHours;
+
+    @Value("${app.idempotency.lock-ttl-ms:60000}")
+    private long lockTtlMs;
+
+    @Value("${app.idempotency.wait-timeout-ms:35000}")
+    private long waitTimeoutMs;
+
+    @Value("${app.idempotency.poll-interval-ms:100}")
+    private long pollIntervalMs;
+
+    private final Map<String, LocalEntry> localEntries = new ConcurrentHashMap<>();
+
+    // Claim ACQUIRED của instance này chưa complete / abandon (gia hạn khóa)
+    private final Set<Claim> heldClaims = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Giành quyền xử lý key, hoặc lấy response đã lưu.
+     * Nếu request khác đang xử lý cùng key thì chờ tối đa wait-timeout.
+     *
+     * @param fingerprint hash của request, dùng để phát hiện key bị dùng lại cho request khác
+     */
+    public Claim begin(String key, String fingerprint) {
+        long deadline = System.currentTimeMillis() + waitTimeoutMs;
+        while (true) {
+            Claim claim = redisSupport.execute(redis -> tryClaimRedis(redis, key, fingerprint),
+                    () -> tryClaimLocal(key, fingerprint, deadline));
+            if (claim != null) {
+                return claim;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                return new Claim(Outcome.IN_FLIGHT, key, false, null);
+            }
+            try {
+                Thread.sleep(pollIntervalMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new Claim(Outcome.IN_FLIGHT, key, false, null);
+            }
+        }
+    }
+
+    /**
+     * Lưu response của request đã ACQUIRED để replay trong TTL
+     */
+    public void complete(Claim claim, StoredResponse response) {
+        release(claim);
+        if (claim.redis) {
+            String value = serialize(new RedisEntry(RedisEntry.DONE, response.getFingerprint(), null, response));
+            Long stored = redisSupport.execute(redis -> redis.execute(COMPLETE_SCRIPT, List.of(KEY_PREFIX + claim.key),
+                    claim.token, value, String.valueOf(TimeUnit.HOURS.toMillis(ttlHours))), () -> null);
+            if (stored != null && stored == 0) {
+                log.warn("Idempotency key {} was no longer held by this request, response not stored", claim.key);
+            }
+            return;
+        }
+        LocalEntry entry = localEntries.get(claim.key);
+        if (entry != null && entry.token.equals(claim.token)) {
+            entry.expiresAt = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(ttlHours);
+            entry.result.complete(response);
+        }
+    }
+
+    /**
+     * Bỏ key (request lỗi) để lần retry sau được xử lý lại
+     */
+    public void abandon(Claim claim) {
+        release(claim);
+        if (claim.redis) {
+            redisSupport.execute(redis -> redis.execute(ABANDON_SCRIPT, List.of(KEY_PREFIX + claim.key),
+                    claim.token), () -> null);
+            return;
+        }
+        LocalEntry entry = localEntries.get(claim.key);
+        if (entry != null && entry.token.equals(claim.token) && localEntries.remove(claim.key, entry)) {
+            entry.result.complete(null);
+        }
+    }
+
+    /**
+     * Gia hạn khóa IN_FLIGHT của các request đang chạy trên instance này
+     */
+    @Scheduled(fixedDelayString = "${app.idempotency.lock-renew-interval-ms:20000}")
+    public void renewLocks() {
+        for (Claim claim : heldClaims) {
+            // Đồng bộ với release() để không gia hạn (rút ngắn TTL) entry vừa chuyển sang DONE
+            synchronized (claim) {
+                if (!claim.held) {
+                    continue;
+                }
+                if (claim.redis) {
+                    redisSupport.execute(redis -> redis.execute(RENEW_SCRIPT, List.of(KEY_PREFIX + claim.key),
+                            claim.token, String.valueOf(lockTtlMs)), () -> null);
+                } else {
+                    LocalEntry entry = localEntries.get(claim.key);
+                    if (entry != null && entry.token.equals(claim.token)) {
+                        entry.expiresAt = System.currentTimeMillis() + lockTtlMs;
+                    }
+                }
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.idempotency.cleanup-interval-ms:60000}")
+    public void removeExpired() {
+        long now = System.currentTimeMillis();
+        localEntries.entrySet().removeIf(entry -> entry.getValue().expiresAt < now);
+    }
+
+    private Claim tryClaimRedis(StringRedisTemplate redis, String key, String fingerprint) {
+        String redisKey = KEY_PREFIX + key;
+        String token = UUID.randomUUID().toString();
+        String inFlight = serialize(new RedisEntry(RedisEntry.IN_FLIGHT, fingerprint, token, null));
+        if (Boolean.TRUE.equals(redis.opsForValue().setIfAbsent(redisKey, inFlight,
+                Duration.ofMillis(lockTtlMs)))) {
+            return hold(new Claim(Outcome.ACQUIRED, key, true, null, token));
+        }
+
+        String value = redis.opsForValue().get(redisKey);
+        if (value == null) {
+            // Key vừa hết hạn / bị abandon: thử lại
+            return null;
+        }
+        RedisEntry entry = deserialize(value);
+        if (entry == null || !fingerprint.equals(entry.getFingerprint())) {
+            return new Claim(Outcome.MISMATCH, key, true, null);
+        }
+        return RedisEntry.DONE.equals(entry.getState())
+                ? new Claim(Outcome.REPLAY, key, true, entry.getResponse())
+                : null;
+    }
+
+    private Claim tryClaimLocal(String key, String fingerprint, long deadline) {
+        long now = System.currentTimeMillis();
+        LocalEntry created = new LocalEntry(fingerprint, UUID.randomUUID().toString(), now + lockTtlMs);
+        LocalEntry entry = localEntries.compute(key,
+                (k, existing) -> existing == null || existing.expiresAt < now ? created : existing);
+        if (entry == created) {
+            return hold(new Claim(Outcome.ACQUIRED, key, false, null, created.token));
+        }
+        if (!fingerprint.equals(entry.fingerprint)) {
+            return new Claim(Outcome.MISMATCH, key, false, null);
+        }
+
+        try {
+            StoredResponse response = entry.result.get(Math.max(0, deadline - now), TimeUnit.MILLISECONDS);
+            // null: request đầu bị abandon, thử giành lại key
+            return response != null ? new Claim(Outcome.REPLAY, key, false, response) : null;
+        } catch (TimeoutException e) {
+            return new Claim(Outcome.IN_FLIGHT, key, false, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Claim(Outcome.IN_FLIGHT, key, false, null);
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    private Claim hold(Claim claim) {
+        synchronized (claim) {
+            claim.held = true;
+        }
+        heldClaims.add(claim);
+        return claim;
+    }
+
+    private void release(Claim claim) {
+        synchronized (claim) {
+            claim.held = false;
+        }
+        heldClaims.remove(claim);
+    }
+
+    private String serialize(RedisEntry entry) {
+        try {
+            return objectMapper.writeValueAsString(entry);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize idempotency entry", e);
+        }
+    }
+
+    private RedisEntry deserialize(String value) {
+        try {
+            return objectMapper.readValue(value, RedisEntry.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Corrupt idempotency entry: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Kết quả của begin()
+     */
+    public static class Claim {
+        private final Outcome outcome;
+        private final String key;
+        private final boolean redis;
+        private final StoredResponse response;
+        private final String token;
+        private boolean held;
+
+        Claim(Outcome outcome, String key, boolean redis, StoredResponse response) {
+            this(outcome, key, redis, response, null);
+        }
+
+        Claim(Outcome outcome, String key, boolean redis, StoredResponse response, String token) {
+            this.outcome = outcome;
+            this.key = key;
+            this.redis = redis;
+            this.response = response;
+            this.token = token;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * Response đã lưu (chỉ có khi outcome = REPLAY)
+         */
+        public StoredResponse getResponse() {
+            return response;
+        }
+    }
+
+    /**
+     * Response đã lưu để replay
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class StoredResponse {
+        private String fingerprint;
+        private int status;
+        private String contentType;
+        private byte[] body;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class RedisEntry {
+        static final String IN_FLIGHT = "IN_FLIGHT";
+        static final String DONE = "DONE";
+
+        private String state;
+        private String fingerprint;
+        // Token của claim giữ entry IN_FLIGHT
+        private String token;
+        private StoredResponse response;
+    }
+
+    private static class LocalEntry {
+        private final String fingerprint;
+        private final String token;
+        private final CompletableFuture<StoredResponse> result = new CompletableFuture<>();
+        private volatile long expiresAt;
+
+        LocalEntry(String fingerprint, String token, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.token = token;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
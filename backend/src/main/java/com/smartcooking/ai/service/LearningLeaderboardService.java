@@ -0,0 +1,336 @@
+package com.smartcooking.ai.service;
+
+import com.smartcooking.ai.dto.LearningPathCompletedEvent;
+import com.smartcooking.ai.repository.UserLearningProgressRepository;
+import com.smartcooking.ai.util.RankedSkipList;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Learning Leaderboard Service - xếp hạng user theo điểm learning
+ *
+ * Điểm = POINTS_PER_PATH × số learning path đã hoàn thành, giữ trong ZSET
+ * Redis (dùng chung mọi instance) và một RankedSkipList cục bộ làm fallback.
+ * Sau khi transaction commit, LearningPathCompletedEvent ghi lại điểm tuyệt
+ * đối của user (đếm path đã hoàn thành, ZADD) thay vì ZINCRBY, nên cập nhật
+ * chạy lại hay chồng lên rebuild không bị cộng hai lần; top-N, rank của user
+ * và "xung quanh tôi" đều O(log n + N). Leaderboard được dựng lại từ một
+ * query GROUP BY lúc khởi động, định kỳ, và khi Redis hồi phục sau lỗi (các
+ * lần cập nhật lúc Redis lỗi chỉ vào bản cục bộ). User được cập nhật trong lúc
+ * rebuild được tính lại sau khi swap, vì snapshot của rebuild có thể cũ hơn.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LearningLeaderboardService {
+
+    public static final int POINTS_PER_PATH = 100;
+
+    private static final String KEY = "learning:leaderboard";
+    private static final String REBUILD_KEY = KEY + ":rebuild";
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    private final RedisSupport redisSupport;
+    private final UserLearningProgressRepository progressRepository;
+
+    @Value("${app.learning.leaderboard.enabled:true}")
+    private boolean enabled;
+
+    private final RankedSkipList local = new RankedSkipList();
+
+    // Redis bỏ lỡ ít nhất một lần cộng điểm: dựng lại khi Redis dùng được
+    private volatile boolean redisStale = true;
+
+    // User được cập nhật trong lúc rebuild (guard bởi local)
+    private boolean rebuilding;
+    private final Set<Long> updatedDuringRebuild = new HashSet<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onLearningPathCompleted(LearningPathCompletedEvent event) {
+        if (!enabled || event.getUserId() == null) {
+            return;
+        }
+        // Đánh dấu trước khi ghi: ghi đè bởi RENAME của rebuild đang chạy sẽ được sửa sau swap
+        synchronized (local) {
+            if (rebuilding) {
+                updatedDuringRebuild.add(event.getUserId());
+            }
+        }
+        refresh(event.getUserId());
+    }
+
+    /**
+     * Dựng lại Redis từ database khi Redis đã bỏ lỡ cập nhật (lỗi trước đó)
+     */
+    @Scheduled(fixedDelayString = "${app.learning.leaderboard.resync-check-ms:60000}",
+            initialDelayString = "${app.learning.leaderboard.resync-check-ms:60000}")
+    public void resyncIfStale() {
+        if (enabled && redisStale && redisSupport.isAvailable()) {
+            rebuild();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.learning.leaderboard.rebuild-interval-ms:21600000}",
+            initialDelayString = "${app.learning.leaderboard.rebuild-interval-ms:21600000}")
+    public void scheduledRebuild() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Tính lại điểm từ user_learning_progress (một query GROUP BY) vào bản
+     * cục bộ và Redis; ZSET mới được ghi vào key tạm rồi RENAME nên người đọc
+     * không thấy leaderboard dở dang. User hoàn thành path trong lúc rebuild
+     * được tính lại sau khi swap
+     *
+     * @return số user trên leaderboard
+     */
+    public synchronized int rebuild() {
+        synchronized (local) {
+            rebuilding = true;
+            updatedDuringRebuild.clear();
+        }
+        try {
+            return rebuildFromDatabase();
+        } finally {
+            List<Long> updated;
+            synchronized (local) {
+                rebuilding = false;
+                updated = new ArrayList<>(updatedDuringRebuild);
+                updatedDuringRebuild.clear();
+            }
+            updated.forEach(this::refresh);
+        }
+    }
+
+    private int rebuildFromDatabase() {
+        List<Object[]> rows;
+        try {
+            rows = progressRepository.countCompletedPathsByUser();
+        } catch (Exception e) {
+            log.warn("Failed to load learning leaderboard: {}", e.getMessage());
+            synchronized (local) {
+                return local.size();
+            }
+        }
+        Map<String, Double> scores = new HashMap<>(rows.size() * 2);
+        for (Object[] row : rows) {
+            scores.put(String.valueOf(row[0]), ((Number) row[1]).doubleValue() * POINTS_PER_PATH);
+        }
+        synchronized (local) {
+            local.clear();
+            scores.forEach(local::add);
+        }
+
+        Boolean written = redisSupport.execute(template -> {
+            template.delete(REBUILD_KEY);
+            Set<ZSetOperations.TypedTuple<String>> batch = new HashSet<>();
+            for (Map.Entry<String, Double> entry : scores.entrySet()) {
+                batch.add(new DefaultTypedTuple<>(entry.getKey(), entry.getValue()));
+                if (batch.size() == REBUILD_BATCH_SIZE) {
+                    template.opsForZSet().add(REBUILD_KEY, batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                template.opsForZSet().add(REBUILD_KEY, batch);
+            }
+            if (scores.isEmpty()) {
+                template.delete(KEY);
+            } else {
+                template.rename(REBUILD_KEY, KEY);
+            }
+            return true;
+        }, () -> false);
+        redisStale = !Boolean.TRUE.equals(written);
+        log.info("Rebuilt learning leaderboard with {} users (redis: {})", scores.size(), !redisStale);
+        return scores.size();
+    }
+
+    /**
+     * Ghi điểm hiện tại của user (đếm từ database) vào bản cục bộ và Redis
+     */
+    private void refresh(Long userId) {
+        String member = String.valueOf(userId);
+        double score;
+        try {
+            score = (double) progressRepository.countByUserIdAndIsCompletedTrue(userId) * POINTS_PER_PATH;
+        } catch (Exception e) {
+            // Rebuild định kỳ / resync sẽ sửa lại
+            log.warn("Failed to load leaderboard score of user {}: {}", userId, e.getMessage());
+            redisStale = true;
+            return;
+        }
+        synchronized (local) {
+            if (score > 0) {
+                local.add(member, score);
+            } else {
+                local.remove(member);
+            }
+        }
+        Boolean applied = redisSupport.execute(template -> {
+            if (score > 0) {
+                template.opsForZSet().add(KEY, member, score);
+            } else {
+                template.opsForZSet().remove(KEY, member);
+            }
+            return true;
+        }, () -> false);
+        if (!Boolean.TRUE.equals(applied)) {
+            redisStale = true;
+        }
+    }
+
+    /**
+     * Top N (rank 1-based, điểm giảm dần)
+     */
+    public List<LeaderboardEntry> top(int limit) {
+        return range(0, Math.max(1, limit) - 1);
+    }
+
+    /**
+     * Vị trí của user, null nếu user chưa có điểm
+     */
+    public LeaderboardEntry rankOf(Long userId) {
+        long rank = reverseRank(String.valueOf(userId));
+        if (rank < 0) {
+            return null;
+        }
+        List<LeaderboardEntry> entries = range(rank, rank);
+        return entries.isEmpty() ? null : entries.get(0);
+    }
+
+    /**
+     * radius user phía trên và phía dưới user (kèm chính user)
+     */
+    public List<LeaderboardEntry> around(Long userId, int radius) {
+        long rank = reverseRank(String.valueOf(userId));
+        if (rank < 0) {
+            return List.of();
+        }
+        return range(Math.max(0, rank - radius), rank + radius);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("redisStale", redisStale);
+        synchronized (local) {
+            stats.put("localUsers", local.size());
+        }
+        return stats;
+    }
+
+    private long reverseRank(String member) {
+        if (!redisStale) {
+            Long rank = redisSupport.execute(template -> {
+                Long value = template.opsForZSet().reverseRank(KEY, member);
+                return value != null ? value : -1L;
+            }, () -> null);
+            if (rank != null) {
+                return rank;
+            }
+        }
+        synchronized (local) {
+            long rank = local.rank(member);
+            return rank < 0 ? -1 : local.size() - 1 - rank;
+        }
+    }
+
+    /**
+     * Các user có rank (0-based, điểm giảm dần) trong [start, end]
+     */
+    private List<LeaderboardEntry> range(long start, long end) {
+        if (!redisStale) {
+            List<LeaderboardEntry> entries = redisSupport.execute(template -> {
+                Set<ZSetOperations.TypedTuple<String>> tuples = template.opsForZSet()
+                        .reverseRangeWithScores(KEY, start, end);
+                List<LeaderboardEntry> result = new ArrayList<>();
+                long rank = start;
+                if (tuples != null) {
+                    for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                        result.add(toEntry(tuple.getValue(), tuple.getScore(), rank++));
+                    }
+                }
+                return result;
+            }, () -> null);
+            if (entries != null) {
+                return entries;
+            }
+        }
+        List<RankedSkipList.Entry> ascending;
+        long size;
+        synchronized (local) {
+            size = local.size();
+            ascending = local.rangeByRank(Math.max(0, size - 1 - end), size - 1 - start);
+        }
+        Collections.reverse(ascending);
+        List<LeaderboardEntry> result = new ArrayList<>(ascending.size());
+        long rank = start;
+        for (RankedSkipList.Entry entry : ascending) {
+            result.add(toEntry(entry.getMember(), entry.getScore(), rank++));
+        }
+        return result;
+    }
+
+    private static LeaderboardEntry toEntry(String member, Double score, long rank) {
+        long points = score != null ? Math.round(score) : 0;
+        return new LeaderboardEntry(Long.valueOf(member), points, points / POINTS_PER_PATH, rank + 1);
+    }
+
+    public static class LeaderboardEntry {
+        private final Long userId;
+        private final long points;
+        private final long completedPaths;
+        private final long rank;
+
+        public LeaderboardEntry(Long userId, long points, long completedPaths, long rank) {
+            this.userId = userId;
+            this.points = points;
+            this.completedPaths = completedPaths;
+            this.rank = rank;
+        }
+
+        // Getters
+        public Long getUserId() {
+            return userId;
+        }
+
+        public long getPoints() {
+            return points;
+        }
+
+        public long getCompletedPaths() {
+            return completedPaths;
+        }
+
+        public long getRank() {
+            return rank;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.smartcooking.ai.service;
+
+import com.smartcooking.ai.entity.LearningPath;
+import com.smartcooking.ai.entity.LearningPathStep;
+import com.smartcooking.ai.repository.LearningPathRepository;
+import com.smartcooking.ai.repository.LearningPathStepRepository;
+import com.smartcooking.ai.repository.UserLearningProgressRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Learning Path Step Service - thêm / sửa / xóa / sắp xếp steps
+ *
+ * orderNumber cách nhau ORDER_GAP nên di chuyển một step chỉ ghi một dòng
+ * (lấy điểm giữa hai step kề); chỉ khi hết khoảng trống mới đánh số lại cả
+ * path bằng một JDBC batch. Thay toàn bộ danh sách step (editor) dùng một
+ * DELETE, một batch UPDATE và một batch INSERT thay vì một round trip mỗi step.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional
+public class LearningPathStepService {
+
+    public static final int ORDER_GAP = 1024;
+
+    private static final String INSERT_SQL = """
+            INSERT INTO learning_path_steps (learning_path_id, order_number, title_en, title_vi,
+                description_en, description_vi, estimated_minutes, recipe_id, content_type, content_url, is_required)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String UPDATE_SQL = """
+            UPDATE learning_path_steps
+            SET order_number = ?, title_en = ?, title_vi = ?, description_en = ?, description_vi = ?,
+                estimated_minutes = ?, recipe_id = ?, content_type = ?, content_url = ?, is_required = ?
+            WHERE id = ? AND learning_path_id = ?
+            """;
+
+    private static final String UPDATE_ORDER_SQL = "UPDATE learning_path_steps SET order_number = ? WHERE id = ?";
+
+    private final LearningPathRepository learningPathRepository;
+    private final LearningPathStepRepository stepRepository;
+    private final UserLearningProgressRepository progressRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Transactional(readOnly = true)
+    public List<LearningPathStep> getSteps(Long pathId) {
+        return stepRepository.findByLearningPathIdOrderByOrderNumberAsc(pathId);
+    }
+
+    /**
+     * Thêm step; không có orderNumber thì thêm vào cuối
+     */
+    public LearningPathStep addStep(Long pathId, LearningPathStep step, Long userId) {
+        LearningPath path = editablePath(pathId, userId);
+        step.setId(null);
+        step.setLearningPath(path);
+        if (step.getOrderNumber() == null) {
+            Integer maxOrder = stepRepository.findMaxOrderNumber(pathId);
+            step.setOrderNumber((maxOrder != null ? maxOrder : 0) + ORDER_GAP);
+        }
+        LearningPathStep saved = stepRepository.save(step);
+        log.info("Step {} added to learning path {}", saved.getId(), pathId);
+        return saved;
+    }
+
+    public LearningPathStep updateStep(Long pathId, Long stepId, LearningPathStep updates, Long userId) {
+        editablePath(pathId, userId);
+        LearningPathStep step = stepRepository.findByIdAndLearningPathId(stepId, pathId)
+                .orElseThrow(() -> new RuntimeException("Step not found in learning path " + pathId + ": " + stepId));
+
+        if (updates.getOrderNumber() != null) {
+            step.setOrderNumber(updates.getOrderNumber());
+        }
+        if (updates.getTitleEn() != null) {
+            step.setTitleEn(updates.getTitleEn());
+        }
+        if (updates.getTitleVi() != null) {
+            step.setTitleVi(updates.getTitleVi());
+        }
+        if (updates.getDescriptionEn() != null) {
+            step.setDescriptionEn(updates.getDescriptionEn());
+        }
+        if (updates.getDescriptionVi() != null) {
+            step.setDescriptionVi(updates.getDescriptionVi());
+        }
+        if (updates.getEstimatedMinutes() != null) {
+            step.setEstimatedMinutes(updates.getEstimatedMinutes());
+        }
+        if (updates.getRecipe() != null) {
+            step.setRecipe(updates.getRecipe());
+        }
+        if (updates.getContentType() != null) {
+            step.setContentType(updates.getContentType());
+        }
+        if (updates.getContentUrl() != null) {
+            step.setContentUrl(updates.getContentUrl());
+        }
+        if (updates.getIsRequired() != null) {
+            step.setIsRequired(updates.getIsRequired());
+        }
+        return stepRepository.save(step);
+    }
+
+    public void deleteStep(Long pathId, Long stepId, Long userId) {
+        editablePath(pathId, userId);
+        LearningPathStep step = stepRepository.findByIdAndLearningPathId(stepId, pathId)
+                .orElseThrow(() -> new RuntimeException("Step not found in learning path " + pathId + ": " + stepId));
+        progressRepository.clearCurrentStep(List.of(stepId));
+        stepRepository.delete(step);
+        log.info("Step {} deleted from learning path {}", stepId, pathId);
+    }
+
+    /**
+     * Thay toàn bộ steps của path theo thứ tự danh sách: step có id được cập
+     * nhật, step không có id được thêm, step cũ không còn trong danh sách bị
+     * xóa. orderNumber được đánh lại theo vị trí (cách nhau ORDER_GAP)
+     */
+    public List<LearningPathStep> replaceSteps(Long pathId, List<LearningPathStep> steps, Long userId) {
+        editablePath(pathId, userId);
+        Set<Long> existingIds = new HashSet<>(stepRepository.findIdsByLearningPathId(pathId));
+
+        List<LearningPathStep> updates = new ArrayList<>();
+        List<LearningPathStep> inserts = new ArrayList<>();
+        Set<Long> keptIds = new HashSet<>();
+        int orderNumber = 0;
+        for (LearningPathStep step : steps) {
+            if (step.getTitleEn() == null || step.getTitleEn().isBlank()) {
+                throw new IllegalArgumentException("Step titleEn is required");
+            }
+            orderNumber += ORDER_GAP;
+            step.setOrderNumber(orderNumber);
+            if (step.getId() == null) {
+                inserts.add(step);
+            } else if (!existingIds.contains(step.getId())) {
+                throw new IllegalArgumentException("Step " + step.getId() + " does not belong to learning path "
+                        + pathId);
+            } else if (!keptIds.add(step.getId())) {
+                throw new IllegalArgumentException("Duplicate step " + step.getId());
+            } else {
+                updates.add(step);
+            }
+        }
+
+        List<Long> removedIds = new ArrayList<>(existingIds);
+        removedIds.removeAll(keptIds);
+        if (!removedIds.isEmpty()) {
+            progressRepository.clearCurrentStep(removedIds);
+            stepRepository.deleteAllByIdInBatch(removedIds);
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, updates, updates.size(), (ps, step) -> {
+                bind(ps, step, 1);
+                ps.setLong(11, step.getId());
+                ps.setLong(12, pathId);
+            });
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, inserts, inserts.size(), (ps, step) -> {
+                ps.setLong(1, pathId);
+                bind(ps, step, 2);
+            });
+        }
+        log.info("Replaced steps of learning path {}: {} updated, {} added, {} removed", pathId, updates.size(),
+                inserts.size(), removedIds.size());
+        return stepRepository.findByLearningPathIdOrderByOrderNumberAsc(pathId);
+    }
+
+    /**
+     * Đưa step ra sau afterStepId (null: lên đầu). Thường chỉ ghi một dòng;
+     * đánh số lại cả path khi hai step kề không còn khoảng trống
+     */
+    public LearningPathStep moveStep(Long pathId, Long stepId, Long afterStepId, Long userId) {
+        editablePath(pathId, userId);
+        if (stepId.equals(afterStepId)) {
+            throw new IllegalArgumentException("Step cannot be moved after itself");
+        }
+        List<Long> ids = new ArrayList<>();
+        List<Integer> orders = new ArrayList<>();
+        boolean found = false;
+        for (Object[] row : stepRepository.findOrderByLearningPathId(pathId)) {
+            if (stepId.equals(row[0])) {
+                found = true;
+            } else {
+                ids.add((Long) row[0]);
+                orders.add((Integer) row[1]);
+            }
+        }
+        if (!found) {
+            throw new RuntimeException("Step not found in learning path " + pathId + ": " + stepId);
+        }
+
+        // Vị trí chèn trong danh sách các step còn lại
+        int position = 0;
+        if (afterStepId != null) {
+            position = ids.indexOf(afterStepId) + 1;
+            if (position == 0) {
+                throw new RuntimeException("Step not found in learning path " + pathId + ": " + afterStepId);
+            }
+        }
+        int lower = position > 0 ? orders.get(position - 1) : 0;
+        Integer upper = position < orders.size() ? orders.get(position) : null;
+
+        if (upper == null) {
+            jdbcTemplate.update(UPDATE_ORDER_SQL, lower + ORDER_GAP, stepId);
+        } else if (upper - lower > 1) {
+            jdbcTemplate.update(UPDATE_ORDER_SQL, lower + (upper - lower) / 2, stepId);
+        } else {
+            ids.add(position, stepId);
+            renumber(ids);
+            log.info("Renumbered {} steps of learning path {}", ids.size(), pathId);
+        }
+        return stepRepository.findById(stepId)
+                .orElseThrow(() -> new RuntimeException("Step not found: " + stepId));
+    }
+
+    private void renumber(List<Long> orderedIds) {
+        List<Object[]> args = new ArrayList<>(orderedIds.size());
+        for (int i = 0; i < orderedIds.size(); i++) {
+            args.add(new Object[] { (i + 1) * ORDER_GAP, orderedIds.get(i) });
+        }
+        jdbcTemplate.batchUpdate(UPDATE_ORDER_SQL, args);
+    }
+
+    /**
+     * Path tồn tại và user được sửa (người tạo path, hoặc path không có người tạo)
+     */
+    private LearningPath editablePath(Long pathId, Long userId) {
+        LearningPath path = learningPathRepository.findById(pathId)
+                .orElseThrow(() -> new RuntimeException("Learning path not found: " + pathId));
+        if (path.getCreatedBy() != null && !path.getCreatedBy().getId().equals(userId)) {
+            throw new RuntimeException("User " + userId + " cannot edit learning path " + pathId);
+        }
+        return path;
+    }
+
+    /**
+     * Gán các cột nội dung của step bắt đầu từ tham số index (10 tham số)
+     */
+    private static void bind(PreparedStatement ps, LearningPathStep step, int index) throws SQLException {
+        ps.setInt(index, step.getOrderNumber());
+        ps.setString(index + 1, step.getTitleEn());
+        ps.setString(index + 2, step.getTitleVi());
+        ps.setString(index + 3, step.getDescriptionEn());
+        ps.setString(index + 4, step.getDescriptionVi());
+        ps.setInt(index + 5, step.getEstimatedMinutes() != null ? step.getEstimatedMinutes() : 30);
+        if (step.getRecipe() != null && step.getRecipe().getId() != null) {
+            ps.setLong(index + 6, step.getRecipe().getId());
+        } else {
+            ps.setNull(index + 6, Types.BIGINT);
+        }
+        LearningPathStep.ContentType contentType = step.getContentType() != null
+                ? step.getContentType()
+                : LearningPathStep.ContentType.RECIPE;
+        ps.setString(index + 7, contentType.name());
+        ps.setString(index + 8, step.getContentUrl());
+        ps.setBoolean(index + 9, !Boolean.FALSE.equals(step.getIsRequired()));
+    }
+}
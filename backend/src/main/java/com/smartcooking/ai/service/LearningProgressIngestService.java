@@ -0,0 +1,542 @@
+package com.smartcooking.ai.service;
+
+import com.smartcooking.ai.dto.LearningPathCompletedEvent;
+import com.smartcooking.ai.repository.LearningPathStepRepository;
+import com.smartcooking.ai.repository.UserLearningProgressRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Learning Progress Ingest Service - nhận progress heartbeat tần suất cao
+ *
+ * UI gửi heartbeat (số bước đã xong, phần trăm, số giây vừa học) vài giây một
+ * lần cho mỗi learner. Heartbeat được gộp trong memory theo progress (mỗi
+ * progress ứng với một cặp user, learning path) và ghi định kỳ bằng JDBC batch
+ * UPDATE. Các dòng được khóa (SELECT ... FOR UPDATE) trong transaction flush;
+ * mỗi UPDATE vẫn kiểm tra cột version: dòng bị ghi đồng thời trước khi khóa
+ * (instance khác, JPA) được đọc lại ở lần flush sau. completedSteps chỉ tăng; thời gian
+ * dồn theo giây, ghi theo phút (phần lẻ chờ lần sau). Chuyển sang hoàn thành
+ * phát LearningPathCompletedEvent sau khi transaction commit. Heartbeat chưa
+ * flush mất khi instance dừng đột ngột (tối đa flush-interval-ms).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LearningProgressIngestService {
+
+    private static final String SELECT_SQL = """
+            SELECT id, user_id, learning_path_id, version, completed_steps, total_steps,
+                progress_percentage, is_completed, completion_date
+            FROM user_learning_progress
+            WHERE id IN (%s)
+            ORDER BY id
+            FOR UPDATE
+            """;
+
+    private static final String SELECT_VERSION_SQL = "SELECT id, version FROM user_learning_progress WHERE id IN (%s)";
+
+    private static final String UPDATE_SQL = """
+            UPDATE user_learning_progress
+            SET completed_steps = ?, progress_percentage = ?,
+                total_time_spent_minutes = COALESCE(total_time_spent_minutes, 0) + ?,
+                last_accessed_at = GREATEST(COALESCE(last_accessed_at, ?), ?),
+                current_step_id = COALESCE((SELECT s.id FROM learning_path_steps s WHERE s.id = ?), current_step_id),
+                is_completed = ?, completion_date = ?, version = version + 1
+            WHERE id = ? AND version = ?
+            """;
+
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+    // Chưa hoàn thành thì không hiển thị 100%
+    private static final BigDecimal MAX_INCOMPLETE_PERCENTAGE = new BigDecimal("99.99");
+    private static final int MAX_SYNC_ATTEMPTS = 3;
+    // Phần giây lẻ của learner đã ngừng gửi heartbeat được giữ tối đa chừng này
+    private static final long CARRY_TTL_MS = 10 * 60_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final UserLearningProgressRepository progressRepository;
+    private final LearningPathStepRepository stepRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.learning.progress-ingest.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.learning.progress-ingest.max-heartbeat-seconds:300}")
+    private int maxHeartbeatSeconds;
+
+    @Value("${app.learning.progress-ingest.owner-cache-max-entries:10000}")
+    private int ownerCacheMaxEntries;
+
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    // progressId -> chủ (userId, learningPathId), LRU
+    private final Map<Long, Owner> owners = new LinkedHashMap<>(16, 0.75f, true);
+
+    private TransactionTemplate flushTransaction;
+    private Counter heartbeatCounter;
+    private Counter flushedCounter;
+    private Counter conflictCounter;
+
+    @PostConstruct
+    void init() {
+        flushTransaction = new TransactionTemplate(transactionManager);
+        flushTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        Gauge.builder("learning.progress.pending", pending, Map::size)
+                .description("Learning progress rows with heartbeats waiting to be flushed")
+                .register(meterRegistry);
+        heartbeatCounter = meterRegistry.counter("learning.progress.heartbeats");
+        flushedCounter = meterRegistry.counter("learning.progress.flushed");
+        conflictCounter = meterRegistry.counter("learning.progress.conflicts");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flush();
+    }
+
+    /**
+     * Ghi nhận heartbeat (gộp, ghi ở lần flush kế tiếp)
+     *
+     * @param completedSteps   số bước đã xong (null: không đổi), không làm giảm giá trị đã lưu
+     * @param progressPercent  phần trăm phía client (null: không đổi), không thấp hơn phần trăm theo số bước
+     * @param timeSpentSeconds số giây học kể từ heartbeat trước
+     */
+    public void heartbeat(Long progressId, Long userId, Integer completedSteps, Double progressPercent,
+            int timeSpentSeconds) {
+        checkOwner(progressId, userId);
+        int seconds = Math.max(0, Math.min(timeSpentSeconds, maxHeartbeatSeconds));
+        LocalDateTime now = LocalDateTime.now();
+        pending.compute(progressId, (id, current) -> {
+            Pending entry = current != null ? current : new Pending();
+            if (completedSteps != null) {
+                entry.completedSteps = entry.completedSteps != null
+                        ? Math.max(entry.completedSteps, completedSteps)
+                        : completedSteps;
+            }
+            if (progressPercent != null) {
+                entry.progressPercent = progressPercent;
+            }
+            entry.seconds += seconds;
+            entry.lastAccessedAt = now;
+            return entry;
+        });
+        heartbeatCounter.increment();
+    }
+
+    /**
+     * Hoàn thành một bước và ghi ngay (cùng các heartbeat đang chờ của progress)
+     */
+    public void completeStep(Long progressId, Long userId, Long stepId) {
+        Owner owner = checkOwner(progressId, userId);
+        if (!stepRepository.existsByIdAndLearningPathId(stepId, owner.learningPathId)) {
+            throw new RuntimeException("Step " + stepId + " does not belong to learning path "
+                    + owner.learningPathId);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        pending.compute(progressId, (id, current) -> {
+            Pending entry = current != null ? current : new Pending();
+            entry.stepIncrements++;
+            entry.currentStepId = stepId;
+            entry.lastAccessedAt = now;
+            return entry;
+        });
+        flushNow(progressId);
+    }
+
+    /**
+     * Đánh dấu hoàn thành learning path và ghi ngay
+     */
+    public void complete(Long progressId, Long userId) {
+        checkOwner(progressId, userId);
+        LocalDateTime now = LocalDateTime.now();
+        pending.compute(progressId, (id, current) -> {
+            Pending entry = current != null ? current : new Pending();
+            entry.complete = true;
+            entry.lastAccessedAt = now;
+            return entry;
+        });
+        flushNow(progressId);
+    }
+
+    /**
+     * Ghi mọi progress có heartbeat mới, mỗi batch-size dòng một transaction
+     */
+    @Scheduled(fixedDelayString = "${app.learning.progress-ingest.flush-interval-ms:5000}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        Map<Long, Pending> batch = new HashMap<>();
+        for (Long progressId : pending.keySet()) {
+            Pending[] taken = new Pending[1];
+            pending.computeIfPresent(progressId, (id, entry) -> {
+                if (entry.lastAccessedAt != null) {
+                    taken[0] = entry;
+                    return null;
+                }
+                // Chỉ còn giây lẻ của learner đã ngừng học
+                return now - entry.createdAt > CARRY_TTL_MS ? null : entry;
+            });
+            if (taken[0] == null) {
+                continue;
+            }
+            batch.put(progressId, taken[0]);
+            if (batch.size() >= batchSize) {
+                if (!flushBatch(batch)) {
+                    return;
+                }
+                batch = new HashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            flushBatch(batch);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pending", pending.size());
+        stats.put("heartbeats", (long) heartbeatCounter.count());
+        stats.put("flushedRows", (long) flushedCounter.count());
+        stats.put("conflicts", (long) conflictCounter.count());
+        return stats;
+    }
+
+    private boolean flushBatch(Map<Long, Pending> batch) {
+        try {
+            apply(batch);
+            return true;
+        } catch (Exception e) {
+            log.warn("Failed to flush {} learning progress heartbeats, will retry: {}", batch.size(),
+                    e.getMessage());
+            return false;
+        }
+    }
+
+    private void flushNow(Long progressId) {
+        for (int attempt = 0; attempt < MAX_SYNC_ATTEMPTS; attempt++) {
+            Pending entry = pending.remove(progressId);
+            if (entry == null) {
+                return;
+            }
+            if (apply(Map.of(progressId, entry)).isEmpty()) {
+                return;
+            }
+        }
+        throw new IllegalStateException("Learning progress " + progressId + " is being updated concurrently");
+    }
+
+    /**
+     * Ghi một batch trong một transaction; dòng bị ghi đồng thời (version
+     * đổi) và phần giây lẻ được trả lại hàng đợi, lỗi thì trả lại cả batch
+     *
+     * @return id các progress bị xung đột version
+     */
+    private List<Long> apply(Map<Long, Pending> batch) {
+        FlushResult result;
+        try {
+            result = flushTransaction.execute(status -> write(batch));
+        } catch (RuntimeException e) {
+            batch.forEach(this::requeue);
+            throw e;
+        }
+        for (Long progressId : result.conflicts) {
+            requeue(progressId, batch.get(progressId));
+        }
+        result.carries.forEach(this::requeue);
+        flushedCounter.increment(result.applied);
+        conflictCounter.increment(result.conflicts.size());
+        return result.conflicts;
+    }
+
+    private FlushResult write(Map<Long, Pending> batch) {
+        // Khóa dòng (FOR UPDATE) theo thứ tự id để các instance flush cùng lúc không deadlock
+        List<Long> ids = new ArrayList<>(batch.keySet());
+        Collections.sort(ids);
+        String placeholders = placeholders(ids.size());
+        Map<Long, Row> rows = new HashMap<>();
+        jdbcTemplate.query(String.format(SELECT_SQL, placeholders), rs -> {
+            Row row = new Row();
+            row.id = rs.getLong("id");
+            row.userId = rs.getLong("user_id");
+            row.learningPathId = rs.getLong("learning_path_id");
+            row.version = rs.getLong("version");
+            row.completedSteps = rs.getInt("completed_steps");
+            row.totalSteps = rs.getInt("total_steps");
+            BigDecimal percentage = rs.getBigDecimal("progress_percentage");
+            row.progressPercentage = percentage != null ? percentage : BigDecimal.ZERO;
+            row.completed = rs.getBoolean("is_completed");
+            Timestamp completionDate = rs.getTimestamp("completion_date");
+            row.completionDate = completionDate != null ? completionDate.toLocalDateTime() : null;
+            rows.put(row.id, row);
+        }, ids.toArray());
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Update> updates = new ArrayList<>(rows.size());
+        for (Long progressId : ids) {
+            Row row = rows.get(progressId);
+            if (row == null) {
+                // Progress đã bị xóa (retention, xóa path): bỏ heartbeat
+                evictOwner(progressId);
+                continue;
+            }
+            updates.add(toUpdate(row, batch.get(progressId), now));
+        }
+
+        FlushResult result = new FlushResult();
+        if (updates.isEmpty()) {
+            return result;
+        }
+        int[][] counts = jdbcTemplate.batchUpdate(UPDATE_SQL, updates, updates.size(), (ps, update) -> {
+            ps.setInt(1, update.completedSteps);
+            ps.setBigDecimal(2, update.progressPercentage);
+            ps.setLong(3, update.minutes);
+            ps.setTimestamp(4, Timestamp.valueOf(update.lastAccessedAt));
+            ps.setTimestamp(5, Timestamp.valueOf(update.lastAccessedAt));
+            if (update.currentStepId != null) {
+                ps.setLong(6, update.currentStepId);
+            } else {
+                ps.setNull(6, Types.BIGINT);
+            }
+            ps.setBoolean(7, update.completed);
+            ps.setTimestamp(8, update.completionDate != null ? Timestamp.valueOf(update.completionDate) : null);
+            ps.setLong(9, update.row.id);
+            ps.setLong(10, update.row.version);
+        });
+
+        List<Update> unknown = new ArrayList<>();
+        int index = 0;
+        for (int[] chunk : counts) {
+            for (int count : chunk) {
+                Update update = updates.get(index++);
+                if (count == Statement.SUCCESS_NO_INFO) {
+                    unknown.add(update);
+                } else if (count < 0) {
+                    throw new IllegalStateException("Unexpected update count " + count);
+                } else if (count == 0) {
+                    result.conflicts.add(update.row.id);
+                } else {
+                    applied(result, update);
+                }
+            }
+        }
+        if (!unknown.isEmpty()) {
+            // Driver không trả số dòng: đọc lại version. Dòng vẫn đang bị khóa nên
+            // version tăng đúng 1 nghĩa là UPDATE này đã ghi; còn lại coi như xung đột
+            List<Long> unknownIds = unknown.stream().map(update -> update.row.id).toList();
+            Map<Long, Long> versions = new HashMap<>();
+            jdbcTemplate.query(String.format(SELECT_VERSION_SQL, placeholders(unknownIds.size())), rs -> {
+                versions.put(rs.getLong("id"), rs.getLong("version"));
+            }, unknownIds.toArray());
+            for (Update update : unknown) {
+                Long version = versions.get(update.row.id);
+                if (version != null && version == update.row.version + 1) {
+                    applied(result, update);
+                } else {
+                    result.conflicts.add(update.row.id);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void applied(FlushResult result, Update update) {
+        result.applied++;
+        if (update.carrySeconds > 0) {
+            Pending carry = new Pending();
+            carry.seconds = update.carrySeconds;
+            result.carries.put(update.row.id, carry);
+        }
+        if (update.completed && !update.row.completed) {
+            // Leaderboard, stats cache cập nhật sau khi transaction commit
+            eventPublisher.publishEvent(new LearningPathCompletedEvent(update.row.userId,
+                    update.row.learningPathId, update.row.id, update.completionDate));
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    private static Update toUpdate(Row row, Pending entry, LocalDateTime now) {
+        int steps = row.completedSteps;
+        if (entry.completedSteps != null) {
+            steps = Math.max(steps, entry.completedSteps);
+        }
+        steps += entry.stepIncrements;
+        if (entry.complete) {
+            steps = Math.max(steps, row.totalSteps);
+        }
+        if (row.totalSteps > 0) {
+            steps = Math.min(steps, row.totalSteps);
+        }
+        boolean completed = row.completed || entry.complete || (row.totalSteps > 0 && steps >= row.totalSteps);
+
+        BigDecimal percentage;
+        if (completed) {
+            percentage = HUNDRED;
+        } else {
+            percentage = row.progressPercentage;
+            if (row.totalSteps > 0) {
+                percentage = percentage.max(BigDecimal.valueOf(steps * 100.0 / row.totalSteps));
+            }
+            if (entry.progressPercent != null) {
+                percentage = percentage.max(BigDecimal.valueOf(Math.max(0.0, entry.progressPercent)));
+            }
+            percentage = percentage.min(MAX_INCOMPLETE_PERCENTAGE);
+        }
+
+        Update update = new Update();
+        update.row = row;
+        update.completedSteps = steps;
+        update.progressPercentage = percentage.setScale(2, RoundingMode.HALF_UP);
+        update.minutes = entry.seconds / 60;
+        update.carrySeconds = entry.seconds % 60;
+        update.lastAccessedAt = entry.lastAccessedAt != null ? entry.lastAccessedAt : now;
+        update.currentStepId = entry.currentStepId;
+        update.completed = completed;
+        update.completionDate = completed && row.completionDate == null ? now : row.completionDate;
+        return update;
+    }
+
+    /**
+     * Trả heartbeat chưa ghi về hàng đợi, gộp với heartbeat mới hơn nếu có
+     */
+    private void requeue(Long progressId, Pending older) {
+        pending.merge(progressId, older, (newer, ignored) -> {
+            newer.mergeOlder(older);
+            return newer;
+        });
+    }
+
+    private Owner checkOwner(Long progressId, Long userId) {
+        Owner owner;
+        synchronized (owners) {
+            owner = owners.get(progressId);
+        }
+        if (owner == null) {
+            List<Object[]> rows = progressRepository.findOwnerById(progressId);
+            if (rows.isEmpty()) {
+                throw new RuntimeException("Learning progress not found: " + progressId);
+            }
+            owner = new Owner((Long) rows.get(0)[0], (Long) rows.get(0)[1]);
+            synchronized (owners) {
+                owners.put(progressId, owner);
+                while (owners.size() > ownerCacheMaxEntries) {
+                    owners.remove(owners.keySet().iterator().next());
+                }
+            }
+        }
+        if (!owner.userId.equals(userId)) {
+            throw new RuntimeException("Learning progress " + progressId + " does not belong to user " + userId);
+        }
+        return owner;
+    }
+
+    private void evictOwner(Long progressId) {
+        synchronized (owners) {
+            owners.remove(progressId);
+        }
+    }
+
+    /**
+     * Heartbeat đã gộp của một progress; chỉ sửa trong ConcurrentHashMap.compute/merge
+     */
+    private static class Pending {
+        private Integer completedSteps;
+        private int stepIncrements;
+        private Double progressPercent;
+        private long seconds;
+        private LocalDateTime lastAccessedAt;
+        private Long currentStepId;
+        private boolean complete;
+        private final long createdAt = System.currentTimeMillis();
+
+        void mergeOlder(Pending older) {
+            if (older.completedSteps != null) {
+                completedSteps = completedSteps != null
+                        ? Math.max(completedSteps, older.completedSteps)
+                        : older.completedSteps;
+            }
+            stepIncrements += older.stepIncrements;
+            if (progressPercent == null) {
+                progressPercent = older.progressPercent;
+            }
+            seconds += older.seconds;
+            if (lastAccessedAt == null
+                    || (older.lastAccessedAt != null && older.lastAccessedAt.isAfter(lastAccessedAt))) {
+                lastAccessedAt = older.lastAccessedAt;
+            }
+            if (currentStepId == null) {
+                currentStepId = older.currentStepId;
+            }
+            complete |= older.complete;
+        }
+    }
+
+    private static class Owner {
+        private final Long userId;
+        private final Long learningPathId;
+
+        Owner(Long userId, Long learningPathId) {
+            this.userId = userId;
+            this.learningPathId = learningPathId;
+        }
+    }
+
+    private static class Row {
+        private long id;
+        private Long userId;
+        private Long learningPathId;
+        private long version;
+        private int completedSteps;
+        private int totalSteps;
+        private BigDecimal progressPercentage;
+        private boolean completed;
+        private LocalDateTime completionDate;
+    }
+
+    private static class Update {
+        private Row row;
+        private int completedSteps;
+        private BigDecimal progressPercentage;
+        private long minutes;
+        private long carrySeconds;
+        private LocalDateTime lastAccessedAt;
+        private Long currentStepId;
+        private boolean completed;
+        private LocalDateTime completionDate;
+    }
+
+    private static class FlushResult {
+        private final List<Long> conflicts = new ArrayList<>();
+        private final Map<Long, Pending> carries = new HashMap<>();
+        private int applied;
+    }
+}
@@ -1,21 +1,30 @@
 package com.smartcooking.ai.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartcooking.ai.dto.LearningProgressChangedEvent;
 import com.smartcooking.ai.entity.LearningPath;
 import com.smartcooking.ai.entity.LearningPathStep;
 import com.smartcooking.ai.entity.User;
 import com.smartcooking.ai.entity.UserLearningProgress;
 import com.smartcooking.ai.repository.LearningPathRepository;
+import com.smartcooking.ai.repository.LearningPathStepRepository;
 import com.smartcooking.ai.repository.UserLearningProgressRepository;
 import com.smartcooking.ai.repository.UserRepository;
+import com.smartcooking.ai.util.ExportWriter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -24,8 +33,20 @@ import java.util.*;
 public class LearningService {
 
     private final LearningPathRepository learningPathRepository;
+    private final LearningPathStepRepository stepRepository;
+    private final LearningPathStepService stepService;
     private final UserLearningProgressRepository progressRepository;
     private final UserRepository userRepository;
+    private final ObjectMapper objectMapper;
+    private final LearningLeaderboardService leaderboardService;
+    private final UserLearningStatsCache statsCache;
+    private final LearningProgressIngestService progressIngestService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private static final List<String> ANALYTICS_EXPORT_COLUMNS = List.of(
+            "progress_id", "user_id", "learning_path_id", "completed_steps", "total_steps",
+            "progress_percentage", "time_spent_minutes", "completed", "started_at",
+            "completion_date", "last_accessed_at");
 
     public LearningPath createLearningPath(LearningPath learningPath, Long creatorId) {
         log.info("Creating new learning path: {} by user: {}", learningPath.getTitleEn(), creatorId);
@@ -52,9 +73,12 @@ public class LearningService {
         return learningPathRepository.findByIsActiveTrue();
     }
 
+    /**
+     * Learning path kèm steps đã sắp xếp (một query)
+     */
     @Transactional(readOnly = true)
     public Optional<LearningPath> getLearningPathById(Long id) {
-        return learningPathRepository.findById(id);
+        return learningPathRepository.findWithStepsById(id);
     }
 
     public UserLearningProgress enrollUserInLearningPath(Long userId, Long learningPathId) {
@@ -75,11 +99,12 @@ public class LearningService {
         UserLearningProgress progress = UserLearningProgress.builder()
                 .user(user)
                 .learningPath(learningPath)
-                .totalSteps(learningPath.getTotalSteps() != null ? learningPath.getTotalSteps() : 0)
+                .totalSteps((int) stepRepository.countByLearningPathId(learningPathId))
                 .progressPercentage(BigDecimal.ZERO)
                 .build();
 
         UserLearningProgress savedProgress = progressRepository.save(progress);
+        eventPublisher.publishEvent(new LearningProgressChangedEvent(userId, learningPathId));
         log.info("User enrolled in learning path: {}", savedProgress.getId());
         return savedProgress;
     }
@@ -343,87 +368,136 @@ public class LearningService {
         return new LearningPathStatistics(totalPaths, activePaths, totalEnrollments, averageCompletionRate);
     }
 
+    /**
+     * Thống kê learning của user: đọc cache, miss thì một query aggregate
+     * (không load từng progress row)
+     */
     @Transactional(readOnly = true)
     public UserLearningStatistics getUserLearningStatistics(Long userId) {
-        List<UserLearningProgress> progresses = progressRepository.findByUserId(userId);
+        UserLearningStatistics cached = statsCache.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        // Đọc trước query: invalidate xảy ra trong lúc query làm put bên dưới vô hiệu
+        long generation = statsCache.generation(userId);
 
-        long totalEnrolled = progresses.size();
-        long totalCompleted = progresses.stream().mapToLong(p -> p.getIsCompleted() ? 1 : 0).sum();
+        List<Object[]> rows = progressRepository.aggregateStatisticsByUserId(userId);
+        if (rows.isEmpty()) {
+            return new UserLearningStatistics(userId, "Unknown", 0L, 0L, 0.0, 0);
+        }
+        Object[] row = rows.get(0);
+        String userName = (String) row[0];
+        long totalEnrolled = ((Number) row[1]).longValue();
+        long totalCompleted = ((Number) row[2]).longValue();
+        int totalHoursStudied = ((Number) row[3]).intValue();
         double completionRate = totalEnrolled > 0 ? (double) totalCompleted / totalEnrolled * 100 : 0.0;
 
-        int totalHoursStudied = progresses.stream()
-                .mapToInt(p -> p.getLearningPath().getEstimatedHours() != null ? p.getLearningPath().getEstimatedHours()
-                        : 0)
-                .sum();
-
-        String userName = userRepository.findById(userId)
-                .map(User::getFullName)
-                .orElse("Unknown");
-
-        return new UserLearningStatistics(userId, userName, totalEnrolled, totalCompleted, completionRate,
-                totalHoursStudied);
+        UserLearningStatistics statistics = new UserLearningStatistics(userId, userName, totalEnrolled,
+                totalCompleted, completionRate, totalHoursStudied);
+        statsCache.put(statistics, generation);
+        return statistics;
     }
 
+    /**
+     * Top N leaderboard (ZSET Redis / skip list cục bộ), chỉ load tên của N user
+     */
     @Transactional(readOnly = true)
     public List<UserLearningStats> getLearningLeaderboard(int limit) {
-        List<UserLearningStats> leaderboard = new ArrayList<>();
+        return toLeaderboardStats(leaderboardService.top(limit));
+    }
 
-        List<User> users = userRepository.findAll().stream().limit(limit).collect(java.util.stream.Collectors.toList());
+    /**
+     * Vị trí của user trên leaderboard
+     */
+    @Transactional(readOnly = true)
+    public Optional<UserLearningStats> getLeaderboardRank(Long userId) {
+        LearningLeaderboardService.LeaderboardEntry entry = leaderboardService.rankOf(userId);
+        return entry == null ? Optional.empty() : toLeaderboardStats(List.of(entry)).stream().findFirst();
+    }
 
-        for (int i = 0; i < users.size(); i++) {
-            User user = users.get(i);
-            List<UserLearningProgress> progresses = progressRepository.findByUserId(user.getId());
-            long completedPaths = progresses.stream().mapToLong(p -> p.getIsCompleted() ? 1 : 0).sum();
-            int totalPoints = (int) (completedPaths * 100);
+    /**
+     * radius user phía trên / phía dưới user trên leaderboard
+     */
+    @Transactional(readOnly = true)
+    public List<UserLearningStats> getLeaderboardAround(Long userId, int radius) {
+        return toLeaderboardStats(leaderboardService.around(userId, radius));
+    }
 
-            leaderboard
-                    .add(new UserLearningStats(user.getId(), user.getFullName(), completedPaths, totalPoints, i + 1));
-        }
+    public int rebuildLeaderboard() {
+        return leaderboardService.rebuild();
+    }
 
-        return leaderboard;
+    private List<UserLearningStats> toLeaderboardStats(List<LearningLeaderboardService.LeaderboardEntry> entries) {
+        Map<Long, String> names = new HashMap<>();
+        userRepository.findAllById(entries.stream().map(LearningLeaderboardService.LeaderboardEntry::getUserId)
+                .toList())
+                .forEach(user -> names.put(user.getId(), user.getFullName()));
+        List<UserLearningStats> stats = new ArrayList<>(entries.size());
+        for (LearningLeaderboardService.LeaderboardEntry entry : entries) {
+            stats.add(new UserLearningStats(entry.getUserId(), names.get(entry.getUserId()),
+                    entry.getCompletedPaths(), (int) Math.min(Integer.MAX_VALUE, entry.getPoints()),
+                    (int) entry.getRank()));
+        }
+        return stats;
     }
 
-    // Methods cho các controller methods còn thiếu
     public LearningPathStep addStepToPath(Long pathId, LearningPathStep step, Long userId) {
-        // Tìm learning path
-        LearningPath path = learningPathRepository.findById(pathId)
-                .orElseThrow(() -> new RuntimeException("Learning path not found: " + pathId));
+        return stepService.addStep(pathId, step, userId);
+    }
 
-        // Set learning path cho step
-        step.setLearningPath(path);
+    @Transactional(readOnly = true)
+    public List<LearningPathStep> getStepsByPath(Long pathId) {
+        return stepService.getSteps(pathId);
+    }
 
-        // Save step (cần LearningPathStepRepository)
-        return step; // Placeholder cho đến khi có repository
+    public LearningPathStep updateStep(Long pathId, Long stepId, LearningPathStep updates, Long userId) {
+        return stepService.updateStep(pathId, stepId, updates, userId);
     }
 
-    public List<LearningPathStep> getStepsByPath(Long pathId) {
-        // Placeholder - cần LearningPathStepRepository
-        return new ArrayList<>();
+    public void deleteStep(Long pathId, Long stepId, Long userId) {
+        stepService.deleteStep(pathId, stepId, userId);
     }
 
-    public LearningPathStep updateStep(Long stepId, LearningPathStep updates, Long userId) {
-        // Placeholder - cần LearningPathStepRepository
-        return updates;
+    /**
+     * Thay toàn bộ steps của path (batch upsert theo thứ tự danh sách)
+     */
+    public List<LearningPathStep> replaceSteps(Long pathId, List<LearningPathStep> steps, Long userId) {
+        return stepService.replaceSteps(pathId, steps, userId);
     }
 
-    public void deleteStep(Long stepId, Long userId) {
-        // Placeholder - sẽ implement sau
+    /**
+     * Di chuyển step ra sau afterStepId (null: lên đầu)
+     */
+    public LearningPathStep moveStep(Long pathId, Long stepId, Long afterStepId, Long userId) {
+        return stepService.moveStep(pathId, stepId, afterStepId, userId);
     }
 
-    public UserLearningProgress updateProgress(Long progressId, Integer completedSteps, Double progressPercent,
-            Long userId) {
-        // Placeholder - sẽ implement sau
-        return new UserLearningProgress();
+    /**
+     * Progress heartbeat: gộp trong memory, ghi batch định kỳ
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void updateProgress(Long progressId, Integer completedSteps, Double progressPercent,
+            Integer timeSpentSeconds, Long userId) {
+        progressIngestService.heartbeat(progressId, userId, completedSteps, progressPercent,
+                timeSpentSeconds != null ? timeSpentSeconds : 0);
     }
 
+    // Ghi qua LearningProgressIngestService (transaction riêng) rồi đọc lại bản đã commit
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public UserLearningProgress completeStep(Long progressId, Long stepId, Long userId) {
-        // Placeholder - sẽ implement sau
-        return new UserLearningProgress();
+        progressIngestService.completeStep(progressId, userId, stepId);
+        return reloadProgress(progressId);
     }
 
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public UserLearningProgress completeLearningPath(Long progressId, Long userId) {
-        // Placeholder - sẽ implement sau
-        return new UserLearningProgress();
+        progressIngestService.complete(progressId, userId);
+        return reloadProgress(progressId);
+    }
+
+    private UserLearningProgress reloadProgress(Long progressId) {
+        return progressRepository.findById(progressId)
+                .orElseThrow(() -> new RuntimeException("Learning progress not found: " + progressId));
     }
 
     public List<UserLearningProgress> getUserProgress(Long userId) {
@@ -438,8 +512,28 @@ public class LearningService {
         return getRecommendedPaths(userId, 5);
     }
 
-    public Map<String, Object> exportLearningAnalytics(int days) {
-        return new HashMap<>();
+    /**
+     * Export learning progress có hoạt động trong N ngày, ghi từng dòng ra output
+     * (projection scalar nên persistence context không giữ entity nào)
+     */
+    @Transactional(readOnly = true)
+    public long exportLearningAnalytics(int days, OutputStream out, ExportWriter.Format format, boolean gzip)
+            throws IOException {
+        java.time.LocalDateTime since = java.time.LocalDate.now().minusDays(days).atStartOfDay();
+        try (ExportWriter writer = new ExportWriter(out, format, ANALYTICS_EXPORT_COLUMNS, gzip, objectMapper);
+                Stream<Object[]> rows = progressRepository.streamActivitySince(since)) {
+            Iterator<Object[]> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                Object[] values = iterator.next();
+                Map<String, Object> row = new LinkedHashMap<>();
+                for (int i = 0; i < ANALYTICS_EXPORT_COLUMNS.size(); i++) {
+                    row.put(ANALYTICS_EXPORT_COLUMNS.get(i), values[i]);
+                }
+                writer.write(row);
+            }
+            log.info("Exported {} learning progress rows for last {} days", writer.getRowCount(), days);
+            return writer.getRowCount();
+        }
     }
 
     public Map<String, Object> getCompletionRateAnalytics(int days) {
@@ -447,6 +541,9 @@ public class LearningService {
     }
 
     public Map<String, Object> getLearningSystemHealth() {
-        return new HashMap<>();
+        Map<String, Object> health = new HashMap<>();
+        health.put("leaderboard", leaderboardService.getStats());
+        health.put("progressIngest", progressIngestService.getStats());
+        return health;
     }
 }
\ No newline at end of file
@@ -4,9 +4,11 @@ import com.smartcooking.ai.entity.Recipe;
 import com.smartcooking.ai.entity.User;
 import com.smartcooking.ai.repository.RecipeRepository;
 import com.smartcooking.ai.repository.UserRepository;
+import com.smartcooking.ai.util.PromptUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -70,6 +72,8 @@ public class RecipeService {
         recipe.setSource(Recipe.Source.AI_GENERATED);
         recipe.setAiPrompt(prompt);
         recipe.setAiModel(model);
+        recipe.setAiPromptHash(PromptUtils.promptHash(prompt, model));
+        recipe.setAiPromptKey(PromptUtils.promptKey(prompt));
         if (confidence != null) {
             recipe.setAiConfidence(java.math.BigDecimal.valueOf(confidence));
         }
@@ -79,6 +83,42 @@ public class RecipeService {
         return savedRecipe;
     }
 
+    /**
+     * Recipe của user cho prompt + model; chưa có thì tạo mới
+     * (dùng khi lưu tự động, không tạo bản trùng cho cùng user)
+     */
+    public Recipe findOrCreateAIGeneratedRecipe(Recipe recipe, Long userId, String prompt, String model) {
+        String promptHash = PromptUtils.promptHash(prompt, model);
+        Optional<Recipe> existing = recipeRepository.findFirstByAiPromptHashAndAuthorIdOrderByIdDesc(promptHash,
+                userId);
+        if (existing.isPresent()) {
+            log.info("AI-generated recipe for prompt hash {} already exists for user {}: {}", promptHash, userId,
+                    existing.get().getId());
+            return existing.get();
+        }
+        return createAIGeneratedRecipe(recipe, userId, prompt, model, null);
+    }
+
+    /**
+     * Tìm AI-generated recipe theo prompt hash mà user được xem
+     * (recipe của user hoặc recipe public; userId null chỉ thấy public)
+     */
+    @Transactional(readOnly = true)
+    public Optional<Recipe> findAIGeneratedRecipe(String promptHash, Long userId) {
+        return recipeRepository.findVisibleByAiPromptHash(promptHash, userId, PageRequest.of(0, 1)).stream()
+                .findFirst();
+    }
+
+    /**
+     * Tìm AI-generated recipe theo prompt (mọi model) mà user được xem
+     */
+    @Transactional(readOnly = true)
+    public Optional<Recipe> findAIGeneratedRecipeByPrompt(String prompt, Long userId) {
+        return recipeRepository.findVisibleByAiPromptKey(PromptUtils.promptKey(prompt), userId, PageRequest.of(0, 1))
+                .stream()
+                .findFirst();
+    }
+
     /**
      * Update recipe
      */
@@ -0,0 +1,64 @@
+package com.smartcooking.ai.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Redis Support - truy cập Redis với fallback local
+ *
+ * Các store dùng chung (idempotency, chat session, sketch...) ưu tiên Redis
+ * để nhiều instance thấy cùng dữ liệu. Khi Redis lỗi, helper chuyển sang
+ * fallback local và bỏ qua Redis trong một khoảng cooldown để request không
+ * phải chờ timeout kết nối mỗi lần.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RedisSupport {
+
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${app.redis.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.redis.failure-cooldown-ms:30000}")
+    private long failureCooldownMs;
+
+    private volatile long unavailableUntil;
+
+    /**
+     * Chạy operation trên Redis, hoặc fallback nếu Redis tắt / đang cooldown / lỗi
+     */
+    public <T> T execute(Function<StringRedisTemplate, T> operation, Supplier<T> fallback) {
+        if (!isAvailable()) {
+            return fallback.get();
+        }
+        try {
+            return operation.apply(redisTemplate);
+        } catch (RuntimeException e) {
+            markUnavailable(e);
+            return fallback.get();
+        }
+    }
+
+    /**
+     * Redis đang được dùng (enabled và không trong cooldown sau lỗi)
+     */
+    public boolean isAvailable() {
+        return enabled && System.currentTimeMillis() >= unavailableUntil;
+    }
+
+    private void markUnavailable(RuntimeException e) {
+        boolean wasAvailable = System.currentTimeMillis() >= unavailableUntil;
+        unavailableUntil = System.currentTimeMillis() + failureCooldownMs;
+        if (wasAvailable) {
+            log.warn("Redis unavailable, using local fallback for {} ms: {}", failureCooldownMs, e.getMessage());
+        }
+    }
+}
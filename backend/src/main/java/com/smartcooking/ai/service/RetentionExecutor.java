@@ -0,0 +1,224 @@
+package com.smartcooking.ai.service;
+
+import com.smartcooking.ai.entity.RetentionCheckpoint;
+import com.smartcooking.ai.repository.RetentionCheckpointRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Retention Executor - xóa dữ liệu cũ theo chunk nhỏ, mỗi chunk một transaction
+ *
+ * Job trả về id kế tiếp cần xóa (tăng dần theo primary key); executor xóa
+ * khoảng [id đầu, id cuối] của mỗi chunk bằng bulk DELETE trong một
+ * transaction REQUIRES_NEW ngắn, ghi checkpoint trong cùng transaction rồi
+ * nghỉ throttle-ms trước chunk sau. Lần chạy bị ngắt (lỗi, restart, cancel,
+ * hết max-run-minutes) tiếp tục từ checkpoint với cutoff cũ. MySQL GET_LOCK
+ * theo tên job đảm bảo mỗi job chỉ chạy trên một instance.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RetentionExecutor {
+
+    private static final String LOCK_PREFIX = "retention_";
+    private static final int ERROR_MAX_LENGTH = 500;
+
+    private final RetentionCheckpointRepository checkpointRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.retention.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${app.retention.throttle-ms:200}")
+    private long throttleMs;
+
+    @Value("${app.retention.max-run-minutes:60}")
+    private long maxRunMinutes;
+
+    private TransactionTemplate chunkTransaction;
+    private final Map<String, AtomicBoolean> cancellations = new ConcurrentHashMap<>();
+
+    /**
+     * Một loại dữ liệu cần dọn theo primary key
+     */
+    public interface RetentionJob {
+
+        String getName();
+
+        /**
+         * Tối đa limit id (tăng dần, lớn hơn afterId) của các dòng cũ hơn cutoff
+         */
+        List<Long> nextIds(long afterId, LocalDateTime cutoff, int limit);
+
+        /**
+         * Xóa các dòng cũ hơn cutoff có id trong [fromId, toId] (kể cả dòng con)
+         *
+         * @return số dòng bị xóa
+         */
+        long deleteRange(long fromId, long toId, LocalDateTime cutoff);
+    }
+
+    @PostConstruct
+    void init() {
+        chunkTransaction = new TransactionTemplate(transactionManager);
+        chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Chạy job: tiếp tục lần chạy dở dang nếu có, ngược lại bắt đầu với cutoff mới
+     *
+     * @return checkpoint sau khi dừng, null nếu job đang chạy ở nơi khác
+     */
+    public RetentionCheckpoint run(RetentionJob job, LocalDateTime cutoff) {
+        return jdbcTemplate.execute((ConnectionCallback<RetentionCheckpoint>) connection -> {
+            String lockName = LOCK_PREFIX + job.getName();
+            try (PreparedStatement ps = connection.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+                ps.setString(1, lockName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next() || rs.getInt(1) != 1) {
+                        log.info("Retention job {} is running elsewhere, skipping", job.getName());
+                        return null;
+                    }
+                }
+            }
+            try {
+                return execute(job, cutoff);
+            } finally {
+                try (PreparedStatement ps = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                    ps.setString(1, lockName);
+                    ps.execute();
+                }
+            }
+        });
+    }
+
+    /**
+     * Yêu cầu job dừng sau chunk hiện tại (trạng thái PAUSED, chạy lại sẽ tiếp tục)
+     */
+    public boolean cancel(String jobName) {
+        AtomicBoolean cancelled = cancellations.get(jobName);
+        if (cancelled == null) {
+            return false;
+        }
+        cancelled.set(true);
+        return true;
+    }
+
+    public boolean isRunning(String jobName) {
+        return cancellations.containsKey(jobName);
+    }
+
+    public List<RetentionCheckpoint> getCheckpoints() {
+        return checkpointRepository.findAll();
+    }
+
+    private RetentionCheckpoint execute(RetentionJob job, LocalDateTime cutoff) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        if (cancellations.putIfAbsent(job.getName(), cancelled) != null) {
+            log.info("Retention job {} is already running, skipping", job.getName());
+            return checkpointRepository.findByJobName(job.getName()).orElse(null);
+        }
+        try {
+            RetentionCheckpoint checkpoint = start(job, cutoff);
+            Instant deadline = Instant.now().plus(Duration.ofMinutes(maxRunMinutes));
+            try {
+                while (true) {
+                    if (cancelled.get() || Instant.now().isAfter(deadline)) {
+                        checkpoint.setStatus(RetentionCheckpoint.Status.PAUSED);
+                        checkpoint = checkpointRepository.save(checkpoint);
+                        log.info("Retention job {} paused at id {} ({} rows deleted)", job.getName(),
+                                checkpoint.getLastId(), checkpoint.getDeletedRows());
+                        return checkpoint;
+                    }
+                    List<Long> ids = job.nextIds(checkpoint.getLastId(), checkpoint.getCutoff(), chunkSize);
+                    if (ids.isEmpty()) {
+                        checkpoint.setStatus(RetentionCheckpoint.Status.COMPLETED);
+                        checkpoint.setFinishedAt(LocalDateTime.now());
+                        checkpoint = checkpointRepository.save(checkpoint);
+                        log.info("Retention job {} completed: {} rows deleted in {} chunks", job.getName(),
+                                checkpoint.getDeletedRows(), checkpoint.getChunks());
+                        return checkpoint;
+                    }
+                    checkpoint = deleteChunk(job, checkpoint, ids.get(0), ids.get(ids.size() - 1));
+                    Thread.sleep(throttleMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                checkpoint.setStatus(RetentionCheckpoint.Status.PAUSED);
+                return checkpointRepository.save(checkpoint);
+            } catch (RuntimeException e) {
+                log.error("Retention job {} failed at id {}: {}", job.getName(), checkpoint.getLastId(),
+                        e.getMessage());
+                checkpoint.setStatus(RetentionCheckpoint.Status.FAILED);
+                String message = String.valueOf(e.getMessage());
+                checkpoint.setLastError(message.length() > ERROR_MAX_LENGTH
+                        ? message.substring(0, ERROR_MAX_LENGTH)
+                        : message);
+                return checkpointRepository.save(checkpoint);
+            }
+        } finally {
+            cancellations.remove(job.getName());
+        }
+    }
+
+    private RetentionCheckpoint start(RetentionJob job, LocalDateTime cutoff) {
+        RetentionCheckpoint checkpoint = checkpointRepository.findByJobName(job.getName())
+                .orElseGet(() -> RetentionCheckpoint.builder().jobName(job.getName()).build());
+        if (checkpoint.getStatus() != null && checkpoint.getStatus() != RetentionCheckpoint.Status.COMPLETED) {
+            log.info("Resuming retention job {} from id {} (cutoff {})", job.getName(), checkpoint.getLastId(),
+                    checkpoint.getCutoff());
+        } else {
+            checkpoint.setCutoff(cutoff);
+            checkpoint.setLastId(0L);
+            checkpoint.setDeletedRows(0L);
+            checkpoint.setChunks(0L);
+            checkpoint.setStartedAt(LocalDateTime.now());
+            checkpoint.setFinishedAt(null);
+            log.info("Starting retention job {} (cutoff {})", job.getName(), cutoff);
+        }
+        checkpoint.setStatus(RetentionCheckpoint.Status.RUNNING);
+        checkpoint.setLastError(null);
+        checkpoint.setUpdatedAt(LocalDateTime.now());
+        return checkpointRepository.save(checkpoint);
+    }
+
+    private RetentionCheckpoint deleteChunk(RetentionJob job, RetentionCheckpoint checkpoint, long fromId,
+            long toId) {
+        RetentionCheckpoint saved = chunkTransaction.execute(status -> {
+            long deleted = job.deleteRange(fromId, toId, checkpoint.getCutoff());
+            // Bản mới trong transaction: nếu chunk rollback, checkpoint trong memory không bị tiến lên
+            RetentionCheckpoint current = checkpointRepository.findById(checkpoint.getId()).orElseThrow();
+            current.setLastId(toId);
+            current.setDeletedRows(current.getDeletedRows() + deleted);
+            current.setChunks(current.getChunks() + 1);
+            current.setUpdatedAt(LocalDateTime.now());
+            return checkpointRepository.save(current);
+        });
+        meterRegistry.counter("retention.deleted.rows", "job", job.getName())
+                .increment(saved.getDeletedRows() - checkpoint.getDeletedRows());
+        log.debug("Retention job {} deleted ids {}..{} ({} rows so far)", job.getName(), fromId, toId,
+                saved.getDeletedRows());
+        return saved;
+    }
+}
@@ -0,0 +1,206 @@
+package com.smartcooking.ai.service;
+
+import com.smartcooking.ai.entity.RetentionCheckpoint;
+import com.smartcooking.ai.repository.MealPlanRepository;
+import com.smartcooking.ai.repository.ShoppingListRepository;
+import com.smartcooking.ai.repository.UserLearningProgressRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Retention Service - các job dọn dữ liệu cũ chạy qua RetentionExecutor
+ *
+ * - shopping-lists: shopping list (và items) tạo trước shopping-lists.days
+ * - meal-plans: meal plan (và snacks) có ngày trước meal-plans.days
+ * - learning-progress: progress chưa hoàn thành, không truy cập từ learning-progress.days
+ *
+ * Lịch chạy tự động mặc định tắt (app.retention.enabled) vì job xóa hẳn dữ
+ * liệu của user. days <= 0 tắt job tương ứng. Job chạy trên một thread riêng (lần lượt),
+ * không chặn scheduler hay request gọi nó.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RetentionService {
+
+    public static final String SHOPPING_LISTS = "shopping-lists";
+    public static final String MEAL_PLANS = "meal-plans";
+    public static final String LEARNING_PROGRESS = "learning-progress";
+
+    private final RetentionExecutor executor;
+    private final ShoppingListRepository shoppingListRepository;
+    private final MealPlanRepository mealPlanRepository;
+    private final UserLearningProgressRepository progressRepository;
+
+    @Value("${app.retention.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.retention.shopping-lists.days:365}")
+    private int shoppingListDays;
+
+    @Value("${app.retention.meal-plans.days:180}")
+    private int mealPlanDays;
+
+    @Value("${app.retention.learning-progress.days:180}")
+    private int learningProgressDays;
+
+    private final Map<String, RetentionExecutor.RetentionJob> jobs = new LinkedHashMap<>();
+    private final Map<String, Integer> retentionDays = new HashMap<>();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(
+            new CustomizableThreadFactory("retention-"));
+
+    @PreDestroy
+    void shutdown() {
+        jobs.keySet().forEach(executor::cancel);
+        worker.shutdown();
+    }
+
+    @PostConstruct
+    void init() {
+        register(new RetentionExecutor.RetentionJob() {
+            @Override
+            public String getName() {
+                return SHOPPING_LISTS;
+            }
+
+            @Override
+            public List<Long> nextIds(long afterId, LocalDateTime cutoff, int limit) {
+                return shoppingListRepository.findIdsCreatedBefore(afterId, cutoff, PageRequest.of(0, limit));
+            }
+
+            @Override
+            public long deleteRange(long fromId, long toId, LocalDateTime cutoff) {
+                return shoppingListRepository.deleteItemsInRangeCreatedBefore(fromId, toId, cutoff)
+                        + shoppingListRepository.deleteInRangeCreatedBefore(fromId, toId, cutoff);
+            }
+        }, shoppingListDays);
+
+        register(new RetentionExecutor.RetentionJob() {
+            @Override
+            public String getName() {
+                return MEAL_PLANS;
+            }
+
+            @Override
+            public List<Long> nextIds(long afterId, LocalDateTime cutoff, int limit) {
+                return mealPlanRepository.findIdsDatedBefore(afterId, cutoff.toLocalDate(),
+                        PageRequest.of(0, limit));
+            }
+
+            @Override
+            public long deleteRange(long fromId, long toId, LocalDateTime cutoff) {
+                return mealPlanRepository.deleteSnacksInRangeDatedBefore(fromId, toId, cutoff.toLocalDate())
+                        + mealPlanRepository.deleteInRangeDatedBefore(fromId, toId, cutoff.toLocalDate());
+            }
+        }, mealPlanDays);
+
+        register(new RetentionExecutor.RetentionJob() {
+            @Override
+            public String getName() {
+                return LEARNING_PROGRESS;
+            }
+
+            @Override
+            public List<Long> nextIds(long afterId, LocalDateTime cutoff, int limit) {
+                return progressRepository.findAbandonedIds(afterId, cutoff, PageRequest.of(0, limit));
+            }
+
+            @Override
+            public long deleteRange(long fromId, long toId, LocalDateTime cutoff) {
+                return progressRepository.deleteAbandonedInRange(fromId, toId, cutoff);
+            }
+        }, learningProgressDays);
+    }
+
+    @Scheduled(cron = "${app.retention.cron:0 0 4 * * *}")
+    public void runScheduled() {
+        if (!enabled) {
+            return;
+        }
+        for (String name : jobs.keySet()) {
+            if (retentionDays.get(name) > 0) {
+                start(name, null);
+            }
+        }
+    }
+
+    /**
+     * Đưa job vào hàng đợi của thread retention; days null dùng giá trị cấu hình
+     */
+    public void start(String name, Integer days) {
+        RetentionExecutor.RetentionJob job = job(name);
+        LocalDateTime cutoff = cutoff(name, days);
+        try {
+            worker.execute(() -> {
+                try {
+                    executor.run(job, cutoff);
+                } catch (Exception e) {
+                    log.error("Retention job {} failed: {}", name, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("Retention worker is shut down", e);
+        }
+    }
+
+    public boolean cancel(String name) {
+        job(name);
+        return executor.cancel(name);
+    }
+
+    /**
+     * Tiến độ các job: cấu hình và checkpoint gần nhất
+     */
+    public List<Map<String, Object>> getJobs() {
+        Map<String, RetentionCheckpoint> checkpoints = new HashMap<>();
+        executor.getCheckpoints().forEach(checkpoint -> checkpoints.put(checkpoint.getJobName(), checkpoint));
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (String name : jobs.keySet()) {
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("name", name);
+            info.put("retentionDays", retentionDays.get(name));
+            info.put("running", executor.isRunning(name));
+            info.put("checkpoint", checkpoints.get(name));
+            result.add(info);
+        }
+        return result;
+    }
+
+    private RetentionExecutor.RetentionJob job(String name) {
+        RetentionExecutor.RetentionJob job = jobs.get(name);
+        if (job == null) {
+            throw new IllegalArgumentException("Unknown retention job: " + name);
+        }
+        return job;
+    }
+
+    private LocalDateTime cutoff(String name, Integer days) {
+        int keepDays = days != null ? days : retentionDays.get(name);
+        if (keepDays <= 0) {
+            throw new IllegalArgumentException("Retention job " + name + " is disabled (days <= 0)");
+        }
+        return LocalDateTime.now().minusDays(keepDays);
+    }
+
+    private void register(RetentionExecutor.RetentionJob job, int days) {
+        jobs.put(job.getName(), job);
+        retentionDays.put(job.getName(), days);
+    }
+}
@@ -0,0 +1,219 @@
+package com.smartcooking.ai.service;
+
+import com.smartcooking.ai.dto.LearningPathCompletedEvent;
+import com.smartcooking.ai.dto.LearningProgressChangedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * User Learning Stats Cache - cache thống kê learning theo user
+ *
+ * Lưu trong Redis (hash + EXPIRE) để mọi instance dùng chung, fallback sang
+ * LRU map local có TTL khi Redis không dùng được. Entry của user bị xóa sau
+ * khi transaction ghi progress commit (enroll, hoàn thành path); thay đổi
+ * không phát event (retention xóa progress) hết hạn theo TTL.
+ *
+ * Mỗi user có một generation tăng khi invalidate. Caller đọc generation
+ * trước khi query và put kèm giá trị đó; entry mang generation cũ (query bắt
+ * đầu trước lần invalidate) bị coi là miss, nên thống kê cũ không quay lại cache.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserLearningStatsCache {
+
+    private static final String KEY_PREFIX = "learning:user-stats:";
+    private static final String GENERATION_PREFIX = "learning:user-stats-gen:";
+    private static final String GENERATION_FIELD = "generation";
+
+    private final RedisSupport redisSupport;
+
+    @Value("${app.learning.stats-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.learning.stats-cache.ttl-minutes:10}")
+    private long ttlMinutes;
+
+    @Value("${app.learning.stats-cache.local-max-entries:10000}")
+    private int localMaxEntries;
+
+    // Fallback local: LRU theo thời gian truy cập
+    private final Map<Long, LocalEntry> localEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Generation local theo user (guard bởi localEntries)
+    private final Map<Long, LocalGeneration> localGenerations = new HashMap<>();
+
+    public LearningService.UserLearningStatistics get(Long userId) {
+        if (!enabled) {
+            return null;
+        }
+        return redisSupport.execute(redis -> {
+            Map<Object, Object> fields = redis.opsForHash().entries(KEY_PREFIX + userId);
+            if (fields.isEmpty()) {
+                return null;
+            }
+            String generation = redis.opsForValue().get(GENERATION_PREFIX + userId);
+            if (!Objects.equals(fields.get(GENERATION_FIELD), generation != null ? generation : "0")) {
+                return null;
+            }
+            return fromFields(userId, fields);
+        }, () -> getLocal(userId));
+    }
+
+    /**
+     * Generation hiện tại của user; đọc trước khi query thống kê rồi truyền cho put()
+     */
+    public long generation(Long userId) {
+        return redisSupport.execute(redis -> {
+            String generation = redis.opsForValue().get(GENERATION_PREFIX + userId);
+            return generation != null ? Long.parseLong(generation) : 0L;
+        }, () -> localGeneration(userId));
+    }
+
+    /**
+     * Lưu thống kê đã query với generation đọc trước khi query;
+     * bị bỏ qua (hoặc thành miss) nếu user đã bị invalidate sau đó
+     */
+    public void put(LearningService.UserLearningStatistics stats, long generation) {
+        if (!enabled) {
+            return;
+        }
+        redisSupport.execute(redis -> {
+            String key = KEY_PREFIX + stats.getUserId();
+            Map<String, String> fields = toFields(stats);
+            fields.put(GENERATION_FIELD, String.valueOf(generation));
+            redis.opsForHash().putAll(key, fields);
+            redis.expire(key, Duration.ofMinutes(ttlMinutes));
+            return null;
+        }, () -> {
+            putLocal(stats, generation);
+            return null;
+        });
+    }
+
+    public void invalidate(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        redisSupport.execute(redis -> {
+            // Generation sống lâu hơn entry để put trễ của một query cũ không khớp lại sau khi key hết hạn
+            String generationKey = GENERATION_PREFIX + userId;
+            redis.opsForValue().increment(generationKey);
+            redis.expire(generationKey, Duration.ofMinutes(ttlMinutes * 2));
+            return redis.delete(KEY_PREFIX + userId);
+        }, () -> false);
+        synchronized (localEntries) {
+            LocalGeneration generation = localGenerations.computeIfAbsent(userId, id -> new LocalGeneration());
+            generation.value++;
+            generation.updatedAt = System.currentTimeMillis();
+            localEntries.remove(userId);
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProgressChanged(LearningProgressChangedEvent event) {
+        invalidate(event.getUserId());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onLearningPathCompleted(LearningPathCompletedEvent event) {
+        invalidate(event.getUserId());
+    }
+
+    @Scheduled(fixedDelayString = "${app.learning.stats-cache.cleanup-interval-ms:60000}")
+    public void removeExpiredLocalEntries() {
+        long now = System.currentTimeMillis();
+        synchronized (localEntries) {
+            localEntries.values().removeIf(entry -> entry.isExpired(now, ttlMinutes));
+            localGenerations.values().removeIf(generation -> now - generation.updatedAt > ttlMinutes * 2 * 60_000);
+        }
+    }
+
+    private LearningService.UserLearningStatistics getLocal(Long userId) {
+        synchronized (localEntries) {
+            LocalEntry entry = localEntries.get(userId);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isExpired(System.currentTimeMillis(), ttlMinutes)) {
+                localEntries.remove(userId);
+                return null;
+            }
+            return entry.stats;
+        }
+    }
+
+    private long localGeneration(Long userId) {
+        synchronized (localEntries) {
+            LocalGeneration generation = localGenerations.get(userId);
+            return generation != null ? generation.value : 0L;
+        }
+    }
+
+    private void putLocal(LearningService.UserLearningStatistics stats, long generation) {
+        synchronized (localEntries) {
+            if (localGeneration(stats.getUserId()) != generation) {
+                return;
+            }
+            localEntries.put(stats.getUserId(), new LocalEntry(stats));
+            while (localEntries.size() > localMaxEntries) {
+                localEntries.remove(localEntries.keySet().iterator().next());
+            }
+        }
+    }
+
+    private static Map<String, String> toFields(LearningService.UserLearningStatistics stats) {
+        Map<String, String> fields = new HashMap<>();
+        if (stats.getUserName() != null) {
+            fields.put("userName", stats.getUserName());
+        }
+        fields.put("totalEnrolled", String.valueOf(stats.getTotalEnrolled()));
+        fields.put("totalCompleted", String.valueOf(stats.getTotalCompleted()));
+        fields.put("completionRate", String.valueOf(stats.getCompletionRate()));
+        fields.put("totalHoursStudied", String.valueOf(stats.getTotalHoursStudied()));
+        return fields;
+    }
+
+    private static LearningService.UserLearningStatistics fromFields(Long userId, Map<Object, Object> fields) {
+        try {
+            return new LearningService.UserLearningStatistics(userId, (String) fields.get("userName"),
+                    Long.valueOf((String) fields.get("totalEnrolled")),
+                    Long.valueOf((String) fields.get("totalCompleted")),
+                    Double.valueOf((String) fields.get("completionRate")),
+                    Integer.valueOf((String) fields.get("totalHoursStudied")));
+        } catch (RuntimeException e) {
+            // Entry hỏng / thiếu field: coi như miss
+            log.debug("Ignoring malformed learning stats cache entry for user {}: {}", userId, e.getMessage());
+            return null;
+        }
+    }
+
+    private static class LocalGeneration {
+        private long value;
+        private long updatedAt;
+    }
+
+    private static class LocalEntry {
+        private final LearningService.UserLearningStatistics stats;
+        private final long cachedAt = System.currentTimeMillis();
+
+        LocalEntry(LearningService.UserLearningStatistics stats) {
+            this.stats = stats;
+        }
+
+        boolean isExpired(long now, long ttlMinutes) {
+            return now - cachedAt > ttlMinutes * 60_000;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.smartcooking.ai.service;
+
+import com.smartcooking.ai.dto.AIServiceResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Vision Preprocessing Service
+ *
+ * Decode, thu nhỏ ảnh về cạnh dài tối đa và re-encode JPEG trong một worker
+ * pool có giới hạn trước khi gửi tới AI service. Kết quả nhận diện được cache
+ * theo content hash (SHA-256) để ảnh upload lại không phải gọi AI service lần
+ * nữa. Khớp theo perceptual hash (dHash 64-bit) là tuỳ chọn, mặc định tắt: hai
+ * ảnh khác nhau có thể trùng dHash (nhất là ảnh ít chi tiết).
+ */
+@Service
+@Slf4j
+public class VisionPreprocessingService {
+
+    @Value("${ai.vision.preprocess.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.vision.preprocess.max-edge:1024}")
+    private int maxEdge;
+
+    @Value("${ai.vision.preprocess.jpeg-quality:0.85}")
+    private float jpegQuality;
+
+    @Value("${ai.vision.preprocess.workers:4}")
+    private int workers;
+
+    @Value("${ai.vision.preprocess.queue-capacity:32}")
+    private int queueCapacity;
+
+    @Value("${ai.vision.preprocess.timeout-ms:10000}")
+    private long timeoutMs;
+
+    @Value("${ai.vision.cache.max-entries:1000}")
+    private int cacheMaxEntries;
+
+    @Value("${ai.vision.cache.ttl-minutes:1440}")
+    private long cacheTtlMinutes;
+
+    @Value("${ai.vision.cache.perceptual-enabled:false}")
+    private boolean perceptualEnabled;
+
+    // dHash có ít hơn số bit khác nhau này (ảnh gần như đồng màu) không dùng để khớp perceptual
+    @Value("${ai.vision.cache.perceptual-min-bits:8}")
+    private int perceptualMinBits;
+
+    private ThreadPoolExecutor executor;
+
+    // LRU cache: content hash -> detection; perceptual hash -> content hash
+    private final Map<String, CachedDetection> detections = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, String> perceptualIndex = new HashMap<>();
+
+    @PostConstruct
+    void init() {
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("vision-preprocess-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Chuẩn bị ảnh cho vision analysis.
+     *
+     * @return ảnh đã xử lý, hoặc null nếu preprocessing bị tắt, format không
+     *         hỗ trợ, pool quá tải hoặc timeout (khi đó gửi file gốc)
+     */
+    public PreparedImage prepare(MultipartFile file) {
+        if (!enabled) {
+            return null;
+        }
+
+        Future<PreparedImage> future;
+        try {
+            future = executor.submit(() -> decodeAndResize(file));
+        } catch (RejectedExecutionException e) {
+            log.warn("Vision preprocessing pool saturated, forwarding original image");
+            return null;
+        }
+
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("Vision preprocessing timed out after {} ms", timeoutMs);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            log.warn("Vision preprocessing failed: {}", e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Tìm detection đã cache cho ảnh (exact content hash, sau đó perceptual hash
+     * nếu bật; candidate perceptual phải cùng kích thước sau preprocessing)
+     */
+    public synchronized AIServiceResponse getCachedDetection(PreparedImage image) {
+        CachedDetection cached = detections.get(image.getContentHash());
+        if (cached == null && perceptualEnabled && isDistinctive(image.getPerceptualHash())) {
+            String contentHash = perceptualIndex.get(image.getPerceptualHash());
+            CachedDetection candidate = contentHash != null ? detections.get(contentHash) : null;
+            if (candidate != null && candidate.width == image.getWidth() && candidate.height == image.getHeight()) {
+                cached = candidate;
+            }
+        }
+        if (cached == null) {
+            return null;
+        }
+        if (cached.isExpired(cacheTtlMinutes)) {
+            evict(cached.contentHash);
+            return null;
+        }
+        return cached.response;
+    }
+
+    /**
+     * Lưu kết quả detection thành công vào cache
+     */
+    public synchronized void cacheDetection(PreparedImage image, AIServiceResponse response) {
+        if (!response.isSuccessful()) {
+            return;
+        }
+        detections.put(image.getContentHash(), new CachedDetection(image.getContentHash(),
+                image.getPerceptualHash(), image.getWidth(), image.getHeight(), response));
+        if (perceptualEnabled && isDistinctive(image.getPerceptualHash())) {
+            perceptualIndex.put(image.getPerceptualHash(), image.getContentHash());
+        }
+
+        while (detections.size() > cacheMaxEntries) {
+            evict(detections.keySet().iterator().next());
+        }
+    }
+
+    private boolean isDistinctive(long perceptualHash) {
+        int bits = Long.bitCount(perceptualHash);
+        return bits >= perceptualMinBits && bits <= Long.SIZE - perceptualMinBits;
+    }
+
+    private void evict(String contentHash) {
+        CachedDetection removed = detections.remove(contentHash);
+        if (removed != null && contentHash.equals(perceptualIndex.get(removed.perceptualHash))) {
+            perceptualIndex.remove(removed.perceptualHash);
+        }
+    }
+
+    private PreparedImage decodeAndResize(MultipartFile file) throws IOException {
+        MessageDigest digest = sha256();
+        BufferedImage decoded;
+        int originalWidth;
+        int originalHeight;
+
+        try (InputStream raw = file.getInputStream();
+                DigestInputStream in = new DigestInputStream(new BufferedInputStream(raw), digest)) {
+            try (ImageInputStream iis = ImageIO.createImageInputStream(in)) {
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+                if (!readers.hasNext()) {
+                    log.debug("Unsupported image format: {}", file.getOriginalFilename());
+                    return null;
+                }
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(iis, true, true);
+                    originalWidth = reader.getWidth(0);
+                    originalHeight = reader.getHeight(0);
+
+                    // Subsample ngay khi decode để không giữ bitmap full-size trong heap
+                    int subsampling = Math.max(1, Math.max(originalWidth, originalHeight) / maxEdge);
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                    decoded = reader.read(0, param);
+                } finally {
+                    reader.dispose();
+                }
+            }
+            // Đọc hết phần còn lại để content hash bao phủ toàn bộ file
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+
+        boolean resized = Math.max(originalWidth, originalHeight) > maxEdge;
+        BufferedImage scaled = scaleToMaxEdge(decoded, maxEdge);
+
+        return new PreparedImage(
+                HexFormat.of().formatHex(digest.digest()),
+                differenceHash(scaled),
+                resized ? encodeJpeg(scaled) : null,
+                scaled.getWidth(),
+                scaled.getHeight());
+    }
+
+    private static BufferedImage scaleToMaxEdge(BufferedImage source, int maxEdge) {
+        int longest = Math.max(source.getWidth(), source.getHeight());
+        double scale = longest > maxEdge ? (double) maxEdge / longest : 1.0;
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        return draw(source, width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height, int type) {
+        BufferedImage target = new BufferedImage(width, height, type);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * dHash: so sánh độ sáng các pixel kề nhau trên ảnh grayscale 9x8
+     */
+    static long differenceHash(BufferedImage image) {
+        BufferedImage gray = draw(image, 9, 8, BufferedImage.TYPE_BYTE_GRAY);
+        long hash = 0L;
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                int left = gray.getRaster().getSample(x, y, 0);
+                int right = gray.getRaster().getSample(x + 1, y, 0);
+                hash = (hash << 1) | (left > right ? 1L : 0L);
+            }
+        }
+        return hash;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Ảnh đã qua preprocessing
+     */
+    public static class PreparedImage {
+        private final String contentHash;
+        private final long perceptualHash;
+        private final byte[] jpegBytes;
+        private final int width;
+        private final int height;
+
+        public PreparedImage(String contentHash, long perceptualHash, byte[] jpegBytes, int width, int height) {
+            this.contentHash = contentHash;
+            this.perceptualHash = perceptualHash;
+            this.jpegBytes = jpegBytes;
+            this.width = width;
+            this.height = height;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        public long getPerceptualHash() {
+            return perceptualHash;
+        }
+
+        /**
+         * JPEG đã thu nhỏ, null nếu ảnh gốc đã đủ nhỏ (gửi file gốc)
+         */
+        public byte[] getJpegBytes() {
+            return jpegBytes;
+        }
+
+        public boolean isResized() {
+            return jpegBytes != null;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+    }
+
+    private static class CachedDetection {
+        private final String contentHash;
+        private final long perceptualHash;
+        private final int width;
+        private final int height;
+        private final AIServiceResponse response;
+        private final long cachedAt = System.currentTimeMillis();
+
+        CachedDetection(String contentHash, long perceptualHash, int width, int height, AIServiceResponse response) {
+            this.contentHash = contentHash;
+            this.perceptualHash = perceptualHash;
+            this.width = width;
+            this.height = height;
+            this.response = response;
+        }
+
+        boolean isExpired(long ttlMinutes) {
+            return System.currentTimeMillis() - cachedAt > TimeUnit.MINUTES.toMillis(ttlMinutes);
+        }
+    }
+}
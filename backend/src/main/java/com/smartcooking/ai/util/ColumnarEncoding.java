@@ -0,0 +1,167 @@
+package com.smartcooking.ai.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Columnar Encoding Utilities
+ *
+ * Varint/zigzag cho cột số, bitset cho cột boolean, block text có length
+ * prefix và nén Deflate (có thể kèm preset dictionary) cho từng cột của
+ * archive file và payload của ai_interactions.
+ */
+public class ColumnarEncoding {
+
+    private ColumnarEncoding() {
+    }
+
+    /**
+     * Varint không dấu (7 bit mỗi byte, little-endian)
+     */
+    public static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    public static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    public static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Giá trị nullable: 0 = null, còn lại value + 1 (value không âm)
+     */
+    public static void writeNullableVarLong(ByteArrayOutputStream out, Long value) {
+        writeVarLong(out, value == null ? 0 : value + 1);
+    }
+
+    public static Long readNullableVarLong(ByteBuffer in) {
+        long value = readVarLong(in);
+        return value == 0 ? null : value - 1;
+    }
+
+    /**
+     * Text nullable: varint (độ dài UTF-8 + 1, 0 = null) rồi tới bytes
+     */
+    public static void writeText(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    public static String readText(ByteBuffer in) {
+        int length = (int) readVarLong(in);
+        if (length == 0) {
+            return null;
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length - 1, StandardCharsets.UTF_8);
+        in.position(in.position() + length - 1);
+        return value;
+    }
+
+    public static byte[] toBitset(boolean[] values, int count) {
+        byte[] bits = new byte[(count + 7) / 8];
+        for (int i = 0; i < count; i++) {
+            if (values[i]) {
+                bits[i >> 3] |= (byte) (1 << (i & 7));
+            }
+        }
+        return bits;
+    }
+
+    public static boolean bit(byte[] bits, int index) {
+        return (bits[index >> 3] & (1 << (index & 7))) != 0;
+    }
+
+    public static byte[] deflate(byte[] raw, int level) {
+        return deflate(raw, level, null);
+    }
+
+    /**
+     * Deflate với preset dictionary (null = không dùng dictionary)
+     */
+    public static byte[] deflate(byte[] raw, int level, byte[] dictionary) {
+        Deflater deflater = new Deflater(level);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static byte[] inflate(byte[] compressed, int rawLength) {
+        return inflate(compressed, 0, compressed.length, rawLength, null);
+    }
+
+    /**
+     * Inflate compressed[offset, offset + length) với preset dictionary (null = không dùng)
+     */
+    public static byte[] inflate(byte[] compressed, int offset, int length, int rawLength, byte[] dictionary) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed, offset, length);
+            byte[] raw = new byte[rawLength];
+            int written = 0;
+            while (written < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, written, rawLength - written);
+                if (n == 0 && inflater.needsDictionary() && dictionary != null) {
+                    inflater.setDictionary(dictionary);
+                    dictionary = null;
+                    continue;
+                }
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                written += n;
+            }
+            if (written != rawLength) {
+                throw new UncheckedIOException(new IOException(
+                        "Truncated column block: " + written + " of " + rawLength + " bytes"));
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("Corrupt column block", e));
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.smartcooking.ai.util;
+
+import java.util.Arrays;
+
+/**
+ * Count-Min Sketch cho key kiểu long
+ *
+ * depth hàng x width cột counter; estimate là min của các cell nên chỉ đếm
+ * thừa, sai số tối đa ~ (e / width) * total với xác suất 1 - e^-depth.
+ * Hai sketch cùng kích thước merge bằng cách cộng từng cell.
+ */
+public class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final long[] table;
+    private long total;
+
+    public CountMinSketch(int width, int depth) {
+        if (width <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("width and depth must be positive");
+        }
+        this.width = width;
+        this.depth = depth;
+        this.table = new long[width * depth];
+    }
+
+    public void add(long item, long count) {
+        for (int row = 0; row < depth; row++) {
+            table[cellIndex(row, item)] += count;
+        }
+        total += count;
+    }
+
+    public long estimate(long item) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, table[cellIndex(row, item)]);
+        }
+        return min;
+    }
+
+    /**
+     * Vị trí cell (row * width + column) của item trong hàng row
+     */
+    public int cellIndex(int row, long item) {
+        long hash = mix(item + (row + 1) * 0x9E3779B97F4A7C15L);
+        return row * width + (int) Math.floorMod(hash, (long) width);
+    }
+
+    public void merge(CountMinSketch other) {
+        if (other.width != width || other.depth != depth) {
+            throw new IllegalArgumentException("Cannot merge sketches of different dimensions");
+        }
+        for (int i = 0; i < table.length; i++) {
+            table[i] += other.table[i];
+        }
+        total += other.total;
+    }
+
+    public long cell(int index) {
+        return table[index];
+    }
+
+    public int cellCount() {
+        return table.length;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Sai số đếm thừa tối đa (với xác suất cao) của estimate
+     */
+    public long errorBound() {
+        return (long) Math.ceil(Math.E / width * total);
+    }
+
+    public boolean isEmpty() {
+        return total == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        total = 0;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,116 @@
+package com.smartcooking.ai.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Dictionary Trainer - tạo preset dictionary cho Deflate từ payload mẫu
+ *
+ * Theo hướng FASTCOVER của zstd: đếm tần suất các d-mer 8 byte vào một bảng
+ * hash cố định, chia dữ liệu mẫu thành các epoch và chọn ở mỗi epoch đoạn
+ * segmentSize byte có tổng tần suất lớn nhất (d-mer đã chọn được reset để
+ * không chọn lặp). Các đoạn điểm cao nhất đặt cuối dictionary vì Deflate
+ * mã hóa khoảng cách gần rẻ hơn.
+ */
+public class DictionaryTrainer {
+
+    private static final int DMER_SIZE = 8;
+    private static final int HASH_BITS = 20;
+
+    private DictionaryTrainer() {
+    }
+
+    public static byte[] train(List<byte[]> samples, int dictionarySize, int segmentSize) {
+        ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+        for (byte[] sample : samples) {
+            concatenated.write(sample, 0, sample.length);
+        }
+        byte[] data = concatenated.toByteArray();
+        if (data.length <= dictionarySize) {
+            return data;
+        }
+        if (segmentSize < DMER_SIZE * 2 || segmentSize > dictionarySize) {
+            throw new IllegalArgumentException("segmentSize must be between " + DMER_SIZE * 2
+                    + " and dictionarySize");
+        }
+
+        int[] frequencies = new int[1 << HASH_BITS];
+        int[] hashes = new int[data.length - DMER_SIZE + 1];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = hash(data, i);
+            frequencies[hashes[i]]++;
+        }
+
+        int epochs = Math.max(1, dictionarySize / segmentSize);
+        int epochSize = data.length / epochs;
+        int dmersPerSegment = segmentSize - DMER_SIZE + 1;
+        List<Segment> selected = new ArrayList<>(epochs);
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            int begin = epoch * epochSize;
+            int end = Math.min(hashes.length, begin + epochSize);
+            if (end - begin < dmersPerSegment) {
+                continue;
+            }
+            Segment best = bestSegment(frequencies, hashes, begin, end, dmersPerSegment);
+            if (best.score <= 1) {
+                continue;
+            }
+            for (int i = best.start; i < best.start + dmersPerSegment; i++) {
+                frequencies[hashes[i]] = 0;
+            }
+            selected.add(best);
+        }
+
+        selected.sort(Comparator.comparingLong((Segment segment) -> segment.score));
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(dictionarySize);
+        for (Segment segment : selected) {
+            dictionary.write(data, segment.start, segmentSize);
+        }
+        byte[] result = dictionary.toByteArray();
+        if (result.length <= dictionarySize) {
+            return result;
+        }
+        byte[] trimmed = new byte[dictionarySize];
+        System.arraycopy(result, result.length - dictionarySize, trimmed, 0, dictionarySize);
+        return trimmed;
+    }
+
+    /**
+     * Cửa sổ trượt: đoạn có tổng tần suất d-mer lớn nhất trong [begin, end)
+     */
+    private static Segment bestSegment(int[] frequencies, int[] hashes, int begin, int end, int dmersPerSegment) {
+        long score = 0;
+        for (int i = begin; i < begin + dmersPerSegment; i++) {
+            score += frequencies[hashes[i]];
+        }
+        Segment best = new Segment(begin, score);
+        for (int start = begin + 1; start + dmersPerSegment <= end; start++) {
+            score += frequencies[hashes[start + dmersPerSegment - 1]] - frequencies[hashes[start - 1]];
+            if (score > best.score) {
+                best = new Segment(start, score);
+            }
+        }
+        return best;
+    }
+
+    private static int hash(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 0; i < DMER_SIZE; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        value *= 0x9E3779B97F4A7C15L;
+        return (int) (value >>> (64 - HASH_BITS));
+    }
+
+    private static class Segment {
+        private final int start;
+        private final long score;
+
+        Segment(int start, long score) {
+            this.start = start;
+            this.score = score;
+        }
+    }
+}
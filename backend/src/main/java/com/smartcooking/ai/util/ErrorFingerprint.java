@@ -0,0 +1,58 @@
+package com.smartcooking.ai.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Error Fingerprint - gom các lỗi cùng loại về một nhóm
+ *
+ * errorMessage được chuẩn hóa: URL, email, UUID, chuỗi hex dài và số được
+ * thay bằng placeholder, khoảng trắng được gộp. Fingerprint là 16 ký tự hex
+ * đầu của SHA-256(interaction type + message đã chuẩn hóa), nên
+ * "Timeout after 3012 ms calling http://ai-2:8001/chat" và
+ * "Timeout after 5000 ms calling http://ai-1:8001/chat" cùng một nhóm.
+ */
+public final class ErrorFingerprint {
+
+    public static final String EMPTY_MESSAGE = "(no message)";
+
+    private static final Pattern URL = Pattern.compile("\\b[a-zA-Z][a-zA-Z0-9+.-]*://\\S+");
+    private static final Pattern EMAIL = Pattern.compile("[\\w.+-]+@[\\w-]+(\\.[\\w-]+)+");
+    private static final Pattern UUID = Pattern.compile(
+            "\\b[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}\\b");
+    private static final Pattern HEX = Pattern.compile("\\b(0x[0-9a-fA-F]+|(?=[a-fA-F]*\\d)[0-9a-fA-F]{12,})\\b");
+    private static final Pattern NUMBER = Pattern.compile("\\d+([.,:]\\d+)*");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private ErrorFingerprint() {
+    }
+
+    /**
+     * Chuẩn hóa errorMessage, cắt còn tối đa maxLength ký tự
+     */
+    public static String normalize(String message, int maxLength) {
+        if (message == null || message.isBlank()) {
+            return EMPTY_MESSAGE;
+        }
+        String normalized = URL.matcher(message).replaceAll("<url>");
+        normalized = EMAIL.matcher(normalized).replaceAll("<email>");
+        normalized = UUID.matcher(normalized).replaceAll("<uuid>");
+        normalized = HEX.matcher(normalized).replaceAll("<hex>");
+        normalized = NUMBER.matcher(normalized).replaceAll("<n>");
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+        return normalized.length() > maxLength ? normalized.substring(0, maxLength) : normalized;
+    }
+
+    public static String fingerprint(String interactionType, String normalizedMessage) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((interactionType + "\n" + normalizedMessage).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.smartcooking.ai.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Export Writer
+ *
+ * Ghi từng dòng export thẳng ra response stream (JSON array, NDJSON hoặc CSV,
+ * có thể gzip) để export lớn không phải giữ toàn bộ dữ liệu trong heap.
+ */
+public class ExportWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public enum Format {
+        JSON("application/json", "json"),
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv;charset=UTF-8", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public static Format parse(String value) {
+            if (value == null || value.isBlank()) {
+                return JSON;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unsupported export format: " + value);
+            }
+        }
+    }
+
+    private final Format format;
+    private final List<String> columns;
+    private final OutputStream stream;
+    private final GZIPOutputStream gzipStream;
+    private final JsonGenerator generator;
+    private final Writer csvWriter;
+    private long rowCount;
+
+    public ExportWriter(OutputStream out, Format format, List<String> columns, boolean gzip,
+            ObjectMapper objectMapper) throws IOException {
+        this.format = format;
+        this.columns = List.copyOf(columns);
+        this.gzipStream = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+        this.stream = new BufferedOutputStream(gzip ? gzipStream : out, BUFFER_SIZE);
+
+        if (format == Format.CSV) {
+            this.generator = null;
+            this.csvWriter = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+            writeCsvLine(this.columns);
+        } else {
+            this.csvWriter = null;
+            this.generator = objectMapper.getFactory().createGenerator(stream);
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            this.generator.setRootValueSeparator(null);
+            if (format == Format.JSON) {
+                this.generator.writeStartArray();
+            }
+        }
+    }
+
+    /**
+     * Ghi một dòng; CSV lấy giá trị theo thứ tự columns, JSON ghi nguyên map
+     */
+    public void write(Map<String, ?> row) throws IOException {
+        if (format == Format.CSV) {
+            writeCsvLine(columns.stream().map(row::get).toList());
+        } else {
+            generator.writeObject(row);
+            if (format == Format.NDJSON) {
+                generator.writeRaw('\n');
+            }
+        }
+        rowCount++;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Kết thúc stream (đóng array JSON, gzip trailer); không đóng response stream
+     */
+    @Override
+    public void close() throws IOException {
+        if (generator != null) {
+            if (format == Format.JSON) {
+                generator.writeEndArray();
+            }
+            generator.close();
+        } else {
+            csvWriter.flush();
+        }
+        stream.flush();
+        if (gzipStream != null) {
+            gzipStream.finish();
+            gzipStream.flush();
+        }
+    }
+
+    private void writeCsvLine(List<?> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                csvWriter.write(',');
+            }
+            Object value = values.get(i);
+            if (value != null) {
+                csvWriter.write(escapeCsv(value));
+            }
+        }
+        csvWriter.write("\r\n");
+    }
+
+    private static String escapeCsv(Object value) {
+        String text = value.toString();
+        // Chặn formula injection khi file được mở bằng spreadsheet
+        if (value instanceof CharSequence && !text.isEmpty() && "=+-@".indexOf(text.charAt(0)) >= 0) {
+            text = "'" + text;
+        }
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        return quote ? '"' + text.replace("\"", "\"\"") + '"' : text;
+    }
+
+    /**
+     * Header cho response export: content type và tên file attachment
+     */
+    public static HttpHeaders headers(String baseName, Format format, boolean gzip) {
+        HttpHeaders headers = new HttpHeaders();
+        String filename = baseName + "." + format.extension + (gzip ? ".gz" : "");
+        headers.setContentType(MediaType.parseMediaType(gzip ? "application/gzip" : format.contentType));
+        headers.setContentDisposition(ContentDisposition.attachment().filename(filename).build());
+        return headers;
+    }
+}
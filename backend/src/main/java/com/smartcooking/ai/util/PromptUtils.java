@@ -0,0 +1,73 @@
+package com.smartcooking.ai.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Prompt Utilities
+ *
+ * Chuẩn hóa prompt gửi tới AI service để các prompt chỉ khác nhau về
+ * hoa/thường, dấu tiếng Việt hay dấu câu được coi là một.
+ */
+public class PromptUtils {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private PromptUtils() {
+    }
+
+    /**
+     * Lowercase, bỏ dấu tiếng Việt (kể cả đ), thay dấu câu bằng khoảng trắng
+     *
+     * @param text the prompt text
+     * @return normalized text, "" for null
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.ROOT).replace('đ', 'd');
+        String stripped = COMBINING_MARKS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+        return NON_WORD.matcher(stripped).replaceAll(" ").trim();
+    }
+
+    /**
+     * SHA-256 (hex) của prompt đã chuẩn hóa và model
+     *
+     * @param prompt the prompt text
+     * @param model  the AI model name
+     * @return 64-character hex hash
+     */
+    public static String promptHash(String prompt, String model) {
+        return hash(prompt, model);
+    }
+
+    /**
+     * SHA-256 (hex) của prompt đã chuẩn hóa, không phụ thuộc model
+     *
+     * @param prompt the prompt text
+     * @return 64-character hex hash
+     */
+    public static String promptKey(String prompt) {
+        return hash(prompt, null);
+    }
+
+    private static String hash(String prompt, String model) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(normalize(prompt).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update((model != null ? model.trim().toLowerCase(Locale.ROOT) : "")
+                    .getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.smartcooking.ai.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Ranked Skip List - sorted set trong memory (như ZSET của Redis)
+ *
+ * Phần tử sắp tăng dần theo (score, member); mỗi con trỏ giữ span (số phần
+ * tử nó bước qua) nên add / remove / rank / range theo rank đều O(log n).
+ * Thứ tự trùng với ZSET nên dùng làm fallback khi Redis lỗi. Không
+ * thread-safe: caller tự đồng bộ.
+ */
+public class RankedSkipList {
+
+    private static final int MAX_LEVEL = 32;
+    private static final double P = 0.25;
+
+    private final Node head = new Node(null, 0, MAX_LEVEL);
+    private final Map<String, Double> scores = new HashMap<>();
+    private int level = 1;
+    private int length;
+
+    /**
+     * Thêm hoặc cập nhật score của member
+     */
+    public void add(String member, double score) {
+        Double current = scores.get(member);
+        if (current != null) {
+            if (current == score) {
+                return;
+            }
+            delete(member, current);
+        }
+        insert(member, score);
+        scores.put(member, score);
+    }
+
+    public double incrementBy(String member, double delta) {
+        double score = scores.getOrDefault(member, 0.0) + delta;
+        add(member, score);
+        return score;
+    }
+
+    public boolean remove(String member) {
+        Double current = scores.remove(member);
+        if (current == null) {
+            return false;
+        }
+        delete(member, current);
+        return true;
+    }
+
+    public Double score(String member) {
+        return scores.get(member);
+    }
+
+    public int size() {
+        return length;
+    }
+
+    public void clear() {
+        for (int i = 0; i < MAX_LEVEL; i++) {
+            head.next[i] = null;
+            head.span[i] = 0;
+        }
+        scores.clear();
+        level = 1;
+        length = 0;
+    }
+
+    /**
+     * Rank (0-based, tăng dần theo score) của member, -1 nếu không có
+     */
+    public long rank(String member) {
+        Double score = scores.get(member);
+        if (score == null) {
+            return -1;
+        }
+        long rank = 0;
+        Node node = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && compare(node.next[i], score, member) <= 0) {
+                rank += node.span[i];
+                node = node.next[i];
+            }
+            if (node != head && node.member.equals(member)) {
+                return rank - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Các phần tử có rank trong [start, end] (0-based, tăng dần, end tính cả)
+     */
+    public List<Entry> rangeByRank(long start, long end) {
+        List<Entry> result = new ArrayList<>();
+        if (start < 0 || start >= length || end < start) {
+            return result;
+        }
+        end = Math.min(end, length - 1);
+        // Đi tới phần tử rank start (traversed = rank 1-based của node)
+        long traversed = 0;
+        Node node = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && traversed + node.span[i] <= start + 1) {
+                traversed += node.span[i];
+                node = node.next[i];
+            }
+        }
+        for (long rank = start; rank <= end && node != null; rank++) {
+            result.add(new Entry(node.member, node.score));
+            node = node.next[0];
+        }
+        return result;
+    }
+
+    private void insert(String member, double score) {
+        Node[] update = new Node[MAX_LEVEL];
+        long[] rank = new long[MAX_LEVEL];
+        Node node = head;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (node.next[i] != null && compare(node.next[i], score, member) < 0) {
+                rank[i] += node.span[i];
+                node = node.next[i];
+            }
+            update[i] = node;
+        }
+
+        int newLevel = randomLevel();
+        if (newLevel > level) {
+            for (int i = level; i < newLevel; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                update[i].span[i] = length;
+            }
+            level = newLevel;
+        }
+
+        Node inserted = new Node(member, score, newLevel);
+        for (int i = 0; i < newLevel; i++) {
+            inserted.next[i] = update[i].next[i];
+            update[i].next[i] = inserted;
+            inserted.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = rank[0] - rank[i] + 1;
+        }
+        for (int i = newLevel; i < level; i++) {
+            update[i].span[i]++;
+        }
+        length++;
+    }
+
+    private void delete(String member, double score) {
+        Node[] update = new Node[MAX_LEVEL];
+        Node node = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && compare(node.next[i], score, member) < 0) {
+                node = node.next[i];
+            }
+            update[i] = node;
+        }
+        Node target = node.next[0];
+        if (target == null || compare(target, score, member) != 0) {
+            return;
+        }
+        for (int i = 0; i < level; i++) {
+            if (update[i].next[i] == target) {
+                update[i].span[i] += target.span[i] - 1;
+                update[i].next[i] = target.next[i];
+            } else {
+                update[i].span[i]--;
+            }
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            level--;
+        }
+        length--;
+    }
+
+    private static int compare(Node node, double score, String member) {
+        int byScore = Double.compare(node.score, score);
+        return byScore != 0 ? byScore : node.member.compareTo(member);
+    }
+
+    private static int randomLevel() {
+        int level = 1;
+        while (level < MAX_LEVEL && ThreadLocalRandom.current().nextDouble() < P) {
+            level++;
+        }
+        return level;
+    }
+
+    public static class Entry {
+        private final String member;
+        private final double score;
+
+        public Entry(String member, double score) {
+            this.member = member;
+            this.score = score;
+        }
+
+        public String getMember() {
+            return member;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    private static class Node {
+        private final String member;
+        private final double score;
+        private final Node[] next;
+        private final long[] span;
+
+        Node(String member, double score, int level) {
+            this.member = member;
+            this.score = score;
+            this.next = new Node[level];
+            this.span = new long[level];
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.smartcooking.ai.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Space-Saving top-K cho key kiểu long
+ *
+ * Giữ tối đa capacity counter; item mới khi đầy thay counter nhỏ nhất và kế
+ * thừa count của nó (ghi vào error). Mọi item có tần suất > total / capacity
+ * chắc chắn nằm trong summary, count đếm thừa không quá error.
+ */
+public class SpaceSaving {
+
+    private static final Comparator<Counter> BY_COUNT = Comparator
+            .comparingLong((Counter c) -> c.count)
+            .thenComparingLong(c -> c.item);
+
+    private final int capacity;
+    private final Map<Long, Counter> counters = new HashMap<>();
+    private final TreeSet<Counter> ordered = new TreeSet<>(BY_COUNT);
+    private long total;
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    public void offer(long item, long count, long timestamp) {
+        total += count;
+        Counter counter = counters.get(item);
+        if (counter == null) {
+            if (counters.size() < capacity) {
+                counter = new Counter(item, 0, 0, timestamp);
+            } else {
+                Counter min = ordered.pollFirst();
+                counters.remove(min.item);
+                counter = new Counter(item, min.count, min.count, timestamp);
+            }
+            counters.put(item, counter);
+        } else {
+            ordered.remove(counter);
+        }
+        counter.count += count;
+        counter.lastSeen = Math.max(counter.lastSeen, timestamp);
+        ordered.add(counter);
+    }
+
+    /**
+     * Merge summary khác vào (cộng count, giữ lại capacity counter lớn nhất)
+     */
+    public void merge(SpaceSaving other) {
+        for (Counter counter : other.counters.values()) {
+            Counter existing = counters.get(counter.item);
+            if (existing == null) {
+                existing = new Counter(counter.item, 0, 0, counter.lastSeen);
+                counters.put(counter.item, existing);
+            } else {
+                ordered.remove(existing);
+            }
+            existing.count += counter.count;
+            existing.error += counter.error;
+            existing.lastSeen = Math.max(existing.lastSeen, counter.lastSeen);
+            ordered.add(existing);
+        }
+        total += other.total;
+        while (counters.size() > capacity) {
+            counters.remove(ordered.pollFirst().item);
+        }
+    }
+
+    /**
+     * n counter lớn nhất, giảm dần theo count
+     */
+    public List<Counter> top(int n) {
+        List<Counter> result = new ArrayList<>(Math.min(n, counters.size()));
+        for (Counter counter : ordered.descendingSet()) {
+            if (result.size() >= n) {
+                break;
+            }
+            result.add(counter.copy());
+        }
+        return result;
+    }
+
+    public Counter get(long item) {
+        Counter counter = counters.get(item);
+        return counter != null ? counter.copy() : null;
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return counters.isEmpty();
+    }
+
+    public static class Counter {
+        private final long item;
+        private long count;
+        private long error;
+        private long lastSeen;
+
+        private Counter(long item, long count, long error, long lastSeen) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+            this.lastSeen = lastSeen;
+        }
+
+        private Counter copy() {
+            return new Counter(item, count, error, lastSeen);
+        }
+
+        public long getItem() {
+            return item;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+    }
+}